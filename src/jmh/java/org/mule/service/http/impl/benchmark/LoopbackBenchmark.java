@@ -0,0 +1,162 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.benchmark;
+
+import static org.mule.runtime.http.api.HttpConstants.Method.GET;
+import static org.mule.runtime.http.api.HttpConstants.Method.POST;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import static org.apache.commons.io.IOUtils.toByteArray;
+import static org.openjdk.jmh.annotations.Mode.SampleTime;
+import static org.openjdk.jmh.annotations.Mode.Throughput;
+
+import org.mule.runtime.http.api.client.HttpClient;
+import org.mule.runtime.http.api.client.HttpClientConfiguration;
+import org.mule.runtime.http.api.client.HttpRequestOptions;
+import org.mule.runtime.http.api.domain.entity.ByteArrayHttpEntity;
+import org.mule.runtime.http.api.domain.message.request.HttpRequest;
+import org.mule.runtime.http.api.domain.message.response.HttpResponse;
+import org.mule.runtime.http.api.server.HttpServer;
+import org.mule.runtime.http.api.server.HttpServerConfiguration;
+import org.mule.runtime.http.api.server.async.ResponseStatusCallback;
+import org.mule.service.http.impl.service.HttpServiceImplementation;
+import org.mule.tck.SimpleUnitTestSupportSchedulerService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End to end GET and POST requests over loopback, from a {@code GrizzlyHttpClient} to a {@code GrizzlyHttpServer} created through
+ * the {@link HttpServiceImplementation}, with and without response streaming in the client.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Throughput, SampleTime})
+@OutputTimeUnit(MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 5, timeUnit = SECONDS)
+public class LoopbackBenchmark {
+
+  private static final int RESPONSE_TIMEOUT_MILLIS = 10000;
+
+  @Param({"false", "true"})
+  public boolean streaming;
+
+  @Param({"1024", "262144"})
+  public int payloadSize;
+
+  private SimpleUnitTestSupportSchedulerService schedulerService;
+  private HttpServiceImplementation service;
+  private HttpServer server;
+  private HttpClient client;
+  private HttpRequest getRequest;
+  private HttpRequest postRequest;
+  private HttpRequestOptions options;
+
+  @Setup
+  public void setUp() throws Exception {
+    byte[] payload = new byte[payloadSize];
+    new Random(42).nextBytes(payload);
+
+    schedulerService = new SimpleUnitTestSupportSchedulerService();
+    service = new HttpServiceImplementation(schedulerService);
+    service.start();
+
+    int port = freePort();
+    server = service.getServerFactory().create(new HttpServerConfiguration.Builder()
+        .setHost("localhost")
+        .setPort(port)
+        .setName("loopback-benchmark-server")
+        .build());
+    server.start();
+    server.addRequestHandler("/get", (requestContext, responseCallback) -> responseCallback
+        .responseReady(HttpResponse.builder().statusCode(200).entity(new ByteArrayHttpEntity(payload)).build(),
+                       new NoOpResponseStatusCallback()));
+    server.addRequestHandler("/post", (requestContext, responseCallback) -> {
+      byte[] body;
+      try {
+        body = requestContext.getRequest().getEntity().getBytes();
+      } catch (IOException e) {
+        responseCallback.responseReady(HttpResponse.builder().statusCode(500).build(), new NoOpResponseStatusCallback());
+        return;
+      }
+      responseCallback.responseReady(HttpResponse.builder().statusCode(200).entity(new ByteArrayHttpEntity(body)).build(),
+                                     new NoOpResponseStatusCallback());
+    });
+
+    client = service.getClientFactory().create(new HttpClientConfiguration.Builder()
+        .setName("loopback-benchmark-client")
+        .setStreaming(streaming)
+        .build());
+    client.start();
+
+    String baseUri = "http://localhost:" + port;
+    getRequest = HttpRequest.builder().uri(baseUri + "/get").method(GET).build();
+    postRequest = HttpRequest.builder().uri(baseUri + "/post").method(POST).entity(new ByteArrayHttpEntity(payload)).build();
+    options = HttpRequestOptions.builder().responseTimeout(RESPONSE_TIMEOUT_MILLIS).build();
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    client.stop();
+    server.stop();
+    server.dispose();
+    service.stop();
+    schedulerService.stop();
+  }
+
+  @Benchmark
+  public byte[] get() throws Exception {
+    return consume(client.send(getRequest, options));
+  }
+
+  @Benchmark
+  public byte[] post() throws Exception {
+    return consume(client.send(postRequest, options));
+  }
+
+  private static byte[] consume(HttpResponse response) throws IOException {
+    try (InputStream content = response.getEntity().getContent()) {
+      return toByteArray(content);
+    }
+  }
+
+  private static int freePort() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+
+  private static final class NoOpResponseStatusCallback implements ResponseStatusCallback {
+
+    @Override
+    public void responseSendFailure(Throwable throwable) {
+      // Nothing to do
+    }
+
+    @Override
+    public void responseSendSuccessfully() {
+      // Nothing to do
+    }
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.benchmark;
+
+import static org.mule.service.http.impl.service.server.grizzly.HttpParser.parseMultipartContent;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import static org.openjdk.jmh.annotations.Mode.SampleTime;
+import static org.openjdk.jmh.annotations.Mode.Throughput;
+
+import org.mule.runtime.http.api.domain.entity.HttpEntity;
+import org.mule.runtime.http.api.domain.entity.multipart.HttpPart;
+import org.mule.runtime.http.api.domain.entity.multipart.MultipartHttpEntity;
+import org.mule.service.http.impl.service.server.grizzly.HttpMultipartEncoder;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encodes multipart entities through {@link HttpMultipartEncoder} and parses them back through
+ * {@link org.mule.service.http.impl.service.server.grizzly.HttpParser}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Throughput, SampleTime})
+@OutputTimeUnit(MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = SECONDS)
+public class MultipartBenchmark {
+
+  private static final String CONTENT_TYPE = "multipart/form-data; boundary=\"benchmark-boundary\"";
+
+  @Param({"2", "16"})
+  public int parts;
+
+  @Param({"1024", "65536"})
+  public int partSize;
+
+  private HttpEntity entity;
+  private byte[] encoded;
+
+  @Setup
+  public void setUp() throws Exception {
+    Random random = new Random(42);
+    List<HttpPart> httpParts = new ArrayList<>(parts);
+    for (int i = 0; i < parts; i++) {
+      byte[] content = new byte[partSize];
+      random.nextBytes(content);
+      httpParts.add(new HttpPart("part" + i, content, "application/octet-stream", content.length));
+    }
+    entity = new MultipartHttpEntity(httpParts);
+    encoded = HttpMultipartEncoder.toByteArray(entity, CONTENT_TYPE);
+  }
+
+  @Benchmark
+  public byte[] encode() throws Exception {
+    return HttpMultipartEncoder.toByteArray(entity, CONTENT_TYPE);
+  }
+
+  @Benchmark
+  public Collection<HttpPart> parse() throws Exception {
+    return parseMultipartContent(new ByteArrayInputStream(encoded), CONTENT_TYPE);
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.benchmark;
+
+import static org.mule.runtime.http.api.HttpConstants.Method.GET;
+import static org.mule.runtime.http.api.HttpConstants.Method.POST;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import static org.openjdk.jmh.annotations.Mode.SampleTime;
+import static org.openjdk.jmh.annotations.Mode.Throughput;
+
+import org.mule.runtime.http.api.domain.message.request.HttpRequest;
+import org.mule.runtime.http.api.server.MethodRequestMatcher;
+import org.mule.runtime.http.api.server.PathAndMethodRequestMatcher;
+import org.mule.runtime.http.api.utils.RequestMatcherRegistry;
+import org.mule.service.http.impl.service.util.DefaultRequestMatcherRegistryBuilder;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link RequestMatcherRegistry#find(HttpRequest)} over route tables shaped like real APIs: a static resource, a
+ * resource with a URI param and a nested wildcard per route, queried with high cardinality ids in the path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Throughput, SampleTime})
+@OutputTimeUnit(MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = SECONDS)
+public class RequestMatcherRegistryBenchmark {
+
+  private static final int REQUESTS_COUNT = 1024;
+  private static final int REQUESTS_MASK = REQUESTS_COUNT - 1;
+  private static final Object HANDLER = new Object();
+  private static final Object NOT_FOUND = new Object();
+  private static final Object METHOD_MISMATCH = new Object();
+
+  @Param({"10", "100", "500"})
+  public int routes;
+
+  private RequestMatcherRegistry<Object> registry;
+  private final HttpRequest[] staticRequests = new HttpRequest[REQUESTS_COUNT];
+  private final HttpRequest[] uriParamRequests = new HttpRequest[REQUESTS_COUNT];
+  private final HttpRequest[] wildcardRequests = new HttpRequest[REQUESTS_COUNT];
+  private int next;
+
+  @Setup
+  public void setUp() {
+    registry = new DefaultRequestMatcherRegistryBuilder<Object>()
+        .onNotFound(() -> NOT_FOUND)
+        .onMethodMismatch(() -> METHOD_MISMATCH)
+        .build();
+    for (int i = 0; i < routes; i++) {
+      registry.add(matcher("/api/v1/resource" + i), HANDLER);
+      registry.add(matcher("/api/v1/resource" + i + "/{id}"), HANDLER);
+      registry.add(matcher("/api/v1/resource" + i + "/{id}/items/*"), HANDLER);
+    }
+
+    Random random = new Random(42);
+    for (int i = 0; i < REQUESTS_COUNT; i++) {
+      String resource = "/api/v1/resource" + random.nextInt(routes);
+      staticRequests[i] = request(resource);
+      uriParamRequests[i] = request(resource + "/" + random.nextInt(1_000_000));
+      wildcardRequests[i] = request(resource + "/" + random.nextInt(1_000_000) + "/items/" + random.nextInt(1_000));
+    }
+  }
+
+  @Benchmark
+  public Object findStatic() {
+    return registry.find(staticRequests[next++ & REQUESTS_MASK]);
+  }
+
+  @Benchmark
+  public Object findWithUriParam() {
+    return registry.find(uriParamRequests[next++ & REQUESTS_MASK]);
+  }
+
+  @Benchmark
+  public Object findWithWildcard() {
+    return registry.find(wildcardRequests[next++ & REQUESTS_MASK]);
+  }
+
+  private static PathAndMethodRequestMatcher matcher(String path) {
+    return PathAndMethodRequestMatcher.builder()
+        .methodRequestMatcher(MethodRequestMatcher.builder().add(GET).add(POST).build())
+        .path(path)
+        .build();
+  }
+
+  private static HttpRequest request(String path) {
+    return HttpRequest.builder().uri("http://localhost:8081" + path).method(GET).build();
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.benchmark;
+
+import static java.lang.Math.min;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import static org.openjdk.jmh.annotations.Mode.SampleTime;
+import static org.openjdk.jmh.annotations.Mode.Throughput;
+
+import org.mule.service.http.impl.util.TimedPipedInputStream;
+import org.mule.service.http.impl.util.TimedPipedOutputStream;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Streams a response body through a {@link TimedPipedInputStream}, with a dedicated thread writing body parts the way the
+ * requester's response handler does and the benchmark thread consuming it the way a flow does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Throughput, SampleTime})
+@OutputTimeUnit(MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = SECONDS)
+public class TimedPipedStreamBenchmark {
+
+  private static final long READ_TIMEOUT_MILLIS = 20000;
+  private static final int READ_BUFFER_SIZE = 8 * 1024;
+
+  @Param({"1048576", "16777216"})
+  public int bodySize;
+
+  @Param({"8192", "32768"})
+  public int pipeSize;
+
+  @Param({"16384"})
+  public int partSize;
+
+  private ExecutorService writer;
+  private byte[] part;
+  private byte[] readBuffer;
+
+  @Setup
+  public void setUp() {
+    writer = newSingleThreadExecutor();
+    part = new byte[partSize];
+    readBuffer = new byte[READ_BUFFER_SIZE];
+  }
+
+  @TearDown
+  public void tearDown() {
+    writer.shutdownNow();
+  }
+
+  @Benchmark
+  public long stream() throws Exception {
+    TimedPipedOutputStream out = new TimedPipedOutputStream();
+    TimedPipedInputStream in = new TimedPipedInputStream(pipeSize, READ_TIMEOUT_MILLIS, MILLISECONDS, out, () -> {
+    });
+
+    Future<?> written = writer.submit(() -> {
+      int remaining = bodySize;
+      while (remaining > 0) {
+        int length = min(remaining, part.length);
+        out.write(part, 0, length);
+        remaining -= length;
+      }
+      out.close();
+      return null;
+    });
+
+    long total = 0;
+    int read;
+    while ((read = in.read(readBuffer)) != -1) {
+      total += read;
+    }
+    written.get();
+    if (total != bodySize) {
+      throw new IOException("Expected " + bodySize + " bytes but read " + total);
+    }
+    return total;
+  }
+}
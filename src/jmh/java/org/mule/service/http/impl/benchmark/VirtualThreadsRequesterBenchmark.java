@@ -0,0 +1,218 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.benchmark;
+
+import static org.mule.runtime.http.api.HttpConstants.Method.GET;
+import static org.mule.service.http.impl.service.client.GrizzlyHttpClient.VIRTUAL_THREADS_PROPERTY;
+
+import static java.lang.System.clearProperty;
+import static java.lang.System.setProperty;
+import static java.lang.management.ManagementFactory.getThreadMXBean;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.concurrent.locks.LockSupport.parkNanos;
+
+import static org.apache.commons.io.IOUtils.toByteArray;
+import static org.openjdk.jmh.annotations.Mode.SampleTime;
+import static org.openjdk.jmh.annotations.AuxCounters.Type.EVENTS;
+import static org.openjdk.jmh.annotations.Level.Iteration;
+import static org.openjdk.jmh.annotations.Mode.Throughput;
+
+import org.mule.runtime.http.api.client.HttpClient;
+import org.mule.runtime.http.api.client.HttpClientConfiguration;
+import org.mule.runtime.http.api.client.HttpRequestOptions;
+import org.mule.runtime.http.api.domain.entity.ByteArrayHttpEntity;
+import org.mule.runtime.http.api.domain.message.request.HttpRequest;
+import org.mule.runtime.http.api.domain.message.response.HttpResponse;
+import org.mule.runtime.http.api.server.HttpServer;
+import org.mule.runtime.http.api.server.HttpServerConfiguration;
+import org.mule.runtime.http.api.server.async.ResponseStatusCallback;
+import org.mule.service.http.impl.service.HttpServiceImplementation;
+import org.mule.service.http.impl.util.VirtualThreads;
+import org.mule.tck.SimpleUnitTestSupportSchedulerService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ThreadMXBean;
+import java.net.ServerSocket;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Many concurrent blocking sends over loopback from a streaming client, with its streaming workers in a scheduler or in virtual
+ * threads. Responses are larger than the buffer of their pipe. With the scheduler each one keeps a transport thread blocked
+ * until its caller reads it, while with virtual threads the sends go through the non blocking path and their writes are parked
+ * instead.
+ * {@link #sendToSlowReader} reads each response in small pieces with a pause between them, so the pipes stay full and the workers
+ * stay blocked for most of the exchange.
+ * <p>
+ * Besides the throughput and latency, the peak of platform threads alive during each iteration is reported as the
+ * {@code peakPlatformThreads} counter. Requires Java 21 or later for the virtual threads case, which fails to set up otherwise.
+ *
+ * <pre>
+ *   mvn -Pbenchmarks test-compile exec:exec -Djmh.args="VirtualThreadsRequesterBenchmark -prof gc"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Throughput, SampleTime})
+@OutputTimeUnit(MICROSECONDS)
+@Fork(1)
+@Threads(64)
+@Warmup(iterations = 3, time = 5, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 5, timeUnit = SECONDS)
+public class VirtualThreadsRequesterBenchmark {
+
+  private static final int RESPONSE_TIMEOUT_MILLIS = 30000;
+  private static final int SLOW_READ_SIZE = 8192;
+  private static final long SLOW_READ_PAUSE_NANOS = MICROSECONDS.toNanos(100);
+
+  @Param({"false", "true"})
+  public boolean virtualThreads;
+
+  @Param({"65536", "1048576"})
+  public int payloadSize;
+
+  private SimpleUnitTestSupportSchedulerService schedulerService;
+  private HttpServiceImplementation service;
+  private HttpServer server;
+  private HttpClient client;
+  private HttpRequest request;
+  private HttpRequestOptions options;
+  private final ThreadMXBean threads = getThreadMXBean();
+
+  @Setup
+  public void setUp() throws Exception {
+    if (virtualThreads && !VirtualThreads.isSupported()) {
+      throw new IllegalStateException("Virtual threads require Java 21 or later");
+    }
+    byte[] payload = new byte[payloadSize];
+    new Random(42).nextBytes(payload);
+
+    schedulerService = new SimpleUnitTestSupportSchedulerService();
+    service = new HttpServiceImplementation(schedulerService);
+    service.start();
+
+    int port = freePort();
+    server = service.getServerFactory().create(new HttpServerConfiguration.Builder()
+        .setHost("localhost")
+        .setPort(port)
+        .setName("virtual-threads-benchmark-server")
+        .build());
+    server.start();
+    server.addRequestHandler("/get", (requestContext, responseCallback) -> responseCallback
+        .responseReady(HttpResponse.builder().statusCode(200).entity(new ByteArrayHttpEntity(payload)).build(),
+                       new NoOpResponseStatusCallback()));
+
+    // Read by the client when it starts
+    setProperty(VIRTUAL_THREADS_PROPERTY, Boolean.toString(virtualThreads));
+    client = service.getClientFactory().create(new HttpClientConfiguration.Builder()
+        .setName("virtual-threads-benchmark-client")
+        .setStreaming(true)
+        .build());
+    client.start();
+
+    request = HttpRequest.builder().uri("http://localhost:" + port + "/get").method(GET).build();
+    options = HttpRequestOptions.builder().responseTimeout(RESPONSE_TIMEOUT_MILLIS).build();
+  }
+
+  @Setup(Iteration)
+  public void resetPeakThreads() {
+    threads.resetPeakThreadCount();
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    client.stop();
+    clearProperty(VIRTUAL_THREADS_PROPERTY);
+    server.stop();
+    server.dispose();
+    service.stop();
+    schedulerService.stop();
+  }
+
+  @Benchmark
+  public byte[] send(PlatformThreads platformThreads) throws Exception {
+    try (InputStream content = client.send(request, options).getEntity().getContent()) {
+      return toByteArray(content);
+    } finally {
+      platformThreads.update(threads);
+    }
+  }
+
+  @Benchmark
+  public long sendToSlowReader(PlatformThreads platformThreads) throws Exception {
+    byte[] buffer = new byte[SLOW_READ_SIZE];
+    long read = 0;
+    try (InputStream content = client.send(request, options).getEntity().getContent()) {
+      int count;
+      while ((count = content.read(buffer)) != -1) {
+        read += count;
+        parkNanos(SLOW_READ_PAUSE_NANOS);
+      }
+      return read;
+    } finally {
+      platformThreads.update(threads);
+    }
+  }
+
+  private static int freePort() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+
+  /**
+   * Reports the peak of platform threads alive during the iteration. JMH sums the counters of all the benchmark threads, so only
+   * the first one reports it.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(EVENTS)
+  public static class PlatformThreads {
+
+    private boolean reporter;
+    public long peakPlatformThreads;
+
+    @Setup(Iteration)
+    public void setUp(ThreadParams threadParams) {
+      reporter = threadParams.getThreadIndex() == 0;
+      peakPlatformThreads = 0;
+    }
+
+    void update(ThreadMXBean threads) {
+      if (reporter) {
+        peakPlatformThreads = threads.getPeakThreadCount();
+      }
+    }
+  }
+
+  private static final class NoOpResponseStatusCallback implements ResponseStatusCallback {
+
+    @Override
+    public void responseSendFailure(Throwable throwable) {
+      // Nothing to do
+    }
+
+    @Override
+    public void responseSendSuccessfully() {
+      // Nothing to do
+    }
+  }
+}
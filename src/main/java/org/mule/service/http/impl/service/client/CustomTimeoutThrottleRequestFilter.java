@@ -6,18 +6,24 @@
  */
 package org.mule.service.http.impl.service.client;
 
-import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.mule.service.http.impl.service.client.HostConnectionBudgets.ALL_HOSTS;
+import static org.mule.service.http.impl.service.client.HostConnectionBudgets.budgetKey;
+
+import static java.lang.System.nanoTime;
 
 import com.ning.http.client.AsyncHandler;
 import com.ning.http.client.HttpResponseBodyPart;
 import com.ning.http.client.HttpResponseHeaders;
 import com.ning.http.client.HttpResponseStatus;
+import com.ning.http.client.Request;
 import com.ning.http.client.filter.FilterContext;
 import com.ning.http.client.filter.FilterException;
 import com.ning.http.client.filter.RequestFilter;
 
-import java.util.concurrent.Semaphore;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,54 +34,154 @@ import org.slf4j.LoggerFactory;
  *
  * This is based on {@code com.ning.http.client.extra.ThrottleRequestFilter} from Async Http Client, but uses the request timeout
  * from each request and throttles based on the configured maximum connections allowed.
+ * <p>
+ * The permits are taken from {@link HostConnectionBudgets}. When the connections to each host are limited too, the requests to
+ * each host wait in a queue of their own. Asynchronous sends take their permit through
+ * {@link #acquireAsync(Request, AsyncHandler, Consumer)} before executing the request, so they never block a thread.
  */
 public class CustomTimeoutThrottleRequestFilter implements RequestFilter {
 
   private final static Logger logger = LoggerFactory.getLogger(CustomTimeoutThrottleRequestFilter.class);
-  private final Semaphore available;
+  private static final String CONNECTION_LIMIT_EXCEEDED_MESSAGE = "Connection limit exceeded, cannot process request";
+
+  private final HostConnectionBudgets budgets;
+  private final boolean perHost;
+  private final RequesterMetrics metrics;
+  private final ScheduledExecutorService timeoutScheduler;
 
   public CustomTimeoutThrottleRequestFilter(int maxConnections) {
-    available = new Semaphore(maxConnections, true);
+    this(maxConnections, null);
+  }
+
+  /**
+   * @param metrics the metrics to record the time waiting for a permit in, or {@code null} if disabled.
+   */
+  public CustomTimeoutThrottleRequestFilter(int maxConnections, RequesterMetrics metrics) {
+    this(maxConnections, -1, false, null, metrics, null);
+  }
+
+  /**
+   * @param maxConnections        the connections allowed in total, or a negative value if unlimited.
+   * @param maxConnectionsPerHost the connections allowed for each host, or a negative value if unlimited.
+   * @param weightedFairQueuing   whether the permits are split among the hosts in proportion of their weights, instead of
+   *                              granted in order.
+   * @param hostWeights           the weights of the hosts, as {@code host:port}, or {@code null} for all to weigh the same.
+   * @param metrics               the metrics to record the time waiting for a permit in, or {@code null} if disabled.
+   * @param timeoutScheduler      the scheduler to time out the requests waiting asynchronously for a permit with, or
+   *                              {@code null} for {@link #acquireAsync(Request, AsyncHandler, Consumer)} to block instead.
+   */
+  public CustomTimeoutThrottleRequestFilter(int maxConnections, int maxConnectionsPerHost, boolean weightedFairQueuing,
+                                            Map<String, Integer> hostWeights, RequesterMetrics metrics,
+                                            ScheduledExecutorService timeoutScheduler) {
+    this.perHost = maxConnectionsPerHost > 0;
+    this.budgets = new HostConnectionBudgets(maxConnections, maxConnectionsPerHost, weightedFairQueuing, hostWeights);
+    this.metrics = metrics;
+    this.timeoutScheduler = timeoutScheduler;
   }
 
   @Override
   public FilterContext filter(FilterContext ctx) throws FilterException {
+    if (ctx.getAsyncHandler() instanceof AsyncHandlerWrapper) {
+      // The permit was already taken by acquireAsync
+      return ctx;
+    }
+
     try {
       int timeout = ctx.getRequest().getRequestTimeout();
+      String budgetKey = budgetKeyOf(ctx.getRequest());
       if (logger.isDebugEnabled()) {
-        logger.debug("Current available connections: {}, Maximum wait time: {}", available.availablePermits(), timeout);
+        logger.debug("Current available connections: {}, Maximum wait time: {}", budgets.availablePermits(budgetKey), timeout);
       }
-      if (!available.tryAcquire(timeout, MILLISECONDS)) {
+      long waitStart = metrics != null ? nanoTime() : 0;
+      if (!budgets.acquire(budgetKey, timeout)) {
         logger.debug("Rejecting request {} in AsyncHandler {}", ctx.getRequest(), ctx.getAsyncHandler());
-        throw new FilterException("Connection limit exceeded, cannot process request");
+        permitTimedOut(ctx.getRequest());
+        throw new FilterException(CONNECTION_LIMIT_EXCEEDED_MESSAGE);
       }
+      permitAcquired(ctx.getRequest(), waitStart);
+      return new FilterContext.FilterContextBuilder(ctx)
+          .asyncHandler(new AsyncHandlerWrapper(resolveAsyncHandler(ctx), budgetKey))
+          .build();
     } catch (InterruptedException e) {
       logger.debug("Interrupted request {} in AsyncHandler {}", ctx.getRequest(), ctx.getAsyncHandler());
       throw new FilterException("Interrupted request");
     }
+  }
+
+  /**
+   * Takes a permit for the given request without blocking the calling thread. When no permit is available the request is parked
+   * until one is released, and then executed by the thread that released it. If its timeout elapses first, the handler is
+   * notified through {@link AsyncHandler#onThrowable(Throwable)} instead.
+   *
+   * @param request      the request to take the permit for.
+   * @param asyncHandler the handler of the request.
+   * @param execute      executes the request with the handler given to it, which releases the permit once done.
+   */
+  public <T> void acquireAsync(Request request, AsyncHandler<T> asyncHandler, Consumer<AsyncHandler<T>> execute) {
+    if (timeoutScheduler == null) {
+      // The filter blocks for the permit as for any other request
+      execute.accept(asyncHandler);
+      return;
+    }
 
-    return new FilterContext.FilterContextBuilder(ctx).asyncHandler(new AsyncHandlerWrapper(resolveAsyncHandler(ctx))).build();
+    String budgetKey = budgetKeyOf(request);
+    long waitStart = metrics != null ? nanoTime() : 0;
+    budgets.acquireAsync(budgetKey, request.getRequestTimeout(), timeoutScheduler,
+                         () -> {
+                           permitAcquired(request, waitStart);
+                           execute.accept(new AsyncHandlerWrapper<>(asyncHandler, budgetKey));
+                         },
+                         () -> {
+                           logger.debug("Rejecting request {} in AsyncHandler {}", request, asyncHandler);
+                           permitTimedOut(request);
+                           asyncHandler.onThrowable(new FilterException(CONNECTION_LIMIT_EXCEEDED_MESSAGE));
+                         });
+  }
+
+  /**
+   * Fails the requests waiting asynchronously for a permit, as if their timeout had elapsed.
+   */
+  public void abortWaiting() {
+    budgets.abortWaiting();
   }
 
   protected AsyncHandler resolveAsyncHandler(FilterContext ctx) {
     return ctx.getAsyncHandler();
   }
 
+  private String budgetKeyOf(Request request) {
+    return perHost ? budgetKey(request.getUri()) : ALL_HOSTS;
+  }
+
+  private void permitAcquired(Request request, long waitStart) {
+    if (metrics != null) {
+      metrics.hostMetrics(request.getUri()).permitAcquired(nanoTime() - waitStart);
+    }
+  }
+
+  private void permitTimedOut(Request request) {
+    if (metrics != null) {
+      metrics.hostMetrics(request.getUri()).permitTimedOut();
+    }
+  }
+
   private class AsyncHandlerWrapper<T> implements AsyncHandler<T> {
 
     private final AsyncHandler<T> asyncHandler;
+    private final String budgetKey;
     private final AtomicBoolean complete = new AtomicBoolean(false);
 
-    public AsyncHandlerWrapper(AsyncHandler<T> asyncHandler) {
+    public AsyncHandlerWrapper(AsyncHandler<T> asyncHandler, String budgetKey) {
       this.asyncHandler = asyncHandler;
+      this.budgetKey = budgetKey;
     }
 
     private void complete() {
       if (complete.compareAndSet(false, true)) {
-        available.release();
+        budgets.release(budgetKey);
       }
       if (logger.isDebugEnabled()) {
-        logger.debug("Current available connections after processing: {}", available.availablePermits());
+        logger.debug("Current available connections after processing: {}", budgets.availablePermits(budgetKey));
       }
     }
 
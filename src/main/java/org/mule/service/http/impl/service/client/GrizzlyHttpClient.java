@@ -14,6 +14,9 @@ import static org.mule.runtime.api.util.MuleSystemProperties.SYSTEM_PROPERTY_PRE
 import static org.mule.runtime.api.util.Preconditions.checkState;
 import static org.mule.runtime.core.api.util.StringUtils.isEmpty;
 import static org.mule.runtime.http.api.server.HttpServerProperties.PRESERVE_HEADER_CASE;
+import static org.mule.service.http.impl.service.client.HostConnectionBudgets.parseWeights;
+import static org.mule.service.http.impl.util.VirtualThreads.isSupported;
+import static org.mule.service.http.impl.util.VirtualThreads.newVirtualThreadPerTaskExecutor;
 
 import static java.lang.Boolean.getBoolean;
 import static java.lang.Boolean.parseBoolean;
@@ -66,8 +69,11 @@ import java.io.PipedOutputStream;
 import java.net.InetAddress;
 import java.net.URI;
 import java.net.UnknownHostException;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeoutException;
 
 import javax.net.ssl.SSLContext;
@@ -125,6 +131,14 @@ public class GrizzlyHttpClient implements HttpClient, InternalClient {
 
   private static boolean enableMuleRedirect = parseBoolean(getProperty(ENABLE_MULE_REDIRECT_PROPERTY, "true"));
 
+  public static final String MAX_CONNECTIONS_PER_HOST_PROPERTY = SYSTEM_PROPERTY_PREFIX + "http.client.maxConnectionsPerHost";
+  public static final String WEIGHTED_FAIR_QUEUING_PROPERTY = SYSTEM_PROPERTY_PREFIX + "http.client.weightedFairQueuing";
+  public static final String HOST_WEIGHTS_PROPERTY = SYSTEM_PROPERTY_PREFIX + "http.client.hostWeights";
+  // Runs the streaming workers in virtual threads, bounded like the pool they replace, and sends the blocking streaming requests
+  // through the non blocking path, so no transport thread blocks on a full pipe and virtual callers don't pin a carrier while
+  // they wait. Requires Java 21 or later.
+  public static final String VIRTUAL_THREADS_PROPERTY = SYSTEM_PROPERTY_PREFIX + "http.client.virtualThreads";
+
   private static final String MAX_CLIENT_REQUEST_HEADERS_KEY = SYSTEM_PROPERTY_PREFIX + "http.MAX_CLIENT_REQUEST_HEADERS";
   private static int MAX_CLIENT_REQUEST_HEADERS =
       getInteger(MAX_CLIENT_REQUEST_HEADERS_KEY, MAX_NUM_HEADERS_DEFAULT);
@@ -144,13 +158,18 @@ public class GrizzlyHttpClient implements HttpClient, InternalClient {
   private final int responseBufferSize;
   private final String name;
   private final boolean decompressionEnabled;
-  private final NonBlockingStreamWriter nonBlockingStreamWriter;
+  private NonBlockingStreamWriter nonBlockingStreamWriter;
   private Scheduler selectorScheduler;
   private Scheduler workerScheduler;
+  private final SharedStreamingWorkers sharedStreamingWorkers;
+  private boolean virtualThreadWorkers;
+  private ExecutorService workerPool;
   private SchedulerService schedulerService;
   private final SchedulerConfig schedulersConfig;
   protected AsyncHttpClient asyncHttpClient;
   private SSLContext sslContext;
+  private RequesterMetrics metrics;
+  private CustomTimeoutThrottleRequestFilter throttleFilter;
 
   private final HttpResponseCreator httpResponseCreator = new HttpResponseCreator();
 
@@ -163,6 +182,15 @@ public class GrizzlyHttpClient implements HttpClient, InternalClient {
 
   public GrizzlyHttpClient(HttpClientConfiguration config, SchedulerService schedulerService, SchedulerConfig schedulersConfig,
                            FeatureFlaggingService featureFlaggingService) {
+    this(config, schedulerService, schedulersConfig, featureFlaggingService, null);
+  }
+
+  /**
+   * @param sharedStreamingWorkers the streaming workers shared with the other clients, or {@code null} for the client to have
+   *                               its own.
+   */
+  GrizzlyHttpClient(HttpClientConfiguration config, SchedulerService schedulerService, SchedulerConfig schedulersConfig,
+                    FeatureFlaggingService featureFlaggingService, SharedStreamingWorkers sharedStreamingWorkers) {
     this.tlsContextFactory = config.getTlsContextFactory();
     this.proxyConfig = config.getProxyConfig();
     this.clientSocketProperties = config.getClientSocketProperties();
@@ -179,8 +207,8 @@ public class GrizzlyHttpClient implements HttpClient, InternalClient {
     this.redirectUtils = new RedirectUtils(isStrict302Handling, PRESERVE_HEADER_CASE);
     this.headerPopulator = new RequestHeaderPopulator(usePersistentConnections);
 
-    this.nonBlockingStreamWriter = new NonBlockingStreamWriter();
     this.featureFlaggingService = featureFlaggingService;
+    this.sharedStreamingWorkers = sharedStreamingWorkers;
   }
 
   @Override
@@ -189,14 +217,23 @@ public class GrizzlyHttpClient implements HttpClient, InternalClient {
         .withDirectRunCpuLightWhenTargetBusy(true)
         .withMaxConcurrentTasks(DEFAULT_SELECTOR_THREAD_COUNT)
         .withName(name), DEFAULT_SELECTOR_THREAD_COUNT);
+    virtualThreadWorkers = streamingEnabled && useWorkersForStreaming && isVirtualThreadsEnabled();
     workerScheduler = getWorkerScheduler(schedulersConfig.withName(name + ".requester.workers"));
-
-    if (streamingEnabled && nonBlockingStreamWriter.isEnabled()) {
-      // Only use a dedicated thread to the stream writer if streaming is enabled.
-      // Also, only use it if the feature is enabled.
-      workerScheduler.submit(nonBlockingStreamWriter);
+    if (virtualThreadWorkers) {
+      // As many tasks as the scheduler they replace would run and queue
+      workerPool = newVirtualThreadPerTaskExecutor(name + ".requester.virtual.",
+                                                   getMaxStreamingWorkers() + getStreamingWorkersQueueSize());
+    } else if (usesSharedStreamingWorkers()) {
+      workerPool = sharedStreamingWorkers.register(name, getStreamingWorkersQueueSize());
+    } else {
+      workerPool = workerScheduler;
     }
 
+    // Pending writes are resumed in the workers only when the reader of their pipe frees some space.
+    nonBlockingStreamWriter = new NonBlockingStreamWriter(workerPool);
+
+    metrics = RequesterMetrics.isEnabled() ? new RequesterMetrics(name) : null;
+
     AsyncHttpClientConfig.Builder builder = new AsyncHttpClientConfig.Builder();
     builder.setAllowPoolingConnections(true);
     builder.setMaxRequestHeaders(MAX_CLIENT_REQUEST_HEADERS);
@@ -212,10 +249,29 @@ public class GrizzlyHttpClient implements HttpClient, InternalClient {
     asyncHttpClient = new AsyncHttpClient(new GrizzlyAsyncHttpProvider(config), config);
   }
 
+  private static boolean isVirtualThreadsEnabled() {
+    if (!getBoolean(VIRTUAL_THREADS_PROPERTY)) {
+      return false;
+    }
+    if (!isSupported()) {
+      LOGGER.warn("Property '{}' is set but virtual threads require Java 21 or later. Streaming workers use a scheduler.",
+                  VIRTUAL_THREADS_PROPERTY);
+      return false;
+    }
+    return true;
+  }
+
+  private boolean usesSharedStreamingWorkers() {
+    return streamingEnabled && useWorkersForStreaming && !virtualThreadWorkers && sharedStreamingWorkers != null;
+  }
+
+  /**
+   * @return the scheduler of the client. Unless the streaming workers are shared or virtual threads, it also runs the streaming
+   *         tasks.
+   */
   private Scheduler getWorkerScheduler(SchedulerConfig config) {
-    if (streamingEnabled && useWorkersForStreaming) {
-      // TODO MULE-19084: investigate how many schedulers/threads may be created here on complex apps with lots of
-      // requester-configs.
+    if (streamingEnabled && useWorkersForStreaming && !virtualThreadWorkers && sharedStreamingWorkers == null) {
+      // MULE-19084: each client with streaming has workers of its own, unless the shared ones or virtual threads are enabled.
       return schedulerService.customScheduler(config.withMaxConcurrentTasks(getMaxStreamingWorkers()),
                                               getStreamingWorkersQueueSize());
     } else {
@@ -313,9 +369,13 @@ public class GrizzlyHttpClient implements HttpClient, InternalClient {
     boolean tlsEnabled = tlsContextFactory != null;
     CompositeTransportCustomizer compositeTransportCustomizer = new CompositeTransportCustomizer();
     compositeTransportCustomizer
+        // The shared and virtual streaming workers only run the streaming tasks, the IO events go to the scheduler of the client
         .addTransportCustomizer(new IOStrategyTransportCustomizer(selectorScheduler, workerScheduler, streamingEnabled,
                                                                   DEFAULT_SELECTOR_THREAD_COUNT, tlsEnabled));
     compositeTransportCustomizer.addTransportCustomizer(new LoggerTransportCustomizer(name));
+    if (metrics != null) {
+      compositeTransportCustomizer.addTransportCustomizer(new RequesterMetricsTransportCustomizer(metrics));
+    }
 
     if (clientSocketProperties != null) {
       compositeTransportCustomizer.addTransportCustomizer(new SocketConfigTransportCustomizer(clientSocketProperties));
@@ -329,12 +389,27 @@ public class GrizzlyHttpClient implements HttpClient, InternalClient {
   }
 
   private void configureConnections(AsyncHttpClientConfig.Builder builder) {
-    if (maxConnections > 0) {
-      builder.addRequestFilter(new CustomTimeoutThrottleRequestFilter(maxConnections));
+    // Limiting each host only makes sense below the total limit
+    int maxConnectionsPerHost = getInteger(MAX_CONNECTIONS_PER_HOST_PROPERTY, -1);
+    if (maxConnectionsPerHost > 0 && maxConnections > 0 && maxConnectionsPerHost >= maxConnections) {
+      maxConnectionsPerHost = -1;
+    }
+
+    if (maxConnections > 0 || maxConnectionsPerHost > 0) {
+      Map<String, Integer> hostWeights = parseWeights(getProperty(HOST_WEIGHTS_PROPERTY), HOST_WEIGHTS_PROPERTY);
+      throttleFilter = new CustomTimeoutThrottleRequestFilter(maxConnections, maxConnectionsPerHost,
+                                                              getBoolean(WEIGHTED_FAIR_QUEUING_PROPERTY), hostWeights, metrics,
+                                                              workerScheduler);
+      builder.addRequestFilter(throttleFilter);
+    } else {
+      throttleFilter = null;
+    }
+    if (metrics != null) {
+      builder.addRequestFilter(new RequesterMetricsRequestFilter(metrics));
     }
 
     builder.setMaxConnections(maxConnections);
-    builder.setMaxConnectionsPerHost(maxConnections);
+    builder.setMaxConnectionsPerHost(maxConnectionsPerHost > 0 ? maxConnectionsPerHost : maxConnections);
 
     builder.setAllowPoolingConnections(usePersistentConnections);
     builder.setAllowPoolingSslConnections(usePersistentConnections);
@@ -348,7 +423,9 @@ public class GrizzlyHttpClient implements HttpClient, InternalClient {
   @Override
   public HttpResponse send(HttpRequest request, HttpRequestOptions options) throws IOException, TimeoutException {
     checkState(asyncHttpClient != null, "The client must be started before use.");
-    if (streamingEnabled) {
+    if (virtualThreadWorkers) {
+      return sendAsyncAndWait(request, options);
+    } else if (streamingEnabled) {
       return sendAndDefer(request, createGrizzlyRequest(request, options), options, 0);
     } else {
       return sendAndWait(request, createGrizzlyRequest(request, options), options, 0);
@@ -377,6 +454,7 @@ public class GrizzlyHttpClient implements HttpClient, InternalClient {
         if (currentRedirects >= MAX_REDIRECTS) {
           throw new IOException("Max redirects exceeded", new MaxRedirectException());
         }
+        redirectFollowed(request);
         HttpRequest redirectRequest = null;
         try {
           redirectRequest = redirectUtils.createRedirectRequest(httpResponse, request, options);
@@ -401,6 +479,36 @@ public class GrizzlyHttpClient implements HttpClient, InternalClient {
     }
   }
 
+  /**
+   * Blocking send which waits for the response of the non blocking one, propagated as soon as its headers are parsed.
+   * <p/>
+   * Unlike {@link #sendAndDefer}, the body is written to the pipe by the {@link NonBlockingStreamWriter}, so no transport thread
+   * blocks while the pipe is full, and the redirects and connection permits are handled without blocking either. Only the caller
+   * waits, which doesn't hold a platform thread when it runs in a virtual one.
+   */
+  private HttpResponse sendAsyncAndWait(HttpRequest request, HttpRequestOptions options) throws IOException, TimeoutException {
+    try {
+      return sendAsync(request, createGrizzlyRequest(request, options), options, new NoOpProgressiveBodyDataListener(), 0).get();
+    } catch (InterruptedException e) {
+      throw new IOException(e.getMessage(), e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null
+          ? e.getCause().getCause()
+          : e.getCause();
+      if (cause instanceof TimeoutException) {
+        throw (TimeoutException) cause;
+      } else if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof MaxRedirectException) {
+        throw new IOException("Max redirects exceeded", cause);
+      } else if (cause instanceof FilterException) {
+        throw new IOException(cause.getMessage(), cause);
+      } else {
+        throw new IOException(e.getMessage(), e);
+      }
+    }
+  }
+
   /**
    * Blocking send which waits to load the whole response to memory before propagating it.
    */
@@ -424,6 +532,7 @@ public class GrizzlyHttpClient implements HttpClient, InternalClient {
         if (currentRedirects >= MAX_REDIRECTS) {
           throw new IOException("Max redirects exceeded", new MaxRedirectException());
         }
+        redirectFollowed(request);
         HttpRequest redirectRequest = null;
         try {
           redirectRequest = redirectUtils.createRedirectRequest(httpResponse, request, options);
@@ -466,7 +575,7 @@ public class GrizzlyHttpClient implements HttpClient, InternalClient {
       if (streamingEnabled) {
         asyncHandler =
             new PreservingClassLoaderAsyncHandler<>(new ResponseBodyDeferringAsyncHandler(auxFuture, responseBufferSize,
-                                                                                          workerScheduler,
+                                                                                          workerPool,
                                                                                           nonBlockingStreamWriter,
                                                                                           dataListener));
       } else {
@@ -488,13 +597,27 @@ public class GrizzlyHttpClient implements HttpClient, InternalClient {
           future.completeExceptionally(exception);
         }
       });
-      asyncHttpClient.executeRequest(grizzlyRequest, asyncHandler);
+      if (throttleFilter != null) {
+        // Waits for a connection permit without blocking, the request is executed once there's one
+        throttleFilter.acquireAsync(grizzlyRequest, asyncHandler, handler -> executeAsync(grizzlyRequest, handler));
+      } else {
+        asyncHttpClient.executeRequest(grizzlyRequest, asyncHandler);
+      }
     } catch (Exception e) {
       future.completeExceptionally(e);
     }
     return future;
   }
 
+  private void executeAsync(Request grizzlyRequest, AsyncHandler<Response> asyncHandler) {
+    try {
+      asyncHttpClient.executeRequest(grizzlyRequest, asyncHandler);
+    } catch (Exception e) {
+      // Also releases the permit taken for the request
+      asyncHandler.onThrowable(e);
+    }
+  }
+
   /**
    * To execute after handling redirect.
    *
@@ -505,6 +628,12 @@ public class GrizzlyHttpClient implements HttpClient, InternalClient {
     // Nothing to do by default.
   }
 
+  private void redirectFollowed(HttpRequest request) {
+    if (metrics != null) {
+      metrics.hostMetrics(request.getUri()).redirectFollowed();
+    }
+  }
+
   private void handleRedirectAsync(HttpRequest request, HttpResponse response, HttpRequestOptions options,
                                    ProgressiveBodyDataListener dataListener,
                                    int currentRedirects, CompletableFuture<HttpResponse> future)
@@ -513,6 +642,7 @@ public class GrizzlyHttpClient implements HttpClient, InternalClient {
       future.completeExceptionally(new MaxRedirectException());
       return;
     }
+    redirectFollowed(request);
 
     HttpRequest redirectRequest = redirectUtils.createRedirectRequest(response, request, options);
     Request grizzlyRequest = createGrizzlyRedirectRequest(redirectRequest, response, options);
@@ -603,10 +733,24 @@ public class GrizzlyHttpClient implements HttpClient, InternalClient {
     return proxyConfig;
   }
 
+  /**
+   * @return the metrics of the requests sent by this client, or {@code null} if they are not enabled or the client is not
+   *         started.
+   */
+  public RequesterMetrics getMetrics() {
+    return metrics;
+  }
+
   @Override
   public void stop() {
+    if (throttleFilter != null) {
+      throttleFilter.abortWaiting();
+    }
     asyncHttpClient.close();
     nonBlockingStreamWriter.stop();
+    if (workerPool != workerScheduler) {
+      workerPool.shutdown();
+    }
     workerScheduler.stop();
     selectorScheduler.stop();
   }
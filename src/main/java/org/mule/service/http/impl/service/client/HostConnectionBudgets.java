@@ -0,0 +1,418 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.service.client;
+
+import static org.mule.runtime.api.i18n.I18nMessageFactory.createStaticMessage;
+import static org.mule.service.http.impl.service.client.RequesterMetrics.hostKey;
+
+import static java.lang.Integer.MAX_VALUE;
+import static java.lang.Integer.parseInt;
+import static java.lang.Math.min;
+import static java.lang.String.format;
+import static java.util.Collections.emptyMap;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import org.mule.runtime.api.exception.MuleRuntimeException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.ning.http.client.uri.Uri;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Connection permits of a client, limited both in total and for each target host (scheme, host and port), so that a slow host
+ * can't take every connection of the client and starve the requests to the other hosts.
+ * <p>
+ * Each host has its own queue of requests waiting for a permit. When a permit is released it's granted to the queue of a host
+ * that is under its own limit: by default, the one whose first request has been waiting the longest, so the order of the
+ * requests is kept across hosts as long as their limits allow it. With weighted fair queuing, it's granted instead to the host
+ * using the smallest share of its weight, so the connections are split among the busy hosts in proportion to their weights.
+ * <p>
+ * Permits can also be acquired asynchronously: instead of blocking the caller, the request is parked in the queue of its host and
+ * dispatched by the thread that releases the permit it's granted.
+ */
+class HostConnectionBudgets {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(HostConnectionBudgets.class);
+
+  /**
+   * The key to use for every request when only the total connections are limited.
+   */
+  static final String ALL_HOSTS = "*";
+
+  private static final int DEFAULT_WEIGHT = 1;
+
+  private final int maxConnections;
+  private final int maxConnectionsPerHost;
+  private final boolean weightedFairQueuing;
+  private final Map<String, Integer> hostWeights;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Map<String, HostBudget> hosts = new HashMap<>();
+  // Only the hosts with requests waiting, so granting a permit doesn't go through every host
+  private final Set<HostBudget> waitingHosts = new LinkedHashSet<>();
+  private int inUse;
+  private long waitersSequence;
+
+  /**
+   * @param maxConnections        the connections allowed in total, or a negative value if unlimited.
+   * @param maxConnectionsPerHost the connections allowed for each host, or a negative value if unlimited.
+   * @param weightedFairQueuing   whether the permits are granted in proportion of the weights of the hosts instead of in order.
+   * @param hostWeights           the weights of the hosts, as {@code host:port}. Missing hosts have a weight of 1.
+   */
+  HostConnectionBudgets(int maxConnections, int maxConnectionsPerHost, boolean weightedFairQueuing,
+                        Map<String, Integer> hostWeights) {
+    this.maxConnections = maxConnections;
+    this.maxConnectionsPerHost = maxConnectionsPerHost;
+    this.weightedFairQueuing = weightedFairQueuing;
+    this.hostWeights = hostWeights != null ? hostWeights : emptyMap();
+  }
+
+  /**
+   * @return the key of the budget of the host a request is sent to.
+   */
+  static String budgetKey(Uri uri) {
+    return uri.getScheme().toLowerCase() + "://" + hostKey(uri.getScheme(), uri.getHost(), uri.getPort());
+  }
+
+  /**
+   * Parses weights, with the format {@code key=weight[,key=weight...]}, such as the weights of the hosts as
+   * {@code host:port=weight}.
+   */
+  static Map<String, Integer> parseWeights(String weightsValue, String propertyName) {
+    Map<String, Integer> weights = new HashMap<>();
+    if (weightsValue == null || weightsValue.trim().isEmpty()) {
+      return weights;
+    }
+    for (String keyWeight : weightsValue.split(",")) {
+      int separator = keyWeight.lastIndexOf('=');
+      try {
+        int weight = parseInt(keyWeight.substring(separator + 1).trim());
+        if (separator <= 0 || weight <= 0) {
+          throw new NumberFormatException();
+        }
+        weights.put(keyWeight.substring(0, separator).trim(), weight);
+      } catch (NumberFormatException e) {
+        throw new MuleRuntimeException(createStaticMessage(format("Invalid weight '%s' for '%s' configuration.",
+                                                                  keyWeight, propertyName)),
+                                       e);
+      }
+    }
+    return weights;
+  }
+
+  /**
+   * Takes a connection permit for the given host, waiting in its queue until one is available.
+   *
+   * @param key           the key of the host, from {@link #budgetKey(Uri)} or {@link #ALL_HOSTS}.
+   * @param timeoutMillis the maximum time to wait for the permit.
+   * @return {@code true} if the permit was taken, {@code false} if the timeout elapsed first.
+   * @throws InterruptedException if the thread is interrupted while waiting. No permit is taken in that case.
+   */
+  boolean acquire(String key, long timeoutMillis) throws InterruptedException {
+    List<Runnable> dispatches = new ArrayList<>(0);
+    lock.lock();
+    try {
+      HostBudget host = hosts.computeIfAbsent(key, HostBudget::new);
+      if (host.waiters.isEmpty() && canGrant(host)) {
+        grant(host);
+        return true;
+      }
+
+      SyncWaiter waiter = new SyncWaiter(waitersSequence++);
+      enqueue(host, waiter);
+      try {
+        long remainingNanos = MILLISECONDS.toNanos(timeoutMillis);
+        while (!waiter.granted && remainingNanos > 0) {
+          remainingNanos = waiter.condition.awaitNanos(remainingNanos);
+        }
+      } catch (InterruptedException e) {
+        if (waiter.granted) {
+          releasePermit(host, dispatches);
+        } else {
+          removeWaiter(host, waiter);
+        }
+        throw e;
+      }
+      if (!waiter.granted) {
+        removeWaiter(host, waiter);
+      }
+      return waiter.granted;
+    } finally {
+      lock.unlock();
+      dispatch(dispatches);
+    }
+  }
+
+  /**
+   * Takes a connection permit for the given host without blocking. If none is available, the request waits in the queue of the
+   * host until it's granted one, and {@code onGranted} is run by the thread that released it.
+   *
+   * @param key              the key of the host, from {@link #budgetKey(Uri)}.
+   * @param timeoutMillis    the maximum time to wait for the permit.
+   * @param timeoutScheduler the scheduler to time out the wait with.
+   * @param onGranted        run once the permit is taken, which may be right away in the calling thread.
+   * @param onTimeout        run by the {@code timeoutScheduler} if the timeout elapses first.
+   */
+  void acquireAsync(String key, long timeoutMillis, ScheduledExecutorService timeoutScheduler, Runnable onGranted,
+                    Runnable onTimeout) {
+    lock.lock();
+    try {
+      HostBudget host = hosts.computeIfAbsent(key, HostBudget::new);
+      if (!host.waiters.isEmpty() || !canGrant(host)) {
+        AsyncWaiter waiter = new AsyncWaiter(waitersSequence++, onGranted, onTimeout);
+        enqueue(host, waiter);
+        waiter.timeout = timeoutScheduler.schedule(() -> timeOut(host, waiter), timeoutMillis, MILLISECONDS);
+        return;
+      }
+      grant(host);
+    } finally {
+      lock.unlock();
+    }
+    onGranted.run();
+  }
+
+  private void timeOut(HostBudget host, AsyncWaiter waiter) {
+    lock.lock();
+    try {
+      if (waiter.granted || !host.waiters.contains(waiter)) {
+        return;
+      }
+      removeWaiter(host, waiter);
+    } finally {
+      lock.unlock();
+    }
+    waiter.onTimeout.run();
+  }
+
+  /**
+   * Returns a permit taken through {@link #acquire(String, long)} or
+   * {@link #acquireAsync(String, long, ScheduledExecutorService, Runnable, Runnable)}, granting it to a waiting request if there
+   * is one.
+   */
+  void release(String key) {
+    List<Runnable> dispatches = new ArrayList<>(0);
+    lock.lock();
+    try {
+      HostBudget host = hosts.get(key);
+      if (host != null) {
+        releasePermit(host, dispatches);
+      }
+    } finally {
+      lock.unlock();
+    }
+    dispatch(dispatches);
+  }
+
+  /**
+   * Fails the requests waiting asynchronously for a permit, running their {@code onTimeout} right away.
+   */
+  void abortWaiting() {
+    List<Runnable> aborts = new ArrayList<>();
+    lock.lock();
+    try {
+      for (HostBudget host : new ArrayList<>(waitingHosts)) {
+        for (Waiter waiter : new ArrayList<>(host.waiters)) {
+          if (waiter instanceof AsyncWaiter) {
+            AsyncWaiter asyncWaiter = (AsyncWaiter) waiter;
+            asyncWaiter.timeout.cancel(false);
+            removeWaiter(host, asyncWaiter);
+            aborts.add(asyncWaiter.onTimeout);
+          }
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+    dispatch(aborts);
+  }
+
+  private static void dispatch(List<Runnable> dispatches) {
+    for (Runnable dispatch : dispatches) {
+      try {
+        dispatch.run();
+      } catch (Throwable t) {
+        LOGGER.warn("Error dispatching a request that was waiting for a connection permit", t);
+      }
+    }
+  }
+
+  /**
+   * @return the permits available for the given host, without waiting.
+   */
+  int availablePermits(String key) {
+    lock.lock();
+    try {
+      HostBudget host = hosts.get(key);
+      int hostInUse = host != null ? host.inUse : 0;
+      int hostAvailable = maxConnectionsPerHost < 0 ? MAX_VALUE : maxConnectionsPerHost - hostInUse;
+      return maxConnections < 0 ? hostAvailable : min(hostAvailable, maxConnections - inUse);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the requests waiting for a permit of the given host.
+   */
+  int getQueuedCount(String key) {
+    lock.lock();
+    try {
+      HostBudget host = hosts.get(key);
+      return host != null ? host.waiters.size() : 0;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private boolean canGrant(HostBudget host) {
+    return (maxConnections < 0 || inUse < maxConnections)
+        && (maxConnectionsPerHost < 0 || host.inUse < maxConnectionsPerHost);
+  }
+
+  private void grant(HostBudget host) {
+    ++inUse;
+    ++host.inUse;
+  }
+
+  private void releasePermit(HostBudget host, List<Runnable> dispatches) {
+    --inUse;
+    --host.inUse;
+    grantWaiting(dispatches);
+    if (host.inUse == 0 && host.waiters.isEmpty()) {
+      hosts.remove(host.key);
+    }
+  }
+
+  /**
+   * Grants the free permits to the waiting requests of the hosts under their limits. The requests waiting asynchronously are
+   * added to {@code dispatches}, to be run once the lock is released.
+   */
+  private void grantWaiting(List<Runnable> dispatches) {
+    HostBudget next;
+    while ((next = nextWaitingHost()) != null) {
+      Waiter waiter = next.waiters.poll();
+      if (next.waiters.isEmpty()) {
+        waitingHosts.remove(next);
+      }
+      grant(next);
+      waiter.granted = true;
+      waiter.notifyGranted(dispatches);
+    }
+  }
+
+  private void enqueue(HostBudget host, Waiter waiter) {
+    host.waiters.add(waiter);
+    waitingHosts.add(host);
+  }
+
+  private HostBudget nextWaitingHost() {
+    HostBudget next = null;
+    for (HostBudget host : waitingHosts) {
+      if (canGrant(host) && (next == null || isBefore(host, next))) {
+        next = host;
+      }
+    }
+    return next;
+  }
+
+  private boolean isBefore(HostBudget host, HostBudget other) {
+    if (weightedFairQueuing) {
+      // Compares inUse / weight without dividing
+      long share = (long) host.inUse * other.weight;
+      long otherShare = (long) other.inUse * host.weight;
+      if (share != otherShare) {
+        return share < otherShare;
+      }
+    }
+    return host.waiters.peek().sequence < other.waiters.peek().sequence;
+  }
+
+  private void removeWaiter(HostBudget host, Waiter waiter) {
+    host.waiters.remove(waiter);
+    if (host.waiters.isEmpty()) {
+      waitingHosts.remove(host);
+      if (host.inUse == 0) {
+        hosts.remove(host.key);
+      }
+    }
+  }
+
+  private final class HostBudget {
+
+    private final String key;
+    private final int weight;
+    private final Deque<Waiter> waiters = new ArrayDeque<>();
+    private int inUse;
+
+    private HostBudget(String key) {
+      this.key = key;
+      int schemeEnd = key.indexOf("://");
+      this.weight = schemeEnd < 0 ? DEFAULT_WEIGHT : hostWeights.getOrDefault(key.substring(schemeEnd + 3), DEFAULT_WEIGHT);
+    }
+  }
+
+  private abstract static class Waiter {
+
+    private final long sequence;
+    private boolean granted;
+
+    private Waiter(long sequence) {
+      this.sequence = sequence;
+    }
+
+    /**
+     * Called with the lock held once the permit is granted to this waiter.
+     */
+    abstract void notifyGranted(List<Runnable> dispatches);
+  }
+
+  private final class SyncWaiter extends Waiter {
+
+    private final Condition condition = lock.newCondition();
+
+    private SyncWaiter(long sequence) {
+      super(sequence);
+    }
+
+    @Override
+    void notifyGranted(List<Runnable> dispatches) {
+      condition.signal();
+    }
+  }
+
+  private static final class AsyncWaiter extends Waiter {
+
+    private final Runnable onGranted;
+    private final Runnable onTimeout;
+    private ScheduledFuture<?> timeout;
+
+    private AsyncWaiter(long sequence, Runnable onGranted, Runnable onTimeout) {
+      super(sequence);
+      this.onGranted = onGranted;
+      this.onTimeout = onTimeout;
+    }
+
+    @Override
+    void notifyGranted(List<Runnable> dispatches) {
+      timeout.cancel(false);
+      dispatches.add(onGranted);
+    }
+  }
+}
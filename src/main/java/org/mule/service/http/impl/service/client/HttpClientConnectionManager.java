@@ -14,20 +14,43 @@ import org.mule.runtime.http.api.client.HttpClientConfiguration;
 
 /**
  * Manages client connections.
+ * <p>
+ * When enabled through the {@code mule.http.client.sharedStreamingWorkers} property, the clients with streaming run their
+ * streaming tasks in a single pool, each with its own cap and fair share of it.
+ * <p>
+ * When enabled through the {@code mule.http.client.shareIdenticalClients} property, the clients with equivalent configurations
+ * are handles to a single client, sharing its connection pool and TLS context.
  *
  * @since 1.3.0
  */
 public class HttpClientConnectionManager {
 
   protected final SchedulerService schedulerService;
+  private final SharedStreamingWorkers sharedStreamingWorkers;
+  private final SharedHttpClients sharedClients;
 
   public HttpClientConnectionManager(SchedulerService schedulerService) {
     this.schedulerService = schedulerService;
+    this.sharedStreamingWorkers = SharedStreamingWorkers.fromSystemProperties(schedulerService);
+    this.sharedClients = SharedHttpClients.isEnabled() ? new SharedHttpClients() : null;
   }
 
   public HttpClient create(HttpClientConfiguration config, SchedulerConfig schedulerConfig,
                            FeatureFlaggingService featureFlaggingService) {
-    return new GrizzlyHttpClient(config, schedulerService, schedulerConfig, featureFlaggingService);
+    if (sharedClients != null) {
+      // The shared client doesn't belong to the artifact of the handle that starts it, so it has schedulers of its own
+      return sharedClients.create(config, featureFlaggingService,
+                                  sharedConfig -> new GrizzlyHttpClient(sharedConfig, schedulerService, SchedulerConfig.config(),
+                                                                        featureFlaggingService, sharedStreamingWorkers));
+    }
+    return new GrizzlyHttpClient(config, schedulerService, schedulerConfig, featureFlaggingService, sharedStreamingWorkers);
+  }
+
+  /**
+   * @return the clients currently started and shared by equivalent configurations, or {@code 0} if they are not shared.
+   */
+  public int getSharedClientsCount() {
+    return sharedClients != null ? sharedClients.getSharedClientsCount() : 0;
   }
 
 }
@@ -40,7 +40,7 @@ public class LoggerTransportCustomizer implements TransportCustomizer {
         .addProbes(new HttpMessageLogger(REQUESTER, identifier, currentThread().getContextClassLoader()));
   }
 
-  private HttpCodecFilter findHttpCodecFilter(FilterChainBuilder filterChainBuilder) {
+  static HttpCodecFilter findHttpCodecFilter(FilterChainBuilder filterChainBuilder) {
     HttpCodecFilter httpCodecFilter = null;
     try {
       int i = 0;
@@ -10,7 +10,6 @@ import static java.lang.Boolean.parseBoolean;
 import static java.lang.Math.min;
 import static java.lang.System.getProperty;
 import static java.lang.Thread.currentThread;
-import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 import static org.slf4j.LoggerFactory.getLogger;
 import static org.slf4j.MDC.getCopyOfContextMap;
@@ -19,13 +18,12 @@ import org.mule.service.http.impl.service.util.ThreadContext;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
@@ -33,28 +31,28 @@ import org.slf4j.Logger;
 
 /**
  * Writes the data passed via the non-blocking method {@link #addDataToWrite(OutputStream, byte[], Supplier)} to the specified
- * stream, only if there is available space. If no space available, it saves a task to try later. When it tried to execute all the
- * pending writes, and it couldn't, then it sleeps a certain period passed via constructor (default is
- * {@link #DEFAULT_TIME_TO_SLEEP_WHEN_COULD_NOT_WRITE_MILLIS}). This is done to avoid an unnecessarily high CPU consumption.
+ * stream, only if there is available space. If there isn't enough space, the remaining data is parked as the pending write of
+ * that stream until its reader frees some space and calls {@link #notifyAvailableSpace(OutputStream)}, which resumes only that
+ * write in the {@link Executor} passed via constructor.
+ * <p>
+ * There is no thread dedicated to the writer: nothing is polled, and nothing sleeps waiting for space.
  */
-public class NonBlockingStreamWriter implements Runnable {
+public class NonBlockingStreamWriter {
 
   private static final Logger LOGGER = getLogger(NonBlockingStreamWriter.class);
-  private static final int DEFAULT_TIME_TO_SLEEP_WHEN_COULD_NOT_WRITE_MILLIS = 100;
 
-  private final AtomicBoolean isStopped = new AtomicBoolean(false);
-  private final BlockingQueue<InternalWriteTask> tasks = new LinkedBlockingQueue<>();
-  private final Object availableSpaceMonitor = new Object();
-  private final int timeToSleepWhenCouldNotWriteMillis;
+  private final ConcurrentMap<OutputStream, InternalWriteTask> pendingWrites = new ConcurrentHashMap<>();
+  private final Executor executor;
   private final boolean isEnabled;
+  private volatile boolean isStopped = false;
 
-  public NonBlockingStreamWriter(int timeToSleepWhenCouldNotWriteMillis, boolean isEnabled) {
-    this.timeToSleepWhenCouldNotWriteMillis = timeToSleepWhenCouldNotWriteMillis;
+  public NonBlockingStreamWriter(Executor executor, boolean isEnabled) {
+    this.executor = executor;
     this.isEnabled = isEnabled;
   }
 
-  public NonBlockingStreamWriter() {
-    this(DEFAULT_TIME_TO_SLEEP_WHEN_COULD_NOT_WRITE_MILLIS, getEnabledSwitchValue());
+  public NonBlockingStreamWriter(Executor executor) {
+    this(executor, getEnabledSwitchValue());
   }
 
   // Since 4.10.0, defaults to true.
@@ -69,8 +67,10 @@ public class NonBlockingStreamWriter implements Runnable {
 
   /**
    * Tries to write from <code>dataToWrite</code> to <code>destinationStream</code>, as many bytes as the
-   * <code>availableSpace</code> supplier says it's possible to write. If the supplier returns <code>0</code>, it schedules a task
-   * to try later.
+   * <code>availableSpace</code> supplier says it's possible to write. If the supplier returns <code>0</code>, the rest of the
+   * data is parked until {@link #notifyAvailableSpace(OutputStream)} is called for the same stream.
+   * <p>
+   * Only one write may be pending for a given stream at a time.
    *
    * @param destinationStream where the data has to be written.
    * @param dataToWrite       the data to write.
@@ -82,76 +82,73 @@ public class NonBlockingStreamWriter implements Runnable {
                                                 Supplier<Integer> availableSpace) {
 
     InternalWriteTask internalWriteTask = new InternalWriteTask(destinationStream, dataToWrite, availableSpace);
-    boolean couldCompleteSync = internalWriteTask.execute();
-    if (!couldCompleteSync) {
-      tasks.add(internalWriteTask);
-    }
+    writeOrPark(internalWriteTask);
     return internalWriteTask.getFuture();
   }
 
-  @Override
-  public void run() {
-    while (!isStopped.get()) {
-      try {
-        boolean couldWriteSomething = writeWhateverPossible();
-
-        if (!couldWriteSomething && !isStopped.get()) {
-          LOGGER.trace("Giving some time to the other threads to consume from pipes...");
-          synchronized (availableSpaceMonitor) {
-            availableSpaceMonitor.wait(timeToSleepWhenCouldNotWriteMillis);
-          }
-        }
-      } catch (InterruptedException e) {
-        if (!isStopped.get()) {
-          LOGGER.warn("Non blocking writer thread was interrupted before it was stopped. It will resume the execution", e);
-        }
-        currentThread().interrupt();
-      }
-    }
-  }
-
   /**
-   * Wake up the writer thread to avoid sleeping too much and cause degradations.
+   * Notifies that the reader of the given stream has freed some space, resuming its pending write, if any. The write is
+   * performed in the executor of this writer, never in the calling thread unless the executor rejects it.
+   *
+   * @param destinationStream the stream with available space.
    */
-  public void notifyAvailableSpace() {
-    synchronized (availableSpaceMonitor) {
-      availableSpaceMonitor.notifyAll();
+  public void notifyAvailableSpace(OutputStream destinationStream) {
+    InternalWriteTask task = pendingWrites.remove(destinationStream);
+    if (task == null) {
+      return;
+    }
+
+    try {
+      executor.execute(() -> writeOrPark(task));
+    } catch (RejectedExecutionException e) {
+      LOGGER.debug("Couldn't schedule pending write (id: {}), executing it synchronously", task.id);
+      writeOrPark(task);
     }
   }
 
   /**
-   * Signals the writer to stop writing. It can also be stopped by interrupting the thread where it's running.
+   * Signals the writer to stop writing, failing all the pending writes.
    */
   public void stop() {
-    isStopped.set(true);
+    isStopped = true;
+    pendingWrites.keySet().forEach(destinationStream -> {
+      InternalWriteTask task = pendingWrites.remove(destinationStream);
+      if (task != null) {
+        task.fail(new IOException("Non blocking writer was stopped before the data could be written"));
+      }
+    });
   }
 
   /**
-   * Iterates all the pending write tasks and executes them.
-   *
-   * @return <code>true</code> if it could write at least one byte, or <code>false</code> otherwise.
-   * @throws InterruptedException if the thread was interrupted.
+   * Writes as much as possible of the task, parking it as the pending write of its stream if it can't be completed.
    */
-  private boolean writeWhateverPossible() throws InterruptedException {
-    List<InternalWriteTask> tasksWithPendingData = new ArrayList<>(tasks.size());
-    boolean couldWriteSomething = false;
-
-    InternalWriteTask task = tasks.poll(100, MILLISECONDS);
-    while (null != task) {
-      int remainingBeforeExecute = task.remaining();
-      boolean couldComplete = task.execute();
-      int remainingAfterExecute = task.remaining();
-      if (!couldComplete) {
-        tasksWithPendingData.add(task);
+  private void writeOrPark(InternalWriteTask task) {
+    while (!task.execute()) {
+      if (isStopped) {
+        task.fail(new IOException("Non blocking writer was stopped before the data could be written"));
+        return;
       }
-      if (remainingAfterExecute < remainingBeforeExecute) {
-        couldWriteSomething = true;
+
+      InternalWriteTask previous = pendingWrites.putIfAbsent(task.destinationStream, task);
+      if (previous != null) {
+        task.fail(new IllegalStateException("There is already a pending write for the destination stream"));
+        return;
+      }
+
+      // The writer may have been stopped after the check above, and its sweep may have missed this task
+      if (isStopped) {
+        if (pendingWrites.remove(task.destinationStream, task)) {
+          task.fail(new IOException("Non blocking writer was stopped before the data could be written"));
+        }
+        return;
       }
-      task = tasks.poll();
-    }
 
-    tasks.addAll(tasksWithPendingData);
-    return couldWriteSomething;
+      // The reader may have freed space before the task was parked, in which case it wouldn't be resumed
+      if (!task.hasAvailableSpace() || !pendingWrites.remove(task.destinationStream, task)) {
+        LOGGER.trace("Parked pending write (id: {})", task.id);
+        return;
+      }
+    }
   }
 
   private static final class InternalWriteTask {
@@ -182,10 +179,14 @@ public class NonBlockingStreamWriter implements Runnable {
       this.callerTCCL = currentThread().getContextClassLoader();
     }
 
-    public int remaining() {
-      return totalBytesToWrite - alreadyWritten;
+    public boolean hasAvailableSpace() {
+      return availableSpace.get() != 0;
     }
 
+    /**
+     * @return <code>true</code> if the task is done, either because all the data was written or because of an error, or
+     *         <code>false</code> if there is no more space to write the remaining data.
+     */
     public boolean execute() {
       try (ThreadContext ignored = new ThreadContext(callerTCCL, callerMDC)) {
         int remainingBytes = totalBytesToWrite - alreadyWritten;
@@ -222,6 +223,12 @@ public class NonBlockingStreamWriter implements Runnable {
       }
     }
 
+    public void fail(Throwable error) {
+      try (ThreadContext ignored = new ThreadContext(callerTCCL, callerMDC)) {
+        toCompleteWhenAllDataIsWritten.completeExceptionally(error);
+      }
+    }
+
     public CompletableFuture<Void> getFuture() {
       return toCompleteWhenAllDataIsWritten;
     }
@@ -0,0 +1,361 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.service.client;
+
+import static org.mule.runtime.api.util.MuleSystemProperties.SYSTEM_PROPERTY_PREFIX;
+
+import static java.lang.Boolean.getBoolean;
+import static java.lang.Integer.getInteger;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Collections.unmodifiableSet;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import org.mule.service.http.impl.util.LatencyHistogram;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.ning.http.client.uri.Uri;
+
+/**
+ * Metrics of the requests sent by an {@link GrizzlyHttpClient}, polled through its getters, broken down by target host.
+ * <p>
+ * They are recorded by the request filters of the client (the permit wait in the {@link CustomTimeoutThrottleRequestFilter}, and
+ * the response times in a wrapper of the {@link com.ning.http.client.AsyncHandler} of each request), and by probes in its
+ * transport for the connections, TLS handshakes and bytes. Nothing is installed unless enabled through
+ * {@link #ENABLED_PROPERTY}.
+ * <p>
+ * The metrics of the connections are attributed to the host they are connected to, which is the proxy when one is used.
+ * <p>
+ * Up to {@link #MAX_HOSTS_PROPERTY} hosts are tracked separately, and the rest are aggregated into
+ * {@link #getOtherHostsMetrics()}, so that a client sending requests to many hosts doesn't retain an entry for each of them.
+ *
+ * @since 1.12
+ */
+public final class RequesterMetrics {
+
+  public static final String ENABLED_PROPERTY = SYSTEM_PROPERTY_PREFIX + "http.client.metrics.enabled";
+  public static final String MAX_HOSTS_PROPERTY = SYSTEM_PROPERTY_PREFIX + "http.client.metrics.maxHosts";
+
+  private static final int DEFAULT_MAX_HOSTS = 256;
+
+  private final String clientName;
+  private final int maxHosts;
+  private final ConcurrentMap<String, HostMetrics> hosts = new ConcurrentHashMap<>();
+  private final AtomicInteger hostsCount = new AtomicInteger();
+  private final HostMetrics otherHosts = new HostMetrics();
+
+  private final LongAdder openedConnections = new LongAdder();
+  private final LongAdder closedConnections = new LongAdder();
+  private final LongAdder activeRequests = new LongAdder();
+
+  public RequesterMetrics(String clientName) {
+    this(clientName, getInteger(MAX_HOSTS_PROPERTY, DEFAULT_MAX_HOSTS));
+  }
+
+  RequesterMetrics(String clientName, int maxHosts) {
+    this.clientName = clientName;
+    this.maxHosts = maxHosts;
+  }
+
+  /**
+   * @return whether the metrics of the clients have to be recorded.
+   */
+  public static boolean isEnabled() {
+    return getBoolean(ENABLED_PROPERTY);
+  }
+
+  /**
+   * @return the name of the client these metrics are of.
+   */
+  public String getClientName() {
+    return clientName;
+  }
+
+  /**
+   * @return the hosts requests were sent to, as {@code host:port}, up to {@link #MAX_HOSTS_PROPERTY}.
+   */
+  public Set<String> getHosts() {
+    return unmodifiableSet(hosts.keySet());
+  }
+
+  /**
+   * @param host the host requests were sent to, as {@code host:port}.
+   * @return the metrics of the requests sent to the host, or {@code null} if none was sent or the host is aggregated into
+   *         {@link #getOtherHostsMetrics()}.
+   */
+  public HostMetrics getHostMetrics(String host) {
+    return hosts.get(host);
+  }
+
+  /**
+   * @return the metrics of the requests sent to the hosts found once {@link #MAX_HOSTS_PROPERTY} hosts were already tracked.
+   */
+  public HostMetrics getOtherHostsMetrics() {
+    return otherHosts;
+  }
+
+  HostMetrics hostMetrics(Uri uri) {
+    return hostMetrics(hostKey(uri.getScheme(), uri.getHost(), uri.getPort()));
+  }
+
+  HostMetrics hostMetrics(URI uri) {
+    return hostMetrics(hostKey(uri.getScheme(), uri.getHost(), uri.getPort()));
+  }
+
+  HostMetrics hostMetrics(InetSocketAddress address) {
+    return hostMetrics(address.getHostString() + ":" + address.getPort());
+  }
+
+  private HostMetrics hostMetrics(String host) {
+    HostMetrics hostMetrics = hosts.get(host);
+    if (hostMetrics == null) {
+      hostMetrics = hosts.computeIfAbsent(host, h -> hostsCount.getAndUpdate(count -> min(count + 1, maxHosts)) < maxHosts
+          ? new HostMetrics()
+          : null);
+    }
+    return hostMetrics != null ? hostMetrics : otherHosts;
+  }
+
+  static String hostKey(String scheme, String host, int port) {
+    if (port < 0) {
+      port = "https".equalsIgnoreCase(scheme) || "wss".equalsIgnoreCase(scheme) ? 443 : 80;
+    }
+    return host + ":" + port;
+  }
+
+  void connectionOpened() {
+    openedConnections.increment();
+  }
+
+  void connectionClosed() {
+    closedConnections.increment();
+  }
+
+  void requestStarted() {
+    activeRequests.increment();
+  }
+
+  void requestFinished() {
+    activeRequests.decrement();
+  }
+
+  /**
+   * @return the amount of connections currently open, either in use or idle in the pool.
+   */
+  public long getOpenConnectionsCount() {
+    return max(0, openedConnections.sum() - closedConnections.sum());
+  }
+
+  /**
+   * @return the amount of open connections currently carrying a request.
+   */
+  public long getActiveConnectionsCount() {
+    return min(max(0, activeRequests.sum()), getOpenConnectionsCount());
+  }
+
+  /**
+   * @return the amount of open connections idle in the pool.
+   */
+  public long getIdleConnectionsCount() {
+    return getOpenConnectionsCount() - getActiveConnectionsCount();
+  }
+
+  /**
+   * @return the amount of requests being sent or waiting for their response.
+   */
+  public long getActiveRequestsCount() {
+    return activeRequests.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "RequesterMetrics{clientName=" + clientName + ", openConnections=" + getOpenConnectionsCount()
+        + ", activeConnections=" + getActiveConnectionsCount() + ", hosts=" + hosts + ", otherHosts=" + otherHosts + "}";
+  }
+
+  /**
+   * Metrics of the requests sent to a host.
+   */
+  public static final class HostMetrics {
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder permitTimeouts = new LongAdder();
+    private final LongAdder redirects = new LongAdder();
+    private final LongAdder sentBytes = new LongAdder();
+    private final LongAdder receivedBytes = new LongAdder();
+    private final LongAdder receivedBodyBytes = new LongAdder();
+    private final LongAdder bodyTransferNanos = new LongAdder();
+    private final LatencyHistogram permitWait = new LatencyHistogram();
+    private final LatencyHistogram connect = new LatencyHistogram();
+    private final LatencyHistogram tlsHandshake = new LatencyHistogram();
+    private final LatencyHistogram timeToFirstByte = new LatencyHistogram();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private HostMetrics() {}
+
+    void permitAcquired(long waitNanos) {
+      permitWait.record(NANOSECONDS.toMicros(waitNanos));
+    }
+
+    void permitTimedOut() {
+      permitTimeouts.increment();
+    }
+
+    void connected(long connectNanos) {
+      connect.record(NANOSECONDS.toMicros(connectNanos));
+    }
+
+    void tlsHandshakeCompleted(long handshakeNanos) {
+      tlsHandshake.record(NANOSECONDS.toMicros(handshakeNanos));
+    }
+
+    void firstByteReceived(long timeToFirstByteNanos) {
+      timeToFirstByte.record(NANOSECONDS.toMicros(timeToFirstByteNanos));
+    }
+
+    void bodyPartReceived(int bytes) {
+      receivedBodyBytes.add(bytes);
+    }
+
+    void completed(long latencyNanos, long bodyNanos) {
+      requests.increment();
+      latency.record(NANOSECONDS.toMicros(latencyNanos));
+      bodyTransferNanos.add(bodyNanos);
+    }
+
+    void failed(boolean timeout) {
+      requests.increment();
+      if (timeout) {
+        timeouts.increment();
+      } else {
+        failures.increment();
+      }
+    }
+
+    void redirectFollowed() {
+      redirects.increment();
+    }
+
+    void bytesSent(int bytes) {
+      sentBytes.add(bytes);
+    }
+
+    void bytesReceived(int bytes) {
+      receivedBytes.add(bytes);
+    }
+
+    /**
+     * @return the amount of requests finished, either successfully or not.
+     */
+    public long getRequestsCount() {
+      return requests.sum();
+    }
+
+    /**
+     * @return the amount of requests failed for reasons other than a timeout.
+     */
+    public long getFailuresCount() {
+      return failures.sum();
+    }
+
+    /**
+     * @return the amount of requests that timed out waiting for their response.
+     */
+    public long getTimeoutsCount() {
+      return timeouts.sum();
+    }
+
+    /**
+     * @return the amount of requests rejected because no connection was available in time.
+     */
+    public long getPermitTimeoutsCount() {
+      return permitTimeouts.sum();
+    }
+
+    /**
+     * @return the amount of redirects followed from responses of this host.
+     */
+    public long getRedirectsCount() {
+      return redirects.sum();
+    }
+
+    /**
+     * @return the HTTP bytes sent, before encryption.
+     */
+    public long getSentBytes() {
+      return sentBytes.sum();
+    }
+
+    /**
+     * @return the HTTP bytes received, after decryption.
+     */
+    public long getReceivedBytes() {
+      return receivedBytes.sum();
+    }
+
+    /**
+     * @return the average rate the bodies of the responses were received at, in bytes per second, from their first byte until
+     *         their last.
+     */
+    public long getBodyThroughput() {
+      long nanos = bodyTransferNanos.sum();
+      return nanos == 0 ? 0 : receivedBodyBytes.sum() * SECONDS.toNanos(1) / nanos;
+    }
+
+    /**
+     * @return the time the requests waited for a connection permit, when the client limits its connections.
+     */
+    public LatencyHistogram getPermitWait() {
+      return permitWait;
+    }
+
+    /**
+     * @return the time from the start of the requests that opened a new connection until it was connected, including the name
+     *         resolution.
+     */
+    public LatencyHistogram getConnect() {
+      return connect;
+    }
+
+    /**
+     * @return the time the TLS handshakes of the new connections took.
+     */
+    public LatencyHistogram getTlsHandshake() {
+      return tlsHandshake;
+    }
+
+    /**
+     * @return the time from the start of the requests until the status line of their responses was received.
+     */
+    public LatencyHistogram getTimeToFirstByte() {
+      return timeToFirstByte;
+    }
+
+    /**
+     * @return the time from the start of the requests until their responses were completely received.
+     */
+    public LatencyHistogram getLatency() {
+      return latency;
+    }
+
+    @Override
+    public String toString() {
+      return "HostMetrics{requests=" + getRequestsCount() + ", failures=" + getFailuresCount() + ", timeouts="
+          + getTimeoutsCount() + ", timeToFirstByte=" + timeToFirstByte + ", latency=" + latency + "}";
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.service.client;
+
+import static org.mule.service.http.impl.service.client.RequesterMetricsTransportCustomizer.connectionMetrics;
+
+import static java.lang.System.nanoTime;
+
+import org.mule.service.http.impl.service.client.RequesterMetrics.HostMetrics;
+import org.mule.service.http.impl.service.client.RequesterMetricsTransportCustomizer.ConnectionMetrics;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.ning.http.client.AsyncHandler;
+import com.ning.http.client.HttpResponseBodyPart;
+import com.ning.http.client.HttpResponseHeaders;
+import com.ning.http.client.HttpResponseStatus;
+import com.ning.http.client.providers.grizzly.GrizzlyResponseHeaders;
+import org.glassfish.grizzly.http.HttpResponsePacket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link AsyncHandler} wrapper that records the timings of a request in the {@link RequesterMetrics} of its client.
+ *
+ * @param <T> the type of the result of the delegate handler.
+ */
+class RequesterMetricsAsyncHandler<T> implements AsyncHandler<T> {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(RequesterMetricsAsyncHandler.class);
+
+  private static Field responseField;
+
+  static {
+    try {
+      responseField = GrizzlyResponseHeaders.class.getDeclaredField("response");
+      responseField.setAccessible(true);
+    } catch (Throwable e) {
+      LOGGER.debug("Unable to use reflection to access the connection of the responses, connect times won't be recorded.", e);
+    }
+  }
+
+  private final AsyncHandler<T> delegate;
+  private final RequesterMetrics metrics;
+  private final HostMetrics hostMetrics;
+  private final long startNanos = nanoTime();
+  private volatile long firstByteNanos;
+  private final AtomicBoolean finished = new AtomicBoolean(false);
+
+  RequesterMetricsAsyncHandler(AsyncHandler<T> delegate, RequesterMetrics metrics, HostMetrics hostMetrics) {
+    this.delegate = delegate;
+    this.metrics = metrics;
+    this.hostMetrics = hostMetrics;
+    metrics.requestStarted();
+  }
+
+  @Override
+  public STATE onStatusReceived(HttpResponseStatus responseStatus) throws Exception {
+    firstByteNanos = nanoTime();
+    hostMetrics.firstByteReceived(firstByteNanos - startNanos);
+    return delegate.onStatusReceived(responseStatus);
+  }
+
+  @Override
+  public STATE onHeadersReceived(HttpResponseHeaders headers) throws Exception {
+    recordConnect(headers);
+    return delegate.onHeadersReceived(headers);
+  }
+
+  /**
+   * The first request sent through a connection is the one it was opened for, so its connect time is attributed to it.
+   */
+  private void recordConnect(HttpResponseHeaders headers) {
+    if (responseField == null || !(headers instanceof GrizzlyResponseHeaders)) {
+      return;
+    }
+    try {
+      ConnectionMetrics connectionMetrics =
+          connectionMetrics(((HttpResponsePacket) responseField.get(headers)).getRequest().getConnection());
+      if (connectionMetrics != null && connectionMetrics.firstUse() && connectionMetrics.getConnectedNanos() >= startNanos) {
+        connectionMetrics.getHostMetrics().connected(connectionMetrics.getConnectedNanos() - startNanos);
+      }
+    } catch (IllegalAccessException e) {
+      LOGGER.debug("Unable to access the connection of the response", e);
+    }
+  }
+
+  @Override
+  public STATE onBodyPartReceived(HttpResponseBodyPart bodyPart) throws Exception {
+    hostMetrics.bodyPartReceived(bodyPart.length());
+    return delegate.onBodyPartReceived(bodyPart);
+  }
+
+  @Override
+  public T onCompleted() throws Exception {
+    try {
+      return delegate.onCompleted();
+    } finally {
+      if (finished.compareAndSet(false, true)) {
+        long now = nanoTime();
+        hostMetrics.completed(now - startNanos, firstByteNanos == 0 ? 0 : now - firstByteNanos);
+        metrics.requestFinished();
+      }
+    }
+  }
+
+  @Override
+  public void onThrowable(Throwable t) {
+    try {
+      delegate.onThrowable(t);
+    } finally {
+      if (finished.compareAndSet(false, true)) {
+        hostMetrics.failed(t instanceof TimeoutException);
+        metrics.requestFinished();
+      }
+    }
+  }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.service.client;
+
+import com.ning.http.client.filter.FilterContext;
+import com.ning.http.client.filter.RequestFilter;
+
+/**
+ * A {@link RequestFilter} that wraps the handler of each request with a {@link RequesterMetricsAsyncHandler}. It must be added
+ * after the {@link CustomTimeoutThrottleRequestFilter}, so the time waiting for a permit isn't counted as part of the latency.
+ */
+class RequesterMetricsRequestFilter implements RequestFilter {
+
+  private final RequesterMetrics metrics;
+
+  RequesterMetricsRequestFilter(RequesterMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  @Override
+  public FilterContext filter(FilterContext ctx) {
+    return new FilterContext.FilterContextBuilder(ctx)
+        .asyncHandler(new RequesterMetricsAsyncHandler<>(ctx.getAsyncHandler(), metrics,
+                                                         metrics.hostMetrics(ctx.getRequest().getUri())))
+        .build();
+  }
+}
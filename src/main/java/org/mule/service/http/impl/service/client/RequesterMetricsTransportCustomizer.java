@@ -0,0 +1,150 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.service.client;
+
+import static org.mule.service.http.impl.service.client.LoggerTransportCustomizer.findHttpCodecFilter;
+
+import static java.lang.System.nanoTime;
+
+import org.mule.service.http.impl.service.client.RequesterMetrics.HostMetrics;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.ning.http.client.providers.grizzly.TransportCustomizer;
+
+import org.glassfish.grizzly.Buffer;
+import org.glassfish.grizzly.Connection;
+import org.glassfish.grizzly.ConnectionProbe;
+import org.glassfish.grizzly.filterchain.FilterChainBuilder;
+import org.glassfish.grizzly.http.HttpProbe;
+import org.glassfish.grizzly.nio.transport.TCPNIOTransport;
+import org.glassfish.grizzly.ssl.SSLBaseFilter;
+import org.glassfish.grizzly.ssl.SSLBaseFilter.HandshakeListener;
+
+/**
+ * Adds the probes that record the connections, TLS handshakes and bytes of a client to its {@link RequesterMetrics}.
+ */
+class RequesterMetricsTransportCustomizer implements TransportCustomizer {
+
+  static final String CONNECTION_METRICS_ATTRIBUTE = "__REQUESTER_METRICS__";
+
+  private final RequesterMetrics metrics;
+
+  RequesterMetricsTransportCustomizer(RequesterMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  @Override
+  public void customize(TCPNIOTransport transport, FilterChainBuilder filterChainBuilder) {
+    transport.getConnectionMonitoringConfig().addProbes(new MetricsConnectionProbe());
+    findHttpCodecFilter(filterChainBuilder).getMonitoringConfig().addProbes(new MetricsHttpProbe());
+
+    int sslFilterIndex = filterChainBuilder.indexOfType(SSLBaseFilter.class);
+    if (sslFilterIndex >= 0) {
+      ((SSLBaseFilter) filterChainBuilder.get(sslFilterIndex)).addHandshakeListener(new MetricsHandshakeListener());
+    }
+  }
+
+  /**
+   * @return the metrics of the given connection of a client with metrics enabled, or {@code null} if it has none.
+   */
+  static ConnectionMetrics connectionMetrics(Connection<?> connection) {
+    return (ConnectionMetrics) connection.getAttributes().getAttribute(CONNECTION_METRICS_ATTRIBUTE);
+  }
+
+  /**
+   * Metrics of a connection, attributed to the host it's connected to.
+   */
+  static final class ConnectionMetrics {
+
+    private final HostMetrics hostMetrics;
+    private final long connectedNanos = nanoTime();
+    private final AtomicBoolean used = new AtomicBoolean(false);
+    private volatile long handshakeStartNanos;
+
+    private ConnectionMetrics(HostMetrics hostMetrics) {
+      this.hostMetrics = hostMetrics;
+    }
+
+    HostMetrics getHostMetrics() {
+      return hostMetrics;
+    }
+
+    long getConnectedNanos() {
+      return connectedNanos;
+    }
+
+    /**
+     * @return whether this is the first time the connection is used by a request.
+     */
+    boolean firstUse() {
+      return used.compareAndSet(false, true);
+    }
+  }
+
+  private class MetricsConnectionProbe extends ConnectionProbe.Adapter {
+
+    @Override
+    public void onConnectEvent(Connection connection) {
+      connection.getAttributes()
+          .setAttribute(CONNECTION_METRICS_ATTRIBUTE,
+                        new ConnectionMetrics(metrics.hostMetrics((InetSocketAddress) connection.getPeerAddress())));
+      metrics.connectionOpened();
+    }
+
+    @Override
+    public void onCloseEvent(Connection connection) {
+      if (connectionMetrics(connection) != null) {
+        metrics.connectionClosed();
+      }
+    }
+  }
+
+  private static class MetricsHttpProbe extends HttpProbe.Adapter {
+
+    @Override
+    public void onDataSentEvent(Connection connection, Buffer buffer) {
+      ConnectionMetrics connectionMetrics = connectionMetrics(connection);
+      if (connectionMetrics != null) {
+        connectionMetrics.hostMetrics.bytesSent(buffer.remaining());
+      }
+    }
+
+    @Override
+    public void onDataReceivedEvent(Connection connection, Buffer buffer) {
+      ConnectionMetrics connectionMetrics = connectionMetrics(connection);
+      if (connectionMetrics != null) {
+        connectionMetrics.hostMetrics.bytesReceived(buffer.remaining());
+      }
+    }
+  }
+
+  private static class MetricsHandshakeListener implements HandshakeListener {
+
+    @Override
+    public void onStart(Connection connection) {
+      ConnectionMetrics connectionMetrics = connectionMetrics(connection);
+      if (connectionMetrics != null) {
+        connectionMetrics.handshakeStartNanos = nanoTime();
+      }
+    }
+
+    @Override
+    public void onComplete(Connection connection) {
+      ConnectionMetrics connectionMetrics = connectionMetrics(connection);
+      if (connectionMetrics != null && connectionMetrics.handshakeStartNanos != 0) {
+        connectionMetrics.hostMetrics.tlsHandshakeCompleted(nanoTime() - connectionMetrics.handshakeStartNanos);
+      }
+    }
+
+    // Not part of the listener in every Grizzly version, so it's not annotated as an override.
+    public void onFailure(Connection connection, Throwable t) {
+      // Only completed handshakes are recorded
+    }
+  }
+}
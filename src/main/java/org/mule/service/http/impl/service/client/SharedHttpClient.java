@@ -0,0 +1,170 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.service.client;
+
+import static org.mule.runtime.api.util.Preconditions.checkState;
+import static org.mule.runtime.http.api.sse.client.SseSource.READY_STATUS_CLOSED;
+import static org.mule.runtime.http.api.ws.WebSocketCloseCode.ENDPOINT_GOING_DOWN;
+
+import static java.util.concurrent.ConcurrentHashMap.newKeySet;
+
+import org.mule.runtime.http.api.client.HttpClient;
+import org.mule.runtime.http.api.client.HttpRequestOptions;
+import org.mule.runtime.http.api.client.ws.WebSocketCallback;
+import org.mule.runtime.http.api.domain.message.request.HttpRequest;
+import org.mule.runtime.http.api.domain.message.response.HttpResponse;
+import org.mule.runtime.http.api.sse.client.SseSource;
+import org.mule.runtime.http.api.sse.client.SseSourceConfig;
+import org.mule.runtime.http.api.ws.WebSocket;
+import org.mule.runtime.http.api.ws.WebSocketCloseCode;
+import org.mule.runtime.http.api.ws.WebSocketMessage;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Handle to a {@link GrizzlyHttpClient} shared through {@link SharedHttpClients}. Starting it takes a reference to the shared
+ * client, and stopping it releases that reference, so the shared client keeps working for the other handles.
+ * <p>
+ * Since the shared client isn't stopped along with the handle, the WebSockets and SSE sources opened through the handle are
+ * tracked and closed by the handle itself when it stops.
+ */
+class SharedHttpClient implements HttpClient {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SharedHttpClient.class);
+
+  private final SharedHttpClients sharedClients;
+  private final SharedHttpClients.Key key;
+  private final String name;
+  private final Supplier<GrizzlyHttpClient> clientFactory;
+  private final Set<WebSocket> webSockets = newKeySet();
+  private final Set<SseSource> sseSources = newKeySet();
+
+  private volatile GrizzlyHttpClient client;
+
+  SharedHttpClient(SharedHttpClients sharedClients, SharedHttpClients.Key key, String name,
+                   Supplier<GrizzlyHttpClient> clientFactory) {
+    this.sharedClients = sharedClients;
+    this.key = key;
+    this.name = name;
+    this.clientFactory = clientFactory;
+  }
+
+  @Override
+  public synchronized void start() {
+    if (client == null) {
+      client = sharedClients.retain(key, name, clientFactory);
+    }
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (client != null) {
+      client = null;
+      webSockets.forEach(this::close);
+      sseSources.forEach(this::close);
+      sharedClients.release(key);
+    }
+  }
+
+  private void close(WebSocket webSocket) {
+    if (webSockets.remove(webSocket)) {
+      webSocket.close(ENDPOINT_GOING_DOWN, "Client " + name + " stopped");
+    }
+  }
+
+  private void close(SseSource sseSource) {
+    if (sseSources.remove(sseSource)) {
+      try {
+        sseSource.close();
+      } catch (Exception e) {
+        LOGGER.warn("Client '{}' failed closing an SSE source while stopping", name, e);
+      }
+    }
+  }
+
+  private GrizzlyHttpClient client() {
+    GrizzlyHttpClient started = client;
+    checkState(started != null, "The client must be started before use.");
+    return started;
+  }
+
+  @Override
+  public HttpResponse send(HttpRequest request, HttpRequestOptions options) throws IOException, TimeoutException {
+    return client().send(request, options);
+  }
+
+  @Override
+  public CompletableFuture<HttpResponse> sendAsync(HttpRequest request, HttpRequestOptions options) {
+    return client().sendAsync(request, options);
+  }
+
+  @Override
+  public CompletableFuture<WebSocket> openWebSocket(HttpRequest request, HttpRequestOptions requestOptions, String socketId,
+                                                    WebSocketCallback callback) {
+    return client().openWebSocket(request, requestOptions, socketId, new TrackingWebSocketCallback(callback))
+        .thenApply(webSocket -> {
+          webSockets.add(webSocket);
+          // The handle may have been stopped while the WebSocket was being opened
+          if (client == null) {
+            close(webSocket);
+          }
+          return webSocket;
+        });
+  }
+
+  @Override
+  public SseSource sseSource(SseSourceConfig config) {
+    SseSource sseSource = client().sseSource(config);
+    // The sources don't notify when they are closed, so the closed ones are forgotten when a new one is created
+    sseSources.removeIf(source -> source.getReadyState() == READY_STATUS_CLOSED);
+    sseSources.add(sseSource);
+    if (client == null) {
+      close(sseSource);
+    }
+    return sseSource;
+  }
+
+  @Override
+  public String toString() {
+    return "SharedHttpClient{name=" + name + "}";
+  }
+
+  /**
+   * Stops tracking the WebSockets once they are closed.
+   */
+  private final class TrackingWebSocketCallback implements WebSocketCallback {
+
+    private final WebSocketCallback delegate;
+
+    private TrackingWebSocketCallback(WebSocketCallback delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void onConnect(WebSocket socket) {
+      delegate.onConnect(socket);
+    }
+
+    @Override
+    public void onClose(WebSocket socket, WebSocketCloseCode code, String reason) {
+      webSockets.remove(socket);
+      delegate.onClose(socket, code, reason);
+    }
+
+    @Override
+    public void onMessage(WebSocket socket, WebSocketMessage message) {
+      delegate.onMessage(socket, message);
+    }
+  }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.service.client;
+
+import static org.mule.runtime.api.config.MuleRuntimeFeature.NTLM_AVOID_SEND_PAYLOAD_ON_TYPE_1;
+import static org.mule.runtime.api.util.MuleSystemProperties.SYSTEM_PROPERTY_PREFIX;
+
+import static java.lang.Boolean.getBoolean;
+import static java.util.Arrays.asList;
+
+import org.mule.runtime.api.config.FeatureFlaggingService;
+import org.mule.runtime.http.api.client.HttpClientConfiguration;
+import org.mule.runtime.http.api.client.proxy.ProxyConfig;
+import org.mule.runtime.http.api.tcp.TcpClientSocketProperties;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shares a {@link GrizzlyHttpClient}, and so its connection pool, TLS context and kept alive sockets, among the clients created
+ * with equivalent configurations.
+ * <p>
+ * Each client created is a {@link SharedHttpClient} handle. The shared client is started when the first handle starts and stopped
+ * when the last one stops, so stopping a handle doesn't affect the others. The shared client doesn't belong to any of the
+ * handles: it has a name of its own, and its schedulers are created with a configuration owned by the service.
+ * <p>
+ * The handles share the connections of the client as well, so its {@link HttpClientConfiguration#getMaxConnections() maximum
+ * connections} bound all of them together, instead of each handle having that many. This is why only configurations with the
+ * same maximum are shared.
+ * <p>
+ * TLS contexts are compared with {@code equals}, which for most is their identity, so only clients using the same TLS context
+ * (for instance, one defined in a domain) share a client.
+ */
+class SharedHttpClients {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SharedHttpClients.class);
+
+  static final String SHARE_CLIENTS_PROPERTY = SYSTEM_PROPERTY_PREFIX + "http.client.shareIdenticalClients";
+
+  private static final String SHARED_CLIENT_NAME_PREFIX = "http.requester.shared.";
+
+  private final Map<Key, SharedClient> clients = new HashMap<>();
+  private final AtomicInteger sharedClientsCreated = new AtomicInteger();
+
+  /**
+   * @return whether clients with equivalent configurations have to be shared.
+   */
+  static boolean isEnabled() {
+    return getBoolean(SHARE_CLIENTS_PROPERTY);
+  }
+
+  /**
+   * @return the key that identifies the equivalent configurations of a client.
+   */
+  static Key keyOf(HttpClientConfiguration config, FeatureFlaggingService featureFlaggingService) {
+    return new Key(asList(config.getTlsContextFactory(),
+                          proxyKey(config.getProxyConfig()),
+                          socketKey(config.getClientSocketProperties()),
+                          config.getMaxConnections(),
+                          config.isUsePersistentConnections(),
+                          config.getConnectionIdleTimeout(),
+                          config.isStreaming(),
+                          config.getResponseBufferSize(),
+                          config.isDecompress(),
+                          featureFlaggingService.isEnabled(NTLM_AVOID_SEND_PAYLOAD_ON_TYPE_1)));
+  }
+
+  private static List<Object> proxyKey(ProxyConfig proxyConfig) {
+    if (proxyConfig == null) {
+      return null;
+    }
+    return asList(proxyConfig.getHost(), proxyConfig.getPort(), proxyConfig.getUsername(), proxyConfig.getPassword(),
+                  proxyConfig.getNonProxyHosts(),
+                  proxyConfig instanceof ProxyConfig.NtlmProxyConfig
+                      ? ((ProxyConfig.NtlmProxyConfig) proxyConfig).getNtlmDomain()
+                      : null);
+  }
+
+  private static List<Object> socketKey(TcpClientSocketProperties socketProperties) {
+    if (socketProperties == null) {
+      return null;
+    }
+    return asList(socketProperties.getConnectionTimeout(), socketProperties.getSendTcpNoDelay(),
+                  socketProperties.getKeepAlive(), socketProperties.getReceiveBufferSize(),
+                  socketProperties.getSendBufferSize(), socketProperties.getClientTimeout(), socketProperties.getLinger());
+  }
+
+  /**
+   * @param clientFactory creates the shared client from the configuration it must have, which is the given one with a name of
+   *                      its own.
+   * @return a handle to the client shared by the configurations equivalent to the given one.
+   */
+  SharedHttpClient create(HttpClientConfiguration config, FeatureFlaggingService featureFlaggingService,
+                          Function<HttpClientConfiguration, GrizzlyHttpClient> clientFactory) {
+    return new SharedHttpClient(this, keyOf(config, featureFlaggingService), config.getName(),
+                                () -> clientFactory.apply(sharedConfiguration(config)));
+  }
+
+  /**
+   * @return a copy of the values of the given configuration that are part of its {@link #keyOf key}, with a name that doesn't
+   *         belong to any handle.
+   */
+  private HttpClientConfiguration sharedConfiguration(HttpClientConfiguration config) {
+    HttpClientConfiguration.Builder builder = new HttpClientConfiguration.Builder()
+        .setName(SHARED_CLIENT_NAME_PREFIX + sharedClientsCreated.incrementAndGet())
+        .setTlsContextFactory(config.getTlsContextFactory())
+        .setProxyConfig(config.getProxyConfig())
+        .setClientSocketProperties(config.getClientSocketProperties())
+        .setMaxConnections(config.getMaxConnections())
+        .setUsePersistentConnections(config.isUsePersistentConnections())
+        .setConnectionIdleTimeout(config.getConnectionIdleTimeout())
+        .setStreaming(config.isStreaming())
+        .setResponseBufferSize(config.getResponseBufferSize());
+    if (config.isDecompress() != null) {
+      builder.setDecompress(config.isDecompress());
+    }
+    return builder.build();
+  }
+
+  /**
+   * Takes a reference to the shared client with the given key, starting it if it's the first one.
+   */
+  synchronized GrizzlyHttpClient retain(Key key, String handleName, Supplier<GrizzlyHttpClient> clientFactory) {
+    SharedClient shared = clients.get(key);
+    if (shared == null) {
+      shared = new SharedClient(clientFactory.get());
+      shared.client.start();
+      clients.put(key, shared);
+      LOGGER.debug("Client '{}' started shared client '{}'", handleName, shared.client.getName());
+    } else {
+      LOGGER.debug("Client '{}' shares client '{}'", handleName, shared.client.getName());
+    }
+    ++shared.references;
+    return shared.client;
+  }
+
+  /**
+   * Releases a reference to the shared client with the given key, stopping it if it was the last one.
+   */
+  synchronized void release(Key key) {
+    SharedClient shared = clients.get(key);
+    if (shared != null && --shared.references == 0) {
+      clients.remove(key);
+      shared.client.stop();
+    }
+  }
+
+  /**
+   * @return the amount of shared clients currently started.
+   */
+  synchronized int getSharedClientsCount() {
+    return clients.size();
+  }
+
+  /**
+   * The values of a configuration that make two clients equivalent.
+   */
+  static final class Key {
+
+    private final List<Object> values;
+
+    private Key(List<Object> values) {
+      this.values = values;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof Key && values.equals(((Key) obj).values);
+    }
+
+    @Override
+    public int hashCode() {
+      return values.hashCode();
+    }
+  }
+
+  private static final class SharedClient {
+
+    private final GrizzlyHttpClient client;
+    private int references;
+
+    private SharedClient(GrizzlyHttpClient client) {
+      this.client = client;
+    }
+  }
+}
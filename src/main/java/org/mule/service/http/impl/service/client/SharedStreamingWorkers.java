@@ -0,0 +1,318 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.service.client;
+
+import static org.mule.runtime.api.scheduler.SchedulerConfig.config;
+import static org.mule.runtime.api.util.MuleSystemProperties.SYSTEM_PROPERTY_PREFIX;
+import static org.mule.service.http.impl.service.client.HostConnectionBudgets.parseWeights;
+
+import static java.lang.Boolean.getBoolean;
+import static java.lang.Integer.getInteger;
+import static java.lang.Math.max;
+import static java.lang.Runtime.getRuntime;
+import static java.lang.System.getProperty;
+import static java.lang.System.nanoTime;
+import static java.util.Collections.emptyMap;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import org.mule.runtime.api.scheduler.Scheduler;
+import org.mule.runtime.api.scheduler.SchedulerService;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single pool of streaming workers shared by every client of the service, instead of each client with streaming enabled having
+ * its own (MULE-19084).
+ * <p>
+ * Each client gets its own executor, from {@link #register(String, int)}, with its own bounded queue of tasks, which rejects
+ * tasks once full like the workers of a client of its own would. The tasks of the clients are run in the shared pool without
+ * exceeding its size, so the total amount of threads stays bounded, and without exceeding the cap of each client, so a busy
+ * client can't take every worker. When a worker frees, it's given to the client with tasks queued that runs the fewest tasks
+ * for its weight.
+ * <p>
+ * Only the streaming tasks of the clients go through here. The IO events of their transports are run by their own schedulers,
+ * so they don't contend for the lock of the pool.
+ */
+class SharedStreamingWorkers {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SharedStreamingWorkers.class);
+
+  static final String SHARED_STREAMING_WORKERS_PROPERTY = SYSTEM_PROPERTY_PREFIX + "http.client.sharedStreamingWorkers";
+  static final String MAX_WORKERS_PROPERTY = SHARED_STREAMING_WORKERS_PROPERTY + ".max";
+  static final String MAX_WORKERS_PER_CLIENT_PROPERTY = SHARED_STREAMING_WORKERS_PROPERTY + ".maxPerClient";
+  static final String CLIENT_WEIGHTS_PROPERTY = SHARED_STREAMING_WORKERS_PROPERTY + ".weights";
+
+  private static final String SCHEDULER_NAME = "http.requester.sharedStreamingWorkers";
+  private static final int DEFAULT_WEIGHT = 1;
+
+  private final SchedulerService schedulerService;
+  private final int maxWorkers;
+  private final int maxWorkersPerClient;
+  private final Map<String, Integer> clientWeights;
+
+  private final Object lock = new Object();
+  // Only the clients with tasks queued, so dispatching doesn't go through every client
+  private final Set<ClientWorkers> waitingClients = new LinkedHashSet<>();
+  private Scheduler scheduler;
+  private int clients;
+  private int running;
+
+  SharedStreamingWorkers(SchedulerService schedulerService, int maxWorkers, int maxWorkersPerClient,
+                         Map<String, Integer> clientWeights) {
+    this.schedulerService = schedulerService;
+    this.maxWorkers = maxWorkers;
+    this.maxWorkersPerClient = maxWorkersPerClient;
+    this.clientWeights = clientWeights != null ? clientWeights : emptyMap();
+  }
+
+  /**
+   * @return the shared streaming workers configured through the system properties, or {@code null} if they are not enabled.
+   */
+  static SharedStreamingWorkers fromSystemProperties(SchedulerService schedulerService) {
+    if (!getBoolean(SHARED_STREAMING_WORKERS_PROPERTY)) {
+      return null;
+    }
+    int maxWorkers = getInteger(MAX_WORKERS_PROPERTY, max(getRuntime().availableProcessors(), 2) * 4);
+    return new SharedStreamingWorkers(schedulerService, maxWorkers,
+                                      getInteger(MAX_WORKERS_PER_CLIENT_PROPERTY, max(maxWorkers / 2, 1)),
+                                      parseWeights(getProperty(CLIENT_WEIGHTS_PROPERTY), CLIENT_WEIGHTS_PROPERTY));
+  }
+
+  /**
+   * Registers a client, starting the shared pool if it's the first one.
+   *
+   * @param clientName     the name of the client, to look up its weight.
+   * @param maxQueuedTasks the tasks of the client that may wait for a worker, after which its tasks are rejected.
+   * @return the executor for the client to run its streaming tasks in. Shutting it down unregisters the client.
+   */
+  ClientWorkers register(String clientName, int maxQueuedTasks) {
+    synchronized (lock) {
+      if (scheduler == null) {
+        // The workers are only handed to the scheduler when it has a free thread, but one may not be back in the pool yet
+        scheduler = schedulerService.customScheduler(config()
+            .withMaxConcurrentTasks(maxWorkers)
+            .withName(SCHEDULER_NAME), maxWorkers);
+      }
+      ++clients;
+      return new ClientWorkers(clientName, clientWeights.getOrDefault(clientName, DEFAULT_WEIGHT), maxQueuedTasks);
+    }
+  }
+
+  /**
+   * @return the tasks currently running in the shared pool.
+   */
+  int getRunningCount() {
+    synchronized (lock) {
+      return running;
+    }
+  }
+
+  private void unregister() {
+    Scheduler stopped = null;
+    synchronized (lock) {
+      if (--clients == 0) {
+        stopped = scheduler;
+        scheduler = null;
+      }
+    }
+    if (stopped != null) {
+      stopped.stop();
+    }
+  }
+
+  /**
+   * Hands the queued tasks to the shared pool while there are free workers.
+   */
+  private void dispatch() {
+    List<ClientTask> tasks = new ArrayList<>(0);
+    Scheduler target;
+    synchronized (lock) {
+      target = scheduler;
+      ClientWorkers next;
+      while (target != null && running < maxWorkers && (next = nextWaitingClient()) != null) {
+        Runnable task = next.queue.poll();
+        if (next.queue.isEmpty()) {
+          waitingClients.remove(next);
+        } else {
+          // Moved to the end, so clients with the same share take turns
+          waitingClients.remove(next);
+          waitingClients.add(next);
+        }
+        ++running;
+        ++next.running;
+        tasks.add(new ClientTask(next, task));
+      }
+    }
+    for (ClientTask task : tasks) {
+      try {
+        target.execute(task);
+      } catch (RejectedExecutionException e) {
+        // Dropping it would leave its stream waiting forever, so it's run by the caller instead
+        LOGGER.debug("Streaming task rejected by the shared workers, running it in the calling thread", e);
+        task.run();
+      }
+    }
+  }
+
+  private ClientWorkers nextWaitingClient() {
+    ClientWorkers next = null;
+    for (ClientWorkers client : waitingClients) {
+      if (client.running < maxWorkersPerClient && (next == null || isBefore(client, next))) {
+        next = client;
+      }
+    }
+    return next;
+  }
+
+  private static boolean isBefore(ClientWorkers client, ClientWorkers other) {
+    // Compares running / weight without dividing
+    return (long) client.running * other.weight < (long) other.running * client.weight;
+  }
+
+  /**
+   * A task of a client running in the shared pool.
+   */
+  private final class ClientTask implements Runnable {
+
+    private final ClientWorkers client;
+    private final Runnable task;
+
+    private ClientTask(ClientWorkers client, Runnable task) {
+      this.client = client;
+      this.task = task;
+    }
+
+    @Override
+    public void run() {
+      try {
+        task.run();
+      } finally {
+        finished();
+      }
+    }
+
+    private void finished() {
+      synchronized (lock) {
+        --running;
+        if (--client.running == 0 && client.shutdown) {
+          // Wakes up the threads awaiting the termination of the client
+          lock.notifyAll();
+        }
+      }
+      dispatch();
+    }
+  }
+
+  /**
+   * The streaming workers of a client in the shared pool.
+   */
+  final class ClientWorkers extends AbstractExecutorService {
+
+    private final String clientName;
+    private final int weight;
+    private final int maxQueuedTasks;
+    private final Deque<Runnable> queue = new ArrayDeque<>();
+    private int running;
+    private boolean shutdown;
+
+    private ClientWorkers(String clientName, int weight, int maxQueuedTasks) {
+      this.clientName = clientName;
+      this.weight = weight;
+      this.maxQueuedTasks = maxQueuedTasks;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+      synchronized (lock) {
+        if (shutdown) {
+          throw new RejectedExecutionException("Streaming workers of client '" + clientName + "' are shut down");
+        }
+        if (queue.size() >= maxQueuedTasks) {
+          throw new RejectedExecutionException("Queue of the streaming workers of client '" + clientName + "' is full ("
+              + maxQueuedTasks + " tasks)");
+        }
+        queue.add(command);
+        waitingClients.add(this);
+      }
+      dispatch();
+    }
+
+    /**
+     * @return the tasks of the client waiting for a worker.
+     */
+    int getQueuedCount() {
+      synchronized (lock) {
+        return queue.size();
+      }
+    }
+
+    /**
+     * Unregisters the client. Its tasks not running yet are discarded, as they would be stopping workers of its own.
+     */
+    @Override
+    public void shutdown() {
+      shutdownNow();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+      List<Runnable> pending;
+      synchronized (lock) {
+        if (shutdown) {
+          return new ArrayList<>(0);
+        }
+        shutdown = true;
+        pending = new ArrayList<>(queue);
+        queue.clear();
+        waitingClients.remove(this);
+      }
+      unregister();
+      return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+      synchronized (lock) {
+        return shutdown;
+      }
+    }
+
+    @Override
+    public boolean isTerminated() {
+      synchronized (lock) {
+        return shutdown && running == 0;
+      }
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+      long deadline = nanoTime() + unit.toNanos(timeout);
+      synchronized (lock) {
+        while (!(shutdown && running == 0)) {
+          long remainingNanos = deadline - nanoTime();
+          if (remainingNanos <= 0) {
+            return false;
+          }
+          NANOSECONDS.timedWait(lock, remainingNanos);
+        }
+        return true;
+      }
+    }
+  }
+}
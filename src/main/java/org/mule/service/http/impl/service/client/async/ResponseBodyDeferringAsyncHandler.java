@@ -11,6 +11,7 @@ import static org.mule.runtime.api.util.MuleSystemProperties.SYSTEM_PROPERTY_PRE
 import static org.mule.runtime.http.api.HttpHeaders.Names.CONTENT_LENGTH;
 import static org.mule.runtime.http.api.HttpHeaders.Names.TRANSFER_ENCODING;
 
+import static java.lang.Boolean.parseBoolean;
 import static java.lang.Integer.parseInt;
 import static java.lang.Long.parseLong;
 import static java.lang.Math.min;
@@ -29,6 +30,7 @@ import org.mule.service.http.common.client.sse.ProgressiveBodyDataListener;
 import org.mule.service.http.impl.service.client.HttpResponseCreator;
 import org.mule.service.http.impl.service.client.NonBlockingStreamWriter;
 import org.mule.service.http.impl.service.util.ThreadContext;
+import org.mule.service.http.impl.util.BufferPipedInputStream;
 import org.mule.service.http.impl.util.TimedPipedInputStream;
 import org.mule.service.http.impl.util.TimedPipedOutputStream;
 
@@ -77,6 +79,9 @@ public class ResponseBodyDeferringAsyncHandler implements AsyncHandler<Response>
   private static final String PIPE_READ_TIMEOUT_PROPERTY_NAME =
       SYSTEM_PROPERTY_PREFIX + "http.responseStreaming.pipeReadTimeoutMillis";
   private static long PIPE_READ_TIMEOUT_MILLIS = parseInt(getProperty(PIPE_READ_TIMEOUT_PROPERTY_NAME, "20000"));
+  // Hands the received body parts to the reader as they are, instead of copying them into a fixed size pipe.
+  private static final String BUFFER_PIPE_PROPERTY_NAME = SYSTEM_PROPERTY_PREFIX + "http.responseStreaming.bufferPipe";
+  private static boolean USE_BUFFER_PIPE = parseBoolean(getProperty(BUFFER_PIPE_PROPERTY_NAME, "false"));
   private static Field responseField;
 
   private volatile Response response;
@@ -86,6 +91,7 @@ public class ResponseBodyDeferringAsyncHandler implements AsyncHandler<Response>
   private final ExecutorService workerScheduler;
   private TimedPipedOutputStream output;
   private Optional<TimedPipedInputStream> input = empty();
+  private BufferPipedInputStream bufferPipe;
   private final CompletableFuture<HttpResponse> future;
   private final Response.ResponseBuilder responseBuilder = new Response.ResponseBuilder();
   private final HttpResponseCreator httpResponseCreator = new HttpResponseCreator();
@@ -155,6 +161,9 @@ public class ResponseBodyDeferringAsyncHandler implements AsyncHandler<Response>
   }
 
   private void cancelOut(Throwable t) throws IOException {
+    if (bufferPipe != null) {
+      bufferPipe.cancel(t);
+    }
     if (output != null) {
       try {
         output.flush();
@@ -250,7 +259,7 @@ public class ResponseBodyDeferringAsyncHandler implements AsyncHandler<Response>
       if (errorDetected()) {
         return closeAndAbort();
       }
-      if (!input.isPresent()) {
+      if (!isStreaming()) {
         if (bodyPart.isLast()) {
           // no need to stream response, we already have it all
           if (LOGGER.isDebugEnabled()) {
@@ -261,11 +270,13 @@ public class ResponseBodyDeferringAsyncHandler implements AsyncHandler<Response>
           dataListener.onDataAvailable(bodyPart.length());
           dataListener.onEndOfStream();
           return CONTINUE;
+        } else if (USE_BUFFER_PIPE) {
+          bufferPipe = new BufferPipedInputStream(bufferSize, PIPE_READ_TIMEOUT_MILLIS, MILLISECONDS);
         } else {
           output = new TimedPipedOutputStream();
           input = of(new TimedPipedInputStream(bufferSize, PIPE_READ_TIMEOUT_MILLIS, MILLISECONDS, output, () -> {
             if (null != nonBlockingStreamWriter) {
-              nonBlockingStreamWriter.notifyAvailableSpace();
+              nonBlockingStreamWriter.notifyAvailableSpace(output);
             }
           }));
         }
@@ -286,6 +297,9 @@ public class ResponseBodyDeferringAsyncHandler implements AsyncHandler<Response>
   }
 
   private STATE writeBodyPartToPipe(HttpResponseBodyPart bodyPart) throws IOException {
+    if (bufferPipe != null) {
+      return writeBodyPartToBufferPipe(bodyPart);
+    }
     int bodyLength = bodyPart.length();
     int spaceInPipe = availableSpaceInPipe();
     if (nonBlockingStreamWriter.isEnabled() && spaceInPipe >= 0 && spaceInPipe < bodyLength) {
@@ -307,9 +321,28 @@ public class ResponseBodyDeferringAsyncHandler implements AsyncHandler<Response>
     return CONTINUE;
   }
 
+  private STATE writeBodyPartToBufferPipe(HttpResponseBodyPart bodyPart) throws IOException {
+    bufferPipe.receive(bodyPart.getBodyByteBuffer());
+    dataListener.onDataAvailable(bodyPart.length());
+    if (bodyPart.isLast()) {
+      closeOut();
+      dataListener.onEndOfStream();
+    } else if (bufferPipe.availableSpace() == 0) {
+      // The pipe is full, so to avoid receiving more bodyParts temporarily, we have to pause the READ events until the reader
+      // frees some space.
+      final PauseHandler pauseHandler = bodyPart.getPauseHandler();
+      pauseHandler.requestPause();
+      if (!bufferPipe.awaitSpace(pauseHandler::resume)) {
+        pauseHandler.resume();
+      }
+    }
+    return CONTINUE;
+  }
+
   private BiConsumer<Void, Throwable> resumeCallback(final PauseHandler pauseHandler, HttpResponseBodyPart bodyPart) {
     return (ignored, error) -> {
-      if (error != null) {
+      // If the pipe was cancelled because of a previous error, it was already handled
+      if (error != null && throwableReceived.get() == null) {
         onThrowable(error);
       }
       try {
@@ -329,7 +362,7 @@ public class ResponseBodyDeferringAsyncHandler implements AsyncHandler<Response>
     if (!input.isPresent()) {
       return -1;
     }
-    if (input.get().isClosed()) {
+    if (input.get().isClosed() || throwableReceived.get() != null) {
       return -1;
     }
     return bufferSize - input.get().available();
@@ -340,6 +373,9 @@ public class ResponseBodyDeferringAsyncHandler implements AsyncHandler<Response>
   }
 
   protected void closeOut() throws IOException {
+    if (bufferPipe != null) {
+      bufferPipe.receivedLast();
+    }
     if (output != null) {
       try {
         output.flush();
@@ -390,7 +426,11 @@ public class ResponseBodyDeferringAsyncHandler implements AsyncHandler<Response>
   }
 
   private boolean shouldCompleteAsync() {
-    return input.isPresent();
+    return isStreaming();
+  }
+
+  private boolean isStreaming() {
+    return input.isPresent() || bufferPipe != null;
   }
 
   private void completeResponseFuture() {
@@ -409,6 +449,8 @@ public class ResponseBodyDeferringAsyncHandler implements AsyncHandler<Response>
   private InputStream createResponseInputStream() throws IOException {
     if (input.isPresent()) {
       return input.get();
+    } else if (bufferPipe != null) {
+      return bufferPipe;
     } else {
       return response.getResponseBodyAsStream();
     }
@@ -420,5 +462,6 @@ public class ResponseBodyDeferringAsyncHandler implements AsyncHandler<Response>
   @Deprecated
   static void refreshSystemProperties() {
     PIPE_READ_TIMEOUT_MILLIS = parseInt(getProperty(PIPE_READ_TIMEOUT_PROPERTY_NAME, "20000"));
+    USE_BUFFER_PIPE = parseBoolean(getProperty(BUFFER_PIPE_PROPERTY_NAME, "false"));
   }
 }
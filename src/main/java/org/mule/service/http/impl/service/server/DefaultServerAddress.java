@@ -16,6 +16,8 @@ public class DefaultServerAddress implements ServerAddress {
 
   private final InetAddress address;
   private int port;
+  // Lazily created, a race just creates an equal instance.
+  private DefaultServerAddress allInterfacesAddress;
 
   public DefaultServerAddress(InetAddress address, int port) {
     this.port = port;
@@ -42,6 +44,21 @@ public class DefaultServerAddress implements ServerAddress {
     return (port == serverAddress.getPort()) && (isAllInterfaces(this) || isAllInterfaces(serverAddress));
   }
 
+  /**
+   * @return the address for all the interfaces with the same port, which is the same instance each time it's called.
+   */
+  public DefaultServerAddress allInterfacesAddress() {
+    if (isAllInterfaces(this)) {
+      return this;
+    }
+    DefaultServerAddress allInterfaces = allInterfacesAddress;
+    if (allInterfaces == null) {
+      allInterfaces = new DefaultServerAddress(ALL_INTERFACES_ADDRESS, port);
+      allInterfacesAddress = allInterfaces;
+    }
+    return allInterfaces;
+  }
+
   public static boolean isAllInterfaces(ServerAddress serverAddress) {
     return ALL_INTERFACES_ADDRESS.equals(serverAddress.getAddress());
   }
@@ -6,6 +6,14 @@
  */
 package org.mule.service.http.impl.service.server;
 
+import static org.mule.runtime.api.util.MuleSystemProperties.SYSTEM_PROPERTY_PREFIX;
+import static org.mule.service.http.impl.service.util.DefaultRequestMatcherRegistry.DEFAULT_PATHS_CACHE_SIZE;
+
+import static java.lang.Boolean.parseBoolean;
+import static java.lang.Integer.getInteger;
+import static java.lang.System.getProperty;
+import static java.util.Optional.ofNullable;
+
 import static org.slf4j.LoggerFactory.getLogger;
 
 import org.mule.runtime.http.api.domain.message.request.HttpRequest;
@@ -14,30 +22,35 @@ import org.mule.runtime.http.api.server.PathAndMethodRequestMatcher;
 import org.mule.runtime.http.api.server.RequestHandler;
 import org.mule.runtime.http.api.server.RequestHandlerManager;
 import org.mule.runtime.http.api.server.ServerAddress;
-import org.mule.runtime.http.api.utils.RequestMatcherRegistry;
+import org.mule.service.http.impl.service.util.DefaultRequestMatcherRegistry;
 import org.mule.service.http.impl.service.util.DefaultRequestMatcherRegistryBuilder;
+import org.mule.service.http.impl.service.util.PathsCacheStatistics;
 
-import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 
 /**
  * Registry of servers and its handlers, which allows searching for handlers and introducing new ones (while allowing them to be
  * managed).
+ * <p>
+ * Lookups performed for every received request are lock free: both maps are concurrent, and the handlers registry of each server
+ * publishes immutable snapshots of its routes. Only adding and removing handlers is serialized.
  */
 public class HttpListenerRegistry implements RequestHandlerProvider {
 
   private static final Logger LOGGER = getLogger(HttpListenerRegistry.class);
 
-  private final ServerAddressMap<HttpServer> serverAddressToServerMap = new ServerAddressMap<>();
-  private final Map<HttpServer, RequestMatcherRegistry<RequestHandler>> requestHandlerPerServerAddress = new HashMap<>();
-  private final ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
-  private final Lock readLock = readWriteLock.readLock();
-  private final Lock writeLock = readWriteLock.writeLock();
+  // Both can be overridden for a specific server by appending "." and its port to the property name
+  public static final String PATHS_CACHE_SIZE_PROPERTY = SYSTEM_PROPERTY_PREFIX + "http.server.pathsCache.size";
+  public static final String PATHS_CACHE_BY_ROUTE_TEMPLATE_PROPERTY =
+      SYSTEM_PROPERTY_PREFIX + "http.server.pathsCache.byRouteTemplate";
+
+  private final ServerAddressMap<HttpServer> serverAddressToServerMap = new ServerAddressMap<>(new ConcurrentHashMap<>());
+  private final Map<HttpServer, DefaultRequestMatcherRegistry<RequestHandler>> requestHandlerPerServerAddress =
+      new ConcurrentHashMap<>();
 
   /**
    * Introduces a new {@link RequestHandler} for requests matching a given {@link PathAndMethodRequestMatcher} in the provided
@@ -48,27 +61,29 @@ public class HttpListenerRegistry implements RequestHandlerProvider {
    * @param requestMatcher the matcher to be applied for the handler
    * @return a {@link RequestHandlerManager} for the added handler that allows enabling, disabling and disposing it
    */
-  public RequestHandlerManager addRequestHandler(final HttpServer server,
-                                                 final RequestHandler requestHandler,
-                                                 final PathAndMethodRequestMatcher requestMatcher) {
-    writeLock.lock();
-    try {
-      RequestMatcherRegistry<RequestHandler> serverAddressRequestHandlerRegistry =
-          this.requestHandlerPerServerAddress.get(server);
-      if (serverAddressRequestHandlerRegistry == null) {
-        serverAddressRequestHandlerRegistry = new DefaultRequestMatcherRegistryBuilder<RequestHandler>()
-            .onMethodMismatch(NoMethodRequestHandler::getInstance)
-            .onNotFound(NoListenerRequestHandler::getInstance)
-            .onInvalidRequest(BadRequestHandler::getInstance)
-            .onDisabled(ServiceTemporarilyUnavailableListenerRequestHandler::getInstance)
-            .build();
-        requestHandlerPerServerAddress.put(server, serverAddressRequestHandlerRegistry);
-        serverAddressToServerMap.put(server.getServerAddress(), server);
-      }
-      return new DefaultRequestHandlerManager(serverAddressRequestHandlerRegistry.add(requestMatcher, requestHandler));
-    } finally {
-      writeLock.unlock();
+  public synchronized RequestHandlerManager addRequestHandler(final HttpServer server,
+                                                              final RequestHandler requestHandler,
+                                                              final PathAndMethodRequestMatcher requestMatcher) {
+    DefaultRequestMatcherRegistry<RequestHandler> serverAddressRequestHandlerRegistry =
+        this.requestHandlerPerServerAddress.get(server);
+    if (serverAddressRequestHandlerRegistry == null) {
+      final int port = server.getServerAddress().getPort();
+      DefaultRequestMatcherRegistryBuilder<RequestHandler> registryBuilder =
+          new DefaultRequestMatcherRegistryBuilder<RequestHandler>()
+              .pathsCacheSize(getInteger(PATHS_CACHE_SIZE_PROPERTY + "." + port,
+                                         getInteger(PATHS_CACHE_SIZE_PROPERTY, DEFAULT_PATHS_CACHE_SIZE)))
+              .cacheByRouteTemplate(parseBoolean(getProperty(PATHS_CACHE_BY_ROUTE_TEMPLATE_PROPERTY + "." + port,
+                                                             getProperty(PATHS_CACHE_BY_ROUTE_TEMPLATE_PROPERTY, "false"))));
+      registryBuilder
+          .onMethodMismatch(NoMethodRequestHandler::getInstance)
+          .onNotFound(NoListenerRequestHandler::getInstance)
+          .onInvalidRequest(BadRequestHandler::getInstance)
+          .onDisabled(ServiceTemporarilyUnavailableListenerRequestHandler::getInstance);
+      serverAddressRequestHandlerRegistry = registryBuilder.build();
+      requestHandlerPerServerAddress.put(server, serverAddressRequestHandlerRegistry);
+      serverAddressToServerMap.put(server.getServerAddress(), server);
     }
+    return new DefaultRequestHandlerManager(serverAddressRequestHandlerRegistry.add(requestMatcher, requestHandler));
   }
 
   /**
@@ -76,43 +91,45 @@ public class HttpListenerRegistry implements RequestHandlerProvider {
    *
    * @param server whose handlers will be removed
    */
-  public void removeHandlersFor(HttpServer server) {
-    writeLock.lock();
-    try {
-      requestHandlerPerServerAddress.remove(server);
-      serverAddressToServerMap.remove(server.getServerAddress());
-    } finally {
-      writeLock.unlock();
-    }
+  public synchronized void removeHandlersFor(HttpServer server) {
+    serverAddressToServerMap.remove(server.getServerAddress());
+    requestHandlerPerServerAddress.remove(server);
+  }
+
+  /**
+   * @param server whose statistics are requested
+   * @return the statistics of the cache of resolved request paths of the given {@link HttpServer}, if it has handlers
+   */
+  public Optional<PathsCacheStatistics> getPathsCacheStatistics(HttpServer server) {
+    return ofNullable(requestHandlerPerServerAddress.get(server)).map(DefaultRequestMatcherRegistry::getPathsCacheStatistics);
+  }
+
+  /**
+   * @param serverAddress address of the server whose statistics are requested
+   * @return the statistics of the cache of resolved request paths of the {@link HttpServer} listening in the given address, if
+   *         it has handlers
+   */
+  public Optional<PathsCacheStatistics> getPathsCacheStatistics(ServerAddress serverAddress) {
+    return ofNullable(serverAddressToServerMap.get(serverAddress)).flatMap(this::getPathsCacheStatistics);
   }
 
   @Override
   public boolean hasHandlerFor(ServerAddress serverAddress) {
-    readLock.lock();
-    try {
-      return serverAddressToServerMap.get(serverAddress) != null;
-    } finally {
-      readLock.unlock();
-    }
+    return serverAddressToServerMap.get(serverAddress) != null;
   }
 
   @Override
   public RequestHandler getRequestHandler(ServerAddress serverAddress, final HttpRequest request) {
     LOGGER.debug("Looking RequestHandler for request: {}", request.getPath());
-    readLock.lock();
-    try {
-      final HttpServer server = serverAddressToServerMap.get(serverAddress);
-      if (server != null && !server.isStopped()) {
-        final RequestMatcherRegistry<RequestHandler> serverAddressRequestHandlerRegistry =
-            requestHandlerPerServerAddress.get(server);
-        if (serverAddressRequestHandlerRegistry != null) {
-          return serverAddressRequestHandlerRegistry.find(request);
-        }
+    final HttpServer server = serverAddressToServerMap.get(serverAddress);
+    if (server != null && !server.isStopped()) {
+      final DefaultRequestMatcherRegistry<RequestHandler> serverAddressRequestHandlerRegistry =
+          requestHandlerPerServerAddress.get(server);
+      if (serverAddressRequestHandlerRegistry != null) {
+        return serverAddressRequestHandlerRegistry.find(request);
       }
-      LOGGER.debug("No RequestHandler found for request: {}", request.getPath());
-      return NoListenerRequestHandler.getInstance();
-    } finally {
-      readLock.unlock();
     }
+    LOGGER.debug("No RequestHandler found for request: {}", request.getPath());
+    return NoListenerRequestHandler.getInstance();
   }
 }
@@ -21,7 +21,7 @@ import java.util.Map;
 public class ServerAddressMap<T> {
 
   private Map<ServerAddress, T> internalMap;
-  private boolean specificAddressPresent;
+  private volatile boolean specificAddressPresent;
 
   public ServerAddressMap() {
     this(new HashMap<>());
@@ -46,14 +46,22 @@ public class ServerAddressMap<T> {
       T value = internalMap.get(key);
       if (value == null) {
         // if there's no entry for the specific address, we need to check if there's one for all interfaces address.
-        value = internalMap.get(new DefaultServerAddress(ALL_INTERFACES_ADDRESS, ((ServerAddress) key).getPort()));
+        value = internalMap.get(allInterfacesAddress(key));
       }
       return value;
     } else {
-      return internalMap.get(new DefaultServerAddress(ALL_INTERFACES_ADDRESS, ((ServerAddress) key).getPort()));
+      return internalMap.get(allInterfacesAddress(key));
     }
   }
 
+  private ServerAddress allInterfacesAddress(Object key) {
+    if (key instanceof DefaultServerAddress) {
+      // Reuses the instance created for the key, if any, so repeated lookups with the same key don't allocate.
+      return ((DefaultServerAddress) key).allInterfacesAddress();
+    }
+    return new DefaultServerAddress(ALL_INTERFACES_ADDRESS, ((ServerAddress) key).getPort());
+  }
+
   public T get(InetAddress address, int port) {
     return get(new DefaultServerAddress(address, port));
   }
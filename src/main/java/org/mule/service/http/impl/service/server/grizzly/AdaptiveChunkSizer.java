@@ -0,0 +1,149 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.service.server.grizzly;
+
+import static org.mule.runtime.api.util.DataUnit.KB;
+import static org.mule.runtime.api.util.MuleSystemProperties.SYSTEM_PROPERTY_PREFIX;
+
+import static java.lang.Boolean.parseBoolean;
+import static java.lang.Integer.getInteger;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.System.getProperty;
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Chooses the size of each chunk of a streamed response. When adaptive sizing is enabled, the size is doubled while the chunks
+ * are written right away, and halved when a write takes long or leaves data queued because the socket send buffer is full. This
+ * way slow clients don't hold big buffers, while fast ones are sent bigger chunks.
+ * <p>
+ * One instance is used for each response, so it's not thread safe.
+ */
+class AdaptiveChunkSizer {
+
+  public static final String ADAPTIVE_CHUNK_SIZE_PROPERTY =
+      SYSTEM_PROPERTY_PREFIX + "http.server.responseStreaming.adaptiveChunkSize";
+  public static final String MIN_CHUNK_SIZE_PROPERTY = SYSTEM_PROPERTY_PREFIX + "http.server.responseStreaming.minChunkSize";
+
+  // Writes completed within this time went straight to the socket.
+  static final long FAST_WRITE_NANOS = MILLISECONDS.toNanos(1);
+  // Writes taking longer than this had to wait for the client to consume the previous data.
+  static final long SLOW_WRITE_NANOS = MILLISECONDS.toNanos(20);
+
+  private static boolean ADAPTIVE_CHUNK_SIZE;
+  private static int MIN_CHUNK_SIZE;
+
+  static {
+    refreshSystemProperties();
+  }
+
+  private final boolean adaptive;
+  private final int minChunkSize;
+  private final int maxChunkSize;
+  private final ResponseChunkStatistics statistics;
+
+  private int chunkSize;
+  private int writtenChunkSize;
+  private long writeStartNanos;
+
+  /**
+   * @param initialChunkSize the size of the first chunk, and of all of them if adaptive sizing is disabled.
+   * @param maxChunkSize     the maximum size the chunks may grow to.
+   * @param statistics       where to record the chunks written, may be {@code null}.
+   */
+  AdaptiveChunkSizer(int initialChunkSize, int maxChunkSize, ResponseChunkStatistics statistics) {
+    this(initialChunkSize, min(MIN_CHUNK_SIZE, initialChunkSize), maxChunkSize, ADAPTIVE_CHUNK_SIZE, statistics);
+  }
+
+  AdaptiveChunkSizer(int initialChunkSize, int minChunkSize, int maxChunkSize, boolean adaptive,
+                     ResponseChunkStatistics statistics) {
+    this.chunkSize = initialChunkSize;
+    this.minChunkSize = minChunkSize;
+    this.maxChunkSize = max(initialChunkSize, maxChunkSize);
+    this.adaptive = adaptive;
+    this.statistics = statistics;
+  }
+
+  /**
+   * @return the size of the next chunk to read.
+   */
+  int nextChunkSize() {
+    return chunkSize;
+  }
+
+  /**
+   * @return the size of the biggest chunk that may be read.
+   */
+  int maxChunkSize() {
+    return adaptive ? maxChunkSize : chunkSize;
+  }
+
+  /**
+   * Must be called right before handing a chunk to Grizzly to write it.
+   *
+   * @param size the actual size of the chunk.
+   */
+  void writeStarted(int size) {
+    writtenChunkSize = size;
+    writeStartNanos = nanoTime();
+  }
+
+  /**
+   * Must be called when Grizzly notifies that the chunk was written, to adapt the size of the next one.
+   *
+   * @param pendingBytes the bytes still queued to be written in the connection.
+   */
+  void writeCompleted(int pendingBytes) {
+    writeCompleted(pendingBytes, nanoTime() - writeStartNanos);
+  }
+
+  /**
+   * Records a chunk whose write completed, for when several chunks may be in flight at once, so that
+   * {@link #writeStarted(int)} can't be used.
+   *
+   * @param size            the actual size of the chunk.
+   * @param pendingBytes    the bytes still queued to be written in the connection.
+   * @param completionNanos the time the write of the chunk took.
+   */
+  void chunkWritten(int size, int pendingBytes, long completionNanos) {
+    writtenChunkSize = size;
+    writeCompleted(pendingBytes, completionNanos);
+  }
+
+  void writeCompleted(int pendingBytes, long completionNanos) {
+    if (statistics != null) {
+      statistics.chunkWritten(writtenChunkSize, completionNanos);
+    }
+    if (!adaptive) {
+      return;
+    }
+
+    if (pendingBytes > 0 || completionNanos > SLOW_WRITE_NANOS) {
+      if (chunkSize > minChunkSize) {
+        chunkSize = max(minChunkSize, chunkSize / 2);
+        if (statistics != null) {
+          statistics.chunkSizeShrunk();
+        }
+      }
+    } else if (completionNanos < FAST_WRITE_NANOS && writtenChunkSize >= chunkSize && chunkSize < maxChunkSize) {
+      // Only grow if the chunk was full, otherwise the stream is the one not keeping up.
+      chunkSize = min(maxChunkSize, chunkSize * 2);
+      if (statistics != null) {
+        statistics.chunkSizeGrown();
+      }
+    }
+  }
+
+  /**
+   * Reads the system properties used by this class again, for testing.
+   */
+  static void refreshSystemProperties() {
+    ADAPTIVE_CHUNK_SIZE = parseBoolean(getProperty(ADAPTIVE_CHUNK_SIZE_PROPERTY, "false"));
+    MIN_CHUNK_SIZE = getInteger(MIN_CHUNK_SIZE_PROPERTY, KB.toBytes(1));
+  }
+}
@@ -85,6 +85,13 @@ public abstract class BaseResponseCompletionHandler extends EmptyCompletionHandl
         }
       }
     }
+    if (ConnectionDrainer.isDraining(sourceRequest.getConnection()) && !CLOSE.equalsIgnoreCase(connectionHeaderValue)) {
+      // The server is being stopped, let the client know that it has to open a new connection for its next request.
+      responsePacketBuilder.removeHeader(CONNECTION);
+      responsePacketBuilder.header(CONNECTION, CLOSE);
+      hasConnection = true;
+      connectionHeaderValue = CLOSE;
+    }
     if (httpResponse.getEntity().isComposed()) {
       if (contentType == null) {
         responsePacketBuilder.header(CONTENT_TYPE,
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.service.server.grizzly;
+
+import static java.lang.Boolean.TRUE;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.glassfish.grizzly.Connection;
+import org.glassfish.grizzly.attributes.AttributeHolder;
+import org.slf4j.Logger;
+
+/**
+ * Keeps track of the requests in flight of each connection of the listeners, so that the connections of a server being stopped
+ * are closed as soon as they have no response pending, instead of waiting for the clients to close them.
+ * <p>
+ * Once a connection is draining, the responses sent through it have a {@code Connection: close} header, and it's gracefully
+ * closed (after writing the data already queued) when its last response is sent.
+ */
+final class ConnectionDrainer {
+
+  private static final Logger LOGGER = getLogger(ConnectionDrainer.class);
+
+  static final String IN_FLIGHT_REQUESTS_ATTRIBUTE = "__IN_FLIGHT_REQUESTS__";
+  static final String DRAINING_ATTRIBUTE = "__DRAINING__";
+
+  private ConnectionDrainer() {
+    // Nothing to do
+  }
+
+  /**
+   * @param connection the connection a request was received from, to be dispatched to its handler.
+   */
+  static void requestStarted(Connection<?> connection) {
+    AttributeHolder attributes = connection.getAttributes();
+    AtomicInteger inFlightRequests = (AtomicInteger) attributes.getAttribute(IN_FLIGHT_REQUESTS_ATTRIBUTE);
+    if (inFlightRequests == null) {
+      // The requests of a connection are read one after the other, so there's no race creating the counter.
+      inFlightRequests = new AtomicInteger();
+      attributes.setAttribute(IN_FLIGHT_REQUESTS_ATTRIBUTE, inFlightRequests);
+    }
+    inFlightRequests.incrementAndGet();
+  }
+
+  /**
+   * Closes the connection if it's draining and this was its last request in flight.
+   *
+   * @param connection the connection the response of a request was sent to, either successfully or not.
+   */
+  static void responseFinished(Connection<?> connection) {
+    if (connection == null) {
+      return;
+    }
+    AtomicInteger inFlightRequests = (AtomicInteger) connection.getAttributes().getAttribute(IN_FLIGHT_REQUESTS_ATTRIBUTE);
+    if (inFlightRequests != null && inFlightRequests.decrementAndGet() == 0 && isDraining(connection)) {
+      LOGGER.debug("Closing drained connection {} after its last response", connection);
+      connection.close();
+    }
+  }
+
+  /**
+   * @return whether the server of the connection is being stopped, so its responses must close it.
+   */
+  static boolean isDraining(Connection<?> connection) {
+    return connection != null && TRUE.equals(connection.getAttributes().getAttribute(DRAINING_ATTRIBUTE));
+  }
+
+  /**
+   * Marks the connection as draining, closing it right away if it has no request in flight.
+   *
+   * @return whether the connection was idle, so it's being closed.
+   */
+  static boolean drain(Connection<?> connection) {
+    connection.getAttributes().setAttribute(DRAINING_ATTRIBUTE, TRUE);
+    if (inFlightRequests(connection) == 0) {
+      LOGGER.debug("Closing idle connection {}", connection);
+      connection.close();
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * @return the amount of requests received from the connection whose response wasn't sent yet.
+   */
+  static int inFlightRequests(Connection<?> connection) {
+    AtomicInteger inFlightRequests = (AtomicInteger) connection.getAttributes().getAttribute(IN_FLIGHT_REQUESTS_ATTRIBUTE);
+    return inFlightRequests == null ? 0 : inFlightRequests.get();
+  }
+}
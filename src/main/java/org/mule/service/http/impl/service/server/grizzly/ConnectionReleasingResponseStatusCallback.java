@@ -0,0 +1,73 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.service.server.grizzly;
+
+import org.mule.runtime.http.api.server.async.ResponseStatusCallback;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.glassfish.grizzly.Connection;
+
+/**
+ * Wrapper for a {@link ResponseStatusCallback} which will notify the {@link RequestAdmissionController} and the
+ * {@link ConnectionDrainer} that the response of a request of the given connection was sent (either successfully or
+ * unsuccessfully), only once even if the handler notifies more than one outcome.
+ */
+class ConnectionReleasingResponseStatusCallback implements ResponseStatusCallback {
+
+  private final Connection<?> connection;
+  private final ResponseStatusCallback delegate;
+  private final AtomicBoolean released;
+
+  ConnectionReleasingResponseStatusCallback(Connection<?> connection, ResponseStatusCallback delegate) {
+    this(connection, delegate, new AtomicBoolean(false));
+  }
+
+  /**
+   * @param released shared by the callbacks of the same request, so that its connection is released once even if a failed
+   *                 response is retried.
+   */
+  ConnectionReleasingResponseStatusCallback(Connection<?> connection, ResponseStatusCallback delegate, AtomicBoolean released) {
+    this.connection = connection;
+    this.delegate = delegate;
+    this.released = released;
+  }
+
+  @Override
+  public void responseSendFailure(Throwable throwable) {
+    try {
+      delegate.responseSendFailure(throwable);
+    } finally {
+      release();
+    }
+  }
+
+  @Override
+  public void responseSendSuccessfully() {
+    try {
+      delegate.responseSendSuccessfully();
+    } finally {
+      release();
+    }
+  }
+
+  @Override
+  public void onErrorSendingResponse(Throwable throwable) {
+    try {
+      delegate.onErrorSendingResponse(throwable);
+    } finally {
+      release();
+    }
+  }
+
+  private void release() {
+    if (released.compareAndSet(false, true)) {
+      RequestAdmissionController.release(connection);
+      ConnectionDrainer.responseFinished(connection);
+    }
+  }
+}
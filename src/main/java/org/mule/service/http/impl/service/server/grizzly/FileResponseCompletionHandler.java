@@ -0,0 +1,336 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.service.server.grizzly;
+
+import static org.mule.runtime.api.util.DataUnit.KB;
+import static org.mule.runtime.api.util.DataUnit.MB;
+import static org.mule.runtime.api.util.MuleSystemProperties.SYSTEM_PROPERTY_PREFIX;
+import static org.mule.runtime.core.api.util.ClassUtils.setContextClassLoader;
+import static org.mule.runtime.core.api.util.StringUtils.isEmpty;
+import static org.mule.runtime.http.api.HttpConstants.Protocol.HTTPS;
+import static org.mule.runtime.http.api.HttpHeaders.Names.CONTENT_LENGTH;
+import static org.mule.service.http.impl.service.server.grizzly.ExecutorPerServerAddressIOStrategy.DELEGATE_WRITES_IN_CONFIGURED_EXECUTOR;
+
+import static java.lang.Boolean.parseBoolean;
+import static java.lang.Integer.getInteger;
+import static java.lang.Long.parseLong;
+import static java.lang.Math.min;
+import static java.lang.System.getProperty;
+import static java.lang.Thread.currentThread;
+import static java.lang.invoke.MethodHandles.publicLookup;
+import static java.lang.invoke.MethodType.methodType;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.glassfish.grizzly.http.HttpServerFilter.RESPONSE_COMPLETE_EVENT;
+import static org.glassfish.grizzly.memory.Buffers.EMPTY_BUFFER;
+import static org.glassfish.grizzly.memory.Buffers.wrap;
+import static org.glassfish.grizzly.nio.transport.TCPNIOTransport.MAX_SEND_BUFFER_SIZE;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import org.mule.runtime.api.connection.SourceRemoteConnectionException;
+import org.mule.runtime.api.exception.DefaultMuleException;
+import org.mule.runtime.core.api.config.i18n.CoreMessages;
+import org.mule.runtime.http.api.domain.entity.HttpEntity;
+import org.mule.runtime.http.api.domain.message.response.HttpResponse;
+import org.mule.runtime.http.api.server.async.ResponseStatusCallback;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.glassfish.grizzly.Buffer;
+import org.glassfish.grizzly.Connection;
+import org.glassfish.grizzly.WriteResult;
+import org.glassfish.grizzly.attributes.AttributeHolder;
+import org.glassfish.grizzly.filterchain.FilterChainContext;
+import org.glassfish.grizzly.http.HttpContent;
+import org.glassfish.grizzly.http.HttpRequestPacket;
+import org.glassfish.grizzly.memory.MemoryManager;
+import org.slf4j.Logger;
+
+/**
+ * {@link org.glassfish.grizzly.CompletionHandler}, responsible for asynchronous http response transferring when the response body
+ * is a file.
+ * <p>
+ * Instead of reading the file into heap buffers, consecutive regions of it are mapped into memory and written directly, so the
+ * data is only copied by the kernel from the page cache to the socket. On secure connections smaller regions are used, since the
+ * SSL filter needs an output buffer as big as each region to encrypt it.
+ * <p>
+ * Only one region is mapped at a time, and it is unmapped as soon as its write completes. Reading a mapped region may block on
+ * the disk, so the writes of the connection are delegated to the configured executor while the file is sent. This is disabled
+ * by default, and enabled with the {@link #MAP_FILE_RESPONSES_PROPERTY} system property.
+ *
+ * @since 1.12
+ */
+public class FileResponseCompletionHandler extends BaseResponseCompletionHandler {
+
+  public static final String MAP_FILE_RESPONSES_PROPERTY = SYSTEM_PROPERTY_PREFIX + "http.server.mapFileResponses";
+  public static final String MAPPED_REGION_SIZE_PROPERTY = SYSTEM_PROPERTY_PREFIX + "http.server.mapFileResponses.regionSize";
+
+  private static final Logger LOGGER = getLogger(FileResponseCompletionHandler.class);
+
+  private static boolean MAP_FILE_RESPONSES;
+  private static int MAPPED_REGION_SIZE;
+
+  private static final MethodHandle INVOKE_CLEANER = lookupInvokeCleaner();
+
+  static {
+    refreshSystemProperties();
+  }
+
+  private final MemoryManager memoryManager;
+  private final FilterChainContext ctx;
+  private final ClassLoader ctxClassLoader;
+  private final FileInputStream inputStream;
+  private final FileChannel fileChannel;
+  private final ResponseStatusCallback responseStatusCallback;
+  private final int regionSize;
+  private final long end;
+
+  private long position;
+  private MappedByteBuffer mappedRegion;
+  private volatile boolean isDone;
+  private boolean alreadyFailed = false;
+
+  /**
+   * @param httpResponse the response to send.
+   * @return whether the body of the response can be sent with a {@link FileResponseCompletionHandler}.
+   */
+  public static boolean isFileBacked(HttpResponse httpResponse) {
+    HttpEntity entity = httpResponse.getEntity();
+    // Subclasses may override how the file is read, which mapping it would bypass
+    return MAP_FILE_RESPONSES && entity.isStreaming() && !entity.isComposed()
+        && entity.getContent().getClass() == FileInputStream.class;
+  }
+
+  public FileResponseCompletionHandler(final FilterChainContext ctx,
+                                       ClassLoader ctxClassLoader,
+                                       final HttpRequestPacket request,
+                                       final HttpResponse httpResponse, ResponseStatusCallback responseStatusCallback)
+      throws IOException {
+    checkArgument(isFileBacked(httpResponse), "HTTP response entity must be file based");
+    LOGGER.debug("Creating response sending handler for ctx: {} (file entity)", ctx);
+    this.ctx = ctx;
+    this.ctxClassLoader = ctxClassLoader;
+    httpResponsePacket = buildHttpResponsePacket(request, httpResponse);
+    inputStream = (FileInputStream) httpResponse.getEntity().getContent();
+    fileChannel = inputStream.getChannel();
+    memoryManager = ctx.getConnection().getTransport().getMemoryManager();
+    this.responseStatusCallback = responseStatusCallback;
+    regionSize = isSecure(ctx) ? calculateSecureRegionSize(ctx) : MAPPED_REGION_SIZE;
+
+    // The body starts wherever the stream was left.
+    position = fileChannel.position();
+    end = calculateEnd();
+  }
+
+  private long calculateEnd() throws IOException {
+    long fileEnd = fileChannel.size();
+    String contentLengthHeader = httpResponsePacket.getHeader(CONTENT_LENGTH);
+    if (!isEmpty(contentLengthHeader)) {
+      // Never send more than what was declared, or the connection would be corrupted.
+      return min(fileEnd, position + parseLong(contentLengthHeader.trim()));
+    }
+    if (!httpResponsePacket.isChunked()) {
+      // The length is known beforehand, so there is no need to stream it until the connection is closed.
+      httpResponsePacket.setContentLengthLong(fileEnd - position);
+    }
+    return fileEnd;
+  }
+
+  private static boolean isSecure(FilterChainContext ctx) {
+    AttributeHolder attributes = ctx.getAttributes();
+    return attributes != null && attributes.getAttribute(HTTPS.getScheme()) != null;
+  }
+
+  private static int calculateSecureRegionSize(FilterChainContext ctx) {
+    Connection connection = ctx.getConnection();
+    int writeBufferSize = connection.getWriteBufferSize();
+    return writeBufferSize > 0 ? min(MAX_SEND_BUFFER_SIZE, writeBufferSize) : KB.toBytes(8);
+  }
+
+  public void start() throws IOException {
+    Thread thread = currentThread();
+    ClassLoader currentClassLoader = thread.getContextClassLoader();
+    setContextClassLoader(thread, currentClassLoader, ctxClassLoader);
+    try {
+      markConnectionToDelegateWritesInConfiguredExecutor(true);
+      sendNextRegion();
+    } finally {
+      setContextClassLoader(thread, ctxClassLoader, currentClassLoader);
+    }
+  }
+
+  private void sendNextRegion() throws IOException {
+    final long length = min(regionSize, end - position);
+    final HttpContent content;
+    if (length <= 0) {
+      // Empty body, only the headers are sent.
+      content = httpResponsePacket.httpContentBuilder().content(EMPTY_BUFFER).last(true).build();
+    } else {
+      LOGGER.debug("Mapping {} bytes of file at position {}. ctx: {}", length, position, ctx);
+      // Assigned before writing, as the write may complete before it returns
+      mappedRegion = fileChannel.map(READ_ONLY, position, length);
+      final Buffer region = wrap(memoryManager, mappedRegion);
+      position += length;
+      content = httpResponsePacket.httpContentBuilder().content(region).last(position >= end).build();
+    }
+    isDone = position >= end;
+    ctx.write(content, this);
+  }
+
+  /**
+   * Method gets called, when a file region was successfully sent.
+   *
+   * @param result the result
+   */
+  @Override
+  public void completed(WriteResult result) {
+    Thread thread = currentThread();
+    ClassLoader currentClassLoader = thread.getContextClassLoader();
+    setContextClassLoader(thread, currentClassLoader, ctxClassLoader);
+    try {
+      unmapRegion();
+      if (!isDone) {
+        sendNextRegion();
+      } else {
+        doComplete();
+      }
+    } catch (IOException e) {
+      failed(e);
+    } finally {
+      setContextClassLoader(thread, ctxClassLoader, currentClassLoader);
+    }
+  }
+
+  private void doComplete() {
+    LOGGER.debug("Finishing file response handler for ctx: {}", ctx);
+    markConnectionToDelegateWritesInConfiguredExecutor(false);
+    close();
+    responseStatusCallback.responseSendSuccessfully();
+    ctx.notifyDownstream(RESPONSE_COMPLETE_EVENT);
+    resume();
+  }
+
+  /**
+   * The method will be called, when file transferring was canceled
+   */
+  @Override
+  public void cancelled() {
+    LOGGER.debug("Cancelling file response handler for ctx: {}", ctx);
+    super.cancelled();
+    markConnectionToDelegateWritesInConfiguredExecutor(false);
+    close();
+    responseStatusCallback.responseSendFailure(new DefaultMuleException(CoreMessages
+        .createStaticMessage("Http response sending task was cancelled")));
+    resume();
+  }
+
+  /**
+   * The method will be called, if file transferring was failed.
+   *
+   * @param throwable the cause
+   */
+  @Override
+  public void failed(Throwable throwable) {
+    if (alreadyFailed) {
+      LOGGER.warn("Failed callback has been called more than once for the same file response", throwable);
+      return;
+    }
+    alreadyFailed = true;
+    LOGGER.debug("Failed file response handler for ctx: {}", ctx);
+    super.failed(throwable);
+    markConnectionToDelegateWritesInConfiguredExecutor(false);
+    close();
+    responseStatusCallback.onErrorSendingResponse(isConnectionOpen() ? throwable
+        : new SourceRemoteConnectionException(CLIENT_CONNECTION_CLOSED_MESSAGE, throwable));
+    resume();
+  }
+
+  private boolean isConnectionOpen() {
+    Connection connection = ctx.getConnection();
+    return connection != null && connection.isOpen();
+  }
+
+  private void markConnectionToDelegateWritesInConfiguredExecutor(boolean value) {
+    Connection connection = ctx.getConnection();
+    if (connection == null) {
+      return;
+    }
+    if (value) {
+      connection.getAttributes().setAttribute(DELEGATE_WRITES_IN_CONFIGURED_EXECUTOR, true);
+    } else {
+      connection.getAttributes().removeAttribute(DELEGATE_WRITES_IN_CONFIGURED_EXECUTOR);
+    }
+  }
+
+  /**
+   * Unmaps the region whose write has completed, instead of waiting for it to be collected. A region whose write failed or was
+   * cancelled may still be referenced by the transport, so it is left to be collected.
+   */
+  private void unmapRegion() {
+    MappedByteBuffer region = mappedRegion;
+    mappedRegion = null;
+    if (region == null || INVOKE_CLEANER == null) {
+      return;
+    }
+    try {
+      INVOKE_CLEANER.invokeExact((ByteBuffer) region);
+    } catch (Throwable e) {
+      LOGGER.debug("Error unmapping region of the response file for ctx: {}", ctx, e);
+    }
+  }
+
+  private static MethodHandle lookupInvokeCleaner() {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      return publicLookup().findVirtual(unsafeClass, "invokeCleaner", methodType(void.class, ByteBuffer.class))
+          .bindTo(theUnsafe.get(null));
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      LOGGER.debug("Mapped regions of file responses can't be unmapped explicitly, they will be released when collected", e);
+      return null;
+    }
+  }
+
+  /**
+   * Close the file input stream, which closes its channel as well.
+   */
+  private void close() {
+    try {
+      inputStream.close();
+    } catch (IOException e) {
+      LOGGER.debug("Error closing file of the response for ctx: {}", ctx, e);
+    }
+  }
+
+  /**
+   * Resume the HttpRequestPacket processing
+   */
+  private void resume() {
+    ctx.resume(ctx.getStopAction());
+  }
+
+  @Override
+  protected ClassLoader getCtxClassLoader() {
+    return ctxClassLoader;
+  }
+
+  /**
+   * Reads the system properties used by this class again, for testing.
+   */
+  static void refreshSystemProperties() {
+    MAP_FILE_RESPONSES = parseBoolean(getProperty(MAP_FILE_RESPONSES_PROPERTY, "false"));
+    MAPPED_REGION_SIZE = getInteger(MAPPED_REGION_SIZE_PROPERTY, MB.toBytes(4));
+  }
+}
@@ -6,7 +6,15 @@
  */
 package org.mule.service.http.impl.service.server.grizzly;
 
+import static org.mule.runtime.http.api.HttpConstants.HttpStatus.OK;
 import static org.mule.runtime.http.api.HttpConstants.Method.HEAD;
+import static org.mule.runtime.http.api.HttpHeaders.Names.CACHE_CONTROL;
+import static org.mule.runtime.http.api.HttpHeaders.Names.CONTENT_TYPE;
+import static org.mule.runtime.http.api.HttpHeaders.Names.TRANSFER_ENCODING;
+import static org.mule.runtime.http.api.HttpHeaders.Values.CHUNKED;
+import static org.mule.runtime.http.api.HttpHeaders.Values.NO_CACHE;
+
+import static java.lang.String.format;
 
 import org.mule.runtime.http.api.domain.entity.EmptyHttpEntity;
 import org.mule.runtime.http.api.domain.message.response.HttpResponse;
@@ -36,22 +44,50 @@ public class GrizzlyHttpResponseReadyCallback implements HttpResponseReadyCallba
   private final FilterChainContext ctx;
   private final RequestHandler requestHandler;
   private final HttpRequestPacket request;
+  private final ResponseChunkBufferPool responseChunkBufferPool;
+  private final OutboundWriteQueue outboundWriteQueue;
+
+  private static final String TEXT_EVENT_STREAM = "text/event-stream";
 
   private final AtomicBoolean httpHeaderSent = new AtomicBoolean(false);
+  private final AtomicBoolean connectionReleased = new AtomicBoolean(false);
 
   public GrizzlyHttpResponseReadyCallback(GrizzlyHttpRequestAdapter httpRequest,
                                           FilterChainContext ctx,
                                           RequestHandler requestHandler,
                                           HttpRequestPacket request) {
+    this(httpRequest, ctx, requestHandler, request, null);
+  }
+
+  public GrizzlyHttpResponseReadyCallback(GrizzlyHttpRequestAdapter httpRequest,
+                                          FilterChainContext ctx,
+                                          RequestHandler requestHandler,
+                                          HttpRequestPacket request,
+                                          ResponseChunkBufferPool responseChunkBufferPool) {
+    this(httpRequest, ctx, requestHandler, request, responseChunkBufferPool, null);
+  }
+
+  public GrizzlyHttpResponseReadyCallback(GrizzlyHttpRequestAdapter httpRequest,
+                                          FilterChainContext ctx,
+                                          RequestHandler requestHandler,
+                                          HttpRequestPacket request,
+                                          ResponseChunkBufferPool responseChunkBufferPool,
+                                          OutboundWriteQueue outboundWriteQueue) {
     this.httpRequest = httpRequest;
     this.ctx = ctx;
     this.requestHandler = requestHandler;
     this.request = request;
+    this.responseChunkBufferPool = responseChunkBufferPool;
+    this.outboundWriteQueue = outboundWriteQueue;
   }
 
   @Override
   public void responseReady(HttpResponse response, ResponseStatusCallback responseStatusCallback) {
     if (httpHeaderSent.compareAndSet(false, true)) {
+      // We need to notify the request adapter when the response has been sent, this way it can be protected
+      // against further reading attempts
+      final ResponseStatusCallback requestAdapterNotifyingResponseStatusCallback =
+          new RequestAdapterNotifyingResponseStatusCallback(httpRequest, connectionReleasing(responseStatusCallback));
       try {
         if (httpRequest.getMethod().equals(HEAD.name())) {
           if (response.getEntity().isStreaming()) {
@@ -60,21 +96,20 @@ public class GrizzlyHttpResponseReadyCallback implements HttpResponseReadyCallba
           response = new HttpResponseBuilder(response).entity(new EmptyHttpEntity()).build();
         }
 
-        // We need to notify the request adapter when the response has been sent, this way it can be protected
-        // against further reading attempts
-        final ResponseStatusCallback requestAdapterNotifyingResponseStatusCallback =
-            new RequestAdapterNotifyingResponseStatusCallback(httpRequest, responseStatusCallback);
-
-        if (response.getEntity().isStreaming()) {
+        if (FileResponseCompletionHandler.isFileBacked(response)) {
+          new FileResponseCompletionHandler(ctx, requestHandler.getContextClassLoader(), request, response,
+                                            requestAdapterNotifyingResponseStatusCallback).start();
+        } else if (response.getEntity().isStreaming()) {
           new ResponseStreamingCompletionHandler(ctx, requestHandler.getContextClassLoader(), request, response,
-                                                 requestAdapterNotifyingResponseStatusCallback).start();
+                                                 requestAdapterNotifyingResponseStatusCallback, responseChunkBufferPool,
+                                                 outboundWriteQueue).start();
         } else {
           new ResponseCompletionHandler(ctx, requestHandler.getContextClassLoader(), request, response,
                                         requestAdapterNotifyingResponseStatusCallback).start();
         }
       } catch (Exception e) {
         httpHeaderSent.set(false);
-        responseStatusCallback.responseSendFailure(e);
+        requestAdapterNotifyingResponseStatusCallback.responseSendFailure(e);
       }
     } else {
       throw new IllegalStateException("Response was already initiated for ctx " + ctx.toString());
@@ -86,13 +121,58 @@ public class GrizzlyHttpResponseReadyCallback implements HttpResponseReadyCallba
     if (httpHeaderSent.compareAndSet(false, true)) {
       ResponseDelayedCompletionHandler responseCompletionHandler =
           new ResponseDelayedCompletionHandler(ctx, requestHandler.getContextClassLoader(), request, response,
-                                               responseStatusCallback);
+                                               connectionReleasing(responseStatusCallback), responseChunkBufferPool,
+                                               outboundWriteQueue);
       return responseCompletionHandler.buildWriter(encoding);
     } else {
       throw new IllegalStateException("Response was already initiated for ctx " + ctx.toString());
     }
   }
 
+  /**
+   * Starts a Server Sent Events response that receives the events published to the given topic, which are encoded once for all
+   * its subscribers.
+   *
+   * @param topic                  the topic to subscribe to.
+   * @param responseStatusCallback notified when the response ends.
+   * @return the subscriber, that may be closed to end the response.
+   * @throws IllegalStateException if the topic is closed, in which case another response may be sent.
+   */
+  public SseTopicSubscriber startSseResponse(SseTopic topic, ResponseStatusCallback responseStatusCallback) {
+    if (topic.isClosed()) {
+      throw new IllegalStateException(format("SSE topic '%s' is closed", topic.getName()));
+    }
+    if (httpHeaderSent.compareAndSet(false, true)) {
+      HttpResponse response = HttpResponse.builder()
+          .statusCode(OK.getStatusCode())
+          .reasonPhrase(OK.getReasonPhrase())
+          .addHeader(CONTENT_TYPE, TEXT_EVENT_STREAM)
+          .addHeader(CACHE_CONTROL, NO_CACHE)
+          .addHeader(TRANSFER_ENCODING, CHUNKED)
+          .build();
+      final ResponseStatusCallback requestAdapterNotifyingResponseStatusCallback =
+          new RequestAdapterNotifyingResponseStatusCallback(httpRequest, connectionReleasing(responseStatusCallback));
+      SseTopicSubscriber subscriber = new SseTopicSubscriber(ctx, requestHandler.getContextClassLoader(), request, response,
+                                                             requestAdapterNotifyingResponseStatusCallback, topic);
+      try {
+        subscriber.start();
+      } catch (Exception e) {
+        // The topic may have been closed meanwhile. The subscriber reports the failure and releases the connection.
+        subscriber.failed(e);
+      }
+      return subscriber;
+    } else {
+      throw new IllegalStateException("Response was already initiated for ctx " + ctx.toString());
+    }
+  }
+
+  /**
+   * The connection is released once the response is sent, so that it's closed right away if its server is being stopped.
+   */
+  private ResponseStatusCallback connectionReleasing(ResponseStatusCallback responseStatusCallback) {
+    return new ConnectionReleasingResponseStatusCallback(ctx.getConnection(), responseStatusCallback, connectionReleased);
+  }
+
   @Override
   public SseClient startSseResponse(SseClientConfig config) {
     // Note: we don't check for httpHeaderSent here because the implementation ends up calling startResponse and the check is done
@@ -11,12 +11,10 @@ import static org.mule.runtime.core.api.util.ClassUtils.setContextClassLoader;
 import static org.mule.runtime.http.api.server.MethodRequestMatcher.acceptAll;
 import static org.mule.service.http.impl.service.server.grizzly.MuleSslFilter.createSslFilter;
 
-import static java.lang.Math.min;
 import static java.lang.String.format;
 import static java.lang.System.getProperty;
 import static java.lang.System.nanoTime;
 import static java.lang.Thread.currentThread;
-import static java.util.Collections.synchronizedList;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
@@ -40,9 +38,14 @@ import org.mule.service.http.impl.service.server.HttpListenerRegistry;
 
 import java.io.IOException;
 import java.util.Collection;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
@@ -76,9 +79,16 @@ public class GrizzlyHttpServer implements HttpServer, Supplier<ExecutorService>
   private Supplier<Long> shutdownTimeoutSupplier;
 
   private CountAcceptedConnectionsProbe acceptedConnectionsProbe;
+  private final ConnectionProbe metricsProbe;
+
+  private final Map<String, SseTopic> sseTopics = new ConcurrentHashMap<>();
 
   /** Used to track client connections so we know if we have to wait on stop. */
-  private final List<Connection<?>> clientConnections = synchronizedList(new LinkedList<>());
+  private final Set<Connection<?>> clientConnections = ConcurrentHashMap.newKeySet();
+  /** Completed once all the client connections are closed, while they are being drained. */
+  private volatile CompletableFuture<Void> connectionsDrained;
+  private volatile long lastDrainDurationMillis = -1;
+  private volatile int lastDrainForciblyClosedConnections = 0;
 
   public GrizzlyHttpServer(ServerAddress serverAddress,
                            TCPNIOTransport transport,
@@ -87,6 +97,22 @@ public class GrizzlyHttpServer implements HttpServer, Supplier<ExecutorService>
                            Runnable schedulerDisposer,
                            GrizzlyAddressFilter<SSLFilter> sslFilter,
                            Supplier<Long> shutdownTimeoutSupplier) {
+    this(serverAddress, transport, listenerRegistry, schedulerSource, schedulerDisposer, sslFilter, shutdownTimeoutSupplier,
+         null);
+  }
+
+  /**
+   * @param metricsProbe probe to add to the server connection to record the metrics of the accepted connections, or {@code null}
+   *                     if the metrics are disabled.
+   */
+  public GrizzlyHttpServer(ServerAddress serverAddress,
+                           TCPNIOTransport transport,
+                           HttpListenerRegistry listenerRegistry,
+                           Supplier<Scheduler> schedulerSource,
+                           Runnable schedulerDisposer,
+                           GrizzlyAddressFilter<SSLFilter> sslFilter,
+                           Supplier<Long> shutdownTimeoutSupplier,
+                           ConnectionProbe metricsProbe) {
     this.serverAddress = serverAddress;
     this.transport = transport;
     this.listenerRegistry = listenerRegistry;
@@ -94,6 +120,7 @@ public class GrizzlyHttpServer implements HttpServer, Supplier<ExecutorService>
     this.schedulerDisposer = schedulerDisposer;
     this.sslFilter = sslFilter;
     this.shutdownTimeoutSupplier = shutdownTimeoutSupplier;
+    this.metricsProbe = metricsProbe;
   }
 
   @Override
@@ -102,6 +129,9 @@ public class GrizzlyHttpServer implements HttpServer, Supplier<ExecutorService>
     serverConnection = transport.bind(serverAddress.getIp(), serverAddress.getPort());
     acceptedConnectionsProbe = new CountAcceptedConnectionsProbe();
     serverConnection.getMonitoringConfig().addProbes(acceptedConnectionsProbe);
+    if (metricsProbe != null) {
+      serverConnection.getMonitoringConfig().addProbes(metricsProbe);
+    }
 
     if (logger.isInfoEnabled()) {
       logger.info("Listening for connections on '{}'", listenerUrl());
@@ -119,34 +149,20 @@ public class GrizzlyHttpServer implements HttpServer, Supplier<ExecutorService>
     }
 
     Long shutdownTimeout = shutdownTimeoutSupplier.get();
-    final long stopNanos = nanoTime() + MILLISECONDS.toNanos(shutdownTimeout);
 
     stopping = true;
     try {
       transport.unbind(serverConnection);
+      // The subscribers keep their connections open until their topic is closed.
+      closeSseTopics();
 
       if (shutdownTimeout != 0) {
-        synchronized (clientConnections) {
-          long remainingMillis = NANOSECONDS.toMillis(stopNanos - nanoTime());
-          while (!clientConnections.isEmpty() && remainingMillis > 0) {
-            long millisToWait = min(remainingMillis, 50);
-            logger.debug("There are still {} open connections on server stop. Waiting {} milliseconds",
-                         clientConnections.size(), millisToWait);
-            clientConnections.wait(millisToWait);
-            remainingMillis = NANOSECONDS.toMillis(stopNanos - nanoTime());
-          }
-
-          if (!clientConnections.isEmpty()) {
-            logger.warn("There are still {} open connections on server stop.", clientConnections.size());
-          }
-        }
+        drainConnections(shutdownTimeout);
       }
 
       if (logger.isInfoEnabled()) {
         logger.info("Stopped listener on '{}'", listenerUrl());
       }
-    } catch (InterruptedException e) {
-      currentThread().interrupt();
     } finally {
       stopped = true;
       stopping = false;
@@ -154,6 +170,72 @@ public class GrizzlyHttpServer implements HttpServer, Supplier<ExecutorService>
     return this;
   }
 
+  /**
+   * Closes the idle connections, and makes the rest close as soon as their current response is sent. Waits until all of them
+   * are closed, or closes the remaining ones once the timeout elapses.
+   *
+   * @param timeoutMillis the maximum time to wait for the connections to finish their responses.
+   */
+  private void drainConnections(long timeoutMillis) {
+    final long startNanos = nanoTime();
+    final CompletableFuture<Void> drained = new CompletableFuture<>();
+    connectionsDrained = drained;
+    if (clientConnections.isEmpty()) {
+      drained.complete(null);
+    }
+
+    int connectionsCount = 0;
+    int idleConnectionsCount = 0;
+    for (Connection<?> clientConnection : clientConnections) {
+      connectionsCount++;
+      if (ConnectionDrainer.drain(clientConnection)) {
+        idleConnectionsCount++;
+      }
+    }
+    logger.debug("Draining {} connections of listener on '{}', {} of them were idle", connectionsCount, listenerUrl(),
+                 idleConnectionsCount);
+
+    int forciblyClosedCount = 0;
+    try {
+      drained.get(timeoutMillis, MILLISECONDS);
+    } catch (TimeoutException e) {
+      for (Connection<?> clientConnection : clientConnections) {
+        forciblyClosedCount++;
+        clientConnection.closeSilently();
+      }
+      logger.warn("There were still {} open connections on server stop, closed them.", forciblyClosedCount);
+    } catch (ExecutionException e) {
+      // The future is never completed exceptionally
+      logger.warn("Failed waiting for the connections of listener on '{}' to be drained.", listenerUrl(), e.getCause());
+    } catch (InterruptedException e) {
+      currentThread().interrupt();
+    } finally {
+      connectionsDrained = null;
+    }
+
+    lastDrainDurationMillis = NANOSECONDS.toMillis(nanoTime() - startNanos);
+    lastDrainForciblyClosedConnections = forciblyClosedCount;
+    if (logger.isInfoEnabled()) {
+      logger.info("Drained {} connections of listener on '{}' in {} ms, {} of them closed forcibly", connectionsCount,
+                  listenerUrl(), lastDrainDurationMillis, forciblyClosedCount);
+    }
+  }
+
+  /**
+   * @return how long it took to drain the connections the last time this server was stopped, or {@code -1} if it wasn't.
+   */
+  public long getLastDrainDurationMillis() {
+    return lastDrainDurationMillis;
+  }
+
+  /**
+   * @return the amount of connections that were still busy when the shutdown timeout elapsed the last time this server was
+   *         stopped, so they had to be closed forcibly.
+   */
+  public int getLastDrainForciblyClosedConnections() {
+    return lastDrainForciblyClosedConnections;
+  }
+
   @Override
   public void dispose() {
     // Nothing to do
@@ -202,6 +284,31 @@ public class GrizzlyHttpServer implements HttpServer, Supplier<ExecutorService>
     return new SseHandlerManagerAdapter(addRequestHandler(ssePath, new SseRequestHandler(onRequest, onClient)));
   }
 
+  /**
+   * Gets the topic with the given name, creating it if needed, to broadcast Server Sent Events to the clients of this server
+   * subscribed to it. The topics are closed when the server is stopped.
+   *
+   * @param name the name of the topic.
+   * @return the topic.
+   */
+  public SseTopic sseTopic(String name) {
+    return sseTopics.compute(name, (topicName, topic) -> topic == null || topic.isClosed() ? new SseTopic(topicName) : topic);
+  }
+
+  /**
+   * @return the statistics of each SSE topic of this server, by name.
+   */
+  public Map<String, SseTopicStatistics> getSseTopicsStatistics() {
+    Map<String, SseTopicStatistics> statistics = new HashMap<>();
+    sseTopics.forEach((name, topic) -> statistics.put(name, topic.getStatistics()));
+    return statistics;
+  }
+
+  private void closeSseTopics() {
+    sseTopics.values().forEach(SseTopic::close);
+    sseTopics.clear();
+  }
+
   private RequestHandler preservingTCCL(final RequestHandler requestHandler) {
     final ClassLoader creationClassLoader = currentThread().getContextClassLoader();
     return new RequestHandler() {
@@ -254,12 +361,9 @@ public class GrizzlyHttpServer implements HttpServer, Supplier<ExecutorService>
       clientConnections.add(clientConnection);
       clientConnection.addCloseListener((CloseListener) (closeable, iCloseType) -> {
         clientConnections.remove(clientConnection);
-        if (clientConnections.isEmpty()) {
-          synchronized (clientConnections) {
-            if (clientConnections.isEmpty()) {
-              clientConnections.notifyAll();
-            }
-          }
+        CompletableFuture<Void> drained = connectionsDrained;
+        if (drained != null && clientConnections.isEmpty()) {
+          drained.complete(null);
         }
       });
     }
@@ -282,6 +386,9 @@ public class GrizzlyHttpServer implements HttpServer, Supplier<ExecutorService>
         closeable.removeCloseListener(this);
         serverConnection.getMonitoringConfig().removeProbes(acceptedConnectionsProbe);
         acceptedConnectionsProbe = null;
+        if (metricsProbe != null) {
+          serverConnection.getMonitoringConfig().removeProbes(metricsProbe);
+        }
       }
     }
   }
@@ -12,8 +12,12 @@ import static org.mule.runtime.http.api.HttpConstants.Protocol.HTTPS;
 import static org.mule.runtime.http.api.HttpHeaders.Names.CONTENT_LENGTH;
 import static org.mule.runtime.http.api.HttpHeaders.Names.CONTENT_TYPE;
 import static org.mule.runtime.http.api.HttpHeaders.Names.EXPECT;
+import static org.mule.runtime.http.api.HttpHeaders.Names.RETRY_AFTER;
 import static org.mule.runtime.http.api.HttpHeaders.Values.CONTINUE;
+import static org.mule.service.http.impl.service.server.grizzly.ConnectionDrainer.requestStarted;
 import static org.mule.service.http.impl.service.server.grizzly.MuleSslFilter.SSL_SESSION_ATTRIBUTE_KEY;
+import static org.mule.service.http.impl.service.server.grizzly.RequestAdmissionController.Admission.QUEUED;
+import static org.mule.service.http.impl.service.server.grizzly.RequestAdmissionController.Admission.REJECTED;
 
 import static java.lang.String.valueOf;
 import static java.nio.charset.Charset.defaultCharset;
@@ -22,21 +26,28 @@ import static org.glassfish.grizzly.http.util.HttpStatus.CONINTUE_100;
 import static org.glassfish.grizzly.http.util.HttpStatus.EXPECTATION_FAILED_417;
 import static org.glassfish.grizzly.http.util.HttpStatus.SERVICE_UNAVAILABLE_503;
 import static org.glassfish.grizzly.memory.Buffers.wrap;
+import static org.slf4j.LoggerFactory.getLogger;
 
 import org.mule.runtime.http.api.domain.request.ServerConnection;
 import org.mule.runtime.http.api.server.RequestHandler;
 import org.mule.runtime.http.api.server.ServerAddress;
 import org.mule.service.http.impl.service.server.DefaultServerAddress;
 import org.mule.service.http.impl.service.server.RequestHandlerProvider;
+import org.mule.service.http.impl.service.server.ServerAddressMap;
+import org.mule.service.http.impl.service.server.grizzly.RequestAdmissionController.Admission;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.net.ssl.SSLSession;
 
+import org.glassfish.grizzly.Connection;
+import org.glassfish.grizzly.attributes.AttributeHolder;
 import org.glassfish.grizzly.filterchain.BaseFilter;
 import org.glassfish.grizzly.filterchain.FilterChainContext;
 import org.glassfish.grizzly.filterchain.FilterChainEvent;
@@ -47,30 +58,50 @@ import org.glassfish.grizzly.http.HttpEvents.OutgoingHttpUpgradeEvent;
 import org.glassfish.grizzly.http.HttpHeader;
 import org.glassfish.grizzly.http.HttpRequestPacket;
 import org.glassfish.grizzly.http.HttpResponsePacket;
+import org.slf4j.Logger;
 
 /**
  * Grizzly filter that dispatches the request to the right request handler
  */
 public class GrizzlyRequestDispatcherFilter extends BaseFilter {
 
+  private static final Logger LOGGER = getLogger(GrizzlyRequestDispatcherFilter.class);
+
   private final RequestHandlerProvider requestHandlerProvider;
 
   private final byte[] SERVER_NOT_AVAILABLE_CONTENT = ("Server not available to handle this request, either not initialized yet "
       + "or it has been disposed.").getBytes(defaultCharset());
+  private final byte[] SERVER_OVERLOADED_CONTENT =
+      "Server too busy to handle this request, try again later.".getBytes(defaultCharset());
+
+  static final String CONNECTION_SERVER_ATTRIBUTE = "__CONNECTION_SERVER__";
 
-  private ConcurrentMap<ServerAddress, AtomicInteger> activeRequests = new ConcurrentHashMap<>();
+  private final ConcurrentMap<ServerAddress, LongAdder> activeRequests = new ConcurrentHashMap<>();
+  private final ConcurrentMap<ServerAddress, CompletableFuture<Void>> noActiveRequestsFutures = new ConcurrentHashMap<>();
+  private final ServerAddressMap<ResponseChunkBufferPool> responseChunkBufferPools =
+      new ServerAddressMap<>(new ConcurrentHashMap<>());
+  private final ServerAddressMap<OutboundWriteQueue> outboundWriteQueues = new ServerAddressMap<>(new ConcurrentHashMap<>());
+  private final ServerAddressMap<RequestAdmissionController> admissionControllers =
+      new ServerAddressMap<>(new ConcurrentHashMap<>());
 
   GrizzlyRequestDispatcherFilter(final RequestHandlerProvider requestHandlerProvider) {
     this.requestHandlerProvider = requestHandlerProvider;
   }
 
+  @Override
+  public NextAction handleAccept(FilterChainContext ctx) throws IOException {
+    connectionServer(ctx.getConnection());
+    return ctx.getInvokeAction();
+  }
+
   @Override
   public NextAction handleRead(final FilterChainContext ctx) throws IOException {
-    InetSocketAddress localAddress = (InetSocketAddress) ctx.getConnection().getLocalAddress();
-    DefaultServerAddress serverAddress = new DefaultServerAddress(localAddress.getAddress(), localAddress.getPort());
+    final ConnectionServer connectionServer = connectionServer(ctx.getConnection());
+    final InetSocketAddress localAddress = connectionServer.localAddress;
+    final DefaultServerAddress serverAddress = connectionServer.serverAddress;
 
-    AtomicInteger serverCounter = activeRequests.computeIfAbsent(serverAddress, sa -> new AtomicInteger());
-    serverCounter.incrementAndGet();
+    final LongAdder serverCounter = connectionServer.activeRequests;
+    serverCounter.increment();
     try {
       if (ctx.getMessage() instanceof HttpContent) {
         final HttpContent httpContent = ctx.getMessage();
@@ -78,16 +109,7 @@ public class GrizzlyRequestDispatcherFilter extends BaseFilter {
 
         // Handle server disposal or initialize (async reconnection)
         if (!requestHandlerProvider.hasHandlerFor(serverAddress)) {
-          final HttpResponsePacket.Builder responsePacketBuilder = HttpResponsePacket.builder(request);
-          responsePacketBuilder.status(SERVICE_UNAVAILABLE_503.getStatusCode());
-          responsePacketBuilder.reasonPhrase(SERVICE_UNAVAILABLE_503.getReasonPhrase());
-
-          responsePacketBuilder.header(CONTENT_TYPE, TEXT.withCharset(defaultCharset()).toRfcString());
-          responsePacketBuilder.header(CONTENT_LENGTH, valueOf(SERVER_NOT_AVAILABLE_CONTENT.length));
-
-          ctx.write(HttpContent.builder(responsePacketBuilder.build())
-              .content(wrap(ctx.getMemoryManager(), SERVER_NOT_AVAILABLE_CONTENT))
-              .build());
+          sendServiceUnavailable(ctx, request, SERVER_NOT_AVAILABLE_CONTENT, -1);
           return ctx.getStopAction();
         }
 
@@ -110,20 +132,115 @@ public class GrizzlyRequestDispatcherFilter extends BaseFilter {
           }
         }
 
-        final GrizzlyHttpRequestAdapter httpRequest = new GrizzlyHttpRequestAdapter(ctx, httpContent, localAddress);
-        DefaultHttpRequestContext requestContext =
-            createRequestContext(ctx, (ctx.getAttributes().getAttribute(HTTPS.getScheme()) == null) ? HTTP.getScheme()
-                : HTTPS.getScheme(), httpRequest);
-        final RequestHandler requestHandler = requestHandlerProvider.getRequestHandler(serverAddress, httpRequest);
-        requestHandler.handleRequest(requestContext,
-                                     new GrizzlyHttpResponseReadyCallback(httpRequest, ctx, requestHandler, request));
+        // Handle overload
+        final RequestAdmissionController admissionController = admissionControllers.get(serverAddress);
+        if (admissionController != null && admissionController.isEnabled()) {
+          Admission admission = admissionController
+              .admit(ctx.getConnection(),
+                     () -> dispatchQueued(ctx, httpContent, localAddress, serverAddress),
+                     () -> {
+                       sendServiceUnavailable(ctx, request, SERVER_NOT_AVAILABLE_CONTENT, -1);
+                       ctx.resume(ctx.getStopAction());
+                     });
+          if (admission == REJECTED) {
+            sendServiceUnavailable(ctx, request, SERVER_OVERLOADED_CONTENT, admissionController.getRetryAfterSeconds());
+            return ctx.getStopAction();
+          } else if (admission == QUEUED) {
+            return ctx.getSuspendAction();
+          }
+        }
+
+        dispatch(ctx, httpContent, localAddress, serverAddress);
         return ctx.getSuspendAction();
       } else {
         return ctx.getInvokeAction();
       }
     } finally {
-      serverCounter.decrementAndGet();
+      serverCounter.decrement();
+      // Only sum the counter when a server is waiting for its requests to finish.
+      if (!noActiveRequestsFutures.isEmpty() && serverCounter.sum() == 0) {
+        CompletableFuture<Void> noActiveRequests = noActiveRequestsFutures.remove(serverAddress);
+        if (noActiveRequests != null) {
+          noActiveRequests.complete(null);
+        }
+      }
+    }
+  }
+
+  private void dispatch(FilterChainContext ctx, HttpContent httpContent, InetSocketAddress localAddress,
+                        DefaultServerAddress serverAddress) {
+    final HttpRequestPacket request = (HttpRequestPacket) httpContent.getHttpHeader();
+    final GrizzlyHttpRequestAdapter httpRequest = new GrizzlyHttpRequestAdapter(ctx, httpContent, localAddress);
+    DefaultHttpRequestContext requestContext =
+        createRequestContext(ctx, (ctx.getAttributes().getAttribute(HTTPS.getScheme()) == null) ? HTTP.getScheme()
+            : HTTPS.getScheme(), httpRequest);
+    final RequestHandler requestHandler = requestHandlerProvider.getRequestHandler(serverAddress, httpRequest);
+    requestStarted(ctx.getConnection());
+    requestHandler.handleRequest(requestContext,
+                                 new GrizzlyHttpResponseReadyCallback(httpRequest, ctx, requestHandler, request,
+                                                                      responseChunkBufferPools.get(serverAddress),
+                                                                      outboundWriteQueues.get(serverAddress)));
+  }
+
+  /**
+   * Dispatches a request that waited for admission. This is called by the thread that finished another request, so the request
+   * is handed to the worker pool of the transport, if there is one.
+   */
+  private void dispatchQueued(FilterChainContext ctx, HttpContent httpContent, InetSocketAddress localAddress,
+                              DefaultServerAddress serverAddress) {
+    Runnable dispatch = () -> {
+      try {
+        dispatch(ctx, httpContent, localAddress, serverAddress);
+      } catch (Exception e) {
+        LOGGER.warn("Dispatch of a request for {} that waited for admission failed", serverAddress, e);
+        ctx.getConnection().closeSilently();
+      }
+    };
+
+    Executor workerPool = ctx.getConnection().getTransport().getWorkerThreadPool();
+    if (workerPool != null) {
+      workerPool.execute(dispatch);
+    } else {
+      dispatch.run();
+    }
+  }
+
+  /**
+   * Writes a {@code 503 Service Unavailable} response with the given text.
+   *
+   * @param retryAfterSeconds the value of the {@code Retry-After} header, or a non-positive value to not send it.
+   */
+  private void sendServiceUnavailable(FilterChainContext ctx, HttpRequestPacket request, byte[] content, int retryAfterSeconds) {
+    final HttpResponsePacket.Builder responsePacketBuilder = HttpResponsePacket.builder(request);
+    responsePacketBuilder.status(SERVICE_UNAVAILABLE_503.getStatusCode());
+    responsePacketBuilder.reasonPhrase(SERVICE_UNAVAILABLE_503.getReasonPhrase());
+
+    responsePacketBuilder.header(CONTENT_TYPE, TEXT.withCharset(defaultCharset()).toRfcString());
+    responsePacketBuilder.header(CONTENT_LENGTH, valueOf(content.length));
+    if (retryAfterSeconds > 0) {
+      responsePacketBuilder.header(RETRY_AFTER, valueOf(retryAfterSeconds));
+    }
+
+    ctx.write(HttpContent.builder(responsePacketBuilder.build())
+        .content(wrap(ctx.getMemoryManager(), content))
+        .build());
+  }
+
+  /**
+   * The server a connection was accepted by doesn't change, so it's resolved once and kept in the attributes of the connection,
+   * sparing the allocation of the address and the lookup of its counter on each request.
+   */
+  private ConnectionServer connectionServer(Connection<?> connection) {
+    AttributeHolder attributes = connection.getAttributes();
+    ConnectionServer connectionServer = (ConnectionServer) attributes.getAttribute(CONNECTION_SERVER_ATTRIBUTE);
+    if (connectionServer == null) {
+      InetSocketAddress localAddress = (InetSocketAddress) connection.getLocalAddress();
+      DefaultServerAddress serverAddress = new DefaultServerAddress(localAddress.getAddress(), localAddress.getPort());
+      connectionServer =
+          new ConnectionServer(localAddress, serverAddress, activeRequests.computeIfAbsent(serverAddress, sa -> new LongAdder()));
+      attributes.setAttribute(CONNECTION_SERVER_ATTRIBUTE, connectionServer);
     }
+    return connectionServer;
   }
 
   private DefaultHttpRequestContext createRequestContext(FilterChainContext ctx, String scheme,
@@ -139,9 +256,113 @@ public class GrizzlyRequestDispatcherFilter extends BaseFilter {
     return new DefaultHttpRequestContext(scheme, httpRequest, clientConnection, serverConnection);
   }
 
+  /**
+   * Sets the pool of buffers used to send the streamed responses of the server listening in the given address.
+   *
+   * @param serverAddress the address of the server
+   * @param pool          the pool to use for its responses
+   */
+  public void addResponseChunkBufferPool(ServerAddress serverAddress, ResponseChunkBufferPool pool) {
+    responseChunkBufferPools.put(serverAddress, pool);
+  }
+
+  /**
+   * Removes and disposes the pool of buffers of the server listening in the given address, if any.
+   *
+   * @param serverAddress the address of the server
+   */
+  public void removeResponseChunkBufferPool(ServerAddress serverAddress) {
+    ResponseChunkBufferPool pool = responseChunkBufferPools.remove(serverAddress);
+    if (pool != null) {
+      pool.dispose();
+    }
+  }
+
+  /**
+   * @param serverAddress the address of the server
+   * @return the pool of buffers used to send the streamed responses of the server, or {@code null} if there is none
+   */
+  public ResponseChunkBufferPool responseChunkBufferPoolFor(ServerAddress serverAddress) {
+    return responseChunkBufferPools.get(serverAddress);
+  }
+
+  /**
+   * Sets the queue that keeps track of the bytes pending to be written to the connections of the server listening in the given
+   * address.
+   *
+   * @param serverAddress the address of the server
+   * @param writeQueue    the queue to use for its responses
+   */
+  public void addOutboundWriteQueue(ServerAddress serverAddress, OutboundWriteQueue writeQueue) {
+    outboundWriteQueues.put(serverAddress, writeQueue);
+  }
+
+  /**
+   * Removes the outbound queue of the server listening in the given address, if any.
+   *
+   * @param serverAddress the address of the server
+   */
+  public void removeOutboundWriteQueue(ServerAddress serverAddress) {
+    outboundWriteQueues.remove(serverAddress);
+  }
+
+  /**
+   * @param serverAddress the address of the server
+   * @return the queue of bytes pending to be written to the connections of the server, or {@code null} if there is none
+   */
+  public OutboundWriteQueue outboundWriteQueueFor(ServerAddress serverAddress) {
+    return outboundWriteQueues.get(serverAddress);
+  }
+
+  /**
+   * Sets the controller that limits the requests being handled at the same time by the server listening in the given address.
+   *
+   * @param serverAddress       the address of the server
+   * @param admissionController the controller to admit its requests with
+   */
+  public void addAdmissionController(ServerAddress serverAddress, RequestAdmissionController admissionController) {
+    admissionControllers.put(serverAddress, admissionController);
+  }
+
+  /**
+   * Removes the admission controller of the server listening in the given address, if any, rejecting the requests waiting to be
+   * admitted.
+   *
+   * @param serverAddress the address of the server
+   */
+  public void removeAdmissionController(ServerAddress serverAddress) {
+    RequestAdmissionController admissionController = admissionControllers.remove(serverAddress);
+    if (admissionController != null) {
+      admissionController.dispose();
+    }
+  }
+
+  /**
+   * @param serverAddress the address of the server
+   * @return the controller that limits the requests being handled by the server, or {@code null} if there is none
+   */
+  public RequestAdmissionController admissionControllerFor(ServerAddress serverAddress) {
+    return admissionControllers.get(serverAddress);
+  }
+
   public int activeRequestsFor(ServerAddress serverAddress) {
-    AtomicInteger addressActiveRequests = activeRequests.get(serverAddress);
-    return addressActiveRequests == null ? 0 : addressActiveRequests.get();
+    LongAdder addressActiveRequests = activeRequests.get(serverAddress);
+    return addressActiveRequests == null ? 0 : addressActiveRequests.intValue();
+  }
+
+  /**
+   * @param serverAddress the address of the server
+   * @return a future completed as soon as no request of the server is being dispatched, which may be right away.
+   */
+  public CompletableFuture<Void> noActiveRequestsFor(ServerAddress serverAddress) {
+    CompletableFuture<Void> noActiveRequests =
+        noActiveRequestsFutures.computeIfAbsent(serverAddress, sa -> new CompletableFuture<>());
+    // The last request may have finished before the future was registered.
+    if (activeRequestsFor(serverAddress) == 0) {
+      noActiveRequestsFutures.remove(serverAddress, noActiveRequests);
+      noActiveRequests.complete(null);
+    }
+    return noActiveRequests;
   }
 
   @Override
@@ -173,4 +394,20 @@ public class GrizzlyRequestDispatcherFilter extends BaseFilter {
     final String upgrade = header.getHeader("upgrade");
     return "WebSocket".equalsIgnoreCase(upgrade);
   }
+
+  /**
+   * The address of the server a connection was accepted by, along with the counter of the requests being dispatched for it.
+   */
+  private static final class ConnectionServer {
+
+    private final InetSocketAddress localAddress;
+    private final DefaultServerAddress serverAddress;
+    private final LongAdder activeRequests;
+
+    private ConnectionServer(InetSocketAddress localAddress, DefaultServerAddress serverAddress, LongAdder activeRequests) {
+      this.localAddress = localAddress;
+      this.serverAddress = serverAddress;
+      this.activeRequests = activeRequests;
+    }
+  }
 }
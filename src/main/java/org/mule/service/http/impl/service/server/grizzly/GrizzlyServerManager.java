@@ -10,7 +10,6 @@ import static java.lang.Boolean.parseBoolean;
 import static java.lang.Integer.getInteger;
 import static java.lang.Integer.valueOf;
 import static java.lang.String.format;
-import static java.lang.System.currentTimeMillis;
 import static java.lang.System.getProperty;
 import static java.lang.Thread.currentThread;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
@@ -38,13 +37,19 @@ import org.mule.service.http.impl.service.server.HttpListenerRegistry;
 import org.mule.service.http.impl.service.server.HttpServerDelegate;
 import org.mule.service.http.impl.service.server.HttpServerManager;
 import org.mule.service.http.impl.service.server.ServerIdentifier;
+import org.mule.service.http.impl.service.util.PathsCacheStatistics;
 
 import java.io.IOException;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Supplier;
 
+import org.glassfish.grizzly.ConnectionProbe;
 import org.glassfish.grizzly.filterchain.FilterChainBuilder;
 import org.glassfish.grizzly.filterchain.TransportFilter;
 import org.glassfish.grizzly.http.HttpServerFilter;
@@ -91,6 +96,11 @@ public class GrizzlyServerManager implements HttpServerManager {
 
   public static final long DEFAULT_READ_TIMEOUT_MILLIS = 30000L;
 
+  // Defines the bytes that may be pending to be written in each connection before the responses wait for the client to consume
+  // them. If not set, Grizzly uses four times the size of the socket send buffer.
+  public static final String MAX_PENDING_WRITE_BYTES_PER_CONNECTION_PROPERTY =
+      SYSTEM_PROPERTY_PREFIX + "http.server.maxPendingWriteBytesPerConnection";
+
   private final GrizzlyAddressDelegateFilter<IdleTimeoutFilter> timeoutFilterDelegate;
   protected final GrizzlyAddressDelegateFilter<SSLFilter> sslFilterDelegate;
   protected final GrizzlyAddressDelegateFilter<WebSocketFilter> webSocketFilter;
@@ -103,6 +113,7 @@ public class GrizzlyServerManager implements HttpServerManager {
   private final Map<ServerAddress, HttpServer> servers = new ConcurrentHashMap<>();
   private final Map<ServerIdentifier, HttpServer> serversByIdentifier = new ConcurrentHashMap<>();
   private final Map<ServerAddress, IdleExecutor> idleExecutorPerServerAddressMap = new ConcurrentHashMap<>();
+  private final Map<ServerAddress, ListenerMetrics> listenerMetrics = new ConcurrentHashMap<>();
 
   private boolean transportStarted;
   private int serverTimeout;
@@ -148,6 +159,11 @@ public class GrizzlyServerManager implements HttpServerManager {
     transport.setWorkerThreadPool(workerPool);
     transport.setKernelThreadPool(selectorPool);
 
+    Integer maxPendingWriteBytesPerConnection = getInteger(MAX_PENDING_WRITE_BYTES_PER_CONNECTION_PROPERTY);
+    if (maxPendingWriteBytesPerConnection != null) {
+      transport.getAsyncQueueIO().getWriter().setMaxPendingBytesPerConnection(maxPendingWriteBytesPerConnection);
+    }
+
     // Set filterchain as a Transport Processor
     transport.setProcessor(serverFilterChainBuilder.build());
 
@@ -249,12 +265,16 @@ public class GrizzlyServerManager implements HttpServerManager {
     this.transport.setReadTimeout(readTimeout, MILLISECONDS);
     startTransportIfNotStarted();
     DelayedExecutor delayedExecutor = createAndGetDelayedExecutor(serverAddress);
+    requestHandlerFilter.addResponseChunkBufferPool(serverAddress, new ResponseChunkBufferPool(transport.getMemoryManager()));
+    requestHandlerFilter.addOutboundWriteQueue(serverAddress, new OutboundWriteQueue(workerExecutorFor(serverAddress)));
+    requestHandlerFilter.addAdmissionController(serverAddress, new RequestAdmissionController());
+    ListenerMetrics metrics = createListenerMetrics(serverAddress);
     addTimeoutFilter(serverAddress, usePersistentConnections, connectionIdleTimeout, delayedExecutor);
     sslFilterDelegate.addFilterForAddress(serverAddress, createSslFilter(tlsContextFactory));
     httpServerFilterDelegate
         .addFilterForAddress(serverAddress,
                              createHttpServerFilter(connectionIdleTimeout, usePersistentConnections, delayedExecutor,
-                                                    identifier));
+                                                    identifier, metrics));
 
     final ManagedGrizzlyHttpServer grizzlyServer = getManagedServerAndWrapSupplier(serverAddress, schedulerSupplier, identifier,
                                                                                    shutdownTimeout);
@@ -273,10 +293,38 @@ public class GrizzlyServerManager implements HttpServerManager {
                                                               schedulerSupplier,
                                                               () -> executorProvider.removeExecutor(serverAddress),
                                                               sslFilterDelegate,
-                                                              shutdownTimeout),
+                                                              shutdownTimeout,
+                                                              metricsProbeFor(serverAddress)),
                                         identifier);
   }
 
+  /**
+   * @return an executor that runs the tasks in the worker executor of the server, which is only available once it's started.
+   */
+  private Executor workerExecutorFor(ServerAddress serverAddress) {
+    return command -> {
+      Executor executor = executorProvider.getExecutor(serverAddress);
+      if (executor == null) {
+        throw new RejectedExecutionException("Server " + serverAddress + " is not started");
+      }
+      executor.execute(command);
+    };
+  }
+
+  private ListenerMetrics createListenerMetrics(ServerAddress serverAddress) {
+    if (!ListenerMetrics.isEnabled()) {
+      return null;
+    }
+    ListenerMetrics metrics = new ListenerMetrics();
+    listenerMetrics.put(serverAddress, metrics);
+    return metrics;
+  }
+
+  private ConnectionProbe metricsProbeFor(ServerAddress serverAddress) {
+    ListenerMetrics metrics = listenerMetrics.get(serverAddress);
+    return metrics == null ? null : metrics.getConnectionProbe();
+  }
+
   @Override
   public HttpServer createServerFor(ServerAddress serverAddress, Supplier<Scheduler> schedulerSupplier,
                                     boolean usePersistentConnections, int connectionIdleTimeout, ServerIdentifier identifier,
@@ -298,11 +346,15 @@ public class GrizzlyServerManager implements HttpServerManager {
     this.transport.setReadTimeout(readTimeout, MILLISECONDS);
     startTransportIfNotStarted();
     DelayedExecutor delayedExecutor = createAndGetDelayedExecutor(serverAddress);
+    requestHandlerFilter.addResponseChunkBufferPool(serverAddress, new ResponseChunkBufferPool(transport.getMemoryManager()));
+    requestHandlerFilter.addOutboundWriteQueue(serverAddress, new OutboundWriteQueue(workerExecutorFor(serverAddress)));
+    requestHandlerFilter.addAdmissionController(serverAddress, new RequestAdmissionController());
+    ListenerMetrics metrics = createListenerMetrics(serverAddress);
     addTimeoutFilter(serverAddress, usePersistentConnections, connectionIdleTimeout, delayedExecutor);
     httpServerFilterDelegate
         .addFilterForAddress(serverAddress,
                              createHttpServerFilter(connectionIdleTimeout, usePersistentConnections, delayedExecutor,
-                                                    identifier));
+                                                    identifier, metrics));
 
     final ManagedGrizzlyHttpServer grizzlyServer = getManagedServerAndWrapSupplier(serverAddress, schedulerSupplier, identifier,
                                                                                    shutdownTimeout);
@@ -355,7 +407,8 @@ public class GrizzlyServerManager implements HttpServerManager {
   }
 
   private HttpServerFilter createHttpServerFilter(int connectionIdleTimeout, boolean usePersistentConnections,
-                                                  DelayedExecutor delayedExecutor, ServerIdentifier identifier) {
+                                                  DelayedExecutor delayedExecutor, ServerIdentifier identifier,
+                                                  ListenerMetrics metrics) {
     KeepAlive ka = null;
     if (usePersistentConnections) {
       ka = new KeepAlive();
@@ -371,6 +424,9 @@ public class GrizzlyServerManager implements HttpServerManager {
                              MAX_SERVER_REQUEST_HEADERS, MAX_SERVER_RESPONSE_HEADERS);
     httpServerFilter.getMonitoringConfig()
         .addProbes(new HttpMessageLogger(LISTENER, identifier.getName(), currentThread().getContextClassLoader()));
+    if (metrics != null) {
+      httpServerFilter.getMonitoringConfig().addProbes(metrics.getHttpProbe());
+    }
     httpServerFilter.setAllowPayloadForUndefinedHttpMethods(ALLOW_PAYLOAD_FOR_UNDEFINED_METHODS);
     return httpServerFilter;
   }
@@ -400,6 +456,57 @@ public class GrizzlyServerManager implements HttpServerManager {
     }
   }
 
+  /**
+   * @param serverAddress the address of a server created by this manager
+   * @return the pool of buffers used to send the streamed responses of the server, with the amount of buffers pooled and
+   *         outstanding, or {@code null} if there is none
+   */
+  public ResponseChunkBufferPool getResponseChunkBufferPool(ServerAddress serverAddress) {
+    return requestHandlerFilter.responseChunkBufferPoolFor(serverAddress);
+  }
+
+  /**
+   * @param serverAddress the address of a server created by this manager
+   * @return the statistics of the chunks sent by the streamed responses of the server, with the sizes chosen by the adaptive
+   *         chunk sizing, or {@code null} if there are none
+   */
+  public ResponseChunkStatistics getResponseChunkStatistics(ServerAddress serverAddress) {
+    ResponseChunkBufferPool pool = requestHandlerFilter.responseChunkBufferPoolFor(serverAddress);
+    return pool != null ? pool.getChunkStatistics() : null;
+  }
+
+  /**
+   * @param serverAddress the address of a server created by this manager
+   * @return the queue of bytes pending to be written to the connections of the server, or {@code null} if there is none
+   */
+  public OutboundWriteQueue getOutboundWriteQueue(ServerAddress serverAddress) {
+    return requestHandlerFilter.outboundWriteQueueFor(serverAddress);
+  }
+
+  /**
+   * @param serverAddress the address of a server created by this manager
+   * @return the controller that limits the requests being handled by the server, or {@code null} if there is none
+   */
+  public RequestAdmissionController getAdmissionController(ServerAddress serverAddress) {
+    return requestHandlerFilter.admissionControllerFor(serverAddress);
+  }
+
+  /**
+   * @param serverAddress the address of a server created by this manager
+   * @return the metrics of the requests and connections of the server, or {@code null} if the metrics are disabled
+   */
+  public ListenerMetrics getListenerMetrics(ServerAddress serverAddress) {
+    return listenerMetrics.get(serverAddress);
+  }
+
+  /**
+   * @param serverAddress the address of a server created by this manager
+   * @return the statistics of the cache of resolved request paths of the server, or {@code null} if it has no handlers
+   */
+  public PathsCacheStatistics getPathsCacheStatistics(ServerAddress serverAddress) {
+    return httpListenerRegistry.getPathsCacheStatistics(serverAddress).orElse(null);
+  }
+
   public static void refreshSystemProperties() {
     MAX_SERVER_REQUEST_HEADERS = getInteger(MAX_SERVER_REQUEST_HEADERS_KEY, MAX_NUM_HEADERS_DEFAULT);
     MAX_SERVER_RESPONSE_HEADERS = getInteger(MAX_SERVER_RESPONSE_HEADERS_KEY, MAX_NUM_HEADERS_DEFAULT);
@@ -433,25 +540,25 @@ public class GrizzlyServerManager implements HttpServerManager {
       serversByIdentifier.remove(identifier);
       httpListenerRegistry.removeHandlersFor(this.getDelegate());
 
-      long startTime = currentTimeMillis();
-      while (requestHandlerFilter.activeRequestsFor(serverAddress) > 0) {
-        if (currentTimeMillis() > startTime + DISPOSE_TIMEOUT_MILLIS) {
-          LOGGER.warn("Dispose of http server for {} timed out.", serverAddress);
-          break;
-        }
-
-        try {
-          Thread.sleep(50);
-        } catch (InterruptedException e) {
-          // Reset interrupt flag and continue with the disposal
-          currentThread().interrupt();
-          break;
-        }
+      try {
+        requestHandlerFilter.noActiveRequestsFor(serverAddress).get(DISPOSE_TIMEOUT_MILLIS, MILLISECONDS);
+      } catch (TimeoutException e) {
+        LOGGER.warn("Dispose of http server for {} timed out.", serverAddress);
+      } catch (ExecutionException e) {
+        // The future is never completed exceptionally
+        LOGGER.warn("Dispose of http server for {} failed waiting for the active requests.", serverAddress, e.getCause());
+      } catch (InterruptedException e) {
+        // Reset interrupt flag and continue with the disposal
+        currentThread().interrupt();
       }
 
       httpServerFilterDelegate.removeFilterForAddress(serverAddress);
       sslFilterDelegate.removeFilterForAddress(serverAddress);
       timeoutFilterDelegate.removeFilterForAddress(serverAddress);
+      requestHandlerFilter.removeResponseChunkBufferPool(serverAddress);
+      requestHandlerFilter.removeOutboundWriteQueue(serverAddress);
+      requestHandlerFilter.removeAdmissionController(serverAddress);
+      listenerMetrics.remove(serverAddress);
       idleExecutorPerServerAddressMap.get(serverAddress).dispose();
       idleExecutorPerServerAddressMap.remove(serverAddress);
     }
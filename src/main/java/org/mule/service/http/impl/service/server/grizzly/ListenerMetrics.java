@@ -0,0 +1,268 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.service.server.grizzly;
+
+import static org.mule.runtime.api.util.MuleSystemProperties.SYSTEM_PROPERTY_PREFIX;
+
+import static java.lang.Boolean.getBoolean;
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import org.mule.service.http.impl.util.LatencyHistogram;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.glassfish.grizzly.Buffer;
+import org.glassfish.grizzly.CloseListener;
+import org.glassfish.grizzly.Connection;
+import org.glassfish.grizzly.ConnectionProbe;
+import org.glassfish.grizzly.http.HttpHeader;
+import org.glassfish.grizzly.http.HttpProbe;
+import org.glassfish.grizzly.http.HttpResponsePacket;
+
+/**
+ * Metrics of the requests and connections of a server, polled through its getters.
+ * <p>
+ * They are recorded by Grizzly probes: an {@link HttpProbe} in the HTTP filter of the server, for the requests, responses and
+ * bytes, and a {@link ConnectionProbe} in its server connection, for the accepted connections. Those probes are only registered
+ * when the metrics are enabled through {@link #ENABLED_PROPERTY}, so they have no cost otherwise.
+ * <p>
+ * The counters only grow (except for the current ones), so rates are derived by the pollers from two consecutive readings. The
+ * latency of a request goes from the moment its headers are parsed until the headers of its response are written, so streamed
+ * responses are measured up to their first byte. A request whose connection is closed before its response is written stops
+ * being active, without a latency.
+ *
+ * @since 1.12
+ */
+public final class ListenerMetrics {
+
+  public static final String ENABLED_PROPERTY = SYSTEM_PROPERTY_PREFIX + "http.server.metrics.enabled";
+
+  static final String CONNECTION_METRICS_ATTRIBUTE = "__LISTENER_METRICS__";
+
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder reusedConnectionRequests = new LongAdder();
+  private final LongAdder responses = new LongAdder();
+  private final LongAdder activeRequests = new LongAdder();
+  private final LongAdder[] responsesByStatusClass = new LongAdder[5];
+  private final LongAdder receivedBytes = new LongAdder();
+  private final LongAdder sentBytes = new LongAdder();
+  private final LongAdder acceptedConnections = new LongAdder();
+  private final LongAdder closedConnections = new LongAdder();
+  private final LatencyHistogram latency = new LatencyHistogram();
+
+  private final HttpProbe httpProbe = new MetricsHttpProbe();
+  private final ConnectionProbe connectionProbe = new MetricsConnectionProbe();
+
+  public ListenerMetrics() {
+    for (int i = 0; i < responsesByStatusClass.length; ++i) {
+      responsesByStatusClass[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * @return whether the metrics of the listeners have to be recorded.
+   */
+  public static boolean isEnabled() {
+    return getBoolean(ENABLED_PROPERTY);
+  }
+
+  /**
+   * @return the probe to add to the HTTP filter of the server.
+   */
+  HttpProbe getHttpProbe() {
+    return httpProbe;
+  }
+
+  /**
+   * @return the probe to add to the server connection of the server.
+   */
+  ConnectionProbe getConnectionProbe() {
+    return connectionProbe;
+  }
+
+  private void requestReceived(Connection<?> connection) {
+    ConnectionMetrics connectionMetrics = connectionMetrics(connection);
+    if (connectionMetrics == null) {
+      // The requests of a connection are parsed one after the other, so there's no race creating them.
+      connectionMetrics = new ConnectionMetrics();
+      connection.getAttributes().setAttribute(CONNECTION_METRICS_ATTRIBUTE, connectionMetrics);
+    }
+    requests.increment();
+    if (connectionMetrics.requests++ > 0) {
+      reusedConnectionRequests.increment();
+    }
+    if (connectionMetrics.requestStartNanos.getAndSet(nanoTime()) == 0) {
+      activeRequests.increment();
+    }
+  }
+
+  private void responseSent(Connection<?> connection, int status) {
+    int statusClass = status / 100;
+    if (statusClass >= 1 && statusClass <= 5) {
+      responsesByStatusClass[statusClass - 1].increment();
+    }
+    if (statusClass == 1) {
+      // Informational, the actual response of the request comes later
+      return;
+    }
+
+    responses.increment();
+    ConnectionMetrics connectionMetrics = connectionMetrics(connection);
+    if (connectionMetrics == null) {
+      return;
+    }
+    // Cleared atomically, as the connection may be closed meanwhile
+    long requestStartNanos = connectionMetrics.requestStartNanos.getAndSet(0);
+    if (requestStartNanos != 0) {
+      activeRequests.decrement();
+      latency.record(NANOSECONDS.toMicros(nanoTime() - requestStartNanos));
+    }
+  }
+
+  private void connectionClosed(Connection<?> connection) {
+    closedConnections.increment();
+    ConnectionMetrics connectionMetrics = connectionMetrics(connection);
+    if (connectionMetrics != null && connectionMetrics.requestStartNanos.getAndSet(0) != 0) {
+      // The request failed or its client went away before its response was written
+      activeRequests.decrement();
+    }
+  }
+
+  private static ConnectionMetrics connectionMetrics(Connection<?> connection) {
+    return (ConnectionMetrics) connection.getAttributes().getAttribute(CONNECTION_METRICS_ATTRIBUTE);
+  }
+
+  /**
+   * @return the amount of requests received.
+   */
+  public long getRequestsCount() {
+    return requests.sum();
+  }
+
+  /**
+   * @return the amount of requests received whose response wasn't sent yet.
+   */
+  public long getActiveRequestsCount() {
+    return activeRequests.sum();
+  }
+
+  /**
+   * @return the amount of requests received through a connection that was already used by a previous request.
+   */
+  public long getReusedConnectionRequestsCount() {
+    return reusedConnectionRequests.sum();
+  }
+
+  /**
+   * @return the ratio of requests that reused a kept alive connection, between 0 and 1.
+   */
+  public double getKeepAliveReuseRatio() {
+    long requestsCount = requests.sum();
+    return requestsCount == 0 ? 0 : (double) reusedConnectionRequests.sum() / requestsCount;
+  }
+
+  /**
+   * @param statusClass the first digit of the status codes, from 1 to 5.
+   * @return the amount of responses sent with a status of the given class.
+   */
+  public long getResponsesCount(int statusClass) {
+    if (statusClass < 1 || statusClass > 5) {
+      throw new IllegalArgumentException("Invalid status class " + statusClass);
+    }
+    return responsesByStatusClass[statusClass - 1].sum();
+  }
+
+  /**
+   * @return the amount of HTTP bytes received, after decryption.
+   */
+  public long getReceivedBytes() {
+    return receivedBytes.sum();
+  }
+
+  /**
+   * @return the amount of HTTP bytes sent, before encryption.
+   */
+  public long getSentBytes() {
+    return sentBytes.sum();
+  }
+
+  /**
+   * @return the amount of connections accepted.
+   */
+  public long getAcceptedConnectionsCount() {
+    return acceptedConnections.sum();
+  }
+
+  /**
+   * @return the amount of connections currently open.
+   */
+  public long getOpenConnectionsCount() {
+    return acceptedConnections.sum() - closedConnections.sum();
+  }
+
+  /**
+   * @return the latencies of the requests, until the headers of their responses are written.
+   */
+  public LatencyHistogram getLatency() {
+    return latency;
+  }
+
+  @Override
+  public String toString() {
+    return "ListenerMetrics{requests=" + getRequestsCount() + ", activeRequests=" + getActiveRequestsCount()
+        + ", openConnections=" + getOpenConnectionsCount() + ", keepAliveReuseRatio=" + getKeepAliveReuseRatio()
+        + ", receivedBytes=" + getReceivedBytes() + ", sentBytes=" + getSentBytes() + ", latency=" + latency + "}";
+  }
+
+  /**
+   * State of the request being handled in a connection.
+   */
+  private static final class ConnectionMetrics {
+
+    private int requests;
+    // Zero when there's no request waiting for its response
+    private final AtomicLong requestStartNanos = new AtomicLong();
+  }
+
+  private class MetricsHttpProbe extends HttpProbe.Adapter {
+
+    @Override
+    public void onDataReceivedEvent(Connection connection, Buffer buffer) {
+      receivedBytes.add(buffer.remaining());
+    }
+
+    @Override
+    public void onDataSentEvent(Connection connection, Buffer buffer) {
+      sentBytes.add(buffer.remaining());
+    }
+
+    @Override
+    public void onHeaderParseEvent(Connection connection, HttpHeader header, int size) {
+      if (header.isRequest()) {
+        requestReceived(connection);
+      }
+    }
+
+    @Override
+    public void onHeaderSerializeEvent(Connection connection, HttpHeader header, Buffer buffer) {
+      if (!header.isRequest()) {
+        responseSent(connection, ((HttpResponsePacket) header).getStatus());
+      }
+    }
+  }
+
+  private class MetricsConnectionProbe extends ConnectionProbe.Adapter {
+
+    @Override
+    public void onAcceptEvent(Connection serverConnection, Connection clientConnection) {
+      acceptedConnections.increment();
+      clientConnection.addCloseListener((CloseListener) (closeable, closeType) -> connectionClosed(clientConnection));
+    }
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.service.server.grizzly;
+
+import static org.mule.runtime.api.util.MuleSystemProperties.SYSTEM_PROPERTY_PREFIX;
+
+import static java.lang.Long.getLong;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+
+/**
+ * Keeps track of the bytes of the responses of a server that were handed to Grizzly but not written to the sockets yet.
+ * <p>
+ * When a limit is configured, the responses that write in several steps (streamed and delayed ones) check whether the queue has
+ * space before writing more data, and wait until enough queued bytes are written otherwise, so that many slow clients can't make
+ * the pending data of a server pile up in memory.
+ * <p>
+ * The writers are resumed in the given executor, since the bytes are usually written in a selector thread, which must not run
+ * the reads of the writers.
+ *
+ * @since 1.12
+ */
+public class OutboundWriteQueue {
+
+  public static final String MAX_QUEUED_BYTES_PROPERTY = SYSTEM_PROPERTY_PREFIX + "http.server.maxQueuedOutboundBytes";
+
+  private static final Logger LOGGER = getLogger(OutboundWriteQueue.class);
+
+  private final long maxQueuedBytes;
+  private final Executor writersExecutor;
+
+  private final AtomicLong queuedBytes = new AtomicLong();
+  private final LongAccumulator peakQueuedBytes = new LongAccumulator(Long::max, 0);
+  private final LongAdder suspendedWrites = new LongAdder();
+  private final Queue<Runnable> waitingWriters = new ConcurrentLinkedQueue<>();
+
+  /**
+   * @param writersExecutor where to resume the writers that waited for the queue to have space.
+   */
+  public OutboundWriteQueue(Executor writersExecutor) {
+    this(getLong(MAX_QUEUED_BYTES_PROPERTY, -1L), writersExecutor);
+  }
+
+  /**
+   * Creates a queue that resumes the writers in the thread that makes space for them.
+   *
+   * @param maxQueuedBytes the amount of queued bytes from which the writers have to wait, or a non-positive value for no limit.
+   */
+  public OutboundWriteQueue(long maxQueuedBytes) {
+    this(maxQueuedBytes, Runnable::run);
+  }
+
+  /**
+   * @param maxQueuedBytes  the amount of queued bytes from which the writers have to wait, or a non-positive value for no limit.
+   * @param writersExecutor where to resume the writers that waited for the queue to have space.
+   */
+  public OutboundWriteQueue(long maxQueuedBytes, Executor writersExecutor) {
+    this.maxQueuedBytes = maxQueuedBytes;
+    this.writersExecutor = writersExecutor;
+  }
+
+  /**
+   * @param bytes the amount of bytes handed to Grizzly to be written.
+   */
+  void queued(long bytes) {
+    peakQueuedBytes.accumulate(queuedBytes.addAndGet(bytes));
+  }
+
+  /**
+   * @param bytes the amount of bytes previously {@link #queued(long) queued} that were written or discarded.
+   */
+  void written(long bytes) {
+    queuedBytes.addAndGet(-bytes);
+    notifyWaitingWriters();
+  }
+
+  /**
+   * @return whether more bytes may be queued without exceeding the limit.
+   */
+  boolean hasSpace() {
+    return maxQueuedBytes <= 0 || queuedBytes.get() < maxQueuedBytes;
+  }
+
+  /**
+   * Runs the given writer in the executor of the queue once the queue has space, which may be right away.
+   *
+   * @param writer the writer to run, which must check again whether there is space before writing.
+   */
+  void notifyWhenSpace(Runnable writer) {
+    suspendedWrites.increment();
+    waitingWriters.add(writer);
+    // The queue may have been drained before the writer was added.
+    notifyWaitingWriters();
+  }
+
+  /**
+   * Stops waiting for space for the given writer, for instance because it gave up waiting.
+   *
+   * @param writer a writer passed to {@link #notifyWhenSpace(Runnable)}.
+   * @return whether the writer was still waiting, so it won't be run.
+   */
+  boolean removeWaitingWriter(Runnable writer) {
+    return waitingWriters.remove(writer);
+  }
+
+  private void notifyWaitingWriters() {
+    Runnable writer;
+    while (hasSpace() && (writer = waitingWriters.poll()) != null) {
+      resume(writer);
+    }
+  }
+
+  private void resume(Runnable writer) {
+    try {
+      writersExecutor.execute(() -> run(writer));
+    } catch (RejectedExecutionException e) {
+      // The server is being stopped, the writer is resumed anyway so that its response doesn't hang.
+      LOGGER.debug("Executor rejected the writer waiting for space in the outbound queue, running it right away", e);
+      run(writer);
+    }
+  }
+
+  private static void run(Runnable writer) {
+    try {
+      writer.run();
+    } catch (Exception e) {
+      LOGGER.warn("Writer waiting for space in the outbound queue failed", e);
+    }
+  }
+
+  /**
+   * @return the configured limit, or a non-positive value if there is none.
+   */
+  public long getMaxQueuedBytes() {
+    return maxQueuedBytes;
+  }
+
+  /**
+   * @return the bytes currently waiting to be written to the connections of the server.
+   */
+  public long getQueuedBytes() {
+    return queuedBytes.get();
+  }
+
+  /**
+   * @return the highest amount of bytes waiting to be written at the same time.
+   */
+  public long getPeakQueuedBytes() {
+    return peakQueuedBytes.get();
+  }
+
+  /**
+   * @return the amount of times a writer had to wait for the queue to have space.
+   */
+  public long getSuspendedWritesCount() {
+    return suspendedWrites.sum();
+  }
+
+  /**
+   * @return the amount of writers currently waiting for the queue to have space.
+   */
+  public int getWaitingWritersCount() {
+    return waitingWriters.size();
+  }
+
+  @Override
+  public String toString() {
+    return "OutboundWriteQueue{queuedBytes=" + getQueuedBytes() + ", peakQueuedBytes=" + getPeakQueuedBytes()
+        + ", maxQueuedBytes=" + maxQueuedBytes + ", suspendedWrites=" + getSuspendedWritesCount() + "}";
+  }
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.service.server.grizzly;
+
+import static org.mule.runtime.api.util.MuleSystemProperties.SYSTEM_PROPERTY_PREFIX;
+import static org.mule.service.http.impl.service.server.grizzly.RequestAdmissionController.Admission.ADMITTED;
+import static org.mule.service.http.impl.service.server.grizzly.RequestAdmissionController.Admission.QUEUED;
+import static org.mule.service.http.impl.service.server.grizzly.RequestAdmissionController.Admission.REJECTED;
+
+import static java.lang.Boolean.getBoolean;
+import static java.lang.Integer.getInteger;
+import static java.lang.Long.getLong;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.glassfish.grizzly.CloseListener;
+import org.glassfish.grizzly.Closeable;
+import org.glassfish.grizzly.Connection;
+import org.glassfish.grizzly.ICloseType;
+import org.glassfish.grizzly.attributes.AttributeHolder;
+import org.slf4j.Logger;
+
+/**
+ * Limits the amount of requests of a server that are being handled at the same time, so that bursts are rejected early with a
+ * {@code 503 Service Unavailable} instead of piling up in the schedulers of the flows until they time out.
+ * <p>
+ * A request is in flight from the moment it's dispatched to its handler until its response is sent (or fails, or its connection
+ * is closed). Requests received while the limit is reached wait in a bounded queue, and are dispatched in arrival order as the
+ * requests in flight finish. Requests that don't fit in the queue are rejected.
+ * <p>
+ * When adaptive, the limit is adjusted between 1 and the configured maximum following the latency of the requests: it's increased
+ * by one for each request handled under the latency threshold while the server is busy, and decreased by a fraction for each
+ * request that exceeds it (additive increase, multiplicative decrease).
+ *
+ * @since 1.12
+ */
+public class RequestAdmissionController {
+
+  public static final String MAX_IN_FLIGHT_PROPERTY = SYSTEM_PROPERTY_PREFIX + "http.server.admission.maxInFlight";
+  public static final String MAX_QUEUED_PROPERTY = SYSTEM_PROPERTY_PREFIX + "http.server.admission.maxQueued";
+  public static final String ADAPTIVE_PROPERTY = SYSTEM_PROPERTY_PREFIX + "http.server.admission.adaptive";
+  public static final String LATENCY_THRESHOLD_PROPERTY = SYSTEM_PROPERTY_PREFIX + "http.server.admission.latencyThresholdMillis";
+  public static final String RETRY_AFTER_PROPERTY = SYSTEM_PROPERTY_PREFIX + "http.server.admission.retryAfterSeconds";
+
+  static final String ADMISSION_PERMIT_ATTRIBUTE = "__ADMISSION_PERMIT__";
+
+  private static final Logger LOGGER = getLogger(RequestAdmissionController.class);
+
+  private static final double BACKOFF_RATIO = 0.9;
+
+  /**
+   * The outcome of the admission of a request.
+   */
+  enum Admission {
+    /**
+     * The request may be dispatched right away.
+     */
+    ADMITTED,
+    /**
+     * The request will be dispatched once other requests finish, or rejected if the server is disposed before.
+     */
+    QUEUED,
+    /**
+     * The server is overloaded, so the request must be rejected.
+     */
+    REJECTED
+  }
+
+  private final int maxInFlight;
+  private final int maxQueued;
+  private final boolean adaptive;
+  private final long latencyThresholdNanos;
+  private final int retryAfterSeconds;
+
+  // Guarded by this
+  private int inFlight;
+  private double limit;
+  private final Deque<QueuedRequest> queue = new ArrayDeque<>();
+
+  private final LongAdder admitted = new LongAdder();
+  private final LongAdder queued = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+
+  public RequestAdmissionController() {
+    this(getInteger(MAX_IN_FLIGHT_PROPERTY, -1), getInteger(MAX_QUEUED_PROPERTY, 0), getBoolean(ADAPTIVE_PROPERTY),
+         getLong(LATENCY_THRESHOLD_PROPERTY, 1000L), getInteger(RETRY_AFTER_PROPERTY, 1));
+  }
+
+  /**
+   * @param maxInFlight            the maximum amount of requests being handled at the same time, or a non-positive value for no
+   *                               limit.
+   * @param maxQueued              the maximum amount of requests waiting for the ones in flight to finish.
+   * @param adaptive               whether the limit is adjusted following the latency of the requests.
+   * @param latencyThresholdMillis the latency from which the adaptive limit is decreased.
+   * @param retryAfterSeconds      the value of the {@code Retry-After} header of the rejected requests, or a non-positive
+   *                               value to not send it.
+   */
+  public RequestAdmissionController(int maxInFlight, int maxQueued, boolean adaptive, long latencyThresholdMillis,
+                                    int retryAfterSeconds) {
+    this.maxInFlight = maxInFlight;
+    this.maxQueued = max(0, maxQueued);
+    this.adaptive = adaptive;
+    this.latencyThresholdNanos = MILLISECONDS.toNanos(latencyThresholdMillis);
+    this.retryAfterSeconds = retryAfterSeconds;
+    this.limit = maxInFlight;
+  }
+
+  /**
+   * @return whether requests are limited at all. If not, no request has to be admitted.
+   */
+  public boolean isEnabled() {
+    return maxInFlight > 0;
+  }
+
+  /**
+   * Admits a request received through the given connection, holding a permit until its response is
+   * {@link #release(Connection) released}.
+   *
+   * @param connection the connection the request was received from.
+   * @param dispatch   dispatches the request once it's admitted after waiting in the queue. It's run by the thread releasing a
+   *                   permit, so it must hand the request to another thread.
+   * @param reject     rejects the request if the server is disposed while it's waiting in the queue.
+   * @return whether the request may be dispatched right away, was queued, or must be rejected.
+   */
+  Admission admit(Connection<?> connection, Runnable dispatch, Runnable reject) {
+    synchronized (this) {
+      if (queue.isEmpty() && inFlight < currentLimit()) {
+        ++inFlight;
+      } else if (queue.size() < maxQueued) {
+        queue.add(new QueuedRequest(connection, dispatch, reject));
+        queued.increment();
+        return QUEUED;
+      } else {
+        rejected.increment();
+        return REJECTED;
+      }
+    }
+    grantPermit(connection);
+    return ADMITTED;
+  }
+
+  /**
+   * Releases the permit held by the request in flight of the given connection, if any, dispatching the queued requests that fit
+   * in the limit.
+   *
+   * @param connection the connection the response of a request was sent to, either successfully or not.
+   */
+  static void release(Connection<?> connection) {
+    if (connection == null) {
+      return;
+    }
+    Permit permit = (Permit) connection.getAttributes().getAttribute(ADMISSION_PERMIT_ATTRIBUTE);
+    if (permit != null) {
+      permit.release();
+    }
+  }
+
+  private void grantPermit(Connection<?> connection) {
+    admitted.increment();
+    Permit permit = new Permit(connection);
+    connection.getAttributes().setAttribute(ADMISSION_PERMIT_ATTRIBUTE, permit);
+    // Requests whose connection is closed before the response is sent must not keep their permit.
+    connection.addCloseListener(permit);
+  }
+
+  private void released(long latencyNanos) {
+    List<QueuedRequest> toDispatch = new ArrayList<>();
+    List<QueuedRequest> toReject = new ArrayList<>();
+    synchronized (this) {
+      int wasInFlight = inFlight--;
+      if (adaptive) {
+        if (latencyNanos > latencyThresholdNanos) {
+          limit = max(1, limit * BACKOFF_RATIO);
+        } else if (wasInFlight * 2 >= limit) {
+          limit = min(maxInFlight, limit + 1);
+        }
+      }
+
+      QueuedRequest next;
+      while (inFlight < currentLimit() && (next = queue.poll()) != null) {
+        if (next.connection.isOpen()) {
+          ++inFlight;
+          toDispatch.add(next);
+        } else {
+          // The client gave up waiting, no need to handle the request
+          toReject.add(next);
+        }
+      }
+    }
+
+    toReject.forEach(request -> request.reject.run());
+
+    for (QueuedRequest request : toDispatch) {
+      grantPermit(request.connection);
+      try {
+        request.dispatch.run();
+      } catch (Exception e) {
+        LOGGER.warn("Dispatch of a queued request failed", e);
+        // Releases its permit
+        request.connection.closeSilently();
+      }
+    }
+  }
+
+  private int currentLimit() {
+    return (int) limit;
+  }
+
+  /**
+   * Rejects the requests waiting in the queue, for when the server is disposed.
+   */
+  void dispose() {
+    List<QueuedRequest> toReject;
+    synchronized (this) {
+      toReject = new ArrayList<>(queue);
+      queue.clear();
+    }
+    toReject.forEach(request -> request.reject.run());
+  }
+
+  /**
+   * @return the value of the {@code Retry-After} header of the rejected requests, or a non-positive value to not send it.
+   */
+  public int getRetryAfterSeconds() {
+    return retryAfterSeconds;
+  }
+
+  /**
+   * @return the current limit of requests in flight, which is the configured maximum unless adaptive.
+   */
+  public synchronized int getLimit() {
+    return currentLimit();
+  }
+
+  /**
+   * @return the amount of requests currently being handled.
+   */
+  public synchronized int getInFlightCount() {
+    return inFlight;
+  }
+
+  /**
+   * @return the amount of requests currently waiting for the ones in flight to finish.
+   */
+  public synchronized int getQueueDepth() {
+    return queue.size();
+  }
+
+  /**
+   * @return the amount of requests admitted, either right away or after waiting in the queue.
+   */
+  public long getAdmittedCount() {
+    return admitted.sum();
+  }
+
+  /**
+   * @return the amount of requests that had to wait in the queue.
+   */
+  public long getQueuedCount() {
+    return queued.sum();
+  }
+
+  /**
+   * @return the amount of requests rejected because the server was overloaded.
+   */
+  public long getRejectedCount() {
+    return rejected.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "RequestAdmissionController{maxInFlight=" + maxInFlight + ", maxQueued=" + maxQueued + ", adaptive=" + adaptive
+        + ", limit=" + getLimit() + ", inFlight=" + getInFlightCount() + ", rejected=" + getRejectedCount() + "}";
+  }
+
+  /**
+   * Held by a request in flight, released only once either when its response is finished or its connection is closed.
+   */
+  private final class Permit implements CloseListener<Closeable, ICloseType> {
+
+    private final Connection<?> connection;
+    private final long admittedAt = nanoTime();
+    private final AtomicBoolean released = new AtomicBoolean(false);
+
+    private Permit(Connection<?> connection) {
+      this.connection = connection;
+    }
+
+    private void release() {
+      if (released.compareAndSet(false, true)) {
+        AttributeHolder attributes = connection.getAttributes();
+        // The next request of the connection may already hold its own permit.
+        if (attributes.getAttribute(ADMISSION_PERMIT_ATTRIBUTE) == this) {
+          attributes.removeAttribute(ADMISSION_PERMIT_ATTRIBUTE);
+        }
+        connection.removeCloseListener(this);
+        released(nanoTime() - admittedAt);
+      }
+    }
+
+    @Override
+    public void onClosed(Closeable closeable, ICloseType type) {
+      release();
+    }
+  }
+
+  private static final class QueuedRequest {
+
+    private final Connection<?> connection;
+    private final Runnable dispatch;
+    private final Runnable reject;
+
+    private QueuedRequest(Connection<?> connection, Runnable dispatch, Runnable reject) {
+      this.connection = connection;
+      this.dispatch = dispatch;
+      this.reject = reject;
+    }
+  }
+}
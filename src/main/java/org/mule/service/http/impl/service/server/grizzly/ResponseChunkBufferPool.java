@@ -0,0 +1,186 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.service.server.grizzly;
+
+import static org.mule.runtime.api.util.MuleSystemProperties.SYSTEM_PROPERTY_PREFIX;
+
+import static java.lang.Boolean.parseBoolean;
+import static java.lang.Integer.SIZE;
+import static java.lang.Integer.getInteger;
+import static java.lang.Integer.numberOfLeadingZeros;
+import static java.lang.System.getProperty;
+import static java.nio.ByteBuffer.allocateDirect;
+
+import static org.glassfish.grizzly.memory.Buffers.wrap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.glassfish.grizzly.Buffer;
+import org.glassfish.grizzly.memory.MemoryManager;
+
+/**
+ * Pool of the buffers used by a server to send the chunks of streamed responses, so that a long streamed response doesn't
+ * allocate a new buffer for each chunk it sends.
+ * <p>
+ * A buffer is acquired before reading a chunk from the response stream, and it must be released once Grizzly notifies that the
+ * chunk was written, or that the response failed.
+ * <p>
+ * Buffers are allocated with a power of two capacity and kept by that size class, so that the growing chunks of an adaptive
+ * response don't make the pool drop the smaller buffers it holds.
+ *
+ * @since 1.12
+ */
+public class ResponseChunkBufferPool {
+
+  public static final String MAX_POOLED_BUFFERS_PROPERTY = SYSTEM_PROPERTY_PREFIX + "http.server.responseBuffers.maxPooled";
+  public static final String DIRECT_BUFFERS_PROPERTY = SYSTEM_PROPERTY_PREFIX + "http.server.responseBuffers.direct";
+
+  private static final int DEFAULT_MAX_POOLED_BUFFERS = 64;
+
+  private final MemoryManager memoryManager;
+  private final int maxPooledBuffers;
+  private final boolean direct;
+
+  private final ResponseChunkStatistics chunkStatistics = new ResponseChunkStatistics();
+
+  // The buffers of the size class n have a capacity of at least 2^n bytes
+  private final List<Queue<Buffer>> pooledBuffers = new ArrayList<>(SIZE);
+  private final AtomicInteger pooledBuffersCount = new AtomicInteger();
+  private final AtomicInteger outstandingBuffersCount = new AtomicInteger();
+  private volatile boolean disposed = false;
+
+  public ResponseChunkBufferPool(MemoryManager memoryManager) {
+    this(memoryManager, getInteger(MAX_POOLED_BUFFERS_PROPERTY, DEFAULT_MAX_POOLED_BUFFERS),
+         parseBoolean(getProperty(DIRECT_BUFFERS_PROPERTY, "false")));
+  }
+
+  public ResponseChunkBufferPool(MemoryManager memoryManager, int maxPooledBuffers, boolean direct) {
+    this.memoryManager = memoryManager;
+    this.maxPooledBuffers = maxPooledBuffers;
+    this.direct = direct;
+    for (int i = 0; i < SIZE; ++i) {
+      pooledBuffers.add(new ConcurrentLinkedQueue<>());
+    }
+  }
+
+  /**
+   * @param size the size of the chunk to read.
+   * @return a buffer whose remaining bytes are exactly the requested size, reused from the pool if possible.
+   */
+  public Buffer acquire(int size) {
+    outstandingBuffersCount.incrementAndGet();
+    // Any buffer of the size class of the request or a bigger one fits it
+    for (int sizeClass = sizeClassFor(size); sizeClass < SIZE; ++sizeClass) {
+      Buffer buffer = pooledBuffers.get(sizeClass).poll();
+      if (buffer != null) {
+        pooledBuffersCount.decrementAndGet();
+        buffer.clear();
+        buffer.limit(size);
+        return buffer;
+      }
+    }
+    return allocate(size);
+  }
+
+  private Buffer allocate(int size) {
+    int sizeClass = sizeClassFor(size);
+    int capacity = sizeClass < SIZE - 1 ? 1 << sizeClass : size;
+    Buffer buffer = direct ? wrap(memoryManager, allocateDirect(capacity)) : wrap(memoryManager, new byte[capacity]);
+    buffer.limit(size);
+    // Grizzly must never dispose it after writing it, because it's going to be reused.
+    buffer.allowBufferDispose(false);
+    return buffer;
+  }
+
+  /**
+   * @return the smallest size class whose buffers fit the given size.
+   */
+  private static int sizeClassFor(int size) {
+    return size <= 1 ? 0 : SIZE - numberOfLeadingZeros(size - 1);
+  }
+
+  /**
+   * @return the biggest size class whose minimum capacity the given capacity reaches.
+   */
+  private static int sizeClassOf(int capacity) {
+    return capacity <= 1 ? 0 : SIZE - 1 - numberOfLeadingZeros(capacity);
+  }
+
+  /**
+   * Returns a buffer obtained from {@link #acquire(int)} to the pool, unless the pool is disposed. When the pool is full, the
+   * buffer takes the place of a smaller one if there is any, and is discarded otherwise.
+   *
+   * @param buffer the buffer to release.
+   */
+  public void release(Buffer buffer) {
+    outstandingBuffersCount.decrementAndGet();
+    if (disposed) {
+      return;
+    }
+    int sizeClass = sizeClassOf(buffer.capacity());
+    if (pooledBuffersCount.incrementAndGet() > maxPooledBuffers) {
+      pooledBuffersCount.decrementAndGet();
+      if (!discardSmallerThan(sizeClass)) {
+        return;
+      }
+    }
+    pooledBuffers.get(sizeClass).offer(buffer);
+  }
+
+  private boolean discardSmallerThan(int sizeClass) {
+    for (int smaller = 0; smaller < sizeClass; ++smaller) {
+      if (pooledBuffers.get(smaller).poll() != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Discards all the pooled buffers. Buffers released afterwards are discarded as well.
+   */
+  public void dispose() {
+    disposed = true;
+    for (Queue<Buffer> sizeClassBuffers : pooledBuffers) {
+      while (sizeClassBuffers.poll() != null) {
+        pooledBuffersCount.decrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * @return whether the buffers are allocated off-heap.
+   */
+  public boolean isDirect() {
+    return direct;
+  }
+
+  /**
+   * @return the statistics of the chunks sent with the buffers of this pool.
+   */
+  public ResponseChunkStatistics getChunkStatistics() {
+    return chunkStatistics;
+  }
+
+  /**
+   * @return the amount of buffers ready to be reused.
+   */
+  public int getPooledBuffersCount() {
+    return pooledBuffersCount.get();
+  }
+
+  /**
+   * @return the amount of buffers acquired and not released yet, that is, chunks being read or written.
+   */
+  public int getOutstandingBuffersCount() {
+    return outstandingBuffersCount.get();
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.service.server.grizzly;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics of the chunks sent by the streamed responses of a server: the sizes chosen for them and how long each one took to be
+ * written, useful to tune the chunk sizes.
+ *
+ * @since 1.12
+ */
+public final class ResponseChunkStatistics {
+
+  private final LongAdder chunksCount = new LongAdder();
+  private final LongAdder chunksBytes = new LongAdder();
+  private final LongAccumulator maxChunkSize = new LongAccumulator(Long::max, 0);
+  private final LongAdder writeCompletionNanos = new LongAdder();
+  private final LongAccumulator maxWriteCompletionNanos = new LongAccumulator(Long::max, 0);
+  private final LongAdder growsCount = new LongAdder();
+  private final LongAdder shrinksCount = new LongAdder();
+
+  void chunkWritten(int chunkSize, long completionNanos) {
+    chunksCount.increment();
+    chunksBytes.add(chunkSize);
+    maxChunkSize.accumulate(chunkSize);
+    writeCompletionNanos.add(completionNanos);
+    maxWriteCompletionNanos.accumulate(completionNanos);
+  }
+
+  void chunkSizeGrown() {
+    growsCount.increment();
+  }
+
+  void chunkSizeShrunk() {
+    shrinksCount.increment();
+  }
+
+  /**
+   * @return the amount of chunks written
+   */
+  public long getChunksCount() {
+    return chunksCount.sum();
+  }
+
+  /**
+   * @return the average size of the chunks written, or {@code 0} if there were none
+   */
+  public long getAverageChunkSize() {
+    long count = chunksCount.sum();
+    return count == 0 ? 0 : chunksBytes.sum() / count;
+  }
+
+  /**
+   * @return the size of the biggest chunk written
+   */
+  public long getMaxChunkSize() {
+    return maxChunkSize.get();
+  }
+
+  /**
+   * @return the average time since a chunk was handed to Grizzly until it was written, or {@code 0} if there were none
+   */
+  public long getAverageWriteCompletionNanos() {
+    long count = chunksCount.sum();
+    return count == 0 ? 0 : writeCompletionNanos.sum() / count;
+  }
+
+  /**
+   * @return the longest time since a chunk was handed to Grizzly until it was written
+   */
+  public long getMaxWriteCompletionNanos() {
+    return maxWriteCompletionNanos.get();
+  }
+
+  /**
+   * @return how many times the chunk size of a response was increased because its client was consuming it fast
+   */
+  public long getGrowsCount() {
+    return growsCount.sum();
+  }
+
+  /**
+   * @return how many times the chunk size of a response was decreased because its client was consuming it slowly
+   */
+  public long getShrinksCount() {
+    return shrinksCount.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "ResponseChunkStatistics{chunksCount=" + getChunksCount() + ", averageChunkSize=" + getAverageChunkSize()
+        + ", maxChunkSize=" + getMaxChunkSize() + ", averageWriteCompletionNanos=" + getAverageWriteCompletionNanos()
+        + ", maxWriteCompletionNanos=" + getMaxWriteCompletionNanos() + ", growsCount=" + getGrowsCount()
+        + ", shrinksCount=" + getShrinksCount() + "}";
+  }
+}
@@ -7,10 +7,20 @@
 package org.mule.service.http.impl.service.server.grizzly;
 
 import static org.mule.runtime.api.i18n.I18nMessageFactory.createStaticMessage;
+import static org.mule.runtime.api.util.DataUnit.KB;
+import static org.mule.runtime.api.util.MuleSystemProperties.SYSTEM_PROPERTY_PREFIX;
 
-import static java.lang.System.arraycopy;
+import static java.lang.Long.getLong;
+import static java.lang.System.nanoTime;
+import static java.lang.Thread.currentThread;
+import static java.nio.ByteBuffer.wrap;
+import static java.nio.charset.CodingErrorAction.REPLACE;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 import static org.glassfish.grizzly.http.HttpServerFilter.RESPONSE_COMPLETE_EVENT;
+import static org.glassfish.grizzly.memory.Buffers.EMPTY_BUFFER;
+import static org.glassfish.grizzly.nio.transport.TCPNIOTransport.MAX_SEND_BUFFER_SIZE;
+import static org.glassfish.grizzly.threadpool.Threads.isService;
 import static org.slf4j.LoggerFactory.getLogger;
 
 import org.mule.runtime.api.exception.DefaultMuleException;
@@ -19,15 +29,26 @@ import org.mule.runtime.http.api.server.async.ResponseStatusCallback;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
 
 import org.glassfish.grizzly.Buffer;
+import org.glassfish.grizzly.CompletionHandler;
+import org.glassfish.grizzly.Connection;
+import org.glassfish.grizzly.EmptyCompletionHandler;
+import org.glassfish.grizzly.WriteHandler;
 import org.glassfish.grizzly.WriteResult;
 import org.glassfish.grizzly.filterchain.FilterChainContext;
 import org.glassfish.grizzly.http.HttpContent;
 import org.glassfish.grizzly.http.HttpRequestPacket;
 import org.glassfish.grizzly.http.HttpResponsePacket;
 import org.glassfish.grizzly.memory.MemoryManager;
+import org.glassfish.grizzly.nio.NIOConnection;
 import org.slf4j.Logger;
 
 /**
@@ -37,61 +58,352 @@ final class ResponseDelayedCompletionHandler extends BaseResponseCompletionHandl
 
   private static final Logger LOGGER = getLogger(ResponseDelayedCompletionHandler.class);
 
+  public static final String WRITE_QUEUE_TIMEOUT_PROPERTY =
+      SYSTEM_PROPERTY_PREFIX + "http.server.delayedResponse.writeQueueTimeoutMillis";
+
+  private static final int WRITER_BUFFER_SIZE = KB.toBytes(8);
+  // Not tied to the read timeout of the server, as a slow client is given more time to consume a response than to send a request.
+  private static final long DEFAULT_WRITE_QUEUE_TIMEOUT_MILLIS = 60000L;
+  private static long WRITE_QUEUE_TIMEOUT_MILLIS;
+
+  static {
+    refreshSystemProperties();
+  }
+
   private final MemoryManager memoryManager;
   private final FilterChainContext ctx;
   private final ClassLoader ctxClassLoader;
   private final HttpResponsePacket httpResponsePacket;
   private final ResponseStatusCallback responseStatusCallback;
+  private final ResponseChunkBufferPool bufferPool;
+  private final OutboundWriteQueue writeQueue;
 
   ResponseDelayedCompletionHandler(FilterChainContext ctx, ClassLoader ctxClassLoader, HttpRequestPacket request,
                                    HttpResponse httpResponse,
                                    ResponseStatusCallback responseStatusCallback) {
+    this(ctx, ctxClassLoader, request, httpResponse, responseStatusCallback, null);
+  }
+
+  ResponseDelayedCompletionHandler(FilterChainContext ctx, ClassLoader ctxClassLoader, HttpRequestPacket request,
+                                   HttpResponse httpResponse,
+                                   ResponseStatusCallback responseStatusCallback,
+                                   ResponseChunkBufferPool bufferPool) {
+    this(ctx, ctxClassLoader, request, httpResponse, responseStatusCallback, bufferPool, null);
+  }
+
+  ResponseDelayedCompletionHandler(FilterChainContext ctx, ClassLoader ctxClassLoader, HttpRequestPacket request,
+                                   HttpResponse httpResponse,
+                                   ResponseStatusCallback responseStatusCallback,
+                                   ResponseChunkBufferPool bufferPool, OutboundWriteQueue writeQueue) {
     LOGGER.debug("Creating response sending handler for ctx: {} (delayed entity)", ctx);
     this.ctx = ctx;
     this.ctxClassLoader = ctxClassLoader;
     this.httpResponsePacket = buildHttpResponsePacket(request, httpResponse);
     this.memoryManager = ctx.getConnection().getTransport().getMemoryManager();
     this.responseStatusCallback = responseStatusCallback;
+    this.bufferPool = bufferPool;
+    this.writeQueue = writeQueue;
   }
 
   public Writer buildWriter(Charset encoding) {
-    return new Writer() {
+    return new EncodingWriter(encoding);
+  }
+
+  /**
+   * Writer that encodes the chars straight into the buffers to send, reusing the same encoder for the whole response. A buffer is
+   * sent when it's full or the writer is flushed, waiting first for the connection to accept more data if its write queue is
+   * full, or for the outbound queue of the server to go below its limit, so that slow clients don't make the data to send pile
+   * up in memory.
+   * <p>
+   * The size of the buffers follows how fast the client consumes them, like the chunks of a streamed response.
+   */
+  private final class EncodingWriter extends Writer {
+
+    private final CharsetEncoder encoder;
+    // Updated from the completion of the writes as well, so it's guarded by itself
+    private final AdaptiveChunkSizer chunkSizer = new AdaptiveChunkSizer(WRITER_BUFFER_SIZE, MAX_SEND_BUFFER_SIZE,
+                                                                         bufferPool != null ? bufferPool.getChunkStatistics()
+                                                                             : null);
+
+    private Buffer buffer;
+    private ByteBuffer target;
+    // A high surrogate written without its low surrogate, to be encoded along with the next chars.
+    private CharBuffer leftover;
+    private boolean closed = false;
+
+    private EncodingWriter(Charset encoding) {
+      // Same replacement as String#getBytes, which was used before encoding directly.
+      this.encoder = encoding.newEncoder()
+          .onMalformedInput(REPLACE)
+          .onUnmappableCharacter(REPLACE);
+    }
 
-      private final StringBuilder stringBuilder = new StringBuilder();
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+      checkNotClosed();
+      encode(withLeftover(CharBuffer.wrap(cbuf, off, len)), false);
+    }
 
-      @Override
-      public void write(char[] cbuf, int off, int len) throws IOException {
-        stringBuilder.append(cbuf, off, len);
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+      checkNotClosed();
+      encode(withLeftover(CharBuffer.wrap(str, off, off + len)), false);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      checkNotClosed();
+      send();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      LOGGER.debug("Closing writer of delayed responder for ctx: {}", ctx);
+      encode(leftover != null ? leftover : CharBuffer.allocate(0), true);
+      while (encoder.flush(target()).isOverflow()) {
+        send();
       }
+      if (buffer != null && target.position() > 0) {
+        send();
+      } else {
+        releaseBuffer();
+      }
+      ctx.write(httpResponsePacket.httpTrailerBuilder().build(), ResponseDelayedCompletionHandler.this);
+      ctx.notifyDownstream(RESPONSE_COMPLETE_EVENT);
+      responseStatusCallback.responseSendSuccessfully();
+      resume();
+    }
 
-      @Override
-      public void flush() throws IOException {
-        byte[] bytes = stringBuilder.toString().getBytes(encoding);
-        final Buffer buffer = memoryManager.allocate(bytes.length);
-        final byte[] bufferByteArray = buffer.array();
-        final int offset = buffer.arrayOffset();
+    private void checkNotClosed() throws IOException {
+      if (closed) {
+        throw new IOException("Writer closed");
+      }
+    }
 
-        arraycopy(bytes, 0, bufferByteArray, offset, bytes.length);
-        stringBuilder.setLength(0);
+    private CharBuffer withLeftover(CharBuffer chars) {
+      if (leftover == null) {
+        return chars;
+      }
+      CharBuffer joined = CharBuffer.allocate(leftover.remaining() + chars.remaining());
+      joined.put(leftover).put(chars).flip();
+      leftover = null;
+      return joined;
+    }
 
-        final HttpContent content = httpResponsePacket.httpContentBuilder()
-            .last(false)
-            .content(buffer)
-            .build();
+    private void encode(CharBuffer chars, boolean endOfInput) throws IOException {
+      while (encoder.encode(chars, target(), endOfInput).isOverflow()) {
+        // The buffer is full, send it and continue encoding into a new one.
+        send();
+      }
+      if (chars.hasRemaining()) {
+        leftover = CharBuffer.allocate(chars.remaining()).put(chars);
+        leftover.flip();
+      }
+    }
 
-        LOGGER.debug("About to write data in delayed responder for ctx: {}", ctx);
-        ctx.write(content, ResponseDelayedCompletionHandler.this);
+    private ByteBuffer target() {
+      if (buffer == null) {
+        final int size;
+        synchronized (chunkSizer) {
+          size = chunkSizer.nextChunkSize();
+        }
+        buffer = bufferPool != null ? bufferPool.acquire(size) : memoryManager.allocate(size);
+        // A view of the same memory, so the bytes are encoded directly into the buffer to send.
+        target = buffer.hasArray()
+            ? wrap(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining()).slice()
+            : buffer.toByteBuffer().slice();
       }
+      return target;
+    }
 
-      @Override
-      public void close() throws IOException {
-        LOGGER.debug("Closing writer of delayed responder for ctx: {}", ctx);
-        ctx.write(httpResponsePacket.httpTrailerBuilder().build(), ResponseDelayedCompletionHandler.this);
-        ctx.notifyDownstream(RESPONSE_COMPLETE_EVENT);
-        responseStatusCallback.responseSendSuccessfully();
-        resume();
+    /**
+     * Sends the encoded bytes, if any. Even if there are none, the headers are sent with the first flush.
+     */
+    private void send() throws IOException {
+      awaitCanWrite();
+
+      final Buffer toSend = buffer;
+      final HttpContent.Builder contentBuilder = httpResponsePacket.httpContentBuilder().last(false);
+      final CompletionHandler<WriteResult> completionHandler;
+      if (toSend == null || target.position() == 0) {
+        releaseBuffer();
+        contentBuilder.content(EMPTY_BUFFER);
+        completionHandler = ResponseDelayedCompletionHandler.this;
+      } else {
+        toSend.limit(toSend.position() + target.position());
+        buffer = null;
+        target = null;
+        contentBuilder.content(toSend);
+        completionHandler = new BufferReleasingCompletionHandler(toSend, toSend.remaining(), chunkSizer);
+        if (writeQueue != null) {
+          writeQueue.queued(toSend.remaining());
+        }
       }
-    };
+
+      LOGGER.debug("About to write data in delayed responder for ctx: {}", ctx);
+      ctx.write(contentBuilder.build(), completionHandler);
+    }
+
+    private void releaseBuffer() {
+      if (buffer != null) {
+        release(buffer);
+        buffer = null;
+        target = null;
+      }
+    }
+  }
+
+  /**
+   * Blocks until the write queue of the connection and the outbound queue of the server have space, unless running in a Grizzly
+   * thread, that must never be blocked.
+   *
+   * @throws IOException if the connection failed, the client didn't consume the pending data in time, or the thread was
+   *                     interrupted.
+   */
+  private void awaitCanWrite() throws IOException {
+    if (isService()) {
+      return;
+    }
+
+    final Connection connection = ctx.getConnection();
+    if (connection != null && !connection.canWrite()) {
+      LOGGER.debug("Write queue full, waiting for the client to consume the pending data for ctx: {}", ctx);
+      final CanWriteWaiter waiter = new CanWriteWaiter();
+      connection.notifyCanWrite(waiter);
+      try {
+        await(waiter.writePossible);
+      } catch (IOException e) {
+        // Grizzly can't take the handler back, so it stays queued until the connection can write or is closed
+        waiter.abandon();
+        throw e;
+      }
+    }
+
+    if (writeQueue != null && !writeQueue.hasSpace()) {
+      LOGGER.debug("Outbound queue of the server full, waiting for the pending data to be written for ctx: {}", ctx);
+      final CompletableFuture<Void> writePossible = new CompletableFuture<>();
+      final Runnable writer = () -> writePossible.complete(null);
+      writeQueue.notifyWhenSpace(writer);
+      try {
+        await(writePossible);
+      } catch (IOException e) {
+        // So that it doesn't count as waiting anymore
+        writeQueue.removeWaitingWriter(writer);
+        throw e;
+      }
+    }
+  }
+
+  private void await(CompletableFuture<Void> writePossible) throws IOException {
+    try {
+      writePossible.get(WRITE_QUEUE_TIMEOUT_MILLIS, MILLISECONDS);
+    } catch (ExecutionException e) {
+      throw new IOException(e.getCause());
+    } catch (TimeoutException e) {
+      throw new IOException("Timeout while waiting for the client to consume the pending data", e);
+    } catch (InterruptedException e) {
+      currentThread().interrupt();
+      throw new IOException(e);
+    }
+  }
+
+  private void release(Buffer buffer) {
+    if (bufferPool != null) {
+      bufferPool.release(buffer);
+    }
+  }
+
+  /**
+   * Completes the wait of a writer once its connection can write again. Once the writer gives up waiting, it ignores the
+   * notification, which may still come much later.
+   */
+  static final class CanWriteWaiter implements WriteHandler {
+
+    private final CompletableFuture<Void> writePossible = new CompletableFuture<>();
+    private volatile boolean abandoned = false;
+
+    @Override
+    public void onWritePossible() {
+      if (!abandoned) {
+        writePossible.complete(null);
+      }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      if (!abandoned) {
+        writePossible.completeExceptionally(t);
+      }
+    }
+
+    void abandon() {
+      abandoned = true;
+    }
+
+    boolean isAbandoned() {
+      return abandoned;
+    }
+  }
+
+  /**
+   * Returns the buffer of a written chunk to the pool, and removes its bytes from the outbound queue of the server, before
+   * notifying the handler of the response.
+   */
+  private final class BufferReleasingCompletionHandler extends EmptyCompletionHandler<WriteResult> {
+
+    private final Buffer buffer;
+    private final int bytes;
+    private final AdaptiveChunkSizer chunkSizer;
+    private final long writeStartNanos = nanoTime();
+
+    private BufferReleasingCompletionHandler(Buffer buffer, int bytes, AdaptiveChunkSizer chunkSizer) {
+      this.buffer = buffer;
+      this.bytes = bytes;
+      this.chunkSizer = chunkSizer;
+    }
+
+    @Override
+    public void completed(WriteResult result) {
+      synchronized (chunkSizer) {
+        chunkSizer.chunkWritten(bytes, pendingWriteBytes(), nanoTime() - writeStartNanos);
+      }
+      written();
+      ResponseDelayedCompletionHandler.this.completed(result);
+    }
+
+    @Override
+    public void cancelled() {
+      written();
+      ResponseDelayedCompletionHandler.this.cancelled();
+    }
+
+    @Override
+    public void failed(Throwable throwable) {
+      written();
+      ResponseDelayedCompletionHandler.this.failed(throwable);
+    }
+
+    private void written() {
+      release(buffer);
+      if (writeQueue != null) {
+        writeQueue.written(bytes);
+      }
+    }
+  }
+
+  /**
+   * @return the bytes queued to be written in the connection, which means that the socket send buffer is full
+   */
+  private int pendingWriteBytes() {
+    Connection connection = ctx.getConnection();
+    if (connection instanceof NIOConnection) {
+      return ((NIOConnection) connection).getAsyncWriteQueue().spaceInBytes();
+    }
+    return 0;
   }
 
   @Override
@@ -136,4 +448,11 @@ final class ResponseDelayedCompletionHandler extends BaseResponseCompletionHandl
   protected ClassLoader getCtxClassLoader() {
     return ctxClassLoader;
   }
+
+  /**
+   * Reads the system properties used by this class again, for testing.
+   */
+  static void refreshSystemProperties() {
+    WRITE_QUEUE_TIMEOUT_MILLIS = getLong(WRITE_QUEUE_TIMEOUT_PROPERTY, DEFAULT_WRITE_QUEUE_TIMEOUT_MILLIS);
+  }
 }
@@ -36,11 +36,13 @@ import java.io.InputStream;
 
 import org.glassfish.grizzly.Buffer;
 import org.glassfish.grizzly.Connection;
+import org.glassfish.grizzly.WriteHandler;
 import org.glassfish.grizzly.WriteResult;
 import org.glassfish.grizzly.filterchain.FilterChainContext;
 import org.glassfish.grizzly.http.HttpContent;
 import org.glassfish.grizzly.http.HttpRequestPacket;
 import org.glassfish.grizzly.memory.MemoryManager;
+import org.glassfish.grizzly.nio.NIOConnection;
 import org.slf4j.Logger;
 
 /**
@@ -59,6 +61,16 @@ public class ResponseStreamingCompletionHandler extends BaseResponseCompletionHa
   private final ResponseStatusCallback responseStatusCallback;
   private final int bufferSize;
   private final long startTimeNanos;
+  private final ResponseChunkBufferPool bufferPool;
+  private final AdaptiveChunkSizer chunkSizer;
+  private final OutboundWriteQueue writeQueue;
+
+  // The buffer of the chunk being sent, which is released once it's written.
+  private Buffer chunkBuffer;
+  // Only used to read into buffers that aren't backed by an array.
+  private byte[] readBuffer;
+  // The bytes of the chunk being sent, accounted in the outbound queue of the server until it's written.
+  private int queuedBytes;
 
   private static final String SELECTOR_TIMEOUT = SYSTEM_PROPERTY_PREFIX + "timeoutToUseSelectorWhileStreamingResponseMillis";
   private final long selectorTimeoutNanos = MILLISECONDS.toNanos(Long.valueOf(getProperty(SELECTOR_TIMEOUT, "50")));
@@ -70,6 +82,22 @@ public class ResponseStreamingCompletionHandler extends BaseResponseCompletionHa
                                             ClassLoader ctxClassLoader,
                                             final HttpRequestPacket request,
                                             final HttpResponse httpResponse, ResponseStatusCallback responseStatusCallback) {
+    this(ctx, ctxClassLoader, request, httpResponse, responseStatusCallback, null);
+  }
+
+  public ResponseStreamingCompletionHandler(final FilterChainContext ctx,
+                                            ClassLoader ctxClassLoader,
+                                            final HttpRequestPacket request,
+                                            final HttpResponse httpResponse, ResponseStatusCallback responseStatusCallback,
+                                            ResponseChunkBufferPool bufferPool) {
+    this(ctx, ctxClassLoader, request, httpResponse, responseStatusCallback, bufferPool, null);
+  }
+
+  public ResponseStreamingCompletionHandler(final FilterChainContext ctx,
+                                            ClassLoader ctxClassLoader,
+                                            final HttpRequestPacket request,
+                                            final HttpResponse httpResponse, ResponseStatusCallback responseStatusCallback,
+                                            ResponseChunkBufferPool bufferPool, OutboundWriteQueue writeQueue) {
     checkArgument((httpResponse.getEntity().isStreaming()), "HTTP response entity must be stream based");
     LOGGER.debug("Creating response sending handler for ctx: {} (streaming entity)", ctx);
     this.ctx = ctx;
@@ -80,6 +108,23 @@ public class ResponseStreamingCompletionHandler extends BaseResponseCompletionHa
     bufferSize = calculateBufferSize(ctx, ctxClassLoader);
     this.responseStatusCallback = responseStatusCallback;
     this.startTimeNanos = nanoTime();
+    this.bufferPool = bufferPool;
+    this.chunkSizer = new AdaptiveChunkSizer(bufferSize, calculateMaxChunkSize(),
+                                             bufferPool != null ? bufferPool.getChunkStatistics() : null);
+    this.writeQueue = writeQueue;
+  }
+
+  /**
+   * The chunks may grow up to the maximum buffer size possible, but never beyond the content length if it's present.
+   *
+   * @return the maximum size to use for buffers when adaptive chunk sizing is enabled
+   */
+  private int calculateMaxChunkSize() {
+    String contentLengthHeader = httpResponsePacket.getHeader(CONTENT_LENGTH);
+    if (!isEmpty(contentLengthHeader)) {
+      return min(MAX_SEND_BUFFER_SIZE, valueOf(contentLengthHeader));
+    }
+    return MAX_SEND_BUFFER_SIZE;
   }
 
   /**
@@ -138,37 +183,169 @@ public class ResponseStreamingCompletionHandler extends BaseResponseCompletionHa
 
   public void sendInputStreamChunk() throws IOException {
     try {
-      final Buffer buffer = memoryManager.allocate(bufferSize);
-
-      final byte[] bufferByteArray = buffer.array();
-      final int offset = buffer.arrayOffset();
+      final Buffer buffer = acquireChunkBuffer();
       final int length = buffer.remaining();
 
-      int bytesRead = inputStream.read(bufferByteArray, offset, length);
+      int bytesRead = readChunk(buffer);
       LOGGER.debug("Could read {} bytes from input stream (requested {}). ctx: {}", bytesRead, length, ctx);
 
       final HttpContent content;
       if (bytesRead == -1) {
+        releaseChunkBuffer();
         content = httpResponsePacket.httpTrailerBuilder().build();
         isDone = true;
       } else {
         buffer.limit(bytesRead);
         content = httpResponsePacket.httpContentBuilder().content(buffer).build();
+        chunkSizer.writeStarted(bytesRead);
+        queue(bytesRead);
       }
 
       markConnectionToDelegateWritesInConfiguredExecutor(isSelectorTimeout());
 
       ctx.write(content, this);
     } catch (IOException ioException) {
+      dequeue();
+      releaseChunkBuffer();
       throw ioException;
     } catch (Exception e) {
       if (e.getCause() instanceof IOException) {
+        dequeue();
+        releaseChunkBuffer();
         throw (IOException) e.getCause();
       }
       failed(e);
     }
   }
 
+  private Buffer acquireChunkBuffer() {
+    int chunkSize = chunkSizer.nextChunkSize();
+    chunkBuffer = bufferPool != null ? bufferPool.acquire(chunkSize) : memoryManager.allocate(chunkSize);
+    return chunkBuffer;
+  }
+
+  private int readChunk(Buffer buffer) throws IOException {
+    if (buffer.hasArray()) {
+      return inputStream.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+    }
+
+    // Off-heap buffers need an intermediate array, which is reused for all the chunks of the response.
+    if (readBuffer == null || readBuffer.length < buffer.remaining()) {
+      readBuffer = new byte[chunkSizer.maxChunkSize()];
+    }
+    int bytesRead = inputStream.read(readBuffer, 0, buffer.remaining());
+    if (bytesRead > 0) {
+      buffer.put(readBuffer, 0, bytesRead);
+      buffer.flip();
+    }
+    return bytesRead;
+  }
+
+  /**
+   * Returns the buffer of the last chunk to the pool, once it was written or it won't be written.
+   */
+  private void releaseChunkBuffer() {
+    Buffer buffer = chunkBuffer;
+    chunkBuffer = null;
+    if (buffer != null && bufferPool != null) {
+      bufferPool.release(buffer);
+    }
+  }
+
+  private void queue(int bytes) {
+    if (writeQueue != null) {
+      queuedBytes = bytes;
+      writeQueue.queued(bytes);
+    }
+  }
+
+  /**
+   * Removes the bytes of the last chunk from the outbound queue of the server, once it was written or it won't be written.
+   */
+  private void dequeue() {
+    int bytes = queuedBytes;
+    queuedBytes = 0;
+    if (bytes > 0) {
+      writeQueue.written(bytes);
+    }
+  }
+
+  /**
+   * Suspends sending the next chunk if the write queue of the connection is full, or the outbound queue of the server is over its
+   * limit, instead of piling up more data in memory. The chunk is sent once the queue has space again.
+   *
+   * @return whether sending the next chunk was suspended.
+   */
+  private boolean suspendUntilWritePossible() {
+    Connection connection = ctx.getConnection();
+    if (connection != null && !connection.canWrite()) {
+      LOGGER.debug("Write queue of the connection full, suspending streaming response for ctx: {}", ctx);
+      connection.notifyCanWrite(new WriteHandler() {
+
+        @Override
+        public void onWritePossible() {
+          resumeSending();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+          failed(t);
+        }
+      });
+      return true;
+    }
+    if (writeQueue != null && !writeQueue.hasSpace()) {
+      LOGGER.debug("Outbound queue of the server full, suspending streaming response for ctx: {}", ctx);
+      writeQueue.notifyWhenSpace(this::resumeSending);
+      return true;
+    }
+    return false;
+  }
+
+  private void resumeSending() {
+    Thread thread = null;
+    ClassLoader currentClassLoader = null;
+    ClassLoader newClassLoader = null;
+    if (REPLACE_CONTEXT_CLASSLOADER) {
+      thread = currentThread();
+      currentClassLoader = thread.getContextClassLoader();
+      newClassLoader = getCtxClassLoader();
+      setContextClassLoader(thread, currentClassLoader, newClassLoader);
+    }
+    try {
+      if (!suspendUntilWritePossible()) {
+        sendNextChunk();
+      }
+    } catch (MuleRuntimeException | IOException e) {
+      failed(e);
+    } finally {
+      if (REPLACE_CONTEXT_CLASSLOADER) {
+        setContextClassLoader(thread, newClassLoader, currentClassLoader);
+      }
+    }
+  }
+
+  private void sendNextChunk() throws IOException {
+    sendInputStreamChunk();
+    // In HTTP 1.0 (no chunk supported) there is no more data sent to the client after the input stream is completed.
+    // As there is no more data to be sent (in HTTP 1.1 a last chunk with '0' is sent) the #completed method is not called
+    // So, we have to call it manually here
+    if (isDone && !httpResponsePacket.isChunked()) {
+      doComplete();
+    }
+  }
+
+  /**
+   * @return the bytes queued to be written in the connection, which means that the socket send buffer is full
+   */
+  private int pendingWriteBytes() {
+    Connection connection = ctx.getConnection();
+    if (connection instanceof NIOConnection) {
+      return ((NIOConnection) connection).getAsyncWriteQueue().spaceInBytes();
+    }
+    return 0;
+  }
+
   private boolean isSelectorTimeout() {
     long elapsedTimeNanos = nanoTime() - startTimeNanos;
     return elapsedTimeNanos > selectorTimeoutNanos;
@@ -203,13 +380,14 @@ public class ResponseStreamingCompletionHandler extends BaseResponseCompletionHa
       setContextClassLoader(thread, currentClassLoader, newClassLoader);
     }
     try {
+      if (chunkBuffer != null) {
+        chunkSizer.writeCompleted(pendingWriteBytes());
+      }
+      releaseChunkBuffer();
+      dequeue();
       if (!isDone) {
-        sendInputStreamChunk();
-        // In HTTP 1.0 (no chunk supported) there is no more data sent to the client after the input stream is completed.
-        // As there is no more data to be sent (in HTTP 1.1 a last chunk with '0' is sent) the #completed method is not called
-        // So, we have to call it manually here
-        if (isDone && !httpResponsePacket.isChunked()) {
-          doComplete();
+        if (!suspendUntilWritePossible()) {
+          sendNextChunk();
         }
       } else {
         doComplete();
@@ -249,6 +427,8 @@ public class ResponseStreamingCompletionHandler extends BaseResponseCompletionHa
     try {
       LOGGER.debug("Cancelling streaming response handler for ctx: {}", ctx);
       super.cancelled();
+      releaseChunkBuffer();
+      dequeue();
       markConnectionToDelegateWritesInConfiguredExecutor(false);
       close();
       responseStatusCallback.responseSendFailure(new DefaultMuleException(CoreMessages
@@ -287,6 +467,8 @@ public class ResponseStreamingCompletionHandler extends BaseResponseCompletionHa
     try {
       LOGGER.debug("Failed streaming response handler for ctx: {}", ctx);
       super.failed(throwable);
+      releaseChunkBuffer();
+      dequeue();
       markConnectionToDelegateWritesInConfiguredExecutor(false);
       close();
       responseStatusCallback.onErrorSendingResponse(isConnectionOpen() ? throwable
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.service.server.grizzly;
+
+import static org.mule.runtime.api.util.MuleSystemProperties.SYSTEM_PROPERTY_PREFIX;
+import static org.mule.service.http.impl.service.server.grizzly.SseTopic.SlowConsumerPolicy.DROP;
+
+import static java.lang.Integer.getInteger;
+import static java.lang.String.format;
+import static java.lang.System.getProperty;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Locale.ROOT;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.glassfish.grizzly.memory.Buffers.wrap;
+import static org.glassfish.grizzly.memory.MemoryManager.DEFAULT_MEMORY_MANAGER;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import org.mule.runtime.http.api.server.HttpServer;
+import org.mule.runtime.http.api.server.async.HttpResponseReadyCallback;
+import org.mule.runtime.http.api.server.async.ResponseStatusCallback;
+import org.mule.service.http.impl.service.server.HttpServerDelegate;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.glassfish.grizzly.Buffer;
+import org.slf4j.Logger;
+
+/**
+ * Broadcasts Server Sent Events to all its subscribers. Each event is encoded once into a read-only buffer, which is written as
+ * is to the connection of every subscriber.
+ * <p>
+ * Each subscriber has its own bounded queue of events waiting to be written, and when a new event finds it full, the
+ * {@link SlowConsumerPolicy} of the topic is applied.
+ * <p>
+ * The servers handed out by the service are wrappers of the actual one, so the topics of a server are got through
+ * {@link #sseTopic(HttpServer, String)}, and the client of a request is subscribed from its request handler through
+ * {@link #subscribe(HttpResponseReadyCallback, ResponseStatusCallback)}.
+ *
+ * @since 1.12
+ */
+public class SseTopic {
+
+  /**
+   * What to do when an event is published and the queue of a subscriber is full.
+   */
+  public enum SlowConsumerPolicy {
+    /**
+     * The new event is not sent to the subscriber.
+     */
+    DROP,
+    /**
+     * The queued events are discarded, and only the new one is sent.
+     */
+    COALESCE,
+    /**
+     * The connection of the subscriber is closed.
+     */
+    DISCONNECT
+  }
+
+  public static final String MAX_QUEUED_EVENTS_PROPERTY = SYSTEM_PROPERTY_PREFIX + "http.server.sse.topic.maxQueuedEvents";
+  public static final String SLOW_CONSUMER_POLICY_PROPERTY =
+      SYSTEM_PROPERTY_PREFIX + "http.server.sse.topic.slowConsumerPolicy";
+
+  private static final Logger LOGGER = getLogger(SseTopic.class);
+  private static final int DEFAULT_MAX_QUEUED_EVENTS = 64;
+
+  private final String name;
+  private final int maxQueuedEvents;
+  private final SlowConsumerPolicy slowConsumerPolicy;
+  private final Set<SseTopicSubscriber> subscribers = ConcurrentHashMap.newKeySet();
+  private final SseTopicStatistics statistics = new SseTopicStatistics();
+  private volatile boolean closed = false;
+
+  public SseTopic(String name) {
+    this(name, getInteger(MAX_QUEUED_EVENTS_PROPERTY, DEFAULT_MAX_QUEUED_EVENTS),
+         SlowConsumerPolicy.valueOf(getProperty(SLOW_CONSUMER_POLICY_PROPERTY, DROP.name()).toUpperCase(ROOT)));
+  }
+
+  public SseTopic(String name, int maxQueuedEvents, SlowConsumerPolicy slowConsumerPolicy) {
+    checkArgument(maxQueuedEvents > 0, "maxQueuedEvents must be positive");
+    this.name = name;
+    this.maxQueuedEvents = maxQueuedEvents;
+    this.slowConsumerPolicy = slowConsumerPolicy;
+  }
+
+  /**
+   * Gets the topic with the given name of a server, creating it if needed. The topics are closed when the server is stopped.
+   *
+   * @param server a server created by this service.
+   * @param name   the name of the topic.
+   * @return the topic.
+   * @throws IllegalArgumentException if the server was not created by this service.
+   */
+  public static SseTopic sseTopic(HttpServer server, String name) {
+    HttpServer actualServer = server;
+    while (actualServer instanceof HttpServerDelegate) {
+      actualServer = ((HttpServerDelegate) actualServer).getDelegate();
+    }
+    checkArgument(actualServer instanceof GrizzlyHttpServer, "SSE topics are not supported by server %s", server);
+    return ((GrizzlyHttpServer) actualServer).sseTopic(name);
+  }
+
+  /**
+   * Starts the Server Sent Events response of a request, that receives the events published to this topic.
+   *
+   * @param responseReadyCallback  the callback given to the request handler along with the request.
+   * @param responseStatusCallback notified when the response ends.
+   * @return the subscriber, that may be closed to end the response.
+   * @throws IllegalArgumentException if the request was not received by a server of this service.
+   */
+  public SseTopicSubscriber subscribe(HttpResponseReadyCallback responseReadyCallback,
+                                      ResponseStatusCallback responseStatusCallback) {
+    checkArgument(responseReadyCallback instanceof GrizzlyHttpResponseReadyCallback,
+                  "SSE topics are not supported by response callback %s", responseReadyCallback);
+    return ((GrizzlyHttpResponseReadyCallback) responseReadyCallback).startSseResponse(this, responseStatusCallback);
+  }
+
+  /**
+   * Publishes an event without name nor id.
+   *
+   * @param data the data of the event, which may have several lines.
+   */
+  public void publish(String data) {
+    publish(null, data, null);
+  }
+
+  /**
+   * Publishes an event to all the current subscribers.
+   *
+   * @param eventName the name of the event, may be {@code null}.
+   * @param data      the data of the event, which may have several lines.
+   * @param id        the id of the event, may be {@code null}.
+   */
+  public void publish(String eventName, String data, String id) {
+    if (closed) {
+      throw new IllegalStateException(format("SSE topic '%s' is closed", name));
+    }
+    Buffer event = encode(eventName, data, id);
+    statistics.eventPublished(event.remaining(), subscribers.size());
+    LOGGER.debug("Publishing event of {} bytes to {} subscribers of topic '{}'", event.remaining(), subscribers.size(), name);
+    for (SseTopicSubscriber subscriber : subscribers) {
+      subscriber.offer(event);
+    }
+  }
+
+  /**
+   * Encodes an event in the format of the {@code text/event-stream} content type.
+   *
+   * @return a read-only buffer with the event, which must be duplicated before writing it.
+   */
+  static Buffer encode(String eventName, String data, String id) {
+    checkArgument(eventName == null || !hasLineBreak(eventName), "The name of an event must be a single line");
+    checkArgument(id == null || !hasLineBreak(id), "The id of an event must be a single line");
+
+    StringBuilder event = new StringBuilder();
+    if (id != null) {
+      event.append("id: ").append(id).append('\n');
+    }
+    if (eventName != null) {
+      event.append("event: ").append(eventName).append('\n');
+    }
+    for (String line : data.split("\r\n|\r|\n", -1)) {
+      event.append("data: ").append(line).append('\n');
+    }
+    event.append('\n');
+
+    Buffer buffer = wrap(DEFAULT_MEMORY_MANAGER, event.toString().getBytes(UTF_8));
+    // It's written to many connections, so Grizzly must never dispose it.
+    buffer.allowBufferDispose(false);
+    return buffer.asReadOnlyBuffer();
+  }
+
+  private static boolean hasLineBreak(String value) {
+    return value.indexOf('\n') != -1 || value.indexOf('\r') != -1;
+  }
+
+  void subscribe(SseTopicSubscriber subscriber) {
+    if (closed) {
+      throw new IllegalStateException(format("SSE topic '%s' is closed", name));
+    }
+    subscribers.add(subscriber);
+  }
+
+  void unsubscribe(SseTopicSubscriber subscriber) {
+    subscribers.remove(subscriber);
+  }
+
+  /**
+   * Ends the responses of all the subscribers, after sending them their queued events, and rejects any further event or
+   * subscription.
+   */
+  public void close() {
+    closed = true;
+    for (SseTopicSubscriber subscriber : subscribers) {
+      subscriber.close();
+    }
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  int getMaxQueuedEvents() {
+    return maxQueuedEvents;
+  }
+
+  SlowConsumerPolicy getSlowConsumerPolicy() {
+    return slowConsumerPolicy;
+  }
+
+  public boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * @return the amount of subscribers currently receiving the events of this topic.
+   */
+  public int getSubscribersCount() {
+    return subscribers.size();
+  }
+
+  public SseTopicStatistics getStatistics() {
+    return statistics;
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.service.server.grizzly;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics of the fan-out of the events published to an {@link SseTopic}, useful to detect slow subscribers.
+ *
+ * @since 1.12
+ */
+public final class SseTopicStatistics {
+
+  private final LongAdder publishedEvents = new LongAdder();
+  private final LongAdder encodedBytes = new LongAdder();
+  private final LongAdder offeredEvents = new LongAdder();
+  private final LongAdder deliveredEvents = new LongAdder();
+  private final LongAdder droppedEvents = new LongAdder();
+  private final LongAdder coalescedEvents = new LongAdder();
+  private final LongAdder disconnectedSubscribers = new LongAdder();
+
+  void eventPublished(int bytes, int subscribers) {
+    publishedEvents.increment();
+    encodedBytes.add(bytes);
+    offeredEvents.add(subscribers);
+  }
+
+  void eventDelivered() {
+    deliveredEvents.increment();
+  }
+
+  void eventDropped() {
+    droppedEvents.increment();
+  }
+
+  void eventsCoalesced(int discardedEvents) {
+    coalescedEvents.add(discardedEvents);
+  }
+
+  void subscriberDisconnected() {
+    disconnectedSubscribers.increment();
+  }
+
+  /**
+   * @return the amount of events published to the topic
+   */
+  public long getPublishedEvents() {
+    return publishedEvents.sum();
+  }
+
+  /**
+   * @return the amount of bytes the published events were encoded to, once per event regardless of the subscribers
+   */
+  public long getEncodedBytes() {
+    return encodedBytes.sum();
+  }
+
+  /**
+   * @return the sum of the subscribers each event was published to
+   */
+  public long getOfferedEvents() {
+    return offeredEvents.sum();
+  }
+
+  /**
+   * @return the amount of events written to a subscriber
+   */
+  public long getDeliveredEvents() {
+    return deliveredEvents.sum();
+  }
+
+  /**
+   * @return the amount of events not sent to a subscriber because its queue was full
+   */
+  public long getDroppedEvents() {
+    return droppedEvents.sum();
+  }
+
+  /**
+   * @return the amount of queued events discarded because a newer one was published while the queue of the subscriber was full
+   */
+  public long getCoalescedEvents() {
+    return coalescedEvents.sum();
+  }
+
+  /**
+   * @return the amount of subscribers disconnected because their queue was full
+   */
+  public long getDisconnectedSubscribers() {
+    return disconnectedSubscribers.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "SseTopicStatistics{publishedEvents=" + getPublishedEvents() + ", encodedBytes=" + getEncodedBytes()
+        + ", offeredEvents=" + getOfferedEvents() + ", deliveredEvents=" + getDeliveredEvents() + ", droppedEvents="
+        + getDroppedEvents() + ", coalescedEvents=" + getCoalescedEvents() + ", disconnectedSubscribers="
+        + getDisconnectedSubscribers() + "}";
+  }
+}
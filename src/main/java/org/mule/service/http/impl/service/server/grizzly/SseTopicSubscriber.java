@@ -0,0 +1,304 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.service.server.grizzly;
+
+import static java.lang.String.format;
+
+import static org.glassfish.grizzly.http.HttpServerFilter.RESPONSE_COMPLETE_EVENT;
+import static org.glassfish.grizzly.memory.Buffers.EMPTY_BUFFER;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import org.mule.runtime.api.connection.SourceRemoteConnectionException;
+import org.mule.runtime.http.api.domain.message.response.HttpResponse;
+import org.mule.runtime.http.api.server.async.ResponseStatusCallback;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.glassfish.grizzly.Buffer;
+import org.glassfish.grizzly.CloseListener;
+import org.glassfish.grizzly.Connection;
+import org.glassfish.grizzly.EmptyCompletionHandler;
+import org.glassfish.grizzly.WriteResult;
+import org.glassfish.grizzly.filterchain.FilterChainContext;
+import org.glassfish.grizzly.http.HttpRequestPacket;
+import org.slf4j.Logger;
+
+/**
+ * The response of a client subscribed to an {@link SseTopic}. It writes the events published to the topic one at a time,
+ * queueing the ones published meanwhile up to the limit of the topic.
+ *
+ * @since 1.12
+ */
+public class SseTopicSubscriber extends BaseResponseCompletionHandler {
+
+  private static final Logger LOGGER = getLogger(SseTopicSubscriber.class);
+
+  private final FilterChainContext ctx;
+  private final ClassLoader ctxClassLoader;
+  private final ResponseStatusCallback responseStatusCallback;
+  private final SseTopic topic;
+  private final EventCompletionHandler eventCompletionHandler = new EventCompletionHandler();
+  private final TrailerCompletionHandler trailerCompletionHandler = new TrailerCompletionHandler();
+  private final CloseListener connectionCloseListener = (closeable, closeType) -> onConnectionClosed();
+
+  // Guarded by this.
+  private final Deque<Buffer> pendingEvents = new ArrayDeque<>();
+  private boolean writing = false;
+  // No more events are accepted.
+  private boolean closed = false;
+  // The outcome of the response was reported to the callback.
+  private boolean ended = false;
+
+  SseTopicSubscriber(FilterChainContext ctx, ClassLoader ctxClassLoader, HttpRequestPacket request, HttpResponse httpResponse,
+                     ResponseStatusCallback responseStatusCallback, SseTopic topic) {
+    LOGGER.debug("Creating subscriber of SSE topic '{}' for ctx: {}", topic.getName(), ctx);
+    this.ctx = ctx;
+    this.ctxClassLoader = ctxClassLoader;
+    this.httpResponsePacket = buildHttpResponsePacket(request, httpResponse);
+    this.responseStatusCallback = responseStatusCallback;
+    this.topic = topic;
+  }
+
+  /**
+   * Sends the headers of the response and subscribes to the topic. The events published before the headers are written are
+   * queued.
+   */
+  void start() {
+    synchronized (this) {
+      writing = true;
+    }
+    topic.subscribe(this);
+    Connection connection = ctx.getConnection();
+    if (connection != null) {
+      connection.addCloseListener(connectionCloseListener);
+    }
+    ctx.write(httpResponsePacket.httpContentBuilder().content(EMPTY_BUFFER).last(false).build(), this);
+  }
+
+  /**
+   * Writes the event, or queues it if another one is being written.
+   *
+   * @param event the encoded event, shared with the rest of the subscribers.
+   */
+  void offer(Buffer event) {
+    Buffer toWrite = null;
+    boolean disconnect = false;
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      if (!writing) {
+        writing = true;
+        toWrite = event;
+      } else if (pendingEvents.size() < topic.getMaxQueuedEvents()) {
+        pendingEvents.addLast(event);
+      } else {
+        switch (topic.getSlowConsumerPolicy()) {
+          case DROP:
+            topic.getStatistics().eventDropped();
+            break;
+          case COALESCE:
+            topic.getStatistics().eventsCoalesced(pendingEvents.size());
+            pendingEvents.clear();
+            pendingEvents.addLast(event);
+            break;
+          case DISCONNECT:
+            closed = true;
+            ended = true;
+            pendingEvents.clear();
+            disconnect = true;
+            break;
+        }
+      }
+    }
+
+    if (toWrite != null) {
+      write(toWrite);
+    } else if (disconnect) {
+      disconnect();
+    }
+  }
+
+  private void write(Buffer event) {
+    // Each connection writes its own view of the shared buffer, so that they don't move each other's position.
+    Buffer view = event.asReadOnlyBuffer();
+    view.allowBufferDispose(false);
+    ctx.write(httpResponsePacket.httpContentBuilder().content(view).last(false).build(), eventCompletionHandler);
+  }
+
+  private void writeNext() {
+    Buffer next;
+    synchronized (this) {
+      next = closed ? null : pendingEvents.pollFirst();
+      writing = next != null;
+    }
+    if (next != null) {
+      write(next);
+    }
+  }
+
+  /**
+   * Unsubscribes from the topic and ends the response, after sending the queued events. The response is reported as sent once
+   * the trailer is written.
+   */
+  public void close() {
+    Buffer[] remainingEvents;
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      remainingEvents = pendingEvents.toArray(new Buffer[0]);
+      pendingEvents.clear();
+    }
+    LOGGER.debug("Closing subscriber of SSE topic '{}' for ctx: {}", topic.getName(), ctx);
+    topic.unsubscribe(this);
+    // A connection closed from now on fails the pending writes instead
+    removeCloseListener();
+    // Grizzly keeps the order of the writes, so they go after the one in progress, if any.
+    for (Buffer event : remainingEvents) {
+      write(event);
+    }
+    ctx.write(httpResponsePacket.httpTrailerBuilder().build(), trailerCompletionHandler);
+  }
+
+  private void disconnect() {
+    LOGGER.debug("Disconnecting slow subscriber of SSE topic '{}' for ctx: {}", topic.getName(), ctx);
+    topic.unsubscribe(this);
+    topic.getStatistics().subscriberDisconnected();
+    Connection connection = ctx.getConnection();
+    if (connection != null) {
+      connection.closeSilently();
+    }
+    responseStatusCallback.onErrorSendingResponse(new IOException(format("Subscriber of SSE topic '%s' disconnected for not "
+        + "consuming the events in time", topic.getName())));
+    resume();
+  }
+
+  private void onConnectionClosed() {
+    // Ignored if the response already ended
+    failed(new IOException("Connection closed"));
+  }
+
+  public boolean isClosed() {
+    synchronized (this) {
+      return closed;
+    }
+  }
+
+  /**
+   * The headers or the trailer were written.
+   */
+  @Override
+  public void completed(WriteResult result) {
+    writeNext();
+  }
+
+  @Override
+  public void cancelled() {
+    if (!markEnded()) {
+      return;
+    }
+    super.cancelled();
+    topic.unsubscribe(this);
+    responseStatusCallback.responseSendFailure(new IOException("HTTP response sending task was cancelled"));
+    resume();
+  }
+
+  @Override
+  public void failed(Throwable throwable) {
+    if (!markEnded()) {
+      return;
+    }
+    LOGGER.debug("Failed subscriber of SSE topic '{}' for ctx: {}", topic.getName(), ctx, throwable);
+    super.failed(throwable);
+    topic.unsubscribe(this);
+    Connection connection = ctx.getConnection();
+    responseStatusCallback.onErrorSendingResponse(connection != null && connection.isOpen() ? throwable
+        : new SourceRemoteConnectionException(CLIENT_CONNECTION_CLOSED_MESSAGE, throwable));
+    resume();
+  }
+
+  /**
+   * @return whether the response had not ended yet, so the caller is the one that must report its outcome.
+   */
+  private boolean markEnded() {
+    synchronized (this) {
+      if (ended) {
+        return false;
+      }
+      ended = true;
+      closed = true;
+      pendingEvents.clear();
+      return true;
+    }
+  }
+
+  private void resume() {
+    removeCloseListener();
+    ctx.resume(ctx.getStopAction());
+  }
+
+  /**
+   * Keep-alive connections outlive the response, so the listener must not hold on to this subscriber.
+   */
+  private void removeCloseListener() {
+    Connection connection = ctx.getConnection();
+    if (connection != null) {
+      connection.removeCloseListener(connectionCloseListener);
+    }
+  }
+
+  @Override
+  protected ClassLoader getCtxClassLoader() {
+    return ctxClassLoader;
+  }
+
+  private final class EventCompletionHandler extends EmptyCompletionHandler<WriteResult> {
+
+    @Override
+    public void completed(WriteResult result) {
+      topic.getStatistics().eventDelivered();
+      writeNext();
+    }
+
+    @Override
+    public void cancelled() {
+      SseTopicSubscriber.this.cancelled();
+    }
+
+    @Override
+    public void failed(Throwable throwable) {
+      SseTopicSubscriber.this.failed(throwable);
+    }
+  }
+
+  private final class TrailerCompletionHandler extends EmptyCompletionHandler<WriteResult> {
+
+    @Override
+    public void completed(WriteResult result) {
+      if (!markEnded()) {
+        return;
+      }
+      ctx.notifyDownstream(RESPONSE_COMPLETE_EVENT);
+      responseStatusCallback.responseSendSuccessfully();
+      resume();
+    }
+
+    @Override
+    public void cancelled() {
+      SseTopicSubscriber.this.cancelled();
+    }
+
+    @Override
+    public void failed(Throwable throwable) {
+      SseTopicSubscriber.this.failed(throwable);
+    }
+  }
+}
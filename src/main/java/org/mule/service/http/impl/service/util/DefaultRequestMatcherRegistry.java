@@ -9,8 +9,6 @@ package org.mule.service.http.impl.service.util;
 import static java.lang.Boolean.valueOf;
 import static java.lang.String.format;
 import static java.lang.System.getProperty;
-import static java.util.Collections.list;
-import static java.util.Collections.reverse;
 import static org.mule.runtime.api.i18n.I18nMessageFactory.createStaticMessage;
 import static org.mule.runtime.api.util.Preconditions.checkArgument;
 import static org.mule.service.http.impl.service.server.grizzly.HttpParser.decodePath;
@@ -28,9 +26,9 @@ import org.mule.service.http.impl.service.server.DecodingException;
 
 import org.slf4j.Logger;
 
-import com.github.benmanes.caffeine.cache.Caffeine;
-import com.github.benmanes.caffeine.cache.LoadingCache;
-import com.google.common.base.Joiner;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.benmanes.caffeine.cache.stats.ConcurrentStatsCounter;
+import com.github.benmanes.caffeine.cache.stats.StatsCounter;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -52,6 +50,7 @@ public class DefaultRequestMatcherRegistry<T> implements RequestMatcherRegistry<
   private final boolean HTTP_SERVICE_ENCODED_SLASH_ENABLED =
       valueOf(getProperty(HTTP_SERVICE_ENCODED_SLASH_ENABLED_PROPERTY, "false"));
   static final Supplier NULL_SUPPLIER = () -> null;
+  public static final int DEFAULT_PATHS_CACHE_SIZE = 32;
 
   private Path serverRequestHandler;
   private final Path rootPath = new Path("root", null);
@@ -61,49 +60,35 @@ public class DefaultRequestMatcherRegistry<T> implements RequestMatcherRegistry<
   private final Supplier<T> notFoundMismatchHandler;
   private final Supplier<T> invalidRequestHandler;
   private final Supplier<T> notAvailableMismatchHandler;
+  private final int pathsCacheSize;
+  private final boolean cacheByRouteTemplate;
+  private final StatsCounter pathsCacheStatsCounter = new ConcurrentStatsCounter();
 
-  private final LoadingCache<String, List<Path>> requestsPathsCache =
-      Caffeine.<String, List<Path>>newBuilder().maximumSize(32).build(requestPath -> {
-        try {
-          String fullPathName = pathDecodedWithEncodedSlashes(requestPath);
-          checkArgument(fullPathName.startsWith(SLASH), "path parameter must start with /");
-          Stack<Path> found = findPossibleRequestHandlers(fullPathName);
-          List<Path> foundAsList = list(found.elements());
-          reverse(foundAsList);
-          return foundAsList;
-        } catch (DecodingException e) {
-          return null;
-        }
-      });
+  /**
+   * Immutable view of the current {@link Path} structure used to match requests. It is replaced every time a handler is added or
+   * removed, so that {@link #find(HttpRequest)} never has to synchronize with those operations.
+   */
+  private volatile RoutingTable<T> routingTable;
 
   private String pathDecodedWithEncodedSlashes(String requestPath) throws DecodingException {
-    String fullPathName = decodePath(requestPath);
-    if (!HTTP_SERVICE_ENCODED_SLASH_ENABLED) {
-      return fullPathName;
-    }
-
-    int percentages = 0;
-    ArrayList<Integer> positions = new ArrayList<>();
-
-    Integer pos = -1;
-    while ((pos = requestPath.indexOf("%", pos + 1)) != -1) {
-      if (requestPath.regionMatches(pos, ENCODED_SLASH, 0, ENCODED_SLASH.length())) {
-        positions.add(pos - 2 * percentages);
-      }
-      percentages++;
+    if (requestPath.indexOf('%') == -1 && requestPath.indexOf('+') == -1) {
+      // Nothing to decode, which is the case for most requests
+      return requestPath;
     }
-
-    if (positions.isEmpty()) {
-      return fullPathName;
+    int encodedSlashPosition;
+    if (!HTTP_SERVICE_ENCODED_SLASH_ENABLED || (encodedSlashPosition = requestPath.indexOf(ENCODED_SLASH)) == -1) {
+      return decodePath(requestPath);
     }
 
-    StringBuilder fullPathNameWithEscapedSlashes = new StringBuilder();
+    // Decode the parts between encoded slashes, keeping those as they are
+    StringBuilder fullPathNameWithEscapedSlashes = new StringBuilder(requestPath.length());
     int lastPosition = 0;
-    for (Integer slashPos : positions) {
-      fullPathNameWithEscapedSlashes.append(fullPathName.substring(lastPosition, slashPos)).append(ENCODED_SLASH);
-      lastPosition = slashPos + 1;
-    }
-    fullPathNameWithEscapedSlashes.append(fullPathName.substring(lastPosition));
+    do {
+      fullPathNameWithEscapedSlashes.append(decodePath(requestPath.substring(lastPosition, encodedSlashPosition)))
+          .append(ENCODED_SLASH);
+      lastPosition = encodedSlashPosition + ENCODED_SLASH.length();
+    } while ((encodedSlashPosition = requestPath.indexOf(ENCODED_SLASH, lastPosition)) != -1);
+    fullPathNameWithEscapedSlashes.append(decodePath(requestPath.substring(lastPosition)));
     return fullPathNameWithEscapedSlashes.toString();
   }
 
@@ -114,10 +99,52 @@ public class DefaultRequestMatcherRegistry<T> implements RequestMatcherRegistry<
   public DefaultRequestMatcherRegistry(Supplier<T> noMatchMismatchHandler, Supplier<T> notFoundMismatchHandler,
                                        Supplier<T> invalidRequestHandler,
                                        Supplier<T> notAvailableMismatchHandler) {
+    this(noMatchMismatchHandler, notFoundMismatchHandler, invalidRequestHandler, notAvailableMismatchHandler,
+         DEFAULT_PATHS_CACHE_SIZE, false);
+  }
+
+  /**
+   * @param pathsCacheSize       the maximum amount of resolved request paths to cache
+   * @param cacheByRouteTemplate whether resolved request paths should be cached by route template instead of by literal path, so
+   *                             that paths that only differ in the value of URI params or wildcards share the same entry
+   */
+  public DefaultRequestMatcherRegistry(Supplier<T> noMatchMismatchHandler, Supplier<T> notFoundMismatchHandler,
+                                       Supplier<T> invalidRequestHandler,
+                                       Supplier<T> notAvailableMismatchHandler,
+                                       int pathsCacheSize,
+                                       boolean cacheByRouteTemplate) {
+    checkArgument(pathsCacheSize >= 0, "pathsCacheSize must not be negative");
     this.noMatchMismatchHandler = noMatchMismatchHandler;
     this.notFoundMismatchHandler = notFoundMismatchHandler;
     this.invalidRequestHandler = invalidRequestHandler;
     this.notAvailableMismatchHandler = notAvailableMismatchHandler;
+    this.pathsCacheSize = pathsCacheSize;
+    this.cacheByRouteTemplate = cacheByRouteTemplate;
+    this.routingTable = compileRoutingTable(null);
+  }
+
+  /**
+   * Must be called while holding this registry's lock, after any change to the {@link Path} structure.
+   *
+   * @param changedRoutePath the normalized path of the route that was added or removed, if any
+   */
+  private RoutingTable<T> compileRoutingTable(String changedRoutePath) {
+    RoutingTable<T> compiled = new RoutingTable<>(rootPath, catchAllPath, serverRequestHandler, paths,
+                                                  this::pathDecodedWithEncodedSlashes, pathsCacheSize, cacheByRouteTemplate,
+                                                  pathsCacheStatsCounter);
+    if (changedRoutePath != null) {
+      compiled.retainCachedPaths(routingTable, changedRoutePath);
+    }
+    return compiled;
+  }
+
+  /**
+   * @return the statistics of the cache of resolved request paths, accumulated since this registry was created
+   */
+  public PathsCacheStatistics getPathsCacheStatistics() {
+    CacheStats stats = pathsCacheStatsCounter.snapshot();
+    return new PathsCacheStatistics(stats.hitCount(), stats.missCount(), stats.evictionCount(),
+                                    routingTable.getCachedPathsCount(), pathsCacheSize);
   }
 
   /**
@@ -183,7 +210,7 @@ public class DefaultRequestMatcherRegistry<T> implements RequestMatcherRegistry<
         requestHandlerOwner = path;
       }
     }
-    requestsPathsCache.invalidateAll();
+    routingTable = compileRoutingTable(requestMatcherPath);
     return new DefaultRequestMatcherRegistryEntry(requestHandlerOwner, addedRequestHandlerMatcherPair);
   }
 
@@ -257,7 +284,8 @@ public class DefaultRequestMatcherRegistry<T> implements RequestMatcherRegistry<
    */
   @Override
   public T find(HttpRequest request) {
-    List<Path> foundPaths = requestsPathsCache.get(request.getPath());
+    final RoutingTable<T> currentRoutingTable = routingTable;
+    List<RoutingTable.Node<T>> foundPaths = currentRoutingTable.lookup(request.getPath());
 
     if (foundPaths == null) {
       return this.invalidRequestHandler.get();
@@ -266,12 +294,8 @@ public class DefaultRequestMatcherRegistry<T> implements RequestMatcherRegistry<
     boolean methodNotAllowed = false;
     RequestHandlerMatcherPair<T> requestHandlerMatcherPair = null;
 
-    for (Path path : foundPaths) {
+    for (RoutingTable.Node<T> path : foundPaths) {
       List<RequestHandlerMatcherPair<T>> requestHandlerMatcherPairs = path.getRequestHandlerMatcherPairs();
-
-      if (requestHandlerMatcherPairs == null && path.getCatchAll() != null) {
-        requestHandlerMatcherPairs = path.getCatchAll().requestHandlerMatcherPairs;
-      }
       requestHandlerMatcherPair = findRequestHandlerMatcherPair(requestHandlerMatcherPairs, request);
 
       if (requestHandlerMatcherPair != null) {
@@ -285,7 +309,7 @@ public class DefaultRequestMatcherRegistry<T> implements RequestMatcherRegistry<
     if (requestHandlerMatcherPair == null) {
       if (LOGGER.isInfoEnabled()) {
         LOGGER.info("No listener found for request: " + getMethodAndPath(request.getMethod(), request.getPath()));
-        LOGGER.info("Available listeners are: [{}]", Joiner.on(", ").join(this.paths));
+        LOGGER.info("Available listeners are: [{}]", currentRoutingTable.getAvailablePaths());
       }
       if (methodNotAllowed) {
         return noMatchMismatchHandler.get();
@@ -591,7 +615,7 @@ public class DefaultRequestMatcherRegistry<T> implements RequestMatcherRegistry<
 
     private final PathAndMethodRequestMatcher requestMatcher;
     private final A requestHandler;
-    private boolean running = true;
+    private volatile boolean running = true;
 
     private RequestHandlerMatcherPair(PathAndMethodRequestMatcher requestMatcher, A requestHandler) {
       this.requestMatcher = requestMatcher;
@@ -638,12 +662,12 @@ public class DefaultRequestMatcherRegistry<T> implements RequestMatcherRegistry<
 
     @Override
     public void remove() {
-      removeRequestHandler(requestHandlerMatcherPair.getRequestMatcher());
-      requestHandlerOwner.removeRequestHandlerMatcherPair(requestHandlerMatcherPair);
-
-      // This is just for housekeeping. Since the Path is mutable, its state is always kept up to date, so the cached value is
-      // kept consistent.
-      requestsPathsCache.invalidateAll();
+      synchronized (DefaultRequestMatcherRegistry.this) {
+        removeRequestHandler(requestHandlerMatcherPair.getRequestMatcher());
+        requestHandlerOwner.removeRequestHandlerMatcherPair(requestHandlerMatcherPair);
+        String removedPath = normalizePathWithSpacesOrEncodedSpaces(requestHandlerMatcherPair.getRequestMatcher().getPath());
+        routingTable = compileRoutingTable(removedPath);
+      }
     }
   }
 
@@ -7,6 +7,8 @@
 package org.mule.service.http.impl.service.util;
 
 import static java.util.Objects.requireNonNull;
+import static org.mule.runtime.api.util.Preconditions.checkArgument;
+import static org.mule.service.http.impl.service.util.DefaultRequestMatcherRegistry.DEFAULT_PATHS_CACHE_SIZE;
 import static org.mule.service.http.impl.service.util.DefaultRequestMatcherRegistry.NULL_SUPPLIER;
 import org.mule.runtime.http.api.utils.RequestMatcherRegistry;
 
@@ -18,6 +20,29 @@ public class DefaultRequestMatcherRegistryBuilder<T> implements RequestMatcherRe
   private Supplier<T> onNotFound = NULL_SUPPLIER;
   private Supplier<T> onDisabled = NULL_SUPPLIER;
   private Supplier<T> onInvalidRequest = NULL_SUPPLIER;
+  private int pathsCacheSize = DEFAULT_PATHS_CACHE_SIZE;
+  private boolean cacheByRouteTemplate = false;
+
+  /**
+   * @param pathsCacheSize the maximum amount of resolved request paths the registry will cache
+   * @return this builder
+   */
+  public DefaultRequestMatcherRegistryBuilder<T> pathsCacheSize(int pathsCacheSize) {
+    checkArgument(pathsCacheSize >= 0, "pathsCacheSize must not be negative");
+    this.pathsCacheSize = pathsCacheSize;
+    return this;
+  }
+
+  /**
+   * @param cacheByRouteTemplate whether resolved request paths should be cached by route template instead of by literal path, so
+   *                             that {@code /orders/123} and {@code /orders/456} share one entry when {@code /orders/{id}} is
+   *                             registered
+   * @return this builder
+   */
+  public DefaultRequestMatcherRegistryBuilder<T> cacheByRouteTemplate(boolean cacheByRouteTemplate) {
+    this.cacheByRouteTemplate = cacheByRouteTemplate;
+    return this;
+  }
 
   @Override
   public RequestMatcherRegistry.RequestMatcherRegistryBuilder<T> onMethodMismatch(Supplier<T> itemSupplier) {
@@ -48,7 +73,8 @@ public class DefaultRequestMatcherRegistryBuilder<T> implements RequestMatcherRe
   }
 
   @Override
-  public RequestMatcherRegistry<T> build() {
-    return new DefaultRequestMatcherRegistry<>(onMethodMismatch, onNotFound, onInvalidRequest, onDisabled);
+  public DefaultRequestMatcherRegistry<T> build() {
+    return new DefaultRequestMatcherRegistry<>(onMethodMismatch, onNotFound, onInvalidRequest, onDisabled, pathsCacheSize,
+                                               cacheByRouteTemplate);
   }
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.service.util;
+
+/**
+ * Statistics of the cache of resolved request paths of a {@link DefaultRequestMatcherRegistry}, useful for sizing it.
+ *
+ * @since 1.12
+ */
+public final class PathsCacheStatistics {
+
+  private final long hitCount;
+  private final long missCount;
+  private final long evictionCount;
+  private final long size;
+  private final long maximumSize;
+
+  public PathsCacheStatistics(long hitCount, long missCount, long evictionCount, long size, long maximumSize) {
+    this.hitCount = hitCount;
+    this.missCount = missCount;
+    this.evictionCount = evictionCount;
+    this.size = size;
+    this.maximumSize = maximumSize;
+  }
+
+  /**
+   * @return the amount of lookups that found the request path already resolved
+   */
+  public long getHitCount() {
+    return hitCount;
+  }
+
+  /**
+   * @return the amount of lookups that had to resolve the request path
+   */
+  public long getMissCount() {
+    return missCount;
+  }
+
+  /**
+   * @return the amount of resolved paths discarded to keep the cache within its maximum size
+   */
+  public long getEvictionCount() {
+    return evictionCount;
+  }
+
+  /**
+   * @return the approximate amount of resolved paths currently cached
+   */
+  public long getSize() {
+    return size;
+  }
+
+  /**
+   * @return the maximum amount of resolved paths that may be cached
+   */
+  public long getMaximumSize() {
+    return maximumSize;
+  }
+
+  /**
+   * @return the ratio of lookups that were hits, or {@code 1.0} if there were no lookups
+   */
+  public double getHitRate() {
+    long requestCount = hitCount + missCount;
+    return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+  }
+
+  @Override
+  public String toString() {
+    return "PathsCacheStatistics{hitCount=" + hitCount + ", missCount=" + missCount + ", evictionCount=" + evictionCount
+        + ", size=" + size + ", maximumSize=" + maximumSize + "}";
+  }
+}
@@ -0,0 +1,378 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.service.util;
+
+import static org.mule.runtime.api.util.Preconditions.checkArgument;
+
+import static java.lang.Boolean.TRUE;
+import static java.util.Collections.reverse;
+import static java.util.Collections.unmodifiableList;
+
+import org.mule.service.http.impl.service.server.DecodingException;
+import org.mule.service.http.impl.service.util.DefaultRequestMatcherRegistry.Path;
+import org.mule.service.http.impl.service.util.DefaultRequestMatcherRegistry.RequestHandlerMatcherPair;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.stats.StatsCounter;
+import com.google.common.base.Joiner;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the {@link Path} tree of a {@link DefaultRequestMatcherRegistry}.
+ * <p>
+ * A new table is compiled from the mutable tree every time a handler is added or removed, and published through a volatile
+ * reference. Request matching only reads the current table, so it never needs to lock nor may it observe the tree while it's
+ * being modified.
+ * <p>
+ * Each table owns its own cache of resolved request paths. When a table replaces another one, it keeps the cached paths that
+ * can't be affected by the route that changed, which are those under a different first segment.
+ *
+ * @since 1.12
+ */
+final class RoutingTable<T> {
+
+  private static final String WILDCARD_CHARACTER = "*";
+  private static final String SLASH = "/";
+  private static final int NO_SEGMENT = -1;
+  // Replaces the segments that can only be matched by URI params or wildcards when caching by route template
+  private static final String TEMPLATE_SEGMENT = "\u0000";
+
+  private final Node<T> root;
+  private final Node<T> catchAll;
+  private final Node<T> server;
+  private final SegmentMap<Boolean> staticSegments;
+  private final String availablePaths;
+  private final PathDecoder pathDecoder;
+  private final boolean cacheByRouteTemplate;
+  private final LoadingCache<String, List<Node<T>>> requestsPathsCache;
+
+  RoutingTable(Path<T> rootPath, Path<T> catchAllPath, Path<T> serverPath, Collection<String> availablePaths,
+               PathDecoder pathDecoder, int pathsCacheSize, boolean cacheByRouteTemplate, StatsCounter statsCounter) {
+    Map<String, Boolean> segments = new HashMap<>();
+    this.root = new Node<>(rootPath, segments);
+    this.catchAll = new Node<>(catchAllPath, segments);
+    this.server = serverPath != null ? new Node<>(serverPath, segments) : null;
+    this.staticSegments = new SegmentMap<>(segments);
+    this.availablePaths = Joiner.on(", ").join(availablePaths);
+    this.pathDecoder = pathDecoder;
+    this.cacheByRouteTemplate = cacheByRouteTemplate;
+    this.requestsPathsCache = Caffeine.newBuilder()
+        .maximumSize(pathsCacheSize)
+        .recordStats(() -> statsCounter)
+        .build(requestPath -> {
+          try {
+            // When caching by route template the keys are already decoded
+            String fullPathName = cacheByRouteTemplate ? requestPath : pathDecoder.decode(requestPath);
+            checkArgument(fullPathName.startsWith(SLASH), "path parameter must start with /");
+            return findPossibleRequestHandlers(fullPathName);
+          } catch (DecodingException e) {
+            return null;
+          }
+        });
+  }
+
+  /**
+   * @param requestPath the raw path of the received request
+   * @return the nodes that may handle the request, most specific first, or {@code null} if the path could not be decoded
+   */
+  List<Node<T>> lookup(String requestPath) {
+    if (!cacheByRouteTemplate) {
+      return requestsPathsCache.get(requestPath);
+    }
+    try {
+      return requestsPathsCache.get(toRouteTemplate(pathDecoder.decode(requestPath)));
+    } catch (DecodingException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Copies the resolved paths cached by {@code previous} that are not affected by the change of the route with the given path.
+   *
+   * @param previous         the table this one replaces
+   * @param changedRoutePath the normalized path of the route that was added or removed
+   */
+  void retainCachedPaths(RoutingTable<T> previous, String changedRoutePath) {
+    if (!changedRoutePath.startsWith(SLASH)) {
+      return;
+    }
+    final int changedSegmentEnd = segmentEnd(changedRoutePath, 1, changedRoutePath.length());
+    if (isCatchAllPath(changedRoutePath, 1, changedSegmentEnd) || isUriParameter(changedRoutePath, 1, changedSegmentEnd)) {
+      // Any path may go through a URI param or wildcard at the first level
+      return;
+    }
+    previous.requestsPathsCache.asMap().forEach((requestPath, resolvedPaths) -> {
+      String fullPathName;
+      try {
+        fullPathName = cacheByRouteTemplate ? requestPath : pathDecoder.decode(requestPath);
+      } catch (DecodingException e) {
+        return;
+      }
+      final int segmentEnd = segmentEnd(fullPathName, 1, fullPathName.length());
+      if (segmentEnd != changedSegmentEnd || !fullPathName.regionMatches(1, changedRoutePath, 1, changedSegmentEnd - 1)) {
+        requestsPathsCache.put(requestPath, resolvedPaths);
+      }
+    });
+  }
+
+  /**
+   * @return the amount of resolved paths currently cached
+   */
+  long getCachedPathsCount() {
+    return requestsPathsCache.estimatedSize();
+  }
+
+  /**
+   * Replaces the segments of the path that don't match any static segment of the table, which are resolved the same way no matter
+   * their actual value, so that requests for the same route template share a single cache entry.
+   */
+  private String toRouteTemplate(String fullPathName) {
+    if (!fullPathName.startsWith(SLASH) || fullPathName.equals(SLASH)) {
+      return fullPathName;
+    }
+    // A trailing slash is not considered a segment on its own
+    final int pathEnd = fullPathName.endsWith(SLASH) ? fullPathName.length() - 1 : fullPathName.length();
+    StringBuilder template = null;
+    int segmentStart = 1;
+    while (true) {
+      final int segmentEnd = segmentEnd(fullPathName, segmentStart, pathEnd);
+      final boolean dynamic = staticSegments.get(fullPathName, segmentStart, segmentEnd) == null
+          && !isCatchAllPath(fullPathName, segmentStart, segmentEnd)
+          && !isUriParameter(fullPathName, segmentStart, segmentEnd);
+      if (dynamic && template == null) {
+        template = new StringBuilder(fullPathName.length()).append(fullPathName, 0, segmentStart);
+      }
+      if (template != null) {
+        if (dynamic) {
+          template.append(TEMPLATE_SEGMENT);
+        } else {
+          template.append(fullPathName, segmentStart, segmentEnd);
+        }
+      }
+      if (segmentEnd >= pathEnd) {
+        break;
+      }
+      if (template != null) {
+        template.append('/');
+      }
+      segmentStart = segmentEnd + 1;
+    }
+    if (template == null) {
+      return fullPathName;
+    }
+    if (pathEnd < fullPathName.length()) {
+      template.append('/');
+    }
+    return template.toString();
+  }
+
+  /**
+   * @return a description of the registered paths and methods, for logging purposes
+   */
+  String getAvailablePaths() {
+    return availablePaths;
+  }
+
+  /**
+   * Navigates the table searching for the paths that may handle the given one. Path segments are scanned in place as index ranges
+   * of {@code fullPathName}, so no intermediate arrays, strings or collections are created besides the returned list.
+   */
+  private List<Node<T>> findPossibleRequestHandlers(String fullPathName) {
+    List<Node<T>> foundPaths = new ArrayList<>(4);
+    foundPaths.add(catchAll);
+    if (fullPathName.equals(WILDCARD_CHARACTER)) {
+      if (server != null) {
+        foundPaths.add(server);
+      }
+      reverse(foundPaths);
+      return foundPaths;
+    }
+    if (fullPathName.equals(SLASH)) {
+      foundPaths.add(root);
+      reverse(foundPaths);
+      return foundPaths;
+    }
+
+    // A trailing slash is not considered a segment on its own
+    final int pathEnd = fullPathName.endsWith(SLASH) ? fullPathName.length() - 1 : fullPathName.length();
+    Node<T> currentPath = root;
+    Node<T> auxPath = null;
+    int segmentStart = 1;
+    int segmentEnd = segmentEnd(fullPathName, segmentStart, pathEnd);
+    while (currentPath != null) {
+      final boolean lastSegment = segmentEnd >= pathEnd;
+      final int nextSegmentStart = segmentEnd + 1;
+      final int nextSegmentEnd = lastSegment ? NO_SEGMENT : segmentEnd(fullPathName, nextSegmentStart, pathEnd);
+      Node<T> path = currentPath.getChildPath(fullPathName, segmentStart, segmentEnd, nextSegmentStart, nextSegmentEnd);
+
+      if (path == null) {
+        addCatchAllPathIfNotNull(currentPath, foundPaths);
+        path = currentPath.catchAllUriParam;
+      } else if (path.catchAll != null) {
+        auxPath = path;
+      }
+      if (lastSegment || path == null) {
+        if (auxPath != null) {
+          addCatchAllPathIfNotNull(auxPath, foundPaths);
+        }
+        if (path != null) {
+          addCatchAllPathIfNotNull(path, foundPaths);
+          foundPaths.add(path);
+        } else {
+          addCatchAllPathIfNotNull(currentPath, foundPaths);
+        }
+      }
+      if (lastSegment) {
+        break;
+      }
+      currentPath = path;
+      segmentStart = nextSegmentStart;
+      segmentEnd = nextSegmentEnd;
+    }
+    reverse(foundPaths);
+    return foundPaths;
+  }
+
+  private void addCatchAllPathIfNotNull(Node<T> currentPath, List<Node<T>> foundPaths) {
+    if (currentPath.catchAll != null) {
+      foundPaths.add(currentPath.catchAll);
+    }
+  }
+
+  private static int segmentEnd(String path, int segmentStart, int pathEnd) {
+    int slash = path.indexOf('/', segmentStart);
+    return slash < 0 || slash > pathEnd ? pathEnd : slash;
+  }
+
+  private static boolean isCatchAllPath(String path, int start, int end) {
+    return end - start == 1 && path.charAt(start) == '*';
+  }
+
+  private static boolean isUriParameter(String path, int start, int end) {
+    return end > start && (path.charAt(start) == '{' || path.startsWith("/{", start)) && path.charAt(end - 1) == '}';
+  }
+
+  /**
+   * Decodes the raw path of a request into the form used to navigate the table.
+   */
+  @FunctionalInterface
+  interface PathDecoder {
+
+    String decode(String requestPath) throws DecodingException;
+  }
+
+  /**
+   * Immutable counterpart of a {@link Path}. Handler pairs are shared with the mutable tree so that enabling or disabling a
+   * handler doesn't require compiling a new table.
+   */
+  static final class Node<T> {
+
+    private final List<RequestHandlerMatcherPair<T>> requestHandlerMatcherPairs;
+    private final SegmentMap<Node<T>> subPaths;
+    private final Node<T> catchAll;
+    private final Node<T> catchAllUriParam;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Node(Path path, Map<String, Boolean> staticSegments) {
+      this.requestHandlerMatcherPairs = unmodifiableList(new ArrayList<>(path.getRequestHandlerMatcherPairs()));
+      Map<String, Path> pathSubPaths = path.getSubPaths();
+      Map<String, Node<T>> compiledSubPaths = new HashMap<>();
+      pathSubPaths.forEach((name, subPath) -> {
+        staticSegments.put(name, TRUE);
+        compiledSubPaths.put(name, new Node<>(subPath, staticSegments));
+      });
+      this.subPaths = new SegmentMap<>(compiledSubPaths);
+      this.catchAll = path.getCatchAll() != null ? new Node<>(path.getCatchAll(), staticSegments) : null;
+      this.catchAllUriParam =
+          path.getCatchAllUriParam() != null ? new Node<>(path.getCatchAllUriParam(), staticSegments) : null;
+    }
+
+    /**
+     * @return the list of handlers for this path
+     */
+    List<RequestHandlerMatcherPair<T>> getRequestHandlerMatcherPairs() {
+      return requestHandlerMatcherPairs;
+    }
+
+    /**
+     * @see Path#getChildPath(String, String)
+     */
+    private Node<T> getChildPath(String path, int start, int end, int nextStart, int nextEnd) {
+      if (isCatchAllPath(path, start, end) || isUriParameter(path, start, end)
+          || (isViablePath(path, nextStart, nextEnd) && !matchesNextSubPaths(path, start, end, nextStart, nextEnd))) {
+        return catchAllUriParam;
+      }
+      return subPaths.get(path, start, end);
+    }
+
+    private boolean isViablePath(String path, int nextStart, int nextEnd) {
+      return catchAllUriParam != null && nextEnd != NO_SEGMENT && catchAllUriParam.subPaths.get(path, nextStart, nextEnd) != null;
+    }
+
+    private boolean matchesNextSubPaths(String path, int start, int end, int nextStart, int nextEnd) {
+      Node<T> nextPath = subPaths.get(path, start, end);
+      return nextPath != null && nextPath.subPaths.get(path, nextStart, nextEnd) != null;
+    }
+  }
+
+  /**
+   * Immutable open addressing map of path segments, which can be queried with a range of a bigger string so that the segment
+   * doesn't have to be extracted to look it up.
+   */
+  private static final class SegmentMap<V> {
+
+    private final String[] keys;
+    private final Object[] values;
+    private final int mask;
+
+    private SegmentMap(Map<String, V> entries) {
+      int capacity = 2;
+      while (capacity < entries.size() * 2) {
+        capacity <<= 1;
+      }
+      this.keys = new String[capacity];
+      this.values = new Object[capacity];
+      this.mask = capacity - 1;
+      entries.forEach((key, value) -> {
+        int i = hash(key, 0, key.length()) & mask;
+        while (keys[i] != null) {
+          i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+      });
+    }
+
+    @SuppressWarnings("unchecked")
+    private V get(String path, int start, int end) {
+      final int length = end - start;
+      for (int i = hash(path, start, end) & mask;; i = (i + 1) & mask) {
+        String key = keys[i];
+        if (key == null) {
+          return null;
+        }
+        if (key.length() == length && key.regionMatches(0, path, start, length)) {
+          return (V) values[i];
+        }
+      }
+    }
+
+    private static int hash(String path, int start, int end) {
+      int h = 0;
+      for (int i = start; i < end; i++) {
+        h = 31 * h + path.charAt(i);
+      }
+      return h ^ (h >>> 16);
+    }
+  }
+}
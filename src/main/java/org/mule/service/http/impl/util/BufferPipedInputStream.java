@@ -0,0 +1,271 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.util;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.System.nanoTime;
+import static java.lang.Thread.currentThread;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Input stream which is blocking only during a specified timeout, fed with the chunks received by the writer instead of copying
+ * them to an internal buffer like {@link TimedPipedInputStream} does. Each chunk is owned by the pipe once received, and it's
+ * released as soon as it has been fully read.
+ * <p>
+ * Receiving a chunk never blocks: the back-pressure is based on the amount of queued bytes, and a writer that finds the pipe
+ * full is expected to {@link #awaitSpace(Runnable) register} how to be resumed when the reader frees some space.
+ *
+ * @since 1.12
+ */
+public class BufferPipedInputStream extends InputStream {
+
+  private final Deque<ByteBuffer> chunks = new ArrayDeque<>();
+  private final int maxQueuedBytes;
+
+  // Read timeout in nanoseconds.
+  private final long timeoutNanos;
+
+  // Bytes available in the queued chunks.
+  private int queuedBytes = 0;
+
+  // Callback to resume a writer waiting for space, if any.
+  private Runnable spaceAvailableCallback;
+
+  private boolean closedByWriter = false;
+  private boolean closedByReader = false;
+  private Throwable error = null;
+
+  public BufferPipedInputStream(int maxQueuedBytes, long timeout, TimeUnit timeUnit) {
+    this.maxQueuedBytes = maxQueuedBytes;
+    this.timeoutNanos = timeUnit.toNanos(timeout);
+  }
+
+  @Override
+  public int read() throws IOException {
+    Runnable callback;
+    int returnValue;
+    synchronized (this) {
+      try {
+        if (awaitDataAvailable() > 0) {
+          ByteBuffer chunk = chunks.peekFirst();
+          returnValue = chunk.get() & 0xff;
+          if (!chunk.hasRemaining()) {
+            chunks.pollFirst();
+          }
+          callback = consumed(1);
+        } else if (closedByWriter) {
+          return -1;
+        } else {
+          throw new IOException(new TimeoutException("Timeout while reading from piped stream using a blocking read() method"));
+        }
+      } catch (InterruptedException e) {
+        currentThread().interrupt();
+        throw new IOException(e);
+      }
+    }
+    runIfPresent(callback);
+    return returnValue;
+  }
+
+  /**
+   * See {@link InputStream}, but it may return 0 if no byte has been read after the specified timeout.
+   *
+   * @param b Destination buffer.
+   * @return the total number of bytes read into the buffer, <code>0</code> if there is no available data after the timeout is
+   *         reached, or <code>-1</code> if there is no more data because the end of the stream has been reached.
+   * @throws IOException
+   */
+  @Override
+  public int read(byte[] b) throws IOException {
+    return read(b, 0, b.length);
+  }
+
+  /**
+   * See {@link InputStream}, but it may return 0 if no byte has been read after the specified timeout.
+   *
+   * @param b Destination buffer.
+   * @return the total number of bytes read into the buffer, <code>0</code> if there is no available data after the timeout is
+   *         reached, or <code>-1</code> if there is no more data because the end of the stream has been reached.
+   * @throws IOException
+   */
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    Runnable callback;
+    int bytesRead = 0;
+    synchronized (this) {
+      try {
+        int bytesToCopy = min(awaitDataAvailable(), len);
+        if (bytesToCopy == 0 && closedByWriter) {
+          return -1;
+        }
+
+        // Copy directly from the queued chunks, which may need several copies.
+        while (bytesRead < bytesToCopy) {
+          ByteBuffer chunk = chunks.peekFirst();
+          int copyLength = min(chunk.remaining(), bytesToCopy - bytesRead);
+          chunk.get(b, off + bytesRead, copyLength);
+          bytesRead += copyLength;
+          if (!chunk.hasRemaining()) {
+            chunks.pollFirst();
+          }
+        }
+        callback = consumed(bytesRead);
+      } catch (InterruptedException e) {
+        currentThread().interrupt();
+        throw new IOException(e);
+      }
+    }
+    runIfPresent(callback);
+    return bytesRead;
+  }
+
+  /**
+   * Gets the number of bytes available to be read.
+   *
+   * @return The number of available bytes.
+   */
+  @Override
+  public synchronized int available() {
+    return queuedBytes;
+  }
+
+  /**
+   * @return how many bytes may be received before the pipe is full, or <code>-1</code> if no more data will be accepted.
+   */
+  public synchronized int availableSpace() {
+    if (isClosed() || error != null) {
+      return -1;
+    }
+    return max(0, maxQueuedBytes - queuedBytes);
+  }
+
+  /**
+   * Queues a chunk, whose remaining bytes will be read from this stream. The chunk must not be modified afterwards. It never
+   * blocks, even if the pipe is full.
+   *
+   * @param chunk the received data.
+   * @throws IOException if the pipe was closed or cancelled.
+   */
+  public synchronized void receive(ByteBuffer chunk) throws IOException {
+    if (closedByWriter || closedByReader) {
+      throw new IOException("Pipe closed");
+    }
+    if (error != null) {
+      throw new IOException(error);
+    }
+    if (!chunk.hasRemaining()) {
+      return;
+    }
+
+    chunks.addLast(chunk);
+    queuedBytes += chunk.remaining();
+
+    // There is data in the buffer, notify readers.
+    notifyAll();
+  }
+
+  /**
+   * Registers the callback to resume the writer once the pipe has space again, or once no more data will be accepted. The
+   * callback is run at most once, and never while holding the lock of this stream.
+   *
+   * @param callback how to resume the writer.
+   * @return <code>false</code> if the callback wasn't registered because the writer doesn't need to wait.
+   */
+  public synchronized boolean awaitSpace(Runnable callback) {
+    if (availableSpace() != 0) {
+      return false;
+    }
+    spaceAvailableCallback = callback;
+    return true;
+  }
+
+  /**
+   * Notifies all waiting threads that the last byte of data has been received.
+   */
+  public synchronized void receivedLast() {
+    closedByWriter = true;
+    notifyAll();
+  }
+
+  @Override
+  public void close() throws IOException {
+    Runnable callback;
+    synchronized (this) {
+      closedByReader = true;
+      chunks.clear();
+      queuedBytes = 0;
+      notifyAll();
+      callback = takeSpaceAvailableCallback();
+    }
+    runIfPresent(callback);
+  }
+
+  public synchronized boolean isClosed() {
+    return closedByReader || closedByWriter;
+  }
+
+  public void cancel(Throwable error) {
+    Runnable callback;
+    synchronized (this) {
+      this.error = error;
+      notifyAll();
+      callback = takeSpaceAvailableCallback();
+    }
+    runIfPresent(callback);
+  }
+
+  private int awaitDataAvailable() throws InterruptedException, IOException {
+    long finalNanos = nanoTime() + timeoutNanos;
+
+    while (queuedBytes <= 0 && nanoTime() < finalNanos && !closedByReader && error == null) {
+      if (closedByWriter) {
+        return 0;
+      }
+      wait(100);
+    }
+    if (closedByReader) {
+      throw new IOException("Pipe closed");
+    }
+    if (error != null) {
+      throw new IOException(error);
+    }
+
+    return queuedBytes;
+  }
+
+  private Runnable consumed(int bytesRead) {
+    boolean wasFull = queuedBytes >= maxQueuedBytes;
+    queuedBytes -= bytesRead;
+    if (wasFull && queuedBytes < maxQueuedBytes) {
+      return takeSpaceAvailableCallback();
+    }
+    return null;
+  }
+
+  private Runnable takeSpaceAvailableCallback() {
+    Runnable callback = spaceAvailableCallback;
+    spaceAvailableCallback = null;
+    return callback;
+  }
+
+  private static void runIfPresent(Runnable callback) {
+    if (callback != null) {
+      callback.run();
+    }
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.util;
+
+import static java.lang.Long.numberOfLeadingZeros;
+import static java.lang.Math.ceil;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies in microseconds, recorded without locks so it can be updated from the selector threads.
+ * <p>
+ * Values are counted in log-linear buckets: each power of two is split in 8 buckets, so the percentiles are reported with a
+ * relative error below 12.5% for any magnitude, with a fixed footprint.
+ *
+ * @since 1.12
+ */
+public final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  // Values below this are counted exactly, one bucket each
+  private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+  private static final int LINEAR_LIMIT_EXPONENT = 63 - numberOfLeadingZeros(LINEAR_LIMIT);
+  private static final int BUCKETS = LINEAR_LIMIT + (63 - LINEAR_LIMIT_EXPONENT) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder totalCount = new LongAdder();
+  private final LongAdder totalMicros = new LongAdder();
+  private final LongAccumulator maxMicros = new LongAccumulator(Long::max, 0);
+
+  /**
+   * @param micros the latency to record, negative values are recorded as 0.
+   */
+  public void record(long micros) {
+    long value = max(0, micros);
+    counts.incrementAndGet(bucketOf(value));
+    totalCount.increment();
+    totalMicros.add(value);
+    maxMicros.accumulate(value);
+  }
+
+  static int bucketOf(long value) {
+    if (value < LINEAR_LIMIT) {
+      return (int) value;
+    }
+    int exponent = 63 - numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return LINEAR_LIMIT + (exponent - LINEAR_LIMIT_EXPONENT) * SUB_BUCKETS + subBucket;
+  }
+
+  /**
+   * @return the highest value counted in the given bucket.
+   */
+  static long highestValueOf(int bucket) {
+    if (bucket < LINEAR_LIMIT) {
+      return bucket;
+    }
+    int exponent = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + LINEAR_LIMIT_EXPONENT;
+    long subBucket = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+    long lowest = (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+  }
+
+  /**
+   * @return the amount of latencies recorded.
+   */
+  public long getCount() {
+    return totalCount.sum();
+  }
+
+  /**
+   * @return the mean of the latencies recorded, or {@code 0} if there are none.
+   */
+  public long getMeanMicros() {
+    long count = totalCount.sum();
+    return count == 0 ? 0 : totalMicros.sum() / count;
+  }
+
+  /**
+   * @return the highest latency recorded.
+   */
+  public long getMaxMicros() {
+    return maxMicros.get();
+  }
+
+  /**
+   * @param percentile the percentile to get, between 0 and 100.
+   * @return the latency below which the given percentage of the recorded ones are, or {@code 0} if there are none.
+   */
+  public long getValueAtPercentile(double percentile) {
+    long[] snapshot = new long[BUCKETS];
+    long count = 0;
+    for (int i = 0; i < BUCKETS; ++i) {
+      snapshot[i] = counts.get(i);
+      count += snapshot[i];
+    }
+    if (count == 0) {
+      return 0;
+    }
+
+    long target = max(1, (long) ceil(count * percentile / 100));
+    long accumulated = 0;
+    for (int i = 0; i < BUCKETS; ++i) {
+      accumulated += snapshot[i];
+      if (accumulated >= target) {
+        // The max is exact, so don't report a higher value because of the bucket resolution
+        return min(highestValueOf(i), getMaxMicros());
+      }
+    }
+    return getMaxMicros();
+  }
+
+  @Override
+  public String toString() {
+    return "LatencyHistogram{count=" + getCount() + ", meanMicros=" + getMeanMicros() + ", p50=" + getValueAtPercentile(50)
+        + ", p99=" + getValueAtPercentile(99) + ", maxMicros=" + getMaxMicros() + "}";
+  }
+}
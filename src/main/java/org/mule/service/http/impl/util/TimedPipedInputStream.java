@@ -10,6 +10,10 @@ import static java.lang.Integer.min;
 import static java.lang.System.arraycopy;
 import static java.lang.System.nanoTime;
 import static java.lang.Thread.currentThread;
+import static java.lang.Thread.interrupted;
+import static java.util.concurrent.locks.LockSupport.park;
+import static java.util.concurrent.locks.LockSupport.parkNanos;
+import static java.util.concurrent.locks.LockSupport.unpark;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -19,60 +23,59 @@ import java.util.concurrent.TimeoutException;
 /**
  * Input stream which is blocking only during a specified timeout. It requires to be connected with a
  * {@link TimedPipedOutputStream}.
+ * <p>
+ * The data is exchanged through a lock-free single-producer/single-consumer ring buffer: there must be only one thread writing
+ * and one thread reading at a time. Each side only parks when the buffer is empty (reader) or full (writer), and the other side
+ * only unparks it if it's actually parked.
  *
  * @since 1.6.0 and 1.5.11.
  */
 public class TimedPipedInputStream extends InputStream {
 
   // Internal data.
-  private byte[] ringBuffer;
+  private final byte[] ringBuffer;
   private final int ringBufferSize;
 
-  // Callback to notify that there is available space in the pipe.
+  // Callback to notify that there is available space in the pipe, or that no more data will be accepted because it was closed
+  // or cancelled, so that a writer waiting for space can resume.
   private final Runnable spaceAvailableCallback;
 
   // Read timeout in nanoseconds.
   private final long timeoutNanos;
 
-  // Index from the first byte available (if length > 0).
-  private CircularInteger head;
+  // Total bytes read and written. Each one is only updated by its side of the pipe, and the bytes available are the difference.
+  private final Sequence readSequence = new Sequence();
+  private final Sequence writeSequence = new Sequence();
 
-  // Bytes available in the buffer.
-  private int length = 0;
+  // Threads parked waiting for data (reader) or space (writer), if any.
+  private volatile Thread parkedReader;
+  private volatile Thread parkedWriter;
 
-  private boolean closedByWriter = false;
-  private boolean closedByReader = false;
-  private Throwable error = null;
+  private volatile boolean closedByWriter = false;
+  private volatile boolean closedByReader = false;
+  private volatile Throwable error = null;
 
   public TimedPipedInputStream(int bufferSize, long timeout, TimeUnit timeUnit, TimedPipedOutputStream origin,
                                Runnable spaceAvailableCallback) {
     this.ringBuffer = new byte[bufferSize];
     this.ringBufferSize = bufferSize;
     this.timeoutNanos = timeUnit.toNanos(timeout);
-    this.head = new CircularInteger(ringBufferSize, 0);
     this.spaceAvailableCallback = spaceAvailableCallback;
     origin.connect(this);
   }
 
   @Override
-  public synchronized int read() throws IOException {
-    try {
-      int bytesAvailable = awaitDataAvailable();
-      if (bytesAvailable > 0) {
-        byte returnValue = ringBuffer[head.get()];
-        head.increase();
-        length -= 1;
-        notifyAll();
-        return returnValue & 0xff;
-      } else if (closedByWriter) {
-        notifyAll();
-        return -1;
-      } else {
-        throw new IOException(new TimeoutException("Timeout while reading from piped stream using a blocking read() method"));
-      }
-    } catch (InterruptedException e) {
-      currentThread().interrupt();
-      throw new IOException(e);
+  public int read() throws IOException {
+    int bytesAvailable = awaitDataAvailable();
+    if (bytesAvailable > 0) {
+      long head = readSequence.get();
+      byte returnValue = ringBuffer[index(head)];
+      consumed(head, 1);
+      return returnValue & 0xff;
+    } else if (closedByWriter) {
+      return -1;
+    } else {
+      throw new IOException(new TimeoutException("Timeout while reading from piped stream using a blocking read() method"));
     }
   }
 
@@ -98,37 +101,26 @@ public class TimedPipedInputStream extends InputStream {
    * @throws IOException
    */
   @Override
-  public synchronized int read(byte[] b, int off, int len) throws IOException {
+  public int read(byte[] b, int off, int len) throws IOException {
     if (len == 0) {
       return 0;
     }
-    try {
-      boolean wasFull = length == ringBufferSize;
-      int bytesToCopy = min(awaitDataAvailable(), len);
-      if (bytesToCopy == 0 && closedByWriter) {
-        notifyAll();
-        return -1;
-      }
-
-      // As it's a ring buffer, we could need two copies.
-      int firstCopy = min(ringBufferSize - head.get(), bytesToCopy);
-      arraycopy(ringBuffer, head.get(), b, off, firstCopy);
-      if (firstCopy < bytesToCopy) {
-        arraycopy(ringBuffer, 0, b, off + firstCopy, bytesToCopy - firstCopy);
-      }
-      head.increase(bytesToCopy);
+    int bytesToCopy = min(awaitDataAvailable(), len);
+    if (bytesToCopy == 0 && closedByWriter) {
+      return -1;
+    }
 
-      // There is space in the buffer, notify writers.
-      length -= bytesToCopy;
-      notifyAll();
-      if (wasFull && 0 < bytesToCopy) {
-        spaceAvailableCallback.run();
-      }
-      return bytesToCopy;
-    } catch (InterruptedException e) {
-      currentThread().interrupt();
-      throw new IOException(e);
+    // As it's a ring buffer, we could need two copies.
+    long head = readSequence.get();
+    int headIndex = index(head);
+    int firstCopy = min(ringBufferSize - headIndex, bytesToCopy);
+    arraycopy(ringBuffer, headIndex, b, off, firstCopy);
+    if (firstCopy < bytesToCopy) {
+      arraycopy(ringBuffer, 0, b, off + firstCopy, bytesToCopy - firstCopy);
     }
+
+    consumed(head, bytesToCopy);
+    return bytesToCopy;
   }
 
   /**
@@ -137,27 +129,48 @@ public class TimedPipedInputStream extends InputStream {
    * @return The number of available bytes.
    */
   @Override
-  public synchronized int available() {
-    return length;
+  public int available() {
+    return (int) (writeSequence.get() - readSequence.get());
   }
 
   /**
    * Notifies all waiting threads that the last byte of data has been received.
    */
-  synchronized void receivedLast() {
+  void receivedLast() {
     closedByWriter = true;
-    notifyAll();
+    unparkIfParked(parkedReader);
   }
 
-  private synchronized int awaitDataAvailable() throws InterruptedException, IOException {
-    long initialNanos = nanoTime();
-    long finalNanos = initialNanos + timeoutNanos;
+  /**
+   * Waits until there is data available, the pipe is closed, or the read timeout is reached.
+   *
+   * @return The available data in bytes, which may be <code>0</code> if the timeout was reached or the writer closed the pipe.
+   * @throws IOException if the pipe was closed by the reader, it was cancelled or the waiting thread is interrupted.
+   */
+  private int awaitDataAvailable() throws IOException {
+    long finalNanos = nanoTime() + timeoutNanos;
 
-    while (length <= 0 && nanoTime() < finalNanos && !closedByReader && error == null) {
+    int bytesAvailable = available();
+    while (bytesAvailable <= 0 && !closedByReader && error == null) {
       if (closedByWriter) {
-        return 0;
+        // The writer may have written its last bytes right before closing.
+        bytesAvailable = available();
+        break;
       }
-      wait(100);
+      long remainingNanos = finalNanos - nanoTime();
+      if (remainingNanos <= 0) {
+        break;
+      }
+
+      parkedReader = currentThread();
+      // Check again after publishing the parked thread, otherwise the writer could miss it.
+      if (available() <= 0 && !closedByWriter && !closedByReader && error == null) {
+        parkNanos(this, remainingNanos);
+      }
+      parkedReader = null;
+      checkInterrupted();
+
+      bytesAvailable = available();
     }
     if (closedByReader) {
       throw new IOException("Pipe closed");
@@ -166,107 +179,148 @@ public class TimedPipedInputStream extends InputStream {
       throw new IOException(error);
     }
 
-    return length;
+    return bytesAvailable;
   }
 
-  synchronized void receive(int b) throws IOException {
+  void receive(int b) throws IOException {
     awaitSpace();
-    ringBuffer[(head.get() + length) % ringBufferSize] = (byte) (b & 0xff);
-    length += 1;
+    long tail = writeSequence.get();
+    ringBuffer[index(tail)] = (byte) (b & 0xff);
 
     // Now there is data available to be read.
-    notifyAll();
+    produced(tail, 1);
   }
 
   void receive(byte[] bytes) throws IOException {
     receive(bytes, 0, bytes.length);
   }
 
-  synchronized void receive(byte[] bytes, int off, int len) throws IOException {
-    if (len <= 0) {
-      return;
-    }
-
-    int bytesToCopy = min(awaitSpace(), len);
-    CircularInteger destinationIndex = head.plus(length);
+  void receive(byte[] bytes, int off, int len) throws IOException {
+    while (len > 0) {
+      int bytesToCopy = min(awaitSpace(), len);
+      long tail = writeSequence.get();
+      int destinationIndex = index(tail);
 
-    // As it's a ring buffer, we could need two copies.
-    int firstCopyLength = min(ringBufferSize - destinationIndex.get(), bytesToCopy);
-    arraycopy(bytes, off, ringBuffer, destinationIndex.get(), firstCopyLength);
-    if (firstCopyLength < bytesToCopy) {
-      arraycopy(bytes, off + firstCopyLength, ringBuffer, 0, bytesToCopy - firstCopyLength);
-    }
+      // As it's a ring buffer, we could need two copies.
+      int firstCopyLength = min(ringBufferSize - destinationIndex, bytesToCopy);
+      arraycopy(bytes, off, ringBuffer, destinationIndex, firstCopyLength);
+      if (firstCopyLength < bytesToCopy) {
+        arraycopy(bytes, off + firstCopyLength, ringBuffer, 0, bytesToCopy - firstCopyLength);
+      }
 
-    // There is data in the buffer, notify readers.
-    length += bytesToCopy;
-    notifyAll();
+      // There is data in the buffer, notify readers.
+      produced(tail, bytesToCopy);
 
-    receive(bytes, off + bytesToCopy, len - bytesToCopy);
+      off += bytesToCopy;
+      len -= bytesToCopy;
+    }
   }
 
   /**
    * Waits until there is space in the ring buffer. The read timeout is NOT related to this method.
    *
    * @return The available space in bytes.
-   * @throws IOException if the waiting thread is interrupted.
+   * @throws IOException if the pipe was closed or cancelled, or the waiting thread is interrupted.
    */
-  private synchronized int awaitSpace() throws IOException {
-    try {
-      while (length == ringBufferSize && !closedByWriter && !closedByReader) {
-        wait(100);
+  private int awaitSpace() throws IOException {
+    while (true) {
+      checkOpenForWriting();
+      int space = ringBufferSize - available();
+      if (space > 0) {
+        return space;
       }
-      if (closedByWriter || closedByReader) {
-        throw new IOException("Pipe closed");
+
+      parkedWriter = currentThread();
+      // Check again after publishing the parked thread, otherwise the reader could miss it.
+      if (available() == ringBufferSize && !closedByWriter && !closedByReader && error == null) {
+        park(this);
       }
-    } catch (InterruptedException e) {
-      currentThread().interrupt();
-      throw new IOException(e);
+      parkedWriter = null;
+      checkInterrupted();
+    }
+  }
+
+  private void checkOpenForWriting() throws IOException {
+    if (closedByWriter || closedByReader) {
+      throw new IOException("Pipe closed");
+    }
+    if (error != null) {
+      throw new IOException(error);
+    }
+  }
+
+  private void produced(long tail, int bytesWritten) {
+    writeSequence.set(tail + bytesWritten);
+    unparkIfParked(parkedReader);
+  }
+
+  private void consumed(long head, int bytesRead) {
+    readSequence.set(head + bytesRead);
+    unparkIfParked(parkedWriter);
+
+    // Only the writer moves the write sequence forward, so if it's a whole buffer ahead of the previous read sequence, the buffer
+    // was full at some point, and a writer waiting for space must be notified.
+    if (writeSequence.get() - head >= ringBufferSize) {
+      spaceAvailableCallback.run();
+    }
+  }
+
+  private int index(long sequence) {
+    return (int) (sequence % ringBufferSize);
+  }
+
+  private static void unparkIfParked(Thread thread) {
+    if (thread != null) {
+      unpark(thread);
     }
+  }
 
-    return ringBufferSize - length;
+  private static void checkInterrupted() throws IOException {
+    if (interrupted()) {
+      currentThread().interrupt();
+      throw new IOException(new InterruptedException());
+    }
   }
 
   @Override
-  public synchronized void close() throws IOException {
+  public void close() throws IOException {
     closedByReader = true;
-    notifyAll();
+    unparkIfParked(parkedWriter);
+    spaceAvailableCallback.run();
   }
 
-  public synchronized boolean isClosed() {
+  public boolean isClosed() {
     return closedByReader || closedByWriter;
   }
 
-  public synchronized void cancel(Throwable error) {
+  public void cancel(Throwable error) {
     this.error = error;
-    notifyAll();
+    unparkIfParked(parkedReader);
+    unparkIfParked(parkedWriter);
+    spaceAvailableCallback.run();
   }
 
-  private class CircularInteger {
+  // Padding to keep each sequence in its own cache line, so that the reader and the writer don't invalidate each other's.
+  private abstract static class LeftPadding {
+
+    protected long p01, p02, p03, p04, p05, p06, p07;
+  }
 
-    private int cap;
-    private int value;
+  private abstract static class Value extends LeftPadding {
 
-    CircularInteger(int cap, int value) {
-      this.cap = cap;
-      this.value = value % cap;
-    }
+    protected volatile long value;
+  }
 
-    int get() {
-      return value;
-    }
+  private static final class Sequence extends Value {
 
-    void increase() {
-      this.value += 1;
-      this.value %= this.cap;
-    }
+    protected long p11, p12, p13, p14, p15, p16, p17;
 
-    void increase(int increment) {
-      this.value += increment;
-      this.value %= this.cap;
+    long get() {
+      return value;
     }
 
-    CircularInteger plus(int increment) {
-      return new CircularInteger(this.cap, this.value + increment);
+    void set(long newValue) {
+      value = newValue;
     }
   }
 }
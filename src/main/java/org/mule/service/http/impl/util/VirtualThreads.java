@@ -0,0 +1,157 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.util;
+
+import static java.lang.Class.forName;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates executors that run each task in a new virtual thread, when the JVM supports them (Java 21 or later).
+ * <p>
+ * The service is built for earlier versions, so the virtual threads API is looked up by reflection once.
+ *
+ * @since 1.12
+ */
+public final class VirtualThreads {
+
+  private static final Method OF_VIRTUAL;
+  private static final Method BUILDER_NAME;
+  private static final Method BUILDER_FACTORY;
+  private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+  static {
+    Method ofVirtual = null;
+    Method builderName = null;
+    Method builderFactory = null;
+    Method newThreadPerTaskExecutor = null;
+    try {
+      Class<?> builderClass = forName("java.lang.Thread$Builder");
+      ofVirtual = Thread.class.getMethod("ofVirtual");
+      builderName = builderClass.getMethod("name", String.class, long.class);
+      builderFactory = builderClass.getMethod("factory");
+      newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+    } catch (ClassNotFoundException | NoSuchMethodException e) {
+      ofVirtual = null;
+    }
+    OF_VIRTUAL = ofVirtual;
+    BUILDER_NAME = builderName;
+    BUILDER_FACTORY = builderFactory;
+    NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+  }
+
+  private VirtualThreads() {}
+
+  /**
+   * @return whether the JVM supports virtual threads.
+   */
+  public static boolean isSupported() {
+    return OF_VIRTUAL != null;
+  }
+
+  /**
+   * Creates an executor that starts a new virtual thread for each task. Shutting it down doesn't interrupt the running tasks.
+   *
+   * @param namePrefix the prefix of the names of the threads, followed by a sequence number.
+   * @return the executor.
+   * @throws UnsupportedOperationException if the JVM doesn't support virtual threads.
+   */
+  public static ExecutorService newVirtualThreadPerTaskExecutor(String namePrefix) {
+    if (!isSupported()) {
+      throw new UnsupportedOperationException("Virtual threads require Java 21 or later, running in "
+          + System.getProperty("java.version"));
+    }
+    try {
+      Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), namePrefix, 0L);
+      return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, BUILDER_FACTORY.invoke(builder));
+    } catch (IllegalAccessException | InvocationTargetException e) {
+      throw new UnsupportedOperationException("Virtual threads could not be created", e);
+    }
+  }
+
+  /**
+   * Creates an executor that starts a new virtual thread for each task, rejecting the tasks submitted while {@code maxTasks}
+   * are already running. Shutting it down doesn't interrupt the running tasks.
+   *
+   * @param namePrefix the prefix of the names of the threads, followed by a sequence number.
+   * @param maxTasks   the tasks that may run at the same time.
+   * @return the executor.
+   * @throws UnsupportedOperationException if the JVM doesn't support virtual threads.
+   */
+  public static ExecutorService newVirtualThreadPerTaskExecutor(String namePrefix, int maxTasks) {
+    return new BoundedExecutorService(newVirtualThreadPerTaskExecutor(namePrefix), maxTasks);
+  }
+
+  /**
+   * Bounds the tasks of an executor that doesn't queue them, like the thread per task ones.
+   */
+  private static final class BoundedExecutorService extends AbstractExecutorService {
+
+    private final ExecutorService delegate;
+    private final int maxTasks;
+    private final Semaphore permits;
+
+    private BoundedExecutorService(ExecutorService delegate, int maxTasks) {
+      this.delegate = delegate;
+      this.maxTasks = maxTasks;
+      this.permits = new Semaphore(maxTasks);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+      if (!permits.tryAcquire()) {
+        throw new RejectedExecutionException("Already running the maximum of " + maxTasks + " tasks");
+      }
+      try {
+        delegate.execute(() -> {
+          try {
+            command.run();
+          } finally {
+            permits.release();
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        permits.release();
+        throw e;
+      }
+    }
+
+    @Override
+    public void shutdown() {
+      delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+      return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+      return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+      return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+      return delegate.awaitTermination(timeout, unit);
+    }
+  }
+}
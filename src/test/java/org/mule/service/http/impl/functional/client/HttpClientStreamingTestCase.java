@@ -11,7 +11,10 @@ import static org.mule.runtime.http.api.HttpConstants.HttpStatus.INTERNAL_SERVER
 import static org.mule.runtime.http.api.HttpConstants.HttpStatus.OK;
 import static org.mule.service.http.impl.AllureConstants.HttpFeature.HttpStory.STREAMING;
 import static org.mule.service.http.impl.functional.FillAndWaitStream.RESPONSE_SIZE;
+import static org.mule.service.http.impl.service.client.GrizzlyHttpClient.VIRTUAL_THREADS_PROPERTY;
+import static org.mule.service.http.impl.util.VirtualThreads.isSupported;
 import static org.mule.tck.SimpleUnitTestSupportSchedulerService.UNIT_TEST_THREAD_GROUP;
+import static org.mule.tck.junit4.rule.SystemProperty.callWithProperty;
 
 import static java.lang.Thread.currentThread;
 import static java.lang.Thread.sleep;
@@ -23,6 +26,8 @@ import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assume.assumeThat;
 
 import org.mule.runtime.api.scheduler.SchedulerConfig;
 import org.mule.runtime.api.util.Reference;
@@ -45,6 +50,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.Before;
@@ -152,6 +158,45 @@ public class HttpClientStreamingTestCase extends AbstractHttpClientTestCase {
     }
   }
 
+  @Test
+  @Description("With virtual threads enabled, a streaming HTTP client sends a blocking request through the non blocking path, "
+      + "which will finish before the stream is released.")
+  public void blockingStreamingWithVirtualThreads() throws Throwable {
+    assumeThat(isSupported(), is(true));
+    HttpClient client = service.getClientFactory().create(clientBuilder.setStreaming(true).build());
+    callWithProperty(VIRTUAL_THREADS_PROPERTY, "true", () -> {
+      client.start();
+      return null;
+    });
+    try {
+      HttpResponse response = client.send(getRequest(), getDefaultOptions(RESPONSE_TIMEOUT));
+      verifyStreamed(response);
+    } finally {
+      client.stop();
+    }
+  }
+
+  @Test
+  @Description("With virtual threads enabled, a blocking request of a streaming HTTP client still fails with a timeout when "
+      + "the response doesn't arrive in time.")
+  public void blockingStreamingWithVirtualThreadsTimesOut() throws Throwable {
+    assumeThat(isSupported(), is(true));
+    beforeResponseLatch = new Latch();
+    HttpClient client = service.getClientFactory().create(clientBuilder.setStreaming(true).build());
+    callWithProperty(VIRTUAL_THREADS_PROPERTY, "true", () -> {
+      client.start();
+      return null;
+    });
+    try {
+      assertThrows(TimeoutException.class, () -> client.send(getRequest(), getDefaultOptions(TIMEOUT_MILLIS)));
+    } finally {
+      beforeResponseLatch.release();
+      beforeResponseLatch = null;
+      latch.release();
+      client.stop();
+    }
+  }
+
   @Test
   @Description("Uses a non streaming HTTP client to send a request which will not finish until the stream is released.")
   public void blockingMemory() throws Exception {
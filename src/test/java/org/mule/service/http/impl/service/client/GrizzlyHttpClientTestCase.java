@@ -7,6 +7,8 @@
 package org.mule.service.http.impl.service.client;
 
 import static org.mule.runtime.api.util.MuleSystemProperties.SYSTEM_PROPERTY_PREFIX;
+import static org.mule.service.http.impl.service.client.GrizzlyHttpClient.VIRTUAL_THREADS_PROPERTY;
+import static org.mule.service.http.impl.util.VirtualThreads.isSupported;
 import static org.mule.tck.junit4.rule.SystemProperty.callWithProperty;
 
 import static java.lang.Integer.parseInt;
@@ -14,13 +16,18 @@ import static java.lang.Integer.parseInt;
 import static org.glassfish.grizzly.http.util.MimeHeaders.MAX_NUM_HEADERS_DEFAULT;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import org.mule.runtime.api.scheduler.Scheduler;
@@ -105,6 +112,30 @@ public class GrizzlyHttpClientTestCase extends AbstractMuleTestCase {
     assertThat(asyncHttpClient.getConfig().getMaxRequestHeaders(), is(parseInt(maxSetRequestHeaders)));
   }
 
+  @Description("With virtual threads enabled, a streaming client runs its streaming workers in virtual threads instead of a "
+      + "scheduler of its own")
+  @Test
+  void streamingWorkersInVirtualThreads() throws Throwable {
+    assumeTrue(isSupported());
+    HttpClientConfiguration config = mock(HttpClientConfiguration.class, RETURNS_DEEP_STUBS);
+    when(config.isStreaming()).thenReturn(true);
+    GrizzlyHttpClient client = new GrizzlyHttpClient(config, schedulerService, schedulerConfig, f -> false);
+
+    callWithProperty(VIRTUAL_THREADS_PROPERTY, "true", () -> {
+      client.start();
+      return null;
+    });
+
+    try {
+      Field workerPoolField = GrizzlyHttpClient.class.getDeclaredField("workerPool");
+      workerPoolField.setAccessible(true);
+      assertThat(workerPoolField.get(client), is(not(instanceOf(Scheduler.class))));
+      verify(schedulerService, never()).customScheduler(any(), anyInt());
+    } finally {
+      client.stop();
+    }
+  }
+
   private GrizzlyHttpClient refreshSystemPropertiesAndCreateGrizzlyHttpClient() {
     GrizzlyHttpClient.refreshSystemProperties();
     return new GrizzlyHttpClient(mock(HttpClientConfiguration.class, RETURNS_DEEP_STUBS),
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.service.client;
+
+import static org.mule.service.http.impl.AllureConstants.HttpFeature.HTTP_SERVICE;
+import static org.mule.service.http.impl.service.client.HostConnectionBudgets.budgetKey;
+import static org.mule.service.http.impl.service.client.HostConnectionBudgets.parseWeights;
+
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonMap;
+import static java.lang.Thread.currentThread;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+import org.mule.runtime.api.exception.MuleRuntimeException;
+import org.mule.tck.junit4.AbstractMuleTestCase;
+import org.mule.tck.probe.JUnitLambdaProbe;
+import org.mule.tck.probe.PollingProber;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.ning.http.client.uri.Uri;
+import org.junit.After;
+import org.junit.Test;
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+
+@Feature(HTTP_SERVICE)
+@Story("Connection budgets")
+public class HostConnectionBudgetsTestCase extends AbstractMuleTestCase {
+
+  private static final String HOST_A = "http://a:80";
+  private static final String HOST_B = "http://b:80";
+
+  private final ExecutorService executor = newCachedThreadPool();
+  private final ScheduledExecutorService timeoutScheduler = newSingleThreadScheduledExecutor();
+  private final PollingProber prober = new PollingProber(5000, 10);
+
+  @After
+  public void after() {
+    executor.shutdownNow();
+    timeoutScheduler.shutdownNow();
+  }
+
+  @Test
+  public void budgetKeyDefaultsPort() {
+    assertThat(budgetKey(Uri.create("https://host/path")), is("https://host:443"));
+    assertThat(budgetKey(Uri.create("http://host:8081/path")), is("http://host:8081"));
+  }
+
+  @Test
+  public void parseWeights() {
+    Map<String, Integer> weights = parseWeights(" a:80=3, b:443=1 ", "weights");
+
+    assertThat(weights.size(), is(2));
+    assertThat(weights.get("a:80"), is(3));
+    assertThat(weights.get("b:443"), is(1));
+    assertThat(parseWeights(null, "weights").isEmpty(), is(true));
+  }
+
+  @Test(expected = MuleRuntimeException.class)
+  public void invalidWeight() {
+    parseWeights("a:80=0", "weights");
+  }
+
+  @Test
+  public void slowHostDoesNotStarveOthers() throws Exception {
+    HostConnectionBudgets budgets = new HostConnectionBudgets(4, 2, false, emptyMap());
+
+    assertThat(budgets.acquire(HOST_A, 0), is(true));
+    assertThat(budgets.acquire(HOST_A, 0), is(true));
+    assertThat(budgets.acquire(HOST_A, 0), is(false));
+    assertThat(budgets.acquire(HOST_B, 0), is(true));
+    assertThat(budgets.availablePermits(HOST_A), is(0));
+    assertThat(budgets.availablePermits(HOST_B), is(1));
+  }
+
+  @Test
+  public void releaseGrantsToWaitingHost() throws Exception {
+    HostConnectionBudgets budgets = new HostConnectionBudgets(-1, 1, false, emptyMap());
+    budgets.acquire(HOST_A, 0);
+
+    Future<Boolean> waiting = executor.submit(() -> budgets.acquire(HOST_A, 5000));
+    prober.check(new JUnitLambdaProbe(() -> budgets.getQueuedCount(HOST_A) == 1));
+    budgets.release(HOST_A);
+
+    assertThat(waiting.get(5, SECONDS), is(true));
+    assertThat(budgets.getQueuedCount(HOST_A), is(0));
+  }
+
+  @Test
+  public void waitingTimesOut() throws Exception {
+    HostConnectionBudgets budgets = new HostConnectionBudgets(1, 1, false, emptyMap());
+    budgets.acquire(HOST_A, 0);
+
+    assertThat(budgets.acquire(HOST_A, 50), is(false));
+    assertThat(budgets.getQueuedCount(HOST_A), is(0));
+  }
+
+  @Test
+  public void permitsGrantedInOrderByDefault() throws Exception {
+    HostConnectionBudgets budgets = new HostConnectionBudgets(3, 3, false, singletonMap("a:80", 2));
+    Future<Boolean> waitingA = fillAndQueue(budgets);
+
+    budgets.release(HOST_A);
+
+    assertThat(waitingA.get(5, SECONDS), is(true));
+    assertThat(budgets.getQueuedCount(HOST_B), is(1));
+  }
+
+  @Test
+  public void permitsGrantedByWeightWithWeightedFairQueuing() throws Exception {
+    HostConnectionBudgets budgets = new HostConnectionBudgets(3, 3, true, singletonMap("a:80", 2));
+    Future<Boolean> waitingA = fillAndQueue(budgets);
+
+    budgets.release(HOST_A);
+
+    // A uses 2 permits for a weight of 2, B none for a weight of 1
+    prober.check(new JUnitLambdaProbe(() -> budgets.getQueuedCount(HOST_B) == 0));
+    assertThat(waitingA.isDone(), is(false));
+    assertThat(budgets.getQueuedCount(HOST_A), is(1));
+  }
+
+  @Test
+  public void asyncAcquireGrantedRightAway() {
+    HostConnectionBudgets budgets = new HostConnectionBudgets(1, -1, false, emptyMap());
+    AtomicReference<Thread> grantedIn = new AtomicReference<>();
+
+    budgets.acquireAsync(HOST_A, 5000, timeoutScheduler, () -> grantedIn.set(currentThread()), () -> {
+    });
+
+    assertThat(grantedIn.get(), is(sameInstance(currentThread())));
+    assertThat(budgets.availablePermits(HOST_A), is(0));
+  }
+
+  @Test
+  public void asyncWaiterDispatchedByReleasingThread() {
+    HostConnectionBudgets budgets = new HostConnectionBudgets(1, -1, false, emptyMap());
+    AtomicReference<Thread> grantedIn = new AtomicReference<>();
+    budgets.acquireAsync(HOST_A, 5000, timeoutScheduler, () -> {
+    }, () -> {
+    });
+
+    budgets.acquireAsync(HOST_B, 5000, timeoutScheduler, () -> grantedIn.set(currentThread()), () -> {
+    });
+    assertThat(grantedIn.get(), is(nullValue()));
+    assertThat(budgets.getQueuedCount(HOST_B), is(1));
+
+    budgets.release(HOST_A);
+    assertThat(grantedIn.get(), is(sameInstance(currentThread())));
+    assertThat(budgets.getQueuedCount(HOST_B), is(0));
+  }
+
+  @Test
+  public void asyncWaiterTimesOut() {
+    HostConnectionBudgets budgets = new HostConnectionBudgets(1, -1, false, emptyMap());
+    AtomicBoolean granted = new AtomicBoolean();
+    AtomicBoolean timedOut = new AtomicBoolean();
+    budgets.acquireAsync(HOST_A, 5000, timeoutScheduler, () -> {
+    }, () -> {
+    });
+
+    budgets.acquireAsync(HOST_A, 50, timeoutScheduler, () -> granted.set(true), () -> timedOut.set(true));
+
+    prober.check(new JUnitLambdaProbe(timedOut::get));
+    assertThat(budgets.getQueuedCount(HOST_A), is(0));
+    budgets.release(HOST_A);
+    assertThat(granted.get(), is(false));
+  }
+
+  @Test
+  public void abortWaitingFailsAsyncWaiters() {
+    HostConnectionBudgets budgets = new HostConnectionBudgets(1, -1, false, emptyMap());
+    AtomicBoolean aborted = new AtomicBoolean();
+    budgets.acquireAsync(HOST_A, 5000, timeoutScheduler, () -> {
+    }, () -> {
+    });
+    budgets.acquireAsync(HOST_A, 5000, timeoutScheduler, () -> {
+    }, () -> aborted.set(true));
+
+    budgets.abortWaiting();
+
+    assertThat(aborted.get(), is(true));
+    assertThat(budgets.getQueuedCount(HOST_A), is(0));
+  }
+
+  /**
+   * Takes every permit for host A, then queues a request for A followed by one for B.
+   */
+  private Future<Boolean> fillAndQueue(HostConnectionBudgets budgets) throws Exception {
+    for (int i = 0; i < 3; ++i) {
+      budgets.acquire(HOST_A, 0);
+    }
+    Future<Boolean> waitingA = executor.submit(() -> budgets.acquire(HOST_A, 5000));
+    prober.check(new JUnitLambdaProbe(() -> budgets.getQueuedCount(HOST_A) == 1));
+    executor.submit(() -> budgets.acquire(HOST_B, 5000));
+    prober.check(new JUnitLambdaProbe(() -> budgets.getQueuedCount(HOST_B) == 1));
+    return waitingA;
+  }
+}
@@ -9,18 +9,14 @@ package org.mule.service.http.impl.service.client;
 import static org.mule.functional.junit4.matchers.ThrowableMessageMatcher.hasMessage;
 import static org.mule.tck.MuleTestUtils.testWithSystemProperty;
 
-import static java.lang.System.currentTimeMillis;
-import static java.lang.Thread.sleep;
 import static java.util.Arrays.stream;
 import static java.util.concurrent.Executors.newSingleThreadExecutor;
 import static java.util.stream.Collectors.toCollection;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
-import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
-import static org.hamcrest.Matchers.lessThan;
 import static org.junit.Assert.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
@@ -40,6 +36,8 @@ import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 
@@ -53,7 +51,6 @@ import org.slf4j.MDC;
 @Issue("W-17048606")
 public class NonBlockingStreamWriterTestCase extends AbstractMuleTestCase {
 
-  private static final int TEST_TIME_TO_SLEEP_WHEN_COULD_NOT_WRITE_MILLIS = 50;
   private static final byte[] SOME_DATA = "Some data to write".getBytes();
   private static final ExecutorService executorService = newSingleThreadExecutor();
 
@@ -61,8 +58,7 @@ public class NonBlockingStreamWriterTestCase extends AbstractMuleTestCase {
 
   @Before
   public void setUp() {
-    // not scheduling always to test the sync test cases
-    nonBlockingStreamWriter = new NonBlockingStreamWriter(TEST_TIME_TO_SLEEP_WHEN_COULD_NOT_WRITE_MILLIS, true);
+    nonBlockingStreamWriter = new NonBlockingStreamWriter(executorService, true);
   }
 
   @After
@@ -79,17 +75,17 @@ public class NonBlockingStreamWriterTestCase extends AbstractMuleTestCase {
   @Issue("W-17624200")
   public void isEnabledVariants() throws Exception {
     // Receiving true...
-    assertThat(new NonBlockingStreamWriter(1, true).isEnabled(), is(true));
+    assertThat(new NonBlockingStreamWriter(executorService, true).isEnabled(), is(true));
 
     // Receiving false...
-    assertThat(new NonBlockingStreamWriter(1, false).isEnabled(), is(false));
+    assertThat(new NonBlockingStreamWriter(executorService, false).isEnabled(), is(false));
 
     // Default system property is true...
-    assertThat(new NonBlockingStreamWriter().isEnabled(), is(true));
+    assertThat(new NonBlockingStreamWriter(executorService).isEnabled(), is(true));
 
     // Honor system property...
     testWithSystemProperty("mule.http.client.responseStreaming.nonBlockingWriter", "false",
-                           () -> assertThat(new NonBlockingStreamWriter().isEnabled(), is(false)));
+                           () -> assertThat(new NonBlockingStreamWriter(executorService).isEnabled(), is(false)));
   }
 
   @Test
@@ -127,14 +123,14 @@ public class NonBlockingStreamWriterTestCase extends AbstractMuleTestCase {
   }
 
   @Test
-  public void writesAllAsync() throws ExecutionException, InterruptedException {
+  public void writesAllAsyncWhenNotified() throws ExecutionException, InterruptedException {
     ByteArrayOutputStream out = new ByteArrayOutputStream();
-    Supplier<Integer> sequenceWithAZeroInTheMiddle = new SequenceProvider(SOME_DATA.length - 5, 0, 5);
-    CompletableFuture<Void> future = nonBlockingStreamWriter.addDataToWrite(out, SOME_DATA, sequenceWithAZeroInTheMiddle);
-    assertThat("The writer is not scheduled anywhere yet, so the future shouldn't be completed",
-               future.isDone(), is(false));
+    GrantedSpace space = new GrantedSpace(SOME_DATA.length - 5);
+    CompletableFuture<Void> future = nonBlockingStreamWriter.addDataToWrite(out, SOME_DATA, space);
+    assertThat("Nobody notified available space yet, so the future shouldn't be completed", future.isDone(), is(false));
 
-    executorService.submit(nonBlockingStreamWriter);
+    space.grant(5);
+    nonBlockingStreamWriter.notifyAvailableSpace(out);
 
     // now it has to be completed...
     future.get();
@@ -142,15 +138,64 @@ public class NonBlockingStreamWriterTestCase extends AbstractMuleTestCase {
     assertThat(out.toByteArray(), is(SOME_DATA));
   }
 
+  @Test
+  public void notificationWithoutSpaceKeepsTheWriteParked() throws ExecutionException, InterruptedException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    GrantedSpace space = new GrantedSpace(SOME_DATA.length - 5);
+    CompletableFuture<Void> future = nonBlockingStreamWriter.addDataToWrite(out, SOME_DATA, space);
+
+    nonBlockingStreamWriter.notifyAvailableSpace(out);
+    // wait for the resumed write to be parked again
+    executorService.submit(() -> {
+    }).get();
+    assertThat(future.isDone(), is(false));
+
+    space.grant(5);
+    nonBlockingStreamWriter.notifyAvailableSpace(out);
+    future.get();
+
+    assertThat(out.toByteArray(), is(SOME_DATA));
+  }
+
+  @Test
+  public void spaceGeneratedWhileParkingIsNotLost() throws ExecutionException, InterruptedException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    // The 1 is the space seen right after parking the write, so it is resumed without being notified
+    Supplier<Integer> sequenceWithAZeroInTheMiddle = new SequenceProvider(SOME_DATA.length - 5, 0, 1, 5);
+    nonBlockingStreamWriter.addDataToWrite(out, SOME_DATA, sequenceWithAZeroInTheMiddle).get();
+
+    assertThat(out.toByteArray(), is(SOME_DATA));
+  }
+
+  @Test
+  public void onlyTheNotifiedStreamIsResumed() throws ExecutionException, InterruptedException {
+    ByteArrayOutputStream notified = new ByteArrayOutputStream();
+    ByteArrayOutputStream notNotified = new ByteArrayOutputStream();
+    GrantedSpace notifiedSpace = new GrantedSpace(SOME_DATA.length - 5);
+    GrantedSpace notNotifiedSpace = new GrantedSpace(SOME_DATA.length - 5);
+    CompletableFuture<Void> notifiedFuture = nonBlockingStreamWriter.addDataToWrite(notified, SOME_DATA, notifiedSpace);
+    CompletableFuture<Void> notNotifiedFuture =
+        nonBlockingStreamWriter.addDataToWrite(notNotified, SOME_DATA, notNotifiedSpace);
+
+    notifiedSpace.grant(5);
+    notNotifiedSpace.grant(5);
+    nonBlockingStreamWriter.notifyAvailableSpace(notified);
+    notifiedFuture.get();
+
+    assertThat(notified.toByteArray(), is(SOME_DATA));
+    assertThat(notNotifiedFuture.isDone(), is(false));
+    assertThat(notNotified.toByteArray().length, is(SOME_DATA.length - 5));
+  }
+
   @Test
   public void failureAsync() {
     ByteArrayOutputStream out = new ByteArrayOutputStream();
-    Supplier<Integer> sequenceWithAZeroInTheMiddle = new SequenceProvider(SOME_DATA.length - 5, 0, -1);
-    CompletableFuture<Void> future = nonBlockingStreamWriter.addDataToWrite(out, SOME_DATA, sequenceWithAZeroInTheMiddle);
-    assertThat("The writer is not scheduled anywhere yet, so the future shouldn't be completed",
-               future.isDone(), is(false));
+    GrantedSpace space = new GrantedSpace(SOME_DATA.length - 5);
+    CompletableFuture<Void> future = nonBlockingStreamWriter.addDataToWrite(out, SOME_DATA, space);
+    assertThat("Nobody notified available space yet, so the future shouldn't be completed", future.isDone(), is(false));
 
-    executorService.submit(nonBlockingStreamWriter);
+    space.close();
+    nonBlockingStreamWriter.notifyAvailableSpace(out);
 
     ExecutionException exception = assertThrows(ExecutionException.class, future::get);
     Throwable cause = exception.getCause();
@@ -159,71 +204,41 @@ public class NonBlockingStreamWriterTestCase extends AbstractMuleTestCase {
   }
 
   @Test
-  public void streamWithoutSpaceManyTimesSleeps() throws ExecutionException, InterruptedException {
+  public void stopFailsTheParkedWrites() {
     ByteArrayOutputStream out = new ByteArrayOutputStream();
-    Supplier<Integer> sequenceWithThreeZeroesInTheMiddle = new SequenceProvider(SOME_DATA.length - 5, 0, 0, 0, 5);
-    CompletableFuture<Void> future = nonBlockingStreamWriter.addDataToWrite(out, SOME_DATA, sequenceWithThreeZeroesInTheMiddle);
-    assertThat("The writer is not scheduled anywhere yet, so the future shouldn't be completed",
-               future.isDone(), is(false));
-
-    long millisBeforeSchedule = currentTimeMillis();
-    executorService.submit(nonBlockingStreamWriter);
+    CompletableFuture<Void> future =
+        nonBlockingStreamWriter.addDataToWrite(out, SOME_DATA, new GrantedSpace(SOME_DATA.length - 5));
 
-    // now it has to be completed...
-    future.get();
-    long millisAfterComplete = currentTimeMillis();
-    int elapsedMillis = (int) (millisAfterComplete - millisBeforeSchedule);
-    assertThat("We returned 0 three times, so the writer should have slept twice at this point",
-               elapsedMillis, is(greaterThanOrEqualTo(2 * TEST_TIME_TO_SLEEP_WHEN_COULD_NOT_WRITE_MILLIS)));
+    nonBlockingStreamWriter.stop();
 
-    assertThat(out.toByteArray(), is(SOME_DATA));
+    ExecutionException exception = assertThrows(ExecutionException.class, future::get);
+    assertThat(exception.getCause(), instanceOf(IOException.class));
   }
 
   @Test
-  @Issue("W-17627284")
-  public void whenTheWriterIsNotifiedThenItDoesntSleepTooMuch() throws ExecutionException, InterruptedException {
-    // If we don't notify the writer, then this test will never end because the following timeout is ridiculously big...
-    int ridiculouslyBigSleepMillis = Integer.MAX_VALUE;
-    NonBlockingStreamWriter writer = new NonBlockingStreamWriter(ridiculouslyBigSleepMillis, true);
-
-    int enoughTimeToThisTrivialOperationInMilliseconds = 100;
-
-    ByteArrayOutputStream irrelevantSink = new ByteArrayOutputStream();
-    Supplier<Integer> sequenceWithSeveralZeroesInTheMiddle =
-        new SequenceProvider(SOME_DATA.length - 5, 0, 0, 0, 0, 0, 0, 0, 0, 5);
-    CompletableFuture<Void> future = writer.addDataToWrite(irrelevantSink, SOME_DATA, sequenceWithSeveralZeroesInTheMiddle);
-    assertThat("The writer is not scheduled anywhere yet, so the future shouldn't be completed",
-               future.isDone(), is(false));
-
-    // We schedule the writer task, and start notifying that there could be space in the sink. The writer should check if there is
-    // actually space but it shouldn't sleep.
-    long millisBeforeSchedule = currentTimeMillis();
-    executorService.submit(writer);
-    while (!future.isDone()) {
-      writer.notifyAvailableSpace();
-    }
-
-    // Now the future has to be completed, because the loop finished.
-    future.get();
-
-    // The full operation should take a short time...
-    long millisAfterComplete = currentTimeMillis();
-    int elapsedMillis = (int) (millisAfterComplete - millisBeforeSchedule);
-    assertThat("We returned 0 several times but we were constantly notifying that there was space in the sink, so it shouldn't take too much time",
-               elapsedMillis, is(lessThan(enoughTimeToThisTrivialOperationInMilliseconds)));
-
-    assertThat(irrelevantSink.toByteArray(), is(SOME_DATA));
+  public void writeParkedWhileStoppingIsFailed() {
+    AtomicBoolean stopped = new AtomicBoolean();
+    // Hashed when the write is about to be parked, after it was checked against a stopped writer
+    OutputStream stoppingWhenParked = new ByteArrayOutputStream() {
+
+      @Override
+      public int hashCode() {
+        if (stopped.compareAndSet(false, true)) {
+          nonBlockingStreamWriter.stop();
+        }
+        return super.hashCode();
+      }
+    };
+    CompletableFuture<Void> future =
+        nonBlockingStreamWriter.addDataToWrite(stoppingWhenParked, SOME_DATA, new GrantedSpace(SOME_DATA.length - 5));
 
-    writer.stop();
+    assertThat(stopped.get(), is(true));
+    assertThat(future.isCompletedExceptionally(), is(true));
   }
 
   @Test
-  public void writesAllProgressivelyAsync() throws ExecutionException, InterruptedException {
-    executorService.submit(nonBlockingStreamWriter);
-    ByteArrayOutputStream out = new ByteArrayOutputStream();
-    nonBlockingStreamWriter.addDataToWrite(out, SOME_DATA, new SequenceProvider(SOME_DATA.length - 5, 0, 0, 1, 0, 1, 1, 0, 1, 1))
-        .get();
-    assertThat(out.toByteArray(), is(SOME_DATA));
+  public void notifyingAStreamWithoutPendingWritesDoesNothing() {
+    nonBlockingStreamWriter.notifyAvailableSpace(new ByteArrayOutputStream());
   }
 
   @Test
@@ -250,61 +265,56 @@ public class NonBlockingStreamWriterTestCase extends AbstractMuleTestCase {
     assertThat(exception.getCause(), is(expectedException));
   }
 
-  @Test
-  public void interruptTheThreadDoesntInterruptTheWriterIfNotStopped() throws InterruptedException {
-    NonBlockingStreamWriter writer = new NonBlockingStreamWriter();
-    Thread threadOutsideTheStaticExecutor = new Thread(writer);
-    threadOutsideTheStaticExecutor.start();
-    threadOutsideTheStaticExecutor.interrupt();
-
-    // Give it some time to finish if it will (it should not)
-    threadOutsideTheStaticExecutor.join(500);
-    assertThat(threadOutsideTheStaticExecutor.isAlive(), is(true));
-
-    writer.stop();
-    threadOutsideTheStaticExecutor.join();
-    assertThat(threadOutsideTheStaticExecutor.isAlive(), is(false));
-  }
-
-  @Test
-  public void interruptTheThreadAfterStopWillInterruptTheSleep() throws InterruptedException {
-    int ridiculouslyBigSleepMillis = Integer.MAX_VALUE;
-    NonBlockingStreamWriter writer = new NonBlockingStreamWriter(ridiculouslyBigSleepMillis, true);
-    Thread threadOutsideTheStaticExecutor = new Thread(writer);
-    threadOutsideTheStaticExecutor.start();
-
-    // "Ensure" that the thread is sleeping
-    sleep(500);
-    writer.stop();
-
-    // We told the writer to stop, but it's still sleeping
-    threadOutsideTheStaticExecutor.join(500);
-    assertThat(threadOutsideTheStaticExecutor.isAlive(), is(true));
-
-    // If we interrupt the writer now, it will be joined without any issue
-    threadOutsideTheStaticExecutor.interrupt();
-    threadOutsideTheStaticExecutor.join();
-    assertThat(threadOutsideTheStaticExecutor.isAlive(), is(false));
-  }
-
   @Test
   public void writeOperationIsExecutedWithSameThreadContext() throws ExecutionException, InterruptedException {
-    executorService.submit(nonBlockingStreamWriter);
     OutputStreamSavingThreadContext out = new OutputStreamSavingThreadContext();
+    GrantedSpace space = new GrantedSpace(SOME_DATA.length - 5);
 
     Map<String, String> mockMdc = new HashMap<>();
     mockMdc.put("Key1", "Value1");
     mockMdc.put("Key2", "Value2");
     ClassLoader mockClassLoader = mock(ClassLoader.class);
+    CompletableFuture<Void> future;
     try (ThreadContext tc = new ThreadContext(mockClassLoader, mockMdc)) {
-      // the 0 of the SequenceProvider forces the last write to happen in the writer's thread
-      nonBlockingStreamWriter.addDataToWrite(out, SOME_DATA, new SequenceProvider(SOME_DATA.length - 5, 0, 5)).get();
+      future = nonBlockingStreamWriter.addDataToWrite(out, SOME_DATA, space);
     }
 
+    // the notification forces the last write to happen in the executor's thread
+    space.grant(5);
+    nonBlockingStreamWriter.notifyAvailableSpace(out);
+    future.get();
+
     assertThat(out.getClassLoaderOnLastWrite(), is(mockClassLoader));
     assertThat(out.getMDCOnLastWrite(), is(mockMdc));
   }
 
+  /**
+   * Emulates the available space of a pipe: the granted space can be used once, and then there is no space until the reader
+   * grants more of it.
+   */
+  private static class GrantedSpace implements Supplier<Integer> {
+
+    private final AtomicInteger space;
+    private volatile boolean closed = false;
+
+    GrantedSpace(int initialSpace) {
+      this.space = new AtomicInteger(initialSpace);
+    }
+
+    void grant(int bytes) {
+      space.addAndGet(bytes);
+    }
+
+    void close() {
+      closed = true;
+    }
+
+    @Override
+    public Integer get() {
+      return closed ? -1 : space.getAndSet(0);
+    }
+  }
+
   /**
    * The {@link NonBlockingStreamWriter} receives a {@link Supplier<Integer>} to retrieve the available space in the sink
    * {@link OutputStream}. This class is an utility to mock that supplier.
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.service.client;
+
+import static org.mule.service.http.impl.AllureConstants.HttpFeature.HTTP_SERVICE;
+import static org.mule.service.http.impl.service.client.RequesterMetrics.hostKey;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.mule.service.http.impl.service.client.RequesterMetrics.HostMetrics;
+import org.mule.tck.junit4.AbstractMuleTestCase;
+
+import java.net.URI;
+import java.util.concurrent.TimeoutException;
+
+import com.ning.http.client.AsyncHandler;
+import com.ning.http.client.HttpResponseBodyPart;
+import com.ning.http.client.HttpResponseStatus;
+import com.ning.http.client.uri.Uri;
+import org.junit.Test;
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+
+@Feature(HTTP_SERVICE)
+@Story("Requester metrics")
+public class RequesterMetricsTestCase extends AbstractMuleTestCase {
+
+  private final RequesterMetrics metrics = new RequesterMetrics("client");
+
+  @Test
+  public void hostKeyDefaultsPortFromScheme() {
+    assertThat(hostKey("http", "localhost", -1), is("localhost:80"));
+    assertThat(hostKey("https", "localhost", -1), is("localhost:443"));
+    assertThat(hostKey("http", "localhost", 8081), is("localhost:8081"));
+  }
+
+  @Test
+  public void hostMetricsAreSharedByUriFlavours() {
+    HostMetrics hostMetrics = metrics.hostMetrics(Uri.create("http://localhost:8081/path"));
+
+    assertThat(metrics.hostMetrics(URI.create("http://localhost:8081/other")), is(sameInstance(hostMetrics)));
+    assertThat(metrics.getHosts(), contains("localhost:8081"));
+    assertThat(metrics.getHostMetrics("localhost:8081"), is(sameInstance(hostMetrics)));
+    assertThat(metrics.getHostMetrics("localhost:8082"), is(nullValue()));
+  }
+
+  @Test
+  public void hostsBeyondTheLimitAreAggregated() {
+    RequesterMetrics limitedMetrics = new RequesterMetrics("client", 2);
+    HostMetrics first = limitedMetrics.hostMetrics(URI.create("http://first"));
+    HostMetrics second = limitedMetrics.hostMetrics(URI.create("http://second"));
+
+    assertThat(limitedMetrics.hostMetrics(URI.create("http://third")), is(sameInstance(limitedMetrics.getOtherHostsMetrics())));
+    assertThat(limitedMetrics.hostMetrics(URI.create("http://fourth")), is(sameInstance(limitedMetrics.getOtherHostsMetrics())));
+    assertThat(limitedMetrics.hostMetrics(URI.create("http://first")), is(sameInstance(first)));
+    assertThat(limitedMetrics.hostMetrics(URI.create("http://second")), is(sameInstance(second)));
+    assertThat(limitedMetrics.getHosts(), containsInAnyOrder("first:80", "second:80"));
+    assertThat(limitedMetrics.getHostMetrics("third:80"), is(nullValue()));
+  }
+
+  @Test
+  public void completedRequestIsRecorded() throws Exception {
+    AsyncHandler<String> delegate = mock(AsyncHandler.class);
+    when(delegate.onCompleted()).thenReturn("result");
+    HostMetrics hostMetrics = metrics.hostMetrics(URI.create("http://localhost"));
+    HttpResponseBodyPart bodyPart = mock(HttpResponseBodyPart.class);
+    when(bodyPart.length()).thenReturn(100);
+
+    RequesterMetricsAsyncHandler<String> handler = new RequesterMetricsAsyncHandler<>(delegate, metrics, hostMetrics);
+    assertThat(metrics.getActiveRequestsCount(), is(1L));
+
+    HttpResponseStatus status = mock(HttpResponseStatus.class);
+    handler.onStatusReceived(status);
+    handler.onBodyPartReceived(bodyPart);
+    assertThat(handler.onCompleted(), is("result"));
+
+    verify(delegate).onStatusReceived(status);
+    verify(delegate).onBodyPartReceived(bodyPart);
+    assertThat(metrics.getActiveRequestsCount(), is(0L));
+    assertThat(hostMetrics.getRequestsCount(), is(1L));
+    assertThat(hostMetrics.getFailuresCount(), is(0L));
+    assertThat(hostMetrics.getTimeToFirstByte().getCount(), is(1L));
+    assertThat(hostMetrics.getLatency().getCount(), is(1L));
+  }
+
+  @Test
+  public void failedRequestsAreRecorded() {
+    AsyncHandler<String> delegate = mock(AsyncHandler.class);
+    HostMetrics hostMetrics = metrics.hostMetrics(URI.create("http://localhost"));
+
+    new RequesterMetricsAsyncHandler<>(delegate, metrics, hostMetrics).onThrowable(new TimeoutException());
+    RequesterMetricsAsyncHandler<String> failed = new RequesterMetricsAsyncHandler<>(delegate, metrics, hostMetrics);
+    failed.onThrowable(new IllegalStateException());
+    // Only the first outcome of a request counts
+    failed.onThrowable(new IllegalStateException());
+
+    assertThat(metrics.getActiveRequestsCount(), is(0L));
+    assertThat(hostMetrics.getRequestsCount(), is(2L));
+    assertThat(hostMetrics.getTimeoutsCount(), is(1L));
+    assertThat(hostMetrics.getFailuresCount(), is(1L));
+    assertThat(hostMetrics.getLatency().getCount(), is(0L));
+  }
+
+  @Test
+  public void connectionsOccupancy() {
+    metrics.connectionOpened();
+    metrics.connectionOpened();
+    metrics.requestStarted();
+
+    assertThat(metrics.getOpenConnectionsCount(), is(2L));
+    assertThat(metrics.getActiveConnectionsCount(), is(1L));
+    assertThat(metrics.getIdleConnectionsCount(), is(1L));
+
+    metrics.requestFinished();
+    metrics.connectionClosed();
+
+    assertThat(metrics.getOpenConnectionsCount(), is(1L));
+    assertThat(metrics.getActiveConnectionsCount(), is(0L));
+    assertThat(metrics.getIdleConnectionsCount(), is(1L));
+  }
+
+  @Test
+  public void bodyThroughput() {
+    HostMetrics hostMetrics = metrics.hostMetrics(URI.create("http://localhost"));
+    hostMetrics.bodyPartReceived(1000);
+    hostMetrics.completed(2_000_000_000L, 1_000_000_000L);
+
+    assertThat(hostMetrics.getBodyThroughput(), is(1000L));
+    assertThat(hostMetrics.getLatency().getMaxMicros(), greaterThan(0L));
+  }
+}
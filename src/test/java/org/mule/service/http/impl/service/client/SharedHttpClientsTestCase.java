@@ -0,0 +1,161 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.service.client;
+
+import static org.mule.runtime.http.api.ws.WebSocketCloseCode.ENDPOINT_GOING_DOWN;
+import static org.mule.service.http.impl.AllureConstants.HttpFeature.HTTP_SERVICE;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.mule.runtime.api.config.FeatureFlaggingService;
+import org.mule.runtime.http.api.client.HttpClient;
+import org.mule.runtime.http.api.client.HttpClientConfiguration;
+import org.mule.runtime.http.api.client.HttpRequestOptions;
+import org.mule.runtime.http.api.client.ws.WebSocketCallback;
+import org.mule.runtime.http.api.domain.message.request.HttpRequest;
+import org.mule.runtime.http.api.sse.client.SseSource;
+import org.mule.runtime.http.api.sse.client.SseSourceConfig;
+import org.mule.runtime.http.api.ws.WebSocket;
+import org.mule.tck.junit4.AbstractMuleTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+
+@Feature(HTTP_SERVICE)
+@Story("Shared clients")
+public class SharedHttpClientsTestCase extends AbstractMuleTestCase {
+
+  private final FeatureFlaggingService featureFlaggingService = feature -> false;
+  private final SharedHttpClients sharedClients = new SharedHttpClients();
+  private final List<GrizzlyHttpClient> created = new ArrayList<>();
+  private final List<HttpClientConfiguration> createdConfigs = new ArrayList<>();
+
+  @Test
+  public void equivalentConfigurationsHaveTheSameKey() {
+    assertThat(SharedHttpClients.keyOf(config("a", 10), featureFlaggingService),
+               is(SharedHttpClients.keyOf(config("b", 10), featureFlaggingService)));
+    assertThat(SharedHttpClients.keyOf(config("a", 10), featureFlaggingService),
+               is(not(SharedHttpClients.keyOf(config("a", 20), featureFlaggingService))));
+  }
+
+  @Test
+  public void equivalentClientsShareOneClient() throws Exception {
+    HttpClient first = create(config("a", 10));
+    HttpClient second = create(config("b", 10));
+
+    first.start();
+    second.start();
+    assertThat(created.size(), is(1));
+    assertThat(sharedClients.getSharedClientsCount(), is(1));
+    verify(created.get(0), times(1)).start();
+
+    HttpRequest request = mock(HttpRequest.class);
+    HttpRequestOptions options = HttpRequestOptions.builder().build();
+    second.send(request, options);
+    verify(created.get(0)).send(request, options);
+  }
+
+  @Test
+  public void stoppingOneHandleKeepsTheSharedClient() {
+    HttpClient first = create(config("a", 10));
+    HttpClient second = create(config("b", 10));
+    first.start();
+    second.start();
+
+    first.stop();
+    // Stopping twice only releases the reference once
+    first.stop();
+    verify(created.get(0), never()).stop();
+
+    second.stop();
+    verify(created.get(0)).stop();
+    assertThat(sharedClients.getSharedClientsCount(), is(0));
+  }
+
+  @Test
+  public void stoppingAHandleClosesItsWebSocketsAndSseSources() throws Exception {
+    HttpClient first = create(config("a", 10));
+    HttpClient second = create(config("b", 10));
+    first.start();
+    second.start();
+    GrizzlyHttpClient shared = created.get(0);
+
+    WebSocket firstWebSocket = mock(WebSocket.class);
+    WebSocket secondWebSocket = mock(WebSocket.class);
+    when(shared.openWebSocket(any(), any(), anyString(), any()))
+        .thenReturn(completedFuture(firstWebSocket), completedFuture(secondWebSocket));
+    SseSource firstSseSource = mock(SseSource.class);
+    SseSource secondSseSource = mock(SseSource.class);
+    when(shared.sseSource(any())).thenReturn(firstSseSource, secondSseSource);
+
+    HttpRequestOptions options = HttpRequestOptions.builder().build();
+    first.openWebSocket(mock(HttpRequest.class), options, "first", mock(WebSocketCallback.class));
+    second.openWebSocket(mock(HttpRequest.class), options, "second", mock(WebSocketCallback.class));
+    first.sseSource(mock(SseSourceConfig.class));
+    second.sseSource(mock(SseSourceConfig.class));
+
+    first.stop();
+    verify(firstWebSocket).close(ENDPOINT_GOING_DOWN, "Client a stopped");
+    verify(firstSseSource).close();
+    verify(secondWebSocket, never()).close(any(), anyString());
+    verify(secondSseSource, never()).close();
+  }
+
+  @Test
+  public void differentClientsAreNotShared() {
+    create(config("a", 10)).start();
+    create(config("b", 20)).start();
+
+    assertThat(created.size(), is(2));
+    assertThat(sharedClients.getSharedClientsCount(), is(2));
+  }
+
+  @Test
+  public void sharedClientDoesNotTakeTheNameOfAHandle() {
+    create(config("a", 10)).start();
+
+    HttpClientConfiguration sharedConfig = createdConfigs.get(0);
+    assertThat(sharedConfig.getName(), startsWith("http.requester.shared."));
+    assertThat(sharedConfig.getMaxConnections(), is(10));
+    assertThat(SharedHttpClients.keyOf(sharedConfig, featureFlaggingService),
+               is(SharedHttpClients.keyOf(config("a", 10), featureFlaggingService)));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void handleNotStarted() {
+    create(config("a", 10)).sendAsync(mock(HttpRequest.class), HttpRequestOptions.builder().build());
+  }
+
+  private HttpClient create(HttpClientConfiguration config) {
+    return sharedClients.create(config, featureFlaggingService, sharedConfig -> {
+      GrizzlyHttpClient client = mock(GrizzlyHttpClient.class);
+      created.add(client);
+      createdConfigs.add(sharedConfig);
+      return client;
+    });
+  }
+
+  private static HttpClientConfiguration config(String name, int maxConnections) {
+    return new HttpClientConfiguration.Builder().setName(name).setMaxConnections(maxConnections).build();
+  }
+}
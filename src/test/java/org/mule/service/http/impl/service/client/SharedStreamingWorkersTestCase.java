@@ -0,0 +1,208 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.service.client;
+
+import static org.mule.service.http.impl.AllureConstants.HttpFeature.HTTP_SERVICE;
+
+import static java.lang.Thread.currentThread;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonMap;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.mule.runtime.api.scheduler.Scheduler;
+import org.mule.runtime.api.scheduler.SchedulerService;
+import org.mule.service.http.impl.service.client.SharedStreamingWorkers.ClientWorkers;
+import org.mule.tck.junit4.AbstractMuleTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Before;
+import org.junit.Test;
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+
+@Feature(HTTP_SERVICE)
+@Story("Shared streaming workers")
+public class SharedStreamingWorkersTestCase extends AbstractMuleTestCase {
+
+  private static final int QUEUE_SIZE = 10;
+
+  private final SchedulerService schedulerService = mock(SchedulerService.class);
+  private final Scheduler scheduler = mock(Scheduler.class);
+  // Tasks handed to the shared scheduler, run on demand by the tests
+  private final List<Runnable> submitted = new ArrayList<>();
+  private final List<String> ran = new ArrayList<>();
+
+  @Before
+  public void before() {
+    when(schedulerService.customScheduler(any(), anyInt())).thenReturn(scheduler);
+    doAnswer(invocation -> submitted.add(invocation.getArgument(0))).when(scheduler).execute(any());
+  }
+
+  @Test
+  public void totalWorkersAreBounded() {
+    ClientWorkers client = new SharedStreamingWorkers(schedulerService, 2, 2, emptyMap()).register("a", QUEUE_SIZE);
+
+    for (int i = 0; i < 3; ++i) {
+      client.execute(task("a" + i));
+    }
+
+    assertThat(submitted.size(), is(2));
+    assertThat(client.getQueuedCount(), is(1));
+
+    runNext();
+    assertThat(submitted.size(), is(2));
+    assertThat(client.getQueuedCount(), is(0));
+  }
+
+  @Test
+  public void busyClientIsCapped() {
+    SharedStreamingWorkers workers = new SharedStreamingWorkers(schedulerService, 4, 1, emptyMap());
+    ClientWorkers busy = workers.register("busy", QUEUE_SIZE);
+    ClientWorkers other = workers.register("other", QUEUE_SIZE);
+
+    busy.execute(task("busy0"));
+    busy.execute(task("busy1"));
+    other.execute(task("other0"));
+
+    assertThat(submitted.size(), is(2));
+    assertThat(busy.getQueuedCount(), is(1));
+    assertThat(workers.getRunningCount(), is(2));
+  }
+
+  @Test
+  public void freedWorkerGoesToClientWithSmallestShare() {
+    SharedStreamingWorkers workers = new SharedStreamingWorkers(schedulerService, 2, 2, emptyMap());
+    ClientWorkers busy = workers.register("busy", QUEUE_SIZE);
+    ClientWorkers other = workers.register("other", QUEUE_SIZE);
+    busy.execute(task("busy0"));
+    busy.execute(task("busy1"));
+    busy.execute(task("busy2"));
+    other.execute(task("other0"));
+
+    // busy still runs one task and other none, so other gets the worker
+    runNext();
+    assertThat(other.getQueuedCount(), is(0));
+    assertThat(busy.getQueuedCount(), is(1));
+
+    runNext();
+    runNext();
+    assertThat(ran, contains("busy0", "busy1", "other0"));
+  }
+
+  @Test
+  public void freedWorkerFollowsClientWeights() {
+    SharedStreamingWorkers workers = new SharedStreamingWorkers(schedulerService, 3, 3, singletonMap("heavy", 2));
+    ClientWorkers heavy = workers.register("heavy", QUEUE_SIZE);
+    ClientWorkers light = workers.register("light", QUEUE_SIZE);
+    for (int i = 0; i < 5; ++i) {
+      heavy.execute(task("heavy" + i));
+    }
+    light.execute(task("light0"));
+    light.execute(task("light1"));
+
+    // heavy runs 2 tasks for a weight of 2, light none
+    runNext();
+    assertThat(light.getQueuedCount(), is(1));
+    // heavy runs 1 task for a weight of 2, light 1 for a weight of 1
+    runNext();
+    assertThat(heavy.getQueuedCount(), is(1));
+    assertThat(light.getQueuedCount(), is(1));
+  }
+
+  @Test
+  public void lastClientStopsSharedScheduler() {
+    SharedStreamingWorkers workers = new SharedStreamingWorkers(schedulerService, 2, 2, emptyMap());
+    ClientWorkers first = workers.register("first", QUEUE_SIZE);
+    ClientWorkers second = workers.register("second", QUEUE_SIZE);
+
+    first.shutdown();
+    verify(scheduler, never()).stop();
+    second.shutdown();
+    verify(scheduler).stop();
+  }
+
+  @Test
+  public void fullClientQueueRejectsTasks() {
+    ClientWorkers client = new SharedStreamingWorkers(schedulerService, 1, 1, emptyMap()).register("a", 1);
+    client.execute(task("running"));
+    client.execute(task("queued"));
+
+    assertThrows(RejectedExecutionException.class, () -> client.execute(task("rejected")));
+    assertThat(client.getQueuedCount(), is(1));
+
+    runNext();
+    client.execute(task("queuedAgain"));
+    assertThat(client.getQueuedCount(), is(1));
+  }
+
+  @Test(expected = RejectedExecutionException.class)
+  public void shutDownClientRejectsTasks() {
+    ClientWorkers client = new SharedStreamingWorkers(schedulerService, 2, 2, emptyMap()).register("a", QUEUE_SIZE);
+    client.shutdown();
+
+    client.execute(task("a0"));
+  }
+
+  @Test
+  public void taskRejectedBySharedSchedulerRunsInTheCaller() {
+    SharedStreamingWorkers workers = new SharedStreamingWorkers(schedulerService, 2, 2, emptyMap());
+    ClientWorkers client = workers.register("a", QUEUE_SIZE);
+    doThrow(new RejectedExecutionException("EXPECTED")).when(scheduler).execute(any());
+
+    client.execute(task("a0"));
+
+    assertThat(ran, contains("a0"));
+    assertThat(workers.getRunningCount(), is(0));
+  }
+
+  @Test
+  public void awaitTerminationWaitsForTheRunningTasks() throws Exception {
+    ClientWorkers client = new SharedStreamingWorkers(schedulerService, 2, 2, emptyMap()).register("a", QUEUE_SIZE);
+    client.execute(task("a0"));
+    client.shutdown();
+    assertThat(client.awaitTermination(10, MILLISECONDS), is(false));
+
+    Thread worker = new Thread(() -> {
+      try {
+        Thread.sleep(100);
+      } catch (InterruptedException e) {
+        currentThread().interrupt();
+      }
+      runNext();
+    });
+    worker.start();
+
+    assertThat(client.awaitTermination(10, SECONDS), is(true));
+    assertThat(ran, contains("a0"));
+    worker.join();
+  }
+
+  private Runnable task(String name) {
+    return () -> ran.add(name);
+  }
+
+  private void runNext() {
+    submitted.remove(0).run();
+  }
+}
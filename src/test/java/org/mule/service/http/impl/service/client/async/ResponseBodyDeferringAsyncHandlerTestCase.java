@@ -54,6 +54,7 @@ import org.mule.runtime.core.api.util.IOUtils;
 import org.mule.runtime.http.api.domain.message.response.HttpResponse;
 import org.mule.service.http.common.client.sse.ProgressiveBodyDataListener;
 import org.mule.service.http.impl.service.client.NonBlockingStreamWriter;
+import org.mule.service.http.impl.util.BufferPipedInputStream;
 import org.mule.service.http.impl.util.TimedPipedInputStream;
 import org.mule.service.http.impl.util.TimedPipedOutputStream;
 import org.mule.tck.junit4.AbstractMuleTestCase;
@@ -104,10 +105,11 @@ public class ResponseBodyDeferringAsyncHandlerTestCase extends AbstractMuleTestC
   private final PollingProber prober = new PollingProber(PROBE_TIMEOUT, POLL_DELAY);
 
   private final ExecutorService workersExecutor = newFixedThreadPool(5);
-  private final NonBlockingStreamWriter nonBlockingStreamWriter = new NonBlockingStreamWriter(100, true);
+  private final NonBlockingStreamWriter nonBlockingStreamWriter = new NonBlockingStreamWriter(workersExecutor, true);
   private final CountingListener dataListener = new CountingListener();
 
   private static final String READ_TIMEOUT_PROPERTY_NAME = "mule.http.responseStreaming.pipeReadTimeoutMillis";
+  private static final String BUFFER_PIPE_PROPERTY_NAME = "mule.http.responseStreaming.bufferPipe";
 
   @Before
   public void setup() {
@@ -118,6 +120,7 @@ public class ResponseBodyDeferringAsyncHandlerTestCase extends AbstractMuleTestC
   @After
   public void tearDown() {
     clearProperty(READ_TIMEOUT_PROPERTY_NAME);
+    clearProperty(BUFFER_PIPE_PROPERTY_NAME);
     refreshSystemProperties();
   }
 
@@ -381,15 +384,14 @@ public class ResponseBodyDeferringAsyncHandlerTestCase extends AbstractMuleTestC
     assertThat(pipe, instanceOf(TimedPipedInputStream.class));
     assertThat(pipe.available(), is(smallBufferSize));
 
-    // Not resumed yet, because the async writer isn't running
+    // Not resumed yet, because nobody read from the full pipe
     verify(pauseHandler, never()).resume();
 
-    // Now we run the writer, consume the pipe async, and write the last part
+    // Now we consume the pipe async, which resumes the pending write, and write the last part
     StringBuilder responseAsString = new StringBuilder();
     testExecutor.submit(() -> consumePipe(pipe, responseAsString));
-    workersExecutor.submit(nonBlockingStreamWriter);
 
-    // Now that the writer is running, the event processing has to be resumed at least once
+    // Now that the pipe is being read, the event processing has to be resumed at least once
     prober.check(new JUnitLambdaProbe(() -> {
       verify(pauseHandler, atLeastOnce()).resume();
       return true;
@@ -412,6 +414,61 @@ public class ResponseBodyDeferringAsyncHandlerTestCase extends AbstractMuleTestC
     assertThat(dataListener, receivedStreamWithLength("Hello world!".length()));
   }
 
+  @Test
+  public void bufferPipeHandsThePartsToTheReaderWithoutCopyingThem() throws Exception {
+    setProperty(BUFFER_PIPE_PROPERTY_NAME, "true");
+    refreshSystemProperties();
+    int smallBufferSize = 5;
+
+    CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+    ResponseBodyDeferringAsyncHandler handler =
+        new ResponseBodyDeferringAsyncHandler(future, smallBufferSize, workersExecutor, nonBlockingStreamWriter, dataListener);
+
+    GrizzlyResponseBodyPart partBiggerThanBuffer = mockBodyPart(false, "Hello ".getBytes());
+    GrizzlyResponseBodyPart lastPart = mockBodyPart(true, "world!".getBytes());
+
+    handler.onStatusReceived(mock(HttpResponseStatus.class, RETURNS_DEEP_STUBS));
+    assertThat(handler.onBodyPartReceived(partBiggerThanBuffer), is(CONTINUE));
+
+    InputStream pipe = future.get().getEntity().getContent();
+    assertThat(pipe, instanceOf(BufferPipedInputStream.class));
+    assertThat(pipe.available(), is("Hello ".length()));
+    verify(partBiggerThanBuffer, never()).writeTo(any(OutputStream.class));
+
+    // The whole part was queued, but the pipe is full, so the READ events are paused until it's read
+    verify(pauseHandler).requestPause();
+    verify(pauseHandler, never()).resume();
+
+    byte[] readBuffer = new byte[3];
+    assertThat(pipe.read(readBuffer), is(3));
+    verify(pauseHandler).resume();
+
+    assertThat(handler.onBodyPartReceived(lastPart), is(CONTINUE));
+    assertThat("Hel" + IOUtils.toString(pipe), is("Hello world!"));
+    assertThat(dataListener, receivedStreamWithLength("Hello world!".length()));
+  }
+
+  @Test
+  public void bufferPipeResumesThePausedReadsWhenClosed() throws Exception {
+    setProperty(BUFFER_PIPE_PROPERTY_NAME, "true");
+    refreshSystemProperties();
+    int smallBufferSize = 5;
+
+    CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+    ResponseBodyDeferringAsyncHandler handler =
+        new ResponseBodyDeferringAsyncHandler(future, smallBufferSize, workersExecutor, nonBlockingStreamWriter, dataListener);
+
+    handler.onStatusReceived(mock(HttpResponseStatus.class, RETURNS_DEEP_STUBS));
+    handler.onBodyPartReceived(mockBodyPart(false, "Hello ".getBytes()));
+    verify(pauseHandler, never()).resume();
+
+    future.get().getEntity().getContent().close();
+    verify(pauseHandler).resume();
+
+    // The next part can't be written because nobody will read it
+    assertThat(handler.onBodyPartReceived(mockBodyPart(false, "world!".getBytes())), is(ABORT));
+  }
+
   @Test
   @Issue("W-17048606")
   public void asyncWriteHappensWithSameTCCL() throws Exception {
@@ -444,10 +501,8 @@ public class ResponseBodyDeferringAsyncHandlerTestCase extends AbstractMuleTestC
     HttpResponse response = future.get();
     response.getEntity().getContent().close();
 
-    workersExecutor.submit(nonBlockingStreamWriter);
-
-    // As we closed the pipe, the write operation has to throw an error and the onThrowable has to be called in the
-    // NonBlockingWriter's thread. The onThrowable should be called with the MDC that was present when we created the
+    // As we closed the pipe, the pending write is resumed and has to fail, so the onThrowable has to be called in a
+    // workers thread. The onThrowable should be called with the MDC that was present when we created the
     // asyncHandler.
     prober.check(new JUnitLambdaProbe(() -> {
       assertThat(mdcSeenOnThrowable.get(randomKey), is("TestValue"));
@@ -475,7 +530,7 @@ public class ResponseBodyDeferringAsyncHandlerTestCase extends AbstractMuleTestC
     GrizzlyResponseBodyPart lastPart = mockBodyPart(true, "lo world!".getBytes());
 
     // The writing of the last part will be scheduled because it doesn't fit into the pipe.
-    // As we didn't start the writer thread yet, the onCompleted will be executed before the last part is written.
+    // As nobody read from the pipe yet, the onCompleted will be executed before the last part is written.
     handler.onStatusReceived(mock(HttpResponseStatus.class, RETURNS_DEEP_STUBS));
     handler.onBodyPartReceived(intermediatePart);
     handler.onBodyPartReceived(lastPart);
@@ -485,10 +540,9 @@ public class ResponseBodyDeferringAsyncHandlerTestCase extends AbstractMuleTestC
     InputStream pipe = future.get().getEntity().getContent();
     assertThat(pipe.available(), is(smallBufferSize));
 
-    // Now we run the writer and consume the pipe asynchronously.
+    // Now we consume the pipe asynchronously, which resumes the pending write.
     StringBuilder responseAsString = new StringBuilder();
     testExecutor.submit(() -> consumePipe(pipe, responseAsString));
-    workersExecutor.submit(nonBlockingStreamWriter);
 
     // Eventually, the whole response is consumed from the pipe with no errors.
     prober.check(new JUnitLambdaProbe(() -> {
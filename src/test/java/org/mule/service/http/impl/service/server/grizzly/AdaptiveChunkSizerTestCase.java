@@ -0,0 +1,99 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.service.server.grizzly;
+
+import static org.mule.service.http.impl.AllureConstants.HttpFeature.HTTP_SERVICE;
+import static org.mule.service.http.impl.AllureConstants.HttpFeature.HttpStory.RESPONSES;
+import static org.mule.service.http.impl.service.server.grizzly.AdaptiveChunkSizer.FAST_WRITE_NANOS;
+import static org.mule.service.http.impl.service.server.grizzly.AdaptiveChunkSizer.SLOW_WRITE_NANOS;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import org.mule.tck.junit4.AbstractMuleTestCase;
+
+import org.junit.Test;
+
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+
+@Feature(HTTP_SERVICE)
+@Story(RESPONSES)
+public class AdaptiveChunkSizerTestCase extends AbstractMuleTestCase {
+
+  private final ResponseChunkStatistics statistics = new ResponseChunkStatistics();
+  private final AdaptiveChunkSizer sizer = new AdaptiveChunkSizer(8, 2, 32, true, statistics);
+
+  @Test
+  public void growsWhileWritesAreFast() {
+    writeChunk(8, 0, FAST_WRITE_NANOS / 2);
+    assertThat(sizer.nextChunkSize(), is(16));
+    writeChunk(16, 0, FAST_WRITE_NANOS / 2);
+    assertThat(sizer.nextChunkSize(), is(32));
+    writeChunk(32, 0, FAST_WRITE_NANOS / 2);
+    assertThat(sizer.nextChunkSize(), is(32));
+    assertThat(statistics.getGrowsCount(), is(2L));
+  }
+
+  @Test
+  public void doesNotGrowWhenTheStreamDoesNotFillTheChunk() {
+    writeChunk(3, 0, FAST_WRITE_NANOS / 2);
+    assertThat(sizer.nextChunkSize(), is(8));
+  }
+
+  @Test
+  public void shrinksWhenWritesAreSlow() {
+    writeChunk(8, 0, SLOW_WRITE_NANOS * 2);
+    assertThat(sizer.nextChunkSize(), is(4));
+    writeChunk(4, 0, SLOW_WRITE_NANOS * 2);
+    assertThat(sizer.nextChunkSize(), is(2));
+    writeChunk(2, 0, SLOW_WRITE_NANOS * 2);
+    assertThat(sizer.nextChunkSize(), is(2));
+    assertThat(statistics.getShrinksCount(), is(2L));
+  }
+
+  @Test
+  public void shrinksWhenTheSendBufferIsFull() {
+    writeChunk(8, 100, FAST_WRITE_NANOS / 2);
+    assertThat(sizer.nextChunkSize(), is(4));
+  }
+
+  @Test
+  public void keepsTheSizeBetweenThresholds() {
+    writeChunk(8, 0, (FAST_WRITE_NANOS + SLOW_WRITE_NANOS) / 2);
+    assertThat(sizer.nextChunkSize(), is(8));
+  }
+
+  @Test
+  public void fixedSizeWhenNotAdaptive() {
+    AdaptiveChunkSizer fixedSizer = new AdaptiveChunkSizer(8, 2, 32, false, statistics);
+    fixedSizer.writeStarted(8);
+    fixedSizer.writeCompleted(0, FAST_WRITE_NANOS / 2);
+    assertThat(fixedSizer.nextChunkSize(), is(8));
+    assertThat(fixedSizer.maxChunkSize(), is(8));
+
+    // The chunks are still recorded.
+    assertThat(statistics.getChunksCount(), is(1L));
+  }
+
+  @Test
+  public void statisticsOfTheWrittenChunks() {
+    writeChunk(8, 0, 1000);
+    writeChunk(4, 0, 3000);
+
+    assertThat(statistics.getChunksCount(), is(2L));
+    assertThat(statistics.getAverageChunkSize(), is(6L));
+    assertThat(statistics.getMaxChunkSize(), is(8L));
+    assertThat(statistics.getAverageWriteCompletionNanos(), is(2000L));
+    assertThat(statistics.getMaxWriteCompletionNanos(), is(3000L));
+  }
+
+  private void writeChunk(int size, int pendingBytes, long completionNanos) {
+    sizer.writeStarted(size);
+    sizer.writeCompleted(pendingBytes, completionNanos);
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.service.server.grizzly;
+
+import static org.mule.service.http.impl.AllureConstants.HttpFeature.HTTP_SERVICE;
+import static org.mule.service.http.impl.AllureConstants.HttpFeature.HttpStory.RESPONSES;
+import static org.mule.service.http.impl.service.server.grizzly.ConnectionDrainer.drain;
+import static org.mule.service.http.impl.service.server.grizzly.ConnectionDrainer.inFlightRequests;
+import static org.mule.service.http.impl.service.server.grizzly.ConnectionDrainer.isDraining;
+import static org.mule.service.http.impl.service.server.grizzly.ConnectionDrainer.requestStarted;
+import static org.mule.service.http.impl.service.server.grizzly.ConnectionDrainer.responseFinished;
+
+import static org.glassfish.grizzly.Grizzly.DEFAULT_ATTRIBUTE_BUILDER;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.mule.runtime.http.api.server.async.ResponseStatusCallback;
+import org.mule.tck.junit4.AbstractMuleTestCase;
+
+import org.glassfish.grizzly.Connection;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+
+@Feature(HTTP_SERVICE)
+@Story(RESPONSES)
+public class ConnectionDrainerTestCase extends AbstractMuleTestCase {
+
+  private final Connection connection = mock(Connection.class);
+
+  @Before
+  public void setUp() {
+    when(connection.getAttributes()).thenReturn(DEFAULT_ATTRIBUTE_BUILDER.createSafeAttributeHolder());
+  }
+
+  @Test
+  public void idleConnectionIsClosedRightAway() {
+    assertThat(drain(connection), is(true));
+    verify(connection).close();
+  }
+
+  @Test
+  public void busyConnectionIsClosedAfterItsLastResponse() {
+    requestStarted(connection);
+    requestStarted(connection);
+
+    assertThat(drain(connection), is(false));
+    assertThat(isDraining(connection), is(true));
+    verify(connection, never()).close();
+
+    responseFinished(connection);
+    verify(connection, never()).close();
+    responseFinished(connection);
+    verify(connection).close();
+  }
+
+  @Test
+  public void connectionIsKeptOpenIfNotDraining() {
+    requestStarted(connection);
+    responseFinished(connection);
+
+    assertThat(inFlightRequests(connection), is(0));
+    assertThat(isDraining(connection), is(false));
+    verify(connection, never()).close();
+  }
+
+  @Test
+  public void connectionIsReleasedOnceEvenIfSeveralOutcomesAreNotified() {
+    ResponseStatusCallback delegate = mock(ResponseStatusCallback.class);
+    requestStarted(connection);
+    requestStarted(connection);
+    drain(connection);
+
+    ResponseStatusCallback callback = new ConnectionReleasingResponseStatusCallback(connection, delegate);
+    callback.onErrorSendingResponse(new Exception("EXPECTED EXCEPTION"));
+    callback.responseSendFailure(new Exception("EXPECTED EXCEPTION"));
+
+    assertThat(inFlightRequests(connection), is(1));
+    verify(delegate).onErrorSendingResponse(any(Exception.class));
+    verify(connection, never()).close();
+  }
+}
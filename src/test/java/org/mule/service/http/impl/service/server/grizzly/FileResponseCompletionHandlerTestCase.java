@@ -0,0 +1,203 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.service.server.grizzly;
+
+import static org.mule.runtime.http.api.HttpConstants.Protocol.HTTPS;
+import static org.mule.runtime.http.api.HttpHeaders.Names.CONTENT_LENGTH;
+import static org.mule.service.http.impl.AllureConstants.HttpFeature.HTTP_SERVICE;
+import static org.mule.service.http.impl.AllureConstants.HttpFeature.HttpStory.RESPONSES;
+import static org.mule.service.http.impl.service.server.grizzly.ExecutorPerServerAddressIOStrategy.DELEGATE_WRITES_IN_CONFIGURED_EXECUTOR;
+import static org.mule.service.http.impl.service.server.grizzly.FileResponseCompletionHandler.MAPPED_REGION_SIZE_PROPERTY;
+import static org.mule.service.http.impl.service.server.grizzly.FileResponseCompletionHandler.MAP_FILE_RESPONSES_PROPERTY;
+import static org.mule.service.http.impl.service.server.grizzly.FileResponseCompletionHandler.isFileBacked;
+import static org.mule.service.http.impl.service.server.grizzly.FileResponseCompletionHandler.refreshSystemProperties;
+
+import static java.lang.Thread.currentThread;
+import static java.nio.file.Files.write;
+
+import static org.glassfish.grizzly.memory.MemoryManager.DEFAULT_MEMORY_MANAGER;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.mule.runtime.http.api.domain.entity.InputStreamHttpEntity;
+import org.mule.runtime.http.api.domain.message.response.HttpResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.glassfish.grizzly.CompletionHandler;
+import org.glassfish.grizzly.Transport;
+import org.glassfish.grizzly.attributes.AttributeHolder;
+import org.glassfish.grizzly.http.HttpContent;
+import org.glassfish.grizzly.http.ProcessingState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+
+@Feature(HTTP_SERVICE)
+@Story(RESPONSES)
+public class FileResponseCompletionHandlerTestCase extends BaseResponseCompletionHandlerTestCase {
+
+  private static final String CONTENT = "some file content";
+
+  @TempDir
+  File tempDir;
+
+  private FileInputStream fileStream;
+  private FileResponseCompletionHandler handler;
+  private final List<String> sentContents = new ArrayList<>();
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    System.setProperty(MAP_FILE_RESPONSES_PROPERTY, "true");
+    refreshSystemProperties();
+    Transport transport = mock(Transport.class, RETURNS_DEEP_STUBS);
+    when(transport.getMemoryManager()).thenReturn(DEFAULT_MEMORY_MANAGER);
+    when(ctx.getConnection()).thenReturn(connection);
+    when(connection.getTransport()).thenReturn(transport);
+    when(request.getProcessingState()).thenReturn(new ProcessingState());
+    // The regions are unmapped once their write completes, so their content is read as they are written
+    doAnswer(invocation -> sentContents
+        .add(invocation.getArgument(0, HttpContent.class).getContent().toStringContent(StandardCharsets.UTF_8)))
+            .when(ctx).write(any(), any(CompletionHandler.class));
+
+    Path file = tempDir.toPath().resolve("response.txt");
+    write(file, CONTENT.getBytes());
+    fileStream = new FileInputStream(file.toFile());
+    responseMock = HttpResponse.builder().entity(new InputStreamHttpEntity(fileStream)).build();
+    handler = createHandler();
+  }
+
+  @AfterEach
+  public void tearDown() throws IOException {
+    System.clearProperty(MAP_FILE_RESPONSES_PROPERTY);
+    System.clearProperty(MAPPED_REGION_SIZE_PROPERTY);
+    refreshSystemProperties();
+    fileStream.close();
+  }
+
+  private FileResponseCompletionHandler createHandler() throws IOException {
+    return new FileResponseCompletionHandler(ctx, currentThread().getContextClassLoader(), request, responseMock, callback);
+  }
+
+  @Override
+  protected BaseResponseCompletionHandler getHandler() {
+    return handler;
+  }
+
+  @Test
+  void onlyFileStreamsAreFileBacked() {
+    assertThat(isFileBacked(responseMock), is(true));
+    HttpResponse inMemory =
+        HttpResponse.builder().entity(new InputStreamHttpEntity(new ByteArrayInputStream(CONTENT.getBytes()))).build();
+    assertThat(isFileBacked(inMemory), is(false));
+  }
+
+  @Test
+  void fileStreamSubclassesAreNotFileBacked() throws IOException {
+    FileInputStream subclass = new FileInputStream(fileStream.getFD()) {};
+    HttpResponse response = HttpResponse.builder().entity(new InputStreamHttpEntity(subclass)).build();
+    assertThat(isFileBacked(response), is(false));
+  }
+
+  @Test
+  void mappingIsDisabledByDefault() {
+    System.clearProperty(MAP_FILE_RESPONSES_PROPERTY);
+    refreshSystemProperties();
+    assertThat(isFileBacked(responseMock), is(false));
+  }
+
+  @Test
+  void writesAreDelegatedWhileTheFileIsSent() throws IOException {
+    handler.start();
+    verify(connection.getAttributes()).setAttribute(DELEGATE_WRITES_IN_CONFIGURED_EXECUTOR, true);
+
+    handler.completed(null);
+    verify(connection.getAttributes()).removeAttribute(DELEGATE_WRITES_IN_CONFIGURED_EXECUTOR);
+  }
+
+  @Test
+  void wholeFileIsSentWithContentLength() throws IOException {
+    handler.start();
+
+    assertThat(sentContents(1), contains(CONTENT));
+    assertThat(handler.getHttpResponsePacket().getContentLength(), is((long) CONTENT.length()));
+
+    handler.completed(null);
+    verify(callback).responseSendSuccessfully();
+    assertThat(fileStream.getChannel().isOpen(), is(false));
+  }
+
+  @Test
+  void fileIsSentInRegions() throws IOException {
+    System.setProperty(MAPPED_REGION_SIZE_PROPERTY, "8");
+    refreshSystemProperties();
+    handler = createHandler();
+
+    handler.start();
+    handler.completed(null);
+    handler.completed(null);
+
+    assertThat(sentContents(3), contains("some fil", "e conten", "t"));
+    handler.completed(null);
+    verify(callback).responseSendSuccessfully();
+  }
+
+  @Test
+  void bodyStartsWhereTheStreamWasLeft() throws IOException {
+    fileStream.skip(5);
+    handler = createHandler();
+
+    handler.start();
+    assertThat(sentContents(1), contains("file content"));
+  }
+
+  @Test
+  void declaredContentLengthIsNotExceeded() throws IOException {
+    responseMock = HttpResponse.builder().entity(new InputStreamHttpEntity(fileStream)).addHeader(CONTENT_LENGTH, "4").build();
+    handler = createHandler();
+
+    handler.start();
+    assertThat(sentContents(1), contains("some"));
+  }
+
+  @Test
+  void secureConnectionsUseSmallerRegions() throws IOException {
+    AttributeHolder attributes = mock(AttributeHolder.class);
+    when(attributes.getAttribute(HTTPS.getScheme())).thenReturn(true);
+    when(ctx.getAttributes()).thenReturn(attributes);
+    when(connection.getWriteBufferSize()).thenReturn(10);
+    handler = createHandler();
+
+    handler.start();
+    handler.completed(null);
+    assertThat(sentContents(2), contains("some file ", "content"));
+  }
+
+  private List<String> sentContents(int expectedWrites) {
+    verify(ctx, times(expectedWrites)).write(any(), any(CompletionHandler.class));
+    return sentContents;
+  }
+}
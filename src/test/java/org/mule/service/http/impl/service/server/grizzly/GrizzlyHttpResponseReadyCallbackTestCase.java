@@ -6,10 +6,16 @@
  */
 package org.mule.service.http.impl.service.server.grizzly;
 
+import static org.mule.service.http.impl.service.server.grizzly.ConnectionDrainer.inFlightRequests;
+import static org.mule.service.http.impl.service.server.grizzly.ConnectionDrainer.requestStarted;
+
 import static java.nio.charset.Charset.defaultCharset;
 
+import static org.glassfish.grizzly.Grizzly.DEFAULT_ATTRIBUTE_BUILDER;
+import static org.glassfish.grizzly.memory.MemoryManager.DEFAULT_MEMORY_MANAGER;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.fail;
@@ -33,7 +39,6 @@ import java.io.IOException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
-import org.glassfish.grizzly.Buffer;
 import org.glassfish.grizzly.Connection;
 import org.glassfish.grizzly.Transport;
 import org.glassfish.grizzly.filterchain.FilterChainContext;
@@ -51,6 +56,7 @@ import org.junit.jupiter.params.provider.CsvSource;
 class GrizzlyHttpResponseReadyCallbackTestCase extends AbstractMuleTestCase {
 
   private GrizzlyHttpRequestAdapter httpRequest;
+  private Connection connection;
   private FilterChainContext ctx;
   private RequestHandler requestHandler;
   private HttpRequestPacket requestPacket;
@@ -64,18 +70,16 @@ class GrizzlyHttpResponseReadyCallbackTestCase extends AbstractMuleTestCase {
     httpRequest = mock(GrizzlyHttpRequestAdapter.class);
     when(httpRequest.getMethod()).thenReturn("GET");
 
-    Buffer buffer = mock(Buffer.class);
-    when(buffer.array()).thenReturn(new byte[256]);
-    when(buffer.arrayOffset()).thenReturn(0);
-
     MemoryManager memoryManager = mock(MemoryManager.class);
-    when(memoryManager.allocate(anyInt())).thenReturn(buffer);
+    when(memoryManager.allocate(anyInt())).thenAnswer(invocation -> DEFAULT_MEMORY_MANAGER.allocate(invocation.getArgument(0)));
 
     Transport transport = mock(Transport.class);
     when(transport.getMemoryManager()).thenReturn(memoryManager);
 
-    Connection connection = mock(Connection.class);
+    connection = mock(Connection.class);
     when(connection.getTransport()).thenReturn(transport);
+    when(connection.canWrite()).thenReturn(true);
+    when(connection.getAttributes()).thenReturn(DEFAULT_ATTRIBUTE_BUILDER.createSafeAttributeHolder());
 
     ctx = mock(FilterChainContext.class);
     when(ctx.getConnection()).thenReturn(connection);
@@ -134,6 +138,33 @@ class GrizzlyHttpResponseReadyCallbackTestCase extends AbstractMuleTestCase {
     verify(ctx).write(any(HttpContent.class), any());
   }
 
+  @Test
+  void failedResponseReadyReleasesTheConnectionOnce() throws IOException {
+    requestStarted(connection);
+    var buggyHttpEntity = mock(HttpEntity.class);
+    when(buggyHttpEntity.getBytes()).thenThrow(new IOException("Expected failure"));
+
+    readyCallback.responseReady(HttpResponse.builder().entity(buggyHttpEntity).build(), responseStatusCallback);
+    assertThat(inFlightRequests(connection), is(0));
+
+    // The retry belongs to the same request
+    readyCallback.responseReady(HttpResponse.builder().entity(buggyHttpEntity).build(),
+                                new FutureCompleterCallback(new CompletableFuture<>()));
+    assertThat(inFlightRequests(connection), is(0));
+  }
+
+  @Test
+  void startSseResponseOfClosedTopicAllowsAnotherResponse() {
+    var topic = new SseTopic("prices");
+    topic.close();
+
+    assertThrows(IllegalStateException.class, () -> readyCallback.startSseResponse(topic, responseStatusCallback));
+    verify(ctx, never()).write(any(HttpContent.class), any());
+
+    callResponseReady();
+    verify(ctx).write(any(HttpContent.class), any());
+  }
+
   @ParameterizedTest(name = "[{index}] {displayName} {arguments}")
   @CsvSource(textBlock = """
       responseReady,responseReady
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.service.server.grizzly;
+
+import static org.mule.service.http.impl.AllureConstants.HttpFeature.HTTP_SERVICE;
+import static org.mule.service.http.impl.AllureConstants.HttpFeature.HttpStory.LISTENERS;
+
+import static java.net.InetAddress.getLoopbackAddress;
+
+import static org.glassfish.grizzly.Grizzly.DEFAULT_ATTRIBUTE_BUILDER;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.mule.service.http.impl.service.server.DefaultServerAddress;
+import org.mule.service.http.impl.service.server.RequestHandlerProvider;
+import org.mule.tck.junit4.AbstractMuleTestCase;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+
+import org.glassfish.grizzly.Connection;
+import org.glassfish.grizzly.filterchain.FilterChainContext;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+
+@Feature(HTTP_SERVICE)
+@Story(LISTENERS)
+public class GrizzlyRequestDispatcherFilterTestCase extends AbstractMuleTestCase {
+
+  private static final int PORT = 8081;
+
+  private final GrizzlyRequestDispatcherFilter filter = new GrizzlyRequestDispatcherFilter(mock(RequestHandlerProvider.class));
+  private final DefaultServerAddress serverAddress = new DefaultServerAddress(getLoopbackAddress(), PORT);
+  private final Connection connection = mock(Connection.class);
+  private final FilterChainContext ctx = mock(FilterChainContext.class);
+
+  @Before
+  public void setUp() {
+    when(connection.getAttributes()).thenReturn(DEFAULT_ATTRIBUTE_BUILDER.createSafeAttributeHolder());
+    when(connection.getLocalAddress()).thenReturn(new InetSocketAddress(getLoopbackAddress(), PORT));
+    when(ctx.getConnection()).thenReturn(connection);
+    // Not an HTTP message, so it's just passed along
+    when(ctx.getMessage()).thenReturn(new Object());
+  }
+
+  @Test
+  public void serverOfTheConnectionIsResolvedOnce() throws IOException {
+    filter.handleAccept(ctx);
+    filter.handleRead(ctx);
+    filter.handleRead(ctx);
+
+    verify(connection, times(1)).getLocalAddress();
+    assertThat(filter.activeRequestsFor(serverAddress), is(0));
+  }
+
+  @Test
+  public void activeRequestsAreCountedWhileDispatching() throws IOException {
+    when(ctx.getMessage()).thenAnswer(invocation -> {
+      assertThat(filter.activeRequestsFor(serverAddress), is(1));
+      return new Object();
+    });
+
+    filter.handleRead(ctx);
+    assertThat(filter.activeRequestsFor(serverAddress), is(0));
+  }
+
+  @Test
+  public void noActiveRequestsFutureIsCompletedWhenTheLastRequestIsDispatched() throws IOException {
+    CompletableFuture<?>[] noActiveRequests = new CompletableFuture<?>[1];
+    when(ctx.getMessage()).thenAnswer(invocation -> {
+      noActiveRequests[0] = filter.noActiveRequestsFor(serverAddress);
+      assertThat(noActiveRequests[0].isDone(), is(false));
+      return new Object();
+    });
+
+    filter.handleRead(ctx);
+    assertThat(noActiveRequests[0].isDone(), is(true));
+  }
+
+  @Test
+  public void noActiveRequestsFutureIsCompletedRightAwayIfIdle() {
+    assertThat(filter.noActiveRequestsFor(serverAddress).isDone(), is(true));
+  }
+
+  @Test
+  public void allInterfacesAddressIsReused() {
+    assertThat(serverAddress.allInterfacesAddress(), is(sameInstance(serverAddress.allInterfacesAddress())));
+    assertThat(DefaultServerAddress.isAllInterfaces(serverAddress.allInterfacesAddress()), is(true));
+  }
+}
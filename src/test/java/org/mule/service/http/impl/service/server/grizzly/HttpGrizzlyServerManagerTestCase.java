@@ -24,6 +24,8 @@ import static org.glassfish.grizzly.http.util.MimeHeaders.MAX_NUM_HEADERS_DEFAUL
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.spy;
@@ -97,6 +99,47 @@ public class HttpGrizzlyServerManagerTestCase extends AbstractGrizzlyServerManag
     }
   }
 
+  @Test
+  public void responseChunkBufferPoolIsPolledByServerAddress() throws Exception {
+    final ServerAddress serverAddress = new DefaultServerAddress(ALL_INTERFACES_ADDRESS, listenerPort.getNumber());
+    final HttpServer createdServer = getServer(serverAddress, new ServerIdentifier("context", "name"));
+    try {
+      ResponseChunkBufferPool pool = serverManager.getResponseChunkBufferPool(serverAddress);
+      assertThat(pool.getPooledBuffersCount(), is(0));
+      assertThat(pool.getOutstandingBuffersCount(), is(0));
+    } finally {
+      createdServer.dispose();
+    }
+    assertThat(serverManager.getResponseChunkBufferPool(serverAddress), is(nullValue()));
+  }
+
+  @Test
+  public void responseChunkStatisticsArePolledByServerAddress() throws Exception {
+    final ServerAddress serverAddress = new DefaultServerAddress(ALL_INTERFACES_ADDRESS, listenerPort.getNumber());
+    final HttpServer createdServer = getServer(serverAddress, new ServerIdentifier("context", "name"));
+    try {
+      assertThat(serverManager.getResponseChunkStatistics(serverAddress).getChunksCount(), is(0L));
+    } finally {
+      createdServer.dispose();
+    }
+    assertThat(serverManager.getResponseChunkStatistics(serverAddress), is(nullValue()));
+  }
+
+  @Test
+  public void pathsCacheStatisticsArePolledByServerAddress() throws Exception {
+    final ServerAddress serverAddress = new DefaultServerAddress(ALL_INTERFACES_ADDRESS, listenerPort.getNumber());
+    final HttpServer createdServer = getServer(serverAddress, new ServerIdentifier("context", "name"));
+    try {
+      assertThat(serverManager.getPathsCacheStatistics(serverAddress), is(nullValue()));
+      createdServer.addRequestHandler("/path", (requestContext, responseCallback) -> {
+      });
+      assertThat(serverManager.getPathsCacheStatistics(serverAddress), is(notNullValue()));
+    } finally {
+      createdServer.dispose();
+    }
+    assertThat(serverManager.getPathsCacheStatistics(serverAddress), is(nullValue()));
+  }
+
   @Test
   @Issue("MULE-19779")
   @Description("Tests that by default the read timeout field of TCPNIOTransport is set to 30 seconds")
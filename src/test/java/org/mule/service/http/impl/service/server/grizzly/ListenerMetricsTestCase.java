@@ -0,0 +1,147 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.service.server.grizzly;
+
+import static org.mule.service.http.impl.AllureConstants.HttpFeature.HTTP_SERVICE;
+import static org.mule.service.http.impl.AllureConstants.HttpFeature.HttpStory.LISTENERS;
+
+import static org.glassfish.grizzly.Grizzly.DEFAULT_ATTRIBUTE_BUILDER;
+import static org.glassfish.grizzly.memory.Buffers.wrap;
+import static org.glassfish.grizzly.memory.MemoryManager.DEFAULT_MEMORY_MANAGER;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.mule.tck.junit4.AbstractMuleTestCase;
+
+import org.glassfish.grizzly.CloseListener;
+import org.glassfish.grizzly.CloseType;
+import org.glassfish.grizzly.Connection;
+import org.glassfish.grizzly.http.HttpProbe;
+import org.glassfish.grizzly.http.HttpRequestPacket;
+import org.glassfish.grizzly.http.HttpResponsePacket;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+
+@Feature(HTTP_SERVICE)
+@Story(LISTENERS)
+public class ListenerMetricsTestCase extends AbstractMuleTestCase {
+
+  private final ListenerMetrics metrics = new ListenerMetrics();
+  private final HttpProbe probe = metrics.getHttpProbe();
+  private final Connection connection = mock(Connection.class);
+  private final HttpRequestPacket request = HttpRequestPacket.builder().method("GET").uri("/").protocol("HTTP/1.1").build();
+
+  @Before
+  public void setUp() {
+    when(connection.getAttributes()).thenReturn(DEFAULT_ATTRIBUTE_BUILDER.createSafeAttributeHolder());
+  }
+
+  @Test
+  public void requestsAndResponsesAreCounted() {
+    probe.onHeaderParseEvent(connection, request, 100);
+    assertThat(metrics.getActiveRequestsCount(), is(1L));
+
+    probe.onHeaderSerializeEvent(connection, response(200), null);
+    probe.onHeaderParseEvent(connection, request, 100);
+    probe.onHeaderSerializeEvent(connection, response(503), null);
+
+    assertThat(metrics.getRequestsCount(), is(2L));
+    assertThat(metrics.getActiveRequestsCount(), is(0L));
+    assertThat(metrics.getResponsesCount(2), is(1L));
+    assertThat(metrics.getResponsesCount(5), is(1L));
+    assertThat(metrics.getLatency().getCount(), is(2L));
+  }
+
+  @Test
+  public void keepAliveReuseIsTrackedPerConnection() {
+    Connection otherConnection = mock(Connection.class);
+    when(otherConnection.getAttributes()).thenReturn(DEFAULT_ATTRIBUTE_BUILDER.createSafeAttributeHolder());
+
+    probe.onHeaderParseEvent(connection, request, 100);
+    probe.onHeaderParseEvent(connection, request, 100);
+    probe.onHeaderParseEvent(connection, request, 100);
+    probe.onHeaderParseEvent(otherConnection, request, 100);
+
+    assertThat(metrics.getReusedConnectionRequestsCount(), is(2L));
+    assertThat(metrics.getKeepAliveReuseRatio(), is(0.5));
+  }
+
+  @Test
+  public void informationalResponseDoesNotFinishTheRequest() {
+    probe.onHeaderParseEvent(connection, request, 100);
+    probe.onHeaderSerializeEvent(connection, response(100), null);
+
+    assertThat(metrics.getActiveRequestsCount(), is(1L));
+    assertThat(metrics.getResponsesCount(1), is(1L));
+    assertThat(metrics.getLatency().getCount(), is(0L));
+  }
+
+  @Test
+  public void bytesAreCounted() {
+    probe.onDataReceivedEvent(connection, wrap(DEFAULT_MEMORY_MANAGER, "GET / HTTP/1.1"));
+    probe.onDataSentEvent(connection, wrap(DEFAULT_MEMORY_MANAGER, "HTTP/1.1 200 OK"));
+
+    assertThat(metrics.getReceivedBytes(), is(14L));
+    assertThat(metrics.getSentBytes(), is(15L));
+  }
+
+  @Test
+  public void openConnectionsAreCounted() throws Exception {
+    metrics.getConnectionProbe().onAcceptEvent(mock(Connection.class), connection);
+    assertThat(metrics.getOpenConnectionsCount(), is(1L));
+
+    ArgumentCaptor<CloseListener> closeListener = ArgumentCaptor.forClass(CloseListener.class);
+    verify(connection).addCloseListener(closeListener.capture());
+    closeListener.getValue().onClosed(connection, CloseType.REMOTELY);
+
+    assertThat(metrics.getOpenConnectionsCount(), is(0L));
+    assertThat(metrics.getAcceptedConnectionsCount(), is(1L));
+  }
+
+  @Test
+  public void requestIsNotActiveOnceItsConnectionIsClosed() throws Exception {
+    metrics.getConnectionProbe().onAcceptEvent(mock(Connection.class), connection);
+    probe.onHeaderParseEvent(connection, request, 100);
+    assertThat(metrics.getActiveRequestsCount(), is(1L));
+
+    ArgumentCaptor<CloseListener> closeListener = ArgumentCaptor.forClass(CloseListener.class);
+    verify(connection).addCloseListener(closeListener.capture());
+    closeListener.getValue().onClosed(connection, CloseType.REMOTELY);
+
+    assertThat(metrics.getActiveRequestsCount(), is(0L));
+    assertThat(metrics.getLatency().getCount(), is(0L));
+  }
+
+  @Test
+  public void closingTheConnectionAfterTheResponseDoesNotChangeTheActiveRequests() throws Exception {
+    metrics.getConnectionProbe().onAcceptEvent(mock(Connection.class), connection);
+    probe.onHeaderParseEvent(connection, request, 100);
+    probe.onHeaderSerializeEvent(connection, response(200), null);
+    Connection otherConnection = mock(Connection.class);
+    when(otherConnection.getAttributes()).thenReturn(DEFAULT_ATTRIBUTE_BUILDER.createSafeAttributeHolder());
+    probe.onHeaderParseEvent(otherConnection, request, 100);
+
+    ArgumentCaptor<CloseListener> closeListener = ArgumentCaptor.forClass(CloseListener.class);
+    verify(connection).addCloseListener(closeListener.capture());
+    closeListener.getValue().onClosed(connection, CloseType.LOCALLY);
+
+    assertThat(metrics.getActiveRequestsCount(), is(1L));
+  }
+
+  private HttpResponsePacket response(int status) {
+    HttpResponsePacket response = HttpResponsePacket.builder(request).build();
+    response.setStatus(status);
+    return response;
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.service.server.grizzly;
+
+import static org.mule.service.http.impl.AllureConstants.HttpFeature.HTTP_SERVICE;
+import static org.mule.service.http.impl.AllureConstants.HttpFeature.HttpStory.RESPONSES;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import org.mule.tck.junit4.AbstractMuleTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+
+@Feature(HTTP_SERVICE)
+@Story(RESPONSES)
+public class OutboundWriteQueueTestCase extends AbstractMuleTestCase {
+
+  private final OutboundWriteQueue queue = new OutboundWriteQueue(100);
+
+  @Test
+  public void queuedBytesAreTracked() {
+    queue.queued(60);
+    queue.queued(30);
+    assertThat(queue.getQueuedBytes(), is(90L));
+    assertThat(queue.hasSpace(), is(true));
+
+    queue.written(60);
+    assertThat(queue.getQueuedBytes(), is(30L));
+    assertThat(queue.getPeakQueuedBytes(), is(90L));
+  }
+
+  @Test
+  public void writerWaitsUntilTheQueueHasSpace() {
+    AtomicInteger notified = new AtomicInteger();
+    queue.queued(100);
+    assertThat(queue.hasSpace(), is(false));
+
+    queue.notifyWhenSpace(notified::incrementAndGet);
+    assertThat(notified.get(), is(0));
+    assertThat(queue.getWaitingWritersCount(), is(1));
+
+    queue.written(50);
+    assertThat(notified.get(), is(1));
+    assertThat(queue.getWaitingWritersCount(), is(0));
+    assertThat(queue.getSuspendedWritesCount(), is(1L));
+  }
+
+  @Test
+  public void writerRunsRightAwayIfTheQueueHasSpace() {
+    AtomicInteger notified = new AtomicInteger();
+    queue.notifyWhenSpace(notified::incrementAndGet);
+    assertThat(notified.get(), is(1));
+  }
+
+  @Test
+  public void notifiedWritersStopOnceTheQueueIsFullAgain() {
+    AtomicInteger notified = new AtomicInteger();
+    queue.queued(100);
+    queue.notifyWhenSpace(() -> {
+      notified.incrementAndGet();
+      queue.queued(100);
+    });
+    queue.notifyWhenSpace(notified::incrementAndGet);
+
+    queue.written(100);
+    assertThat(notified.get(), is(1));
+    assertThat(queue.getWaitingWritersCount(), is(1));
+  }
+
+  @Test
+  public void writersAreResumedInTheExecutor() {
+    List<Runnable> submitted = new ArrayList<>();
+    OutboundWriteQueue queue = new OutboundWriteQueue(100, submitted::add);
+    AtomicInteger notified = new AtomicInteger();
+    queue.queued(100);
+    queue.notifyWhenSpace(notified::incrementAndGet);
+
+    queue.written(100);
+    assertThat(notified.get(), is(0));
+    assertThat(submitted.size(), is(1));
+
+    submitted.get(0).run();
+    assertThat(notified.get(), is(1));
+  }
+
+  @Test
+  public void writersAreResumedRightAwayIfTheExecutorRejectsThem() {
+    OutboundWriteQueue queue = new OutboundWriteQueue(100, command -> {
+      throw new RejectedExecutionException();
+    });
+    AtomicInteger notified = new AtomicInteger();
+    queue.notifyWhenSpace(notified::incrementAndGet);
+    assertThat(notified.get(), is(1));
+  }
+
+  @Test
+  public void removedWritersAreNotResumed() {
+    AtomicInteger notified = new AtomicInteger();
+    Runnable writer = notified::incrementAndGet;
+    queue.queued(100);
+    queue.notifyWhenSpace(writer);
+
+    assertThat(queue.removeWaitingWriter(writer), is(true));
+    assertThat(queue.getWaitingWritersCount(), is(0));
+    queue.written(100);
+    assertThat(notified.get(), is(0));
+  }
+
+  @Test
+  public void noLimit() {
+    OutboundWriteQueue unlimited = new OutboundWriteQueue(-1);
+    unlimited.queued(Long.MAX_VALUE / 2);
+    assertThat(unlimited.hasSpace(), is(true));
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.service.server.grizzly;
+
+import static org.mule.service.http.impl.AllureConstants.HttpFeature.HTTP_SERVICE;
+import static org.mule.service.http.impl.AllureConstants.HttpFeature.HttpStory.LISTENERS;
+import static org.mule.service.http.impl.service.server.grizzly.RequestAdmissionController.Admission.ADMITTED;
+import static org.mule.service.http.impl.service.server.grizzly.RequestAdmissionController.Admission.QUEUED;
+import static org.mule.service.http.impl.service.server.grizzly.RequestAdmissionController.Admission.REJECTED;
+import static org.mule.service.http.impl.service.server.grizzly.RequestAdmissionController.release;
+
+import static org.glassfish.grizzly.Grizzly.DEFAULT_ATTRIBUTE_BUILDER;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.mule.tck.junit4.AbstractMuleTestCase;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.glassfish.grizzly.CloseListener;
+import org.glassfish.grizzly.CloseType;
+import org.glassfish.grizzly.Connection;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+
+@Feature(HTTP_SERVICE)
+@Story(LISTENERS)
+public class RequestAdmissionControllerTestCase extends AbstractMuleTestCase {
+
+  private final AtomicInteger dispatched = new AtomicInteger();
+  private final AtomicInteger rejected = new AtomicInteger();
+
+  @Test
+  public void disabledByDefault() {
+    assertThat(new RequestAdmissionController().isEnabled(), is(false));
+  }
+
+  @Test
+  public void requestsOverTheLimitAreQueuedThenRejected() {
+    RequestAdmissionController controller = new RequestAdmissionController(1, 1, false, 1000, 5);
+
+    assertThat(admit(controller, openConnection()), is(ADMITTED));
+    assertThat(admit(controller, openConnection()), is(QUEUED));
+    assertThat(admit(controller, openConnection()), is(REJECTED));
+
+    assertThat(controller.getInFlightCount(), is(1));
+    assertThat(controller.getQueueDepth(), is(1));
+    assertThat(controller.getRejectedCount(), is(1L));
+    assertThat(controller.getRetryAfterSeconds(), is(5));
+  }
+
+  @Test
+  public void queuedRequestIsDispatchedWhenAPermitIsReleased() {
+    RequestAdmissionController controller = new RequestAdmissionController(1, 1, false, 1000, 1);
+    Connection<?> first = openConnection();
+    Connection<?> second = openConnection();
+
+    admit(controller, first);
+    admit(controller, second);
+    assertThat(dispatched.get(), is(0));
+
+    release(first);
+    assertThat(dispatched.get(), is(1));
+    assertThat(controller.getInFlightCount(), is(1));
+    assertThat(controller.getQueueDepth(), is(0));
+
+    release(second);
+    assertThat(controller.getInFlightCount(), is(0));
+    assertThat(controller.getAdmittedCount(), is(2L));
+  }
+
+  @Test
+  public void permitIsReleasedOnce() {
+    RequestAdmissionController controller = new RequestAdmissionController(2, 0, false, 1000, 1);
+    Connection<?> connection = openConnection();
+
+    admit(controller, connection);
+    admit(controller, openConnection());
+    release(connection);
+    release(connection);
+
+    assertThat(controller.getInFlightCount(), is(1));
+  }
+
+  @Test
+  public void permitIsReleasedWhenTheConnectionIsClosed() throws Exception {
+    RequestAdmissionController controller = new RequestAdmissionController(1, 0, false, 1000, 1);
+    Connection<?> connection = openConnection();
+
+    admit(controller, connection);
+    ArgumentCaptor<CloseListener> closeListener = ArgumentCaptor.forClass(CloseListener.class);
+    verify(connection).addCloseListener(closeListener.capture());
+    closeListener.getValue().onClosed(connection, CloseType.REMOTELY);
+
+    assertThat(controller.getInFlightCount(), is(0));
+    assertThat(admit(controller, openConnection()), is(ADMITTED));
+  }
+
+  @Test
+  public void queuedRequestOfAClosedConnectionIsNotDispatched() {
+    RequestAdmissionController controller = new RequestAdmissionController(1, 1, false, 1000, 1);
+    Connection<?> first = openConnection();
+    Connection<?> closed = openConnection();
+
+    admit(controller, first);
+    admit(controller, closed);
+    when(closed.isOpen()).thenReturn(false);
+    release(first);
+
+    assertThat(dispatched.get(), is(0));
+    assertThat(rejected.get(), is(1));
+    assertThat(controller.getInFlightCount(), is(0));
+  }
+
+  @Test
+  public void queuedRequestsAreRejectedOnDispose() {
+    RequestAdmissionController controller = new RequestAdmissionController(1, 2, false, 1000, 1);
+
+    admit(controller, openConnection());
+    admit(controller, openConnection());
+    admit(controller, openConnection());
+    controller.dispose();
+
+    assertThat(rejected.get(), is(2));
+    assertThat(controller.getQueueDepth(), is(0));
+  }
+
+  @Test
+  public void adaptiveLimitDecreasesOnSlowRequests() throws InterruptedException {
+    RequestAdmissionController controller = new RequestAdmissionController(10, 0, true, 1, 1);
+    Connection<?> slow = openConnection();
+
+    admit(controller, slow);
+    Thread.sleep(5);
+    release(slow);
+    assertThat(controller.getLimit(), is(9));
+  }
+
+  @Test
+  public void adaptiveLimitNeverExceedsTheMaximum() {
+    RequestAdmissionController fastController = new RequestAdmissionController(10, 0, true, 60000, 1);
+    Connection<?>[] connections = new Connection<?>[10];
+    for (int i = 0; i < connections.length; ++i) {
+      connections[i] = openConnection();
+      admit(fastController, connections[i]);
+    }
+    assertThat(admit(fastController, openConnection()), is(REJECTED));
+    for (Connection<?> connection : connections) {
+      release(connection);
+    }
+    assertThat(fastController.getLimit(), is(10));
+  }
+
+  private RequestAdmissionController.Admission admit(RequestAdmissionController controller, Connection<?> connection) {
+    return controller.admit(connection, dispatched::incrementAndGet, rejected::incrementAndGet);
+  }
+
+  private Connection<?> openConnection() {
+    Connection<?> connection = mock(Connection.class);
+    when(connection.getAttributes()).thenReturn(DEFAULT_ATTRIBUTE_BUILDER.createSafeAttributeHolder());
+    when(connection.isOpen()).thenReturn(true);
+    return connection;
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.service.server.grizzly;
+
+import static org.mule.service.http.impl.AllureConstants.HttpFeature.HTTP_SERVICE;
+import static org.mule.service.http.impl.AllureConstants.HttpFeature.HttpStory.RESPONSES;
+
+import static org.glassfish.grizzly.memory.MemoryManager.DEFAULT_MEMORY_MANAGER;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+import org.mule.tck.junit4.AbstractMuleTestCase;
+
+import org.glassfish.grizzly.Buffer;
+import org.junit.Test;
+
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+
+@Feature(HTTP_SERVICE)
+@Story(RESPONSES)
+public class ResponseChunkBufferPoolTestCase extends AbstractMuleTestCase {
+
+  private final ResponseChunkBufferPool pool = new ResponseChunkBufferPool(DEFAULT_MEMORY_MANAGER, 2, false);
+
+  @Test
+  public void releasedBuffersAreReused() {
+    Buffer buffer = pool.acquire(16);
+    assertThat(buffer.remaining(), is(16));
+    assertThat(pool.getOutstandingBuffersCount(), is(1));
+    assertThat(pool.getPooledBuffersCount(), is(0));
+
+    buffer.limit(3);
+    pool.release(buffer);
+    assertThat(pool.getOutstandingBuffersCount(), is(0));
+    assertThat(pool.getPooledBuffersCount(), is(1));
+
+    Buffer reused = pool.acquire(16);
+    assertThat(reused, is(sameInstance(buffer)));
+    assertThat(reused.position(), is(0));
+    assertThat(reused.remaining(), is(16));
+    assertThat(pool.getPooledBuffersCount(), is(0));
+  }
+
+  @Test
+  public void biggerBuffersAreLimitedToTheRequestedSize() {
+    pool.release(pool.acquire(32));
+
+    Buffer reused = pool.acquire(8);
+    assertThat(reused.remaining(), is(8));
+  }
+
+  @Test
+  public void smallerBuffersAreKeptForSmallerChunks() {
+    Buffer small = pool.acquire(8);
+    pool.release(small);
+
+    Buffer buffer = pool.acquire(16);
+    assertThat(buffer, is(not(sameInstance(small))));
+    assertThat(buffer.remaining(), is(16));
+    assertThat(pool.getPooledBuffersCount(), is(1));
+
+    assertThat(pool.acquire(8), is(sameInstance(small)));
+  }
+
+  @Test
+  public void buffersFitTheChunksOfTheirSizeClass() {
+    Buffer buffer = pool.acquire(9);
+    assertThat(buffer.capacity(), is(16));
+    assertThat(buffer.remaining(), is(9));
+    pool.release(buffer);
+
+    assertThat(pool.acquire(16), is(sameInstance(buffer)));
+  }
+
+  @Test
+  public void fullPoolGivesWayToBiggerBuffers() {
+    Buffer first = pool.acquire(8);
+    Buffer second = pool.acquire(8);
+    Buffer big = pool.acquire(64);
+    pool.release(first);
+    pool.release(second);
+
+    pool.release(big);
+    assertThat(pool.getPooledBuffersCount(), is(2));
+    assertThat(pool.acquire(64), is(sameInstance(big)));
+  }
+
+  @Test
+  public void poolIsBounded() {
+    Buffer first = pool.acquire(8);
+    Buffer second = pool.acquire(8);
+    Buffer third = pool.acquire(8);
+    assertThat(pool.getOutstandingBuffersCount(), is(3));
+
+    pool.release(first);
+    pool.release(second);
+    pool.release(third);
+    assertThat(pool.getOutstandingBuffersCount(), is(0));
+    assertThat(pool.getPooledBuffersCount(), is(2));
+  }
+
+  @Test
+  public void buffersReleasedAfterDisposalAreDiscarded() {
+    Buffer outstanding = pool.acquire(8);
+    pool.release(pool.acquire(8));
+
+    pool.dispose();
+    assertThat(pool.getPooledBuffersCount(), is(0));
+
+    pool.release(outstanding);
+    assertThat(pool.getPooledBuffersCount(), is(0));
+    assertThat(pool.getOutstandingBuffersCount(), is(0));
+  }
+
+  @Test
+  public void directBuffers() {
+    ResponseChunkBufferPool directPool = new ResponseChunkBufferPool(DEFAULT_MEMORY_MANAGER, 2, true);
+    Buffer buffer = directPool.acquire(8);
+    assertThat(buffer.isDirect(), is(true));
+    assertThat(buffer.remaining(), is(8));
+  }
+}
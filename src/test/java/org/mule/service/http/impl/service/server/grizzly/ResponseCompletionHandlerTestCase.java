@@ -9,7 +9,9 @@ package org.mule.service.http.impl.service.server.grizzly;
 import static org.mule.runtime.http.api.HttpHeaders.Names.CONNECTION;
 import static org.mule.service.http.impl.AllureConstants.HttpFeature.HTTP_SERVICE;
 import static org.mule.service.http.impl.AllureConstants.HttpFeature.HttpStory.RESPONSES;
+import static org.mule.service.http.impl.service.server.grizzly.ConnectionDrainer.DRAINING_ATTRIBUTE;
 
+import static java.lang.Boolean.TRUE;
 import static java.lang.Thread.currentThread;
 import static java.util.Collections.singletonList;
 
@@ -71,4 +73,18 @@ public class ResponseCompletionHandlerTestCase extends BaseResponseCompletionHan
     assertThat(getHandler().getHttpResponsePacket().getHeader(CONNECTION), equalTo(CLOSE));
   }
 
+  @Test
+  void connectionOfAServerBeingStoppedIsClosed() {
+    final Collection<String> headerName = singletonList(CONNECTION);
+    when(responseMock.getHeaderNames()).thenReturn(headerName);
+    when(responseMock.getHeaderValue(CONNECTION)).thenReturn(KEEP_ALIVE);
+    ProcessingState processingState = new ProcessingState();
+    when(request.getProcessingState()).thenReturn(processingState);
+    when(request.getConnection()).thenReturn(connection);
+    when(connection.getAttributes().getAttribute(DRAINING_ATTRIBUTE)).thenReturn(TRUE);
+
+    assertThat(getHandler().getHttpResponsePacket().getHeader(CONNECTION), equalTo(CLOSE));
+    assertThat(processingState.isKeepAlive(), equalTo(false));
+  }
+
 }
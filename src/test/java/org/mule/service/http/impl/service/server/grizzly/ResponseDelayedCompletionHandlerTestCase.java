@@ -0,0 +1,282 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.service.server.grizzly;
+
+import static org.mule.service.http.impl.AllureConstants.HttpFeature.HTTP_SERVICE;
+import static org.mule.service.http.impl.AllureConstants.HttpFeature.HttpStory.RESPONSES;
+import static org.mule.service.http.impl.service.server.grizzly.AdaptiveChunkSizer.ADAPTIVE_CHUNK_SIZE_PROPERTY;
+import static org.mule.service.http.impl.service.server.grizzly.ResponseDelayedCompletionHandler.WRITE_QUEUE_TIMEOUT_PROPERTY;
+import static org.mule.service.http.impl.service.server.grizzly.ResponseDelayedCompletionHandler.refreshSystemProperties;
+
+import static java.lang.Thread.currentThread;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.fill;
+
+import static org.glassfish.grizzly.memory.MemoryManager.DEFAULT_MEMORY_MANAGER;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.mule.runtime.http.api.domain.message.response.HttpResponse;
+import org.mule.service.http.impl.service.server.grizzly.ResponseDelayedCompletionHandler.CanWriteWaiter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.glassfish.grizzly.CompletionHandler;
+import org.glassfish.grizzly.Transport;
+import org.glassfish.grizzly.WriteHandler;
+import org.glassfish.grizzly.WriteResult;
+import org.glassfish.grizzly.http.HttpContent;
+import org.glassfish.grizzly.http.HttpTrailer;
+import org.glassfish.grizzly.http.ProcessingState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+
+@Feature(HTTP_SERVICE)
+@Story(RESPONSES)
+public class ResponseDelayedCompletionHandlerTestCase extends BaseResponseCompletionHandlerTestCase {
+
+  private final ResponseChunkBufferPool pool = new ResponseChunkBufferPool(DEFAULT_MEMORY_MANAGER, 4, false);
+  private ResponseDelayedCompletionHandler handler;
+  private Writer writer;
+
+  @BeforeEach
+  public void setUp() {
+    Transport transport = mock(Transport.class, RETURNS_DEEP_STUBS);
+    when(transport.getMemoryManager()).thenReturn(DEFAULT_MEMORY_MANAGER);
+    when(ctx.getConnection()).thenReturn(connection);
+    when(connection.getTransport()).thenReturn(transport);
+    when(connection.canWrite()).thenReturn(true);
+    when(request.getProcessingState()).thenReturn(new ProcessingState());
+    responseMock = HttpResponse.builder().build();
+    handler = new ResponseDelayedCompletionHandler(ctx, currentThread().getContextClassLoader(), request, responseMock,
+                                                   callback, pool);
+    writer = handler.buildWriter(UTF_8);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    System.clearProperty(WRITE_QUEUE_TIMEOUT_PROPERTY);
+    System.clearProperty(ADAPTIVE_CHUNK_SIZE_PROPERTY);
+    refreshSystemProperties();
+    AdaptiveChunkSizer.refreshSystemProperties();
+  }
+
+  @Override
+  protected BaseResponseCompletionHandler getHandler() {
+    return handler;
+  }
+
+  @Test
+  void charsAreEncodedOnFlush() throws IOException {
+    writer.write("data: héllo ");
+    writer.write(new char[] {'w', 'o', 'r', 'l', 'd'});
+    verify(ctx, never()).write(any(HttpContent.class), any(CompletionHandler.class));
+
+    writer.flush();
+    assertThat(sentContents(1), contains("data: héllo world"));
+  }
+
+  @Test
+  void surrogatePairSplitAcrossWrites() throws IOException {
+    String emoji = "😀";
+    writer.write(emoji.charAt(0));
+    writer.write(emoji.charAt(1));
+    writer.flush();
+
+    assertThat(sentContents(1), contains(emoji));
+  }
+
+  @Test
+  void fullBuffersAreSentBeforeFlush() throws IOException {
+    char[] chars = new char[20000];
+    fill(chars, 'a');
+    writer.write(chars);
+    verify(ctx, times(2)).write(any(HttpContent.class), any(CompletionHandler.class));
+
+    writer.flush();
+    List<String> contents = sentContents(3);
+    assertThat(contents.stream().mapToInt(String::length).sum(), is(20000));
+  }
+
+  @Test
+  void buffersShrinkWhenTheClientIsSlow() throws Exception {
+    System.setProperty(ADAPTIVE_CHUNK_SIZE_PROPERTY, "true");
+    AdaptiveChunkSizer.refreshSystemProperties();
+    writer = handler.buildWriter(UTF_8);
+
+    writer.write("data");
+    writer.flush();
+    ArgumentCaptor<CompletionHandler> captor = ArgumentCaptor.forClass(CompletionHandler.class);
+    verify(ctx).write(any(HttpContent.class), captor.capture());
+    // Slower than what a client consuming the data right away takes
+    Thread.sleep(50);
+    captor.getValue().completed(mock(WriteResult.class));
+
+    // Would fit in the initial 8 KB buffer
+    char[] chars = new char[5000];
+    fill(chars, 'a');
+    writer.write(chars);
+    writer.flush();
+    assertThat(sentContents(3).subList(1, 3).stream().map(String::length).collect(Collectors.toList()), contains(4096, 904));
+    assertThat(pool.getChunkStatistics().getShrinksCount(), is(1L));
+  }
+
+  @Test
+  void headersAreSentOnFirstFlushEvenWithoutData() throws IOException {
+    writer.flush();
+    assertThat(sentContents(1), contains(""));
+  }
+
+  @Test
+  void buffersAreReturnedToThePoolOnceWritten() throws IOException {
+    writer.write("data");
+    writer.flush();
+    assertThat(pool.getOutstandingBuffersCount(), is(1));
+
+    ArgumentCaptor<CompletionHandler> captor = ArgumentCaptor.forClass(CompletionHandler.class);
+    verify(ctx).write(any(HttpContent.class), captor.capture());
+    captor.getValue().completed(mock(WriteResult.class));
+    assertThat(pool.getOutstandingBuffersCount(), is(0));
+    assertThat(pool.getPooledBuffersCount(), is(1));
+  }
+
+  @Test
+  void pendingDataIsSentOnClose() throws IOException {
+    writer.write("data");
+    writer.close();
+
+    ArgumentCaptor<HttpContent> captor = ArgumentCaptor.forClass(HttpContent.class);
+    verify(ctx, times(2)).write(captor.capture(), any(CompletionHandler.class));
+    assertThat(captor.getAllValues().get(0).getContent().toStringContent(UTF_8), is("data"));
+    assertThat(captor.getAllValues().get(1) instanceof HttpTrailer, is(true));
+    verify(callback).responseSendSuccessfully();
+    assertThat(pool.getOutstandingBuffersCount(), is(1));
+
+    IOException error = assertThrows(IOException.class, () -> writer.write("more"));
+    assertThat(error.getMessage(), containsString("Writer closed"));
+  }
+
+  @Test
+  void waitsForTheWriteQueueToHaveSpace() throws IOException {
+    when(connection.canWrite()).thenReturn(false);
+    doAnswer(invocation -> {
+      ((WriteHandler) invocation.getArgument(0)).onWritePossible();
+      return null;
+    }).when(connection).notifyCanWrite(any(WriteHandler.class));
+
+    writer.write("data");
+    writer.flush();
+    verify(connection).notifyCanWrite(any(WriteHandler.class));
+    assertThat(sentContents(1), contains("data"));
+  }
+
+  @Test
+  void failsIfTheWriteQueueDoesNotHaveSpaceInTime() throws IOException {
+    System.setProperty(WRITE_QUEUE_TIMEOUT_PROPERTY, "10");
+    refreshSystemProperties();
+    when(connection.canWrite()).thenReturn(false);
+
+    writer.write("data");
+    IOException error = assertThrows(IOException.class, writer::flush);
+    assertThat(error.getMessage(), containsString("Timeout while waiting for the client to consume the pending data"));
+    verify(ctx, never()).write(any(HttpContent.class), any(CompletionHandler.class));
+  }
+
+  @Test
+  void timedOutWaitForTheWriteQueueIgnoresLaterNotifications() throws IOException {
+    System.setProperty(WRITE_QUEUE_TIMEOUT_PROPERTY, "10");
+    refreshSystemProperties();
+    when(connection.canWrite()).thenReturn(false);
+
+    writer.write("data");
+    assertThrows(IOException.class, writer::flush);
+
+    ArgumentCaptor<WriteHandler> captor = ArgumentCaptor.forClass(WriteHandler.class);
+    verify(connection).notifyCanWrite(captor.capture());
+    CanWriteWaiter waiter = (CanWriteWaiter) captor.getValue();
+    assertThat(waiter.isAbandoned(), is(true));
+
+    waiter.onWritePossible();
+    verify(ctx, never()).write(any(HttpContent.class), any(CompletionHandler.class));
+  }
+
+  @Test
+  void failsIfTheConnectionFailsWhileWaitingForSpace() throws IOException {
+    when(connection.canWrite()).thenReturn(false);
+    IOException connectionError = new IOException("Connection reset");
+    doAnswer(invocation -> {
+      ((WriteHandler) invocation.getArgument(0)).onError(connectionError);
+      return null;
+    }).when(connection).notifyCanWrite(any(WriteHandler.class));
+
+    writer.write("data");
+    IOException error = assertThrows(IOException.class, writer::flush);
+    assertThat(error.getCause(), is(connectionError));
+  }
+
+  @Test
+  void sentBytesAreTrackedInTheOutboundQueueOfTheServer() throws IOException {
+    OutboundWriteQueue writeQueue = new OutboundWriteQueue(100);
+    handler = new ResponseDelayedCompletionHandler(ctx, currentThread().getContextClassLoader(), request, responseMock,
+                                                   callback, pool, writeQueue);
+    writer = handler.buildWriter(UTF_8);
+
+    writer.write("data");
+    writer.flush();
+    assertThat(writeQueue.getQueuedBytes(), is(4L));
+
+    ArgumentCaptor<CompletionHandler> captor = ArgumentCaptor.forClass(CompletionHandler.class);
+    verify(ctx).write(any(HttpContent.class), captor.capture());
+    captor.getValue().completed(mock(WriteResult.class));
+    assertThat(writeQueue.getQueuedBytes(), is(0L));
+  }
+
+  @Test
+  void failsIfTheOutboundQueueOfTheServerDoesNotHaveSpaceInTime() throws IOException {
+    System.setProperty(WRITE_QUEUE_TIMEOUT_PROPERTY, "10");
+    refreshSystemProperties();
+    OutboundWriteQueue writeQueue = new OutboundWriteQueue(100);
+    writeQueue.queued(100);
+    handler = new ResponseDelayedCompletionHandler(ctx, currentThread().getContextClassLoader(), request, responseMock,
+                                                   callback, pool, writeQueue);
+    writer = handler.buildWriter(UTF_8);
+
+    writer.write("data");
+    IOException error = assertThrows(IOException.class, writer::flush);
+    assertThat(error.getMessage(), containsString("Timeout while waiting for the client to consume the pending data"));
+    verify(ctx, never()).write(any(HttpContent.class), any(CompletionHandler.class));
+    assertThat(writeQueue.getSuspendedWritesCount(), is(1L));
+    assertThat(writeQueue.getWaitingWritersCount(), is(0));
+  }
+
+  private List<String> sentContents(int expectedWrites) {
+    ArgumentCaptor<HttpContent> captor = ArgumentCaptor.forClass(HttpContent.class);
+    verify(ctx, times(expectedWrites)).write(captor.capture(), any(CompletionHandler.class));
+    return captor.getAllValues().stream()
+        .map(content -> content.getContent().toStringContent(UTF_8))
+        .collect(Collectors.toList());
+  }
+}
@@ -12,6 +12,8 @@ import static org.mule.service.http.impl.AllureConstants.HttpFeature.HttpStory.R
 
 import static java.lang.Thread.currentThread;
 
+import static org.glassfish.grizzly.memory.MemoryManager.DEFAULT_MEMORY_MANAGER;
+
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 
@@ -20,8 +22,10 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -32,13 +36,19 @@ import org.mule.runtime.api.util.MultiMap;
 import org.mule.runtime.http.api.domain.entity.InputStreamHttpEntity;
 import org.mule.runtime.http.api.domain.message.response.HttpResponse;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
+import org.glassfish.grizzly.Buffer;
+import org.glassfish.grizzly.CompletionHandler;
 import org.glassfish.grizzly.Transport;
+import org.glassfish.grizzly.WriteHandler;
+import org.glassfish.grizzly.http.HttpContent;
 import org.glassfish.grizzly.http.ProcessingState;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 
 import io.qameta.allure.Feature;
 import io.qameta.allure.Issue;
@@ -55,6 +65,7 @@ public class ResponseStreamingCompletionHandlerTestCase extends BaseResponseComp
   public void setUp() {
     when(ctx.getConnection()).thenReturn(connection);
     when(connection.getTransport()).thenReturn(mock(Transport.class, RETURNS_DEEP_STUBS));
+    when(connection.canWrite()).thenReturn(true);
     mockStream = mock(InputStream.class);
     responseMock = HttpResponse.builder().entity(new InputStreamHttpEntity(mockStream)).build();
     handler = new ResponseStreamingCompletionHandler(ctx,
@@ -162,6 +173,167 @@ public class ResponseStreamingCompletionHandlerTestCase extends BaseResponseComp
     verify(callback, times(1)).onErrorSendingResponse(any(Exception.class));
   }
 
+  @Test
+  void chunkBuffersAreReturnedToThePoolOnceWritten() throws IOException {
+    ResponseChunkBufferPool pool = new ResponseChunkBufferPool(DEFAULT_MEMORY_MANAGER, 4, false);
+    InputStream content = new ByteArrayInputStream("some content".getBytes());
+    responseMock = HttpResponse.builder().entity(new InputStreamHttpEntity(content)).build();
+    when(request.getProcessingState()).thenReturn(new ProcessingState());
+    handler = new ResponseStreamingCompletionHandler(ctx,
+                                                     currentThread().getContextClassLoader(),
+                                                     request,
+                                                     responseMock,
+                                                     callback,
+                                                     pool);
+
+    handler.start();
+    verify(ctx).write(any(HttpContent.class), any(CompletionHandler.class));
+    assertThat(pool.getOutstandingBuffersCount(), equalTo(1));
+
+    // The buffer of the written chunk is reused to read the end of the stream, and then released again
+    handler.completed(null);
+    assertThat(pool.getOutstandingBuffersCount(), equalTo(0));
+    assertThat(pool.getPooledBuffersCount(), equalTo(1));
+  }
+
+  @Test
+  void chunkBufferIsReturnedToThePoolOnFailure() throws IOException {
+    ResponseChunkBufferPool pool = new ResponseChunkBufferPool(DEFAULT_MEMORY_MANAGER, 4, false);
+    InputStream content = new ByteArrayInputStream("some content".getBytes());
+    responseMock = HttpResponse.builder().entity(new InputStreamHttpEntity(content)).build();
+    when(request.getProcessingState()).thenReturn(new ProcessingState());
+    handler = new ResponseStreamingCompletionHandler(ctx,
+                                                     currentThread().getContextClassLoader(),
+                                                     request,
+                                                     responseMock,
+                                                     callback,
+                                                     pool);
+
+    handler.start();
+    handler.failed(createExpectedException());
+    assertThat(pool.getOutstandingBuffersCount(), equalTo(0));
+    assertThat(pool.getPooledBuffersCount(), equalTo(1));
+  }
+
+  @Test
+  void writtenChunksAreRecordedInThePoolStatistics() throws IOException {
+    ResponseChunkBufferPool pool = new ResponseChunkBufferPool(DEFAULT_MEMORY_MANAGER, 4, false);
+    InputStream content = new ByteArrayInputStream("some content".getBytes());
+    responseMock = HttpResponse.builder().entity(new InputStreamHttpEntity(content)).build();
+    when(request.getProcessingState()).thenReturn(new ProcessingState());
+    handler = new ResponseStreamingCompletionHandler(ctx,
+                                                     currentThread().getContextClassLoader(),
+                                                     request,
+                                                     responseMock,
+                                                     callback,
+                                                     pool);
+
+    handler.start();
+    // The end of the stream was reached right after the first chunk was written, the trailer isn't recorded as a chunk
+    handler.completed(null);
+    assertThat(pool.getChunkStatistics().getChunksCount(), equalTo(1L));
+    assertThat(pool.getChunkStatistics().getMaxChunkSize(), equalTo((long) "some content".length()));
+  }
+
+  @Test
+  void nextChunkWaitsForTheConnectionToAcceptMoreData() throws IOException {
+    handler = twoChunksHandler(null);
+    handler.start();
+    verify(ctx, times(1)).write(any(HttpContent.class), any(CompletionHandler.class));
+
+    when(connection.canWrite()).thenReturn(false);
+    handler.completed(null);
+    ArgumentCaptor<WriteHandler> writeHandler = ArgumentCaptor.forClass(WriteHandler.class);
+    verify(connection).notifyCanWrite(writeHandler.capture());
+    verify(ctx, times(1)).write(any(HttpContent.class), any(CompletionHandler.class));
+
+    when(connection.canWrite()).thenReturn(true);
+    writeHandler.getValue().onWritePossible();
+    verify(ctx, times(2)).write(any(HttpContent.class), any(CompletionHandler.class));
+  }
+
+  @Test
+  void connectionErrorWhileWaitingFailsTheResponse() throws IOException {
+    handler = twoChunksHandler(null);
+    handler.start();
+
+    when(connection.canWrite()).thenReturn(false);
+    doAnswer(invocation -> {
+      ((WriteHandler) invocation.getArgument(0)).onError(createExpectedException());
+      return null;
+    }).when(connection).notifyCanWrite(any(WriteHandler.class));
+    handler.completed(null);
+
+    verify(callback).onErrorSendingResponse(any(Exception.class));
+    verify(ctx, times(1)).write(any(HttpContent.class), any(CompletionHandler.class));
+  }
+
+  @Test
+  void nextChunkWaitsForTheOutboundQueueOfTheServer() throws IOException {
+    OutboundWriteQueue writeQueue = new OutboundWriteQueue(10);
+    handler = twoChunksHandler(writeQueue);
+
+    handler.start();
+    assertThat(writeQueue.getQueuedBytes(), equalTo(8L));
+
+    // Another response fills the queue of the server meanwhile
+    writeQueue.queued(10);
+    handler.completed(null);
+    assertThat(writeQueue.getQueuedBytes(), equalTo(10L));
+    assertThat(writeQueue.getWaitingWritersCount(), equalTo(1));
+    verify(ctx, times(1)).write(any(HttpContent.class), any(CompletionHandler.class));
+
+    writeQueue.written(10);
+    verify(ctx, times(2)).write(any(HttpContent.class), any(CompletionHandler.class));
+    assertThat(writeQueue.getQueuedBytes(), equalTo(4L));
+    assertThat(writeQueue.getSuspendedWritesCount(), equalTo(1L));
+  }
+
+  @Test
+  void queuedBytesAreRemovedOnFailure() throws IOException {
+    OutboundWriteQueue writeQueue = new OutboundWriteQueue(10);
+    handler = twoChunksHandler(writeQueue);
+
+    handler.start();
+    handler.failed(createExpectedException());
+    assertThat(writeQueue.getQueuedBytes(), equalTo(0L));
+    verify(connection, never()).notifyCanWrite(any(WriteHandler.class));
+  }
+
+  /**
+   * @return a handler for a response of 12 bytes, sent in two chunks of 8 and 4 bytes.
+   */
+  private ResponseStreamingCompletionHandler twoChunksHandler(OutboundWriteQueue writeQueue) {
+    InputStream content = new ByteArrayInputStream("some content".getBytes());
+    responseMock = HttpResponse.builder().entity(new InputStreamHttpEntity(content)).build();
+    when(request.getProcessingState()).thenReturn(new ProcessingState());
+    return new ResponseStreamingCompletionHandler(ctx,
+                                                  currentThread().getContextClassLoader(),
+                                                  request,
+                                                  responseMock,
+                                                  callback,
+                                                  new TestChunkBufferPool(8),
+                                                  writeQueue);
+  }
+
+  /**
+   * Pool that always hands buffers of the same size, regardless of the requested one.
+   */
+  private static final class TestChunkBufferPool extends ResponseChunkBufferPool {
+
+    private final int chunkSize;
+
+    private TestChunkBufferPool(int chunkSize) {
+      super(DEFAULT_MEMORY_MANAGER, 4, false);
+      this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public Buffer acquire(int size) {
+      return super.acquire(chunkSize);
+    }
+  }
+
   private Exception createExpectedException() {
     return new Exception("EXPECTED EXCEPTION");
   }
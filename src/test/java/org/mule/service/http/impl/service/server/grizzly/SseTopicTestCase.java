@@ -0,0 +1,320 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.service.server.grizzly;
+
+import static org.mule.service.http.impl.AllureConstants.HttpFeature.HTTP_SERVICE;
+import static org.mule.service.http.impl.AllureConstants.HttpFeature.HttpStory.RESPONSES;
+import static org.mule.service.http.impl.service.server.grizzly.SseTopic.SlowConsumerPolicy.COALESCE;
+import static org.mule.service.http.impl.service.server.grizzly.SseTopic.SlowConsumerPolicy.DISCONNECT;
+import static org.mule.service.http.impl.service.server.grizzly.SseTopic.SlowConsumerPolicy.DROP;
+import static org.mule.service.http.impl.service.server.grizzly.SseTopic.encode;
+
+import static java.lang.Thread.currentThread;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.mule.runtime.http.api.domain.message.response.HttpResponse;
+import org.mule.runtime.http.api.server.HttpServer;
+import org.mule.runtime.http.api.server.async.HttpResponseReadyCallback;
+import org.mule.runtime.http.api.server.async.ResponseStatusCallback;
+import org.mule.service.http.impl.service.server.HttpServerDelegate;
+import org.mule.tck.junit4.AbstractMuleTestCase;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.glassfish.grizzly.Buffer;
+import org.glassfish.grizzly.CloseListener;
+import org.glassfish.grizzly.CompletionHandler;
+import org.glassfish.grizzly.Connection;
+import org.glassfish.grizzly.WriteResult;
+import org.glassfish.grizzly.filterchain.FilterChainContext;
+import org.glassfish.grizzly.http.HttpContent;
+import org.glassfish.grizzly.http.HttpRequestPacket;
+import org.glassfish.grizzly.http.HttpTrailer;
+import org.glassfish.grizzly.http.ProcessingState;
+import org.glassfish.grizzly.http.Protocol;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+
+@Feature(HTTP_SERVICE)
+@Story(RESPONSES)
+public class SseTopicTestCase extends AbstractMuleTestCase {
+
+  @Test
+  public void eventFormat() {
+    Buffer event = encode("update", "first line\nsecond line", "42");
+    assertThat(event.toStringContent(UTF_8), is("id: 42\nevent: update\ndata: first line\ndata: second line\n\n"));
+    assertThat(event.isReadOnly(), is(true));
+  }
+
+  @Test
+  public void eventWithOnlyData() {
+    assertThat(encode(null, "data", null).toStringContent(UTF_8), is("data: data\n\n"));
+  }
+
+  @Test
+  public void eventNameWithLineBreaksIsRejected() {
+    assertThrows(IllegalArgumentException.class, () -> encode("bad\nname", "data", null));
+  }
+
+  @Test
+  public void eventIsEncodedOnceForAllTheSubscribers() {
+    SseTopic topic = new SseTopic("prices", 4, DROP);
+    TestSubscriber first = new TestSubscriber(topic);
+    TestSubscriber second = new TestSubscriber(topic);
+    first.headersWritten();
+    second.headersWritten();
+
+    topic.publish("42");
+
+    Buffer firstContent = first.lastWrittenContent();
+    Buffer secondContent = second.lastWrittenContent();
+    assertThat(firstContent, is(not(sameInstance(secondContent))));
+    assertThat(firstContent.toStringContent(UTF_8), is("data: 42\n\n"));
+    assertThat(secondContent.toStringContent(UTF_8), is("data: 42\n\n"));
+
+    SseTopicStatistics statistics = topic.getStatistics();
+    assertThat(statistics.getPublishedEvents(), is(1L));
+    assertThat(statistics.getEncodedBytes(), is((long) "data: 42\n\n".length()));
+    assertThat(statistics.getOfferedEvents(), is(2L));
+  }
+
+  @Test
+  public void eventsAreWrittenOneAtATime() {
+    SseTopic topic = new SseTopic("prices", 4, DROP);
+    TestSubscriber subscriber = new TestSubscriber(topic);
+
+    // The headers are still being written
+    topic.publish("1");
+    topic.publish("2");
+    assertThat(subscriber.writtenEvents(), is(List.of()));
+
+    subscriber.headersWritten();
+    assertThat(subscriber.writtenEvents(), contains("data: 1\n\n"));
+
+    subscriber.lastWriteCompleted();
+    assertThat(subscriber.writtenEvents(), contains("data: 1\n\n", "data: 2\n\n"));
+
+    subscriber.lastWriteCompleted();
+    assertThat(topic.getStatistics().getDeliveredEvents(), is(2L));
+  }
+
+  @Test
+  public void dropPolicy() {
+    SseTopic topic = new SseTopic("prices", 1, DROP);
+    TestSubscriber subscriber = new TestSubscriber(topic);
+
+    topic.publish("1");
+    topic.publish("2");
+    topic.publish("3");
+    assertThat(topic.getStatistics().getDroppedEvents(), is(2L));
+
+    subscriber.headersWritten();
+    subscriber.lastWriteCompleted();
+    assertThat(subscriber.writtenEvents(), contains("data: 1\n\n"));
+  }
+
+  @Test
+  public void coalescePolicy() {
+    SseTopic topic = new SseTopic("prices", 1, COALESCE);
+    TestSubscriber subscriber = new TestSubscriber(topic);
+
+    topic.publish("1");
+    topic.publish("2");
+    topic.publish("3");
+    assertThat(topic.getStatistics().getCoalescedEvents(), is(2L));
+
+    subscriber.headersWritten();
+    subscriber.lastWriteCompleted();
+    assertThat(subscriber.writtenEvents(), contains("data: 3\n\n"));
+  }
+
+  @Test
+  public void disconnectPolicy() {
+    SseTopic topic = new SseTopic("prices", 1, DISCONNECT);
+    TestSubscriber subscriber = new TestSubscriber(topic);
+
+    topic.publish("1");
+    topic.publish("2");
+
+    verify(subscriber.connection).closeSilently();
+    verify(subscriber.callback).onErrorSendingResponse(any(IOException.class));
+    assertThat(subscriber.subscriber.isClosed(), is(true));
+    assertThat(topic.getSubscribersCount(), is(0));
+    assertThat(topic.getStatistics().getDisconnectedSubscribers(), is(1L));
+  }
+
+  @Test
+  public void closingTheTopicEndsTheResponsesAfterTheQueuedEvents() {
+    SseTopic topic = new SseTopic("prices", 4, DROP);
+    TestSubscriber subscriber = new TestSubscriber(topic);
+    topic.publish("1");
+
+    topic.close();
+
+    List<HttpContent> contents = subscriber.writtenContents();
+    assertThat(contents.get(1).getContent().toStringContent(UTF_8), is("data: 1\n\n"));
+    assertThat(contents.get(2), is(instanceOf(HttpTrailer.class)));
+    verify(subscriber.callback, never()).responseSendSuccessfully();
+    assertThat(topic.getSubscribersCount(), is(0));
+
+    subscriber.lastWriteCompleted();
+    verify(subscriber.callback).responseSendSuccessfully();
+
+    assertThrows(IllegalStateException.class, () -> topic.publish("2"));
+    assertThrows(IllegalStateException.class, () -> new TestSubscriber(topic));
+  }
+
+  @Test
+  public void failedTrailerIsReportedInsteadOfSuccess() {
+    SseTopic topic = new SseTopic("prices", 4, DROP);
+    TestSubscriber subscriber = new TestSubscriber(topic);
+    subscriber.headersWritten();
+
+    topic.close();
+    subscriber.lastWriteFailed(new IOException("Broken pipe"));
+    subscriber.lastWriteCompleted();
+
+    verify(subscriber.callback).onErrorSendingResponse(any(Throwable.class));
+    verify(subscriber.callback, never()).responseSendSuccessfully();
+  }
+
+  @Test
+  public void failedSubscriberIsUnsubscribed() {
+    SseTopic topic = new SseTopic("prices", 4, DROP);
+    TestSubscriber subscriber = new TestSubscriber(topic);
+    subscriber.headersWritten();
+    topic.publish("1");
+
+    subscriber.lastWriteFailed(new IOException("Broken pipe"));
+    assertThat(topic.getSubscribersCount(), is(0));
+    verify(subscriber.callback).onErrorSendingResponse(any(Throwable.class));
+  }
+
+  @Test
+  public void closeListenerIsRemovedWhenTheResponseEnds() {
+    SseTopic topic = new SseTopic("prices", 4, DROP);
+    TestSubscriber closedSubscriber = new TestSubscriber(topic);
+    TestSubscriber failedSubscriber = new TestSubscriber(topic);
+    failedSubscriber.headersWritten();
+
+    topic.publish("1");
+    failedSubscriber.lastWriteFailed(new IOException("Broken pipe"));
+    topic.close();
+    closedSubscriber.lastWriteCompleted();
+
+    for (TestSubscriber subscriber : asList(closedSubscriber, failedSubscriber)) {
+      ArgumentCaptor<CloseListener> captor = ArgumentCaptor.forClass(CloseListener.class);
+      verify(subscriber.connection).addCloseListener(captor.capture());
+      verify(subscriber.connection, atLeastOnce()).removeCloseListener(captor.getValue());
+    }
+  }
+
+  @Test
+  public void topicsAreReachedThroughTheServerWrappers() {
+    GrizzlyHttpServer grizzlyServer = mock(GrizzlyHttpServer.class);
+    SseTopic topic = new SseTopic("prices");
+    when(grizzlyServer.sseTopic("prices")).thenReturn(topic);
+
+    HttpServer server = new HttpServerDelegate(new HttpServerDelegate(grizzlyServer));
+
+    assertThat(SseTopic.sseTopic(server, "prices"), is(sameInstance(topic)));
+    assertThrows(IllegalArgumentException.class, () -> SseTopic.sseTopic(mock(HttpServer.class), "prices"));
+  }
+
+  @Test
+  public void subscribeThroughTheResponseCallback() {
+    SseTopic topic = new SseTopic("prices");
+    ResponseStatusCallback statusCallback = mock(ResponseStatusCallback.class);
+    GrizzlyHttpResponseReadyCallback responseReadyCallback = mock(GrizzlyHttpResponseReadyCallback.class);
+    SseTopicSubscriber subscriber = mock(SseTopicSubscriber.class);
+    when(responseReadyCallback.startSseResponse(topic, statusCallback)).thenReturn(subscriber);
+
+    assertThat(topic.subscribe(responseReadyCallback, statusCallback), is(sameInstance(subscriber)));
+    assertThrows(IllegalArgumentException.class,
+                 () -> topic.subscribe(mock(HttpResponseReadyCallback.class), statusCallback));
+  }
+
+  private static final class TestSubscriber {
+
+    private final FilterChainContext ctx = mock(FilterChainContext.class);
+    private final Connection connection = mock(Connection.class);
+    private final ResponseStatusCallback callback = mock(ResponseStatusCallback.class);
+    private final SseTopicSubscriber subscriber;
+
+    private TestSubscriber(SseTopic topic) {
+      HttpRequestPacket request = mock(HttpRequestPacket.class);
+      when(request.getProtocol()).thenReturn(Protocol.HTTP_1_1);
+      when(request.getProcessingState()).thenReturn(new ProcessingState());
+      when(ctx.getConnection()).thenReturn(connection);
+      when(connection.isOpen()).thenReturn(true);
+
+      subscriber = new SseTopicSubscriber(ctx, currentThread().getContextClassLoader(), request,
+                                          HttpResponse.builder().build(), callback, topic);
+      subscriber.start();
+    }
+
+    private void headersWritten() {
+      subscriber.completed(mock(WriteResult.class));
+    }
+
+    private void lastWriteCompleted() {
+      lastCompletionHandler().completed(mock(WriteResult.class));
+    }
+
+    private void lastWriteFailed(Throwable error) {
+      lastCompletionHandler().failed(error);
+    }
+
+    private CompletionHandler<WriteResult> lastCompletionHandler() {
+      ArgumentCaptor<CompletionHandler> captor = ArgumentCaptor.forClass(CompletionHandler.class);
+      verify(ctx, atLeastOnce()).write(any(HttpContent.class), captor.capture());
+      List<CompletionHandler> handlers = captor.getAllValues();
+      return handlers.get(handlers.size() - 1);
+    }
+
+    private List<HttpContent> writtenContents() {
+      ArgumentCaptor<HttpContent> captor = ArgumentCaptor.forClass(HttpContent.class);
+      verify(ctx, atLeastOnce()).write(captor.capture(), any(CompletionHandler.class));
+      return captor.getAllValues();
+    }
+
+    private Buffer lastWrittenContent() {
+      List<HttpContent> contents = writtenContents();
+      return contents.get(contents.size() - 1).getContent();
+    }
+
+    /**
+     * @return the events written, skipping the headers
+     */
+    private List<String> writtenEvents() {
+      return writtenContents().stream()
+          .skip(1)
+          .map(content -> content.getContent().toStringContent(UTF_8))
+          .collect(Collectors.toList());
+    }
+  }
+}
@@ -65,6 +65,112 @@ public class DefaultRequestMatcherRegistryTestCase extends AbstractMuleTestCase
     validateMethodAndPathMatch(registry, "/path/somewhere", nullValue(), POST);
   }
 
+  @Test
+  public void findReflectsAddedAndRemovedHandlers() {
+    RequestMatcherRegistry registry = buildRegistry(getFullBuilder());
+    validateRequestMatch(registry, "/nope", NOT_FOUND);
+    validateRequestMatch(registry, "/path/here/too", SECOND_LEVEL_CATCH_ALL);
+
+    RequestMatcherRegistry.RequestMatcherRegistryEntry nope =
+        registry.add(PathAndMethodRequestMatcher.builder().path("/nope").build(), FIRST_LEVEL_SPECIFIC);
+    RequestMatcherRegistry.RequestMatcherRegistryEntry hereToo =
+        registry.add(PathAndMethodRequestMatcher.builder().path("/path/here/too").build(), SECOND_LEVEL_SPECIFIC);
+    validateRequestMatch(registry, "/nope", FIRST_LEVEL_SPECIFIC);
+    validateRequestMatch(registry, "/path/here/too", SECOND_LEVEL_SPECIFIC);
+
+    nope.remove();
+    hereToo.remove();
+    validateRequestMatch(registry, "/nope", NOT_FOUND);
+    validateRequestMatch(registry, "/path/here/too", SECOND_LEVEL_CATCH_ALL);
+  }
+
+  @Test
+  public void findReflectsAvailabilityOfResolvedPaths() {
+    RequestMatcherRegistry registry = getFullBuilder().build();
+    RequestMatcherRegistry.RequestMatcherRegistryEntry entry =
+        registry.add(PathAndMethodRequestMatcher.builder().path("/{param}/here").build(), SECOND_LEVEL_SPECIFIC);
+    validateRequestMatch(registry, "/some/here", SECOND_LEVEL_SPECIFIC);
+
+    entry.disable();
+    validateRequestMatch(registry, "/some/here", DISABLED);
+    entry.enable();
+    validateRequestMatch(registry, "/some/here", SECOND_LEVEL_SPECIFIC);
+  }
+
+  @Test
+  public void findScansSegmentsOfRawAndEncodedPaths() {
+    RequestMatcherRegistry registry = getFullBuilder().build();
+    registry.add(PathAndMethodRequestMatcher.builder().path("/a b/{param}/c").build(), SECOND_LEVEL_SPECIFIC);
+    registry.add(PathAndMethodRequestMatcher.builder().path("/a b/*").build(), SECOND_LEVEL_CATCH_ALL);
+    registry.add(PathAndMethodRequestMatcher.builder().path("/first").build(), FIRST_LEVEL_SPECIFIC);
+
+    validateRequestMatch(registry, "/first", FIRST_LEVEL_SPECIFIC);
+    validateRequestMatch(registry, "/first/", FIRST_LEVEL_SPECIFIC);
+    validateRequestMatch(registry, "/firs", NOT_FOUND);
+    validateRequestMatch(registry, "/first//", NOT_FOUND);
+    validateRequestMatch(registry, "/a%20b/some/c", SECOND_LEVEL_SPECIFIC);
+    validateRequestMatch(registry, "/a%20b/some%20thing/c/", SECOND_LEVEL_SPECIFIC);
+    validateRequestMatch(registry, "/a%20b/some/d", SECOND_LEVEL_CATCH_ALL);
+    validateRequestMatch(registry, "/a%20b//c", SECOND_LEVEL_SPECIFIC);
+  }
+
+  @Test
+  public void pathsCacheStatistics() {
+    DefaultRequestMatcherRegistry<Object> registry = new DefaultRequestMatcherRegistryBuilder<>().pathsCacheSize(1).build();
+    registry.add(PathAndMethodRequestMatcher.builder().path("/orders/{id}").build(), SECOND_LEVEL_SPECIFIC);
+
+    validateRequestMatch(registry, "/orders/1", SECOND_LEVEL_SPECIFIC);
+    validateRequestMatch(registry, "/orders/1", SECOND_LEVEL_SPECIFIC);
+    validateRequestMatch(registry, "/orders/2", SECOND_LEVEL_SPECIFIC);
+
+    PathsCacheStatistics statistics = registry.getPathsCacheStatistics();
+    assertThat(statistics.getHitCount(), is(1L));
+    assertThat(statistics.getMissCount(), is(2L));
+    assertThat(statistics.getMaximumSize(), is(1L));
+  }
+
+  @Test
+  public void cacheByRouteTemplate() {
+    DefaultRequestMatcherRegistry<Object> registry =
+        new DefaultRequestMatcherRegistryBuilder<>().cacheByRouteTemplate(true).build();
+    registry.add(PathAndMethodRequestMatcher.builder().path("/orders/{id}").build(), SECOND_LEVEL_SPECIFIC);
+    registry.add(PathAndMethodRequestMatcher.builder().path("/orders/{id}/items/*").build(), SECOND_LEVEL_CATCH_ALL);
+    registry.add(PathAndMethodRequestMatcher.builder().path("/orders/special").build(), FIRST_LEVEL_SPECIFIC);
+
+    validateRequestMatch(registry, "/orders/123", SECOND_LEVEL_SPECIFIC);
+    validateRequestMatch(registry, "/orders/456/", SECOND_LEVEL_SPECIFIC);
+    validateRequestMatch(registry, "/orders/789", SECOND_LEVEL_SPECIFIC);
+    validateRequestMatch(registry, "/orders/special", FIRST_LEVEL_SPECIFIC);
+    validateRequestMatch(registry, "/orders/123/items/1", SECOND_LEVEL_CATCH_ALL);
+    validateRequestMatch(registry, "/orders/456/items/2", SECOND_LEVEL_CATCH_ALL);
+
+    PathsCacheStatistics statistics = registry.getPathsCacheStatistics();
+    assertThat(statistics.getHitCount(), is(2L));
+    assertThat(statistics.getMissCount(), is(4L));
+  }
+
+  @Test
+  public void changesOnlyInvalidateAffectedCachedPaths() {
+    DefaultRequestMatcherRegistry<Object> registry = getFullBuilder().build();
+    registry.add(PathAndMethodRequestMatcher.builder().path("/orders/{id}").build(), SECOND_LEVEL_SPECIFIC);
+    validateRequestMatch(registry, "/orders/1", SECOND_LEVEL_SPECIFIC);
+    validateRequestMatch(registry, "/customers/1", NOT_FOUND);
+
+    registry.add(PathAndMethodRequestMatcher.builder().path("/customers/{id}").build(), FIRST_LEVEL_SPECIFIC);
+    validateRequestMatch(registry, "/orders/1", SECOND_LEVEL_SPECIFIC);
+    validateRequestMatch(registry, "/customers/1", FIRST_LEVEL_SPECIFIC);
+    PathsCacheStatistics statistics = registry.getPathsCacheStatistics();
+    assertThat(statistics.getHitCount(), is(1L));
+    assertThat(statistics.getMissCount(), is(3L));
+
+    registry.add(PathAndMethodRequestMatcher.builder().path("/*").build(), SECOND_LEVEL_CATCH_ALL);
+    validateRequestMatch(registry, "/orders/1", SECOND_LEVEL_SPECIFIC);
+    validateRequestMatch(registry, "/nope", SECOND_LEVEL_CATCH_ALL);
+    statistics = registry.getPathsCacheStatistics();
+    assertThat(statistics.getHitCount(), is(1L));
+    assertThat(statistics.getMissCount(), is(5L));
+  }
+
   private RequestMatcherRegistry buildRegistry(RequestMatcherRegistry.RequestMatcherRegistryBuilder builder) {
     RequestMatcherRegistry<Object> registry = builder.build();
     registry.add(PathAndMethodRequestMatcher.builder()
@@ -77,11 +183,13 @@ public class DefaultRequestMatcherRegistryTestCase extends AbstractMuleTestCase
     return registry;
   }
 
-  private RequestMatcherRegistry.RequestMatcherRegistryBuilder<Object> getFullBuilder() {
-    return new DefaultRequestMatcherRegistryBuilder<>()
+  private DefaultRequestMatcherRegistryBuilder<Object> getFullBuilder() {
+    DefaultRequestMatcherRegistryBuilder<Object> builder = new DefaultRequestMatcherRegistryBuilder<>();
+    builder
         .onMethodMismatch(() -> METHOD_MISMATCH)
         .onNotFound(() -> NOT_FOUND)
         .onDisabled(() -> DISABLED);
+    return builder;
   }
 
   private void validateRequestMatch(RequestMatcherRegistry registry, String path, Object expectedItem) {
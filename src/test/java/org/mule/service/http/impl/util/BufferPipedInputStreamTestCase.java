@@ -0,0 +1,152 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.util;
+
+import static org.mule.functional.junit4.matchers.ThrowableMessageMatcher.hasMessage;
+import static org.mule.service.http.impl.AllureConstants.HttpFeature.HttpStory.RESPONSES;
+import static org.mule.service.http.impl.AllureConstants.HttpFeature.HttpStory.STREAMING;
+
+import static java.nio.ByteBuffer.wrap;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThrows;
+import static org.junit.internal.matchers.ThrowableCauseMatcher.hasCause;
+
+import org.mule.tck.junit4.AbstractMuleTestCase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.qameta.allure.Stories;
+import io.qameta.allure.Story;
+import org.junit.Test;
+
+@Stories({@Story(RESPONSES), @Story(STREAMING)})
+public class BufferPipedInputStreamTestCase extends AbstractMuleTestCase {
+
+  private final AtomicInteger timesCallbackWasCalled = new AtomicInteger();
+  private final Runnable onSpaceCallback = timesCallbackWasCalled::incrementAndGet;
+
+  @Test
+  public void readsTheChunksInOrderAcrossTheirBoundaries() throws IOException {
+    BufferPipedInputStream in = new BufferPipedInputStream(16, 10, MILLISECONDS);
+    in.receive(wrap("Hello ".getBytes()));
+    in.receive(wrap("world!".getBytes()));
+    in.receivedLast();
+
+    byte[] readBuf = new byte[4];
+    assertThat(in.read(readBuf), is(4));
+    assertThat(new String(readBuf), is("Hell"));
+    assertThat(in.read(readBuf), is(4));
+    assertThat(new String(readBuf), is("o wo"));
+    assertThat((char) in.read(), is('r'));
+    assertThat(in.read(readBuf), is(3));
+    assertThat(new String(readBuf, 0, 3), is("ld!"));
+    assertThat(in.read(readBuf), is(-1));
+  }
+
+  @Test
+  public void readsOnlyTheRemainingBytesOfTheChunk() throws IOException {
+    BufferPipedInputStream in = new BufferPipedInputStream(16, 10, MILLISECONDS);
+    ByteBuffer chunk = wrap("__payload__".getBytes(), 2, 7);
+    in.receive(chunk);
+
+    assertThat(in.available(), is(7));
+    byte[] readBuf = new byte[16];
+    assertThat(in.read(readBuf), is(7));
+    assertThat(new String(readBuf, 0, 7), is("payload"));
+  }
+
+  @Test
+  public void readReturnsZeroAfterTimeoutWhenNoData() throws IOException {
+    BufferPipedInputStream in = new BufferPipedInputStream(16, 10, MILLISECONDS);
+    assertThat(in.read(new byte[16]), is(0));
+  }
+
+  @Test
+  public void singleByteReadThrowsAfterTimeoutWhenNoData() {
+    BufferPipedInputStream in = new BufferPipedInputStream(16, 10, MILLISECONDS);
+    IOException ioException = assertThrows(IOException.class, in::read);
+    assertThat(ioException, hasCause(instanceOf(TimeoutException.class)));
+  }
+
+  @Test
+  public void receivingNeverBlocksButTheSpaceIsBasedOnQueuedBytes() throws IOException {
+    BufferPipedInputStream in = new BufferPipedInputStream(5, 10, HOURS);
+    assertThat(in.availableSpace(), is(5));
+
+    in.receive(wrap("Hel".getBytes()));
+    assertThat(in.availableSpace(), is(2));
+
+    in.receive(wrap("lo world!".getBytes()));
+    assertThat(in.availableSpace(), is(0));
+    assertThat(in.available(), is(12));
+  }
+
+  @Test
+  public void callbackIsCalledOnceWhenSpaceIsGenerated() throws IOException {
+    BufferPipedInputStream in = new BufferPipedInputStream(5, 10, HOURS);
+    in.receive(wrap("Hello world!".getBytes()));
+
+    assertThat(in.awaitSpace(onSpaceCallback), is(true));
+    assertThat(timesCallbackWasCalled.get(), is(0));
+
+    // Still above the limit after reading
+    byte[] readBuf = new byte[4];
+    in.read(readBuf);
+    assertThat(timesCallbackWasCalled.get(), is(0));
+
+    in.read(readBuf);
+    assertThat(timesCallbackWasCalled.get(), is(1));
+
+    in.read(readBuf);
+    assertThat(timesCallbackWasCalled.get(), is(1));
+  }
+
+  @Test
+  public void callbackIsNotRegisteredIfThereIsSpace() throws IOException {
+    BufferPipedInputStream in = new BufferPipedInputStream(5, 10, HOURS);
+    in.receive(wrap("Hel".getBytes()));
+
+    assertThat(in.awaitSpace(onSpaceCallback), is(false));
+  }
+
+  @Test
+  public void callbackIsCalledWhenClosedByReader() throws IOException {
+    BufferPipedInputStream in = new BufferPipedInputStream(5, 10, HOURS);
+    in.receive(wrap("Hello world!".getBytes()));
+    in.awaitSpace(onSpaceCallback);
+
+    in.close();
+    assertThat(timesCallbackWasCalled.get(), is(1));
+    assertThat(in.availableSpace(), is(-1));
+
+    IOException ioException = assertThrows(IOException.class, () -> in.receive(wrap("more".getBytes())));
+    assertThat(ioException, hasMessage("Pipe closed"));
+  }
+
+  @Test
+  public void callbackIsCalledWhenCancelled() throws IOException {
+    BufferPipedInputStream in = new BufferPipedInputStream(5, 10, HOURS);
+    in.receive(wrap("Hello world!".getBytes()));
+    in.awaitSpace(onSpaceCallback);
+
+    in.cancel(new RuntimeException("Expected exception"));
+    assertThat(timesCallbackWasCalled.get(), is(1));
+
+    IOException ioException = assertThrows(IOException.class, in::read);
+    assertThat(ioException, hasCause(allOf(instanceOf(RuntimeException.class),
+                                           hasMessage("Expected exception"))));
+  }
+}
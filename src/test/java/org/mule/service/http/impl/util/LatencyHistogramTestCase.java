@@ -0,0 +1,73 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.util;
+
+import static org.mule.service.http.impl.AllureConstants.HttpFeature.HTTP_SERVICE;
+import static org.mule.service.http.impl.AllureConstants.HttpFeature.HttpStory.LISTENERS;
+import static org.mule.service.http.impl.util.LatencyHistogram.bucketOf;
+import static org.mule.service.http.impl.util.LatencyHistogram.highestValueOf;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import org.mule.tck.junit4.AbstractMuleTestCase;
+
+import org.junit.Test;
+
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+
+@Feature(HTTP_SERVICE)
+@Story(LISTENERS)
+public class LatencyHistogramTestCase extends AbstractMuleTestCase {
+
+  private final LatencyHistogram histogram = new LatencyHistogram();
+
+  @Test
+  public void empty() {
+    assertThat(histogram.getCount(), is(0L));
+    assertThat(histogram.getMeanMicros(), is(0L));
+    assertThat(histogram.getValueAtPercentile(99), is(0L));
+  }
+
+  @Test
+  public void smallValuesAreExact() {
+    for (long i = 1; i <= 10; ++i) {
+      histogram.record(i);
+    }
+
+    assertThat(histogram.getCount(), is(10L));
+    assertThat(histogram.getValueAtPercentile(50), is(5L));
+    assertThat(histogram.getValueAtPercentile(100), is(10L));
+    assertThat(histogram.getMaxMicros(), is(10L));
+  }
+
+  @Test
+  public void percentilesAreWithinTheResolution() {
+    for (long i = 1; i <= 100_000; ++i) {
+      histogram.record(i);
+    }
+
+    assertThat(histogram.getMeanMicros(), is(50_000L));
+    assertThat(histogram.getValueAtPercentile(50), is(allOf(greaterThanOrEqualTo(50_000L), lessThanOrEqualTo(56_250L))));
+    assertThat(histogram.getValueAtPercentile(99), is(allOf(greaterThanOrEqualTo(99_000L), lessThanOrEqualTo(100_000L))));
+  }
+
+  @Test
+  public void eachValueFallsInTheBucketThatCoversIt() {
+    for (long value : new long[] {0, 15, 16, 17, 31, 32, 1000, 123_456_789, Long.MAX_VALUE}) {
+      int bucket = bucketOf(value);
+      assertThat(highestValueOf(bucket), is(greaterThanOrEqualTo(value)));
+      if (bucket > 0) {
+        assertThat(highestValueOf(bucket - 1), is(lessThanOrEqualTo(value - 1)));
+      }
+    }
+  }
+}
@@ -26,7 +26,9 @@ import org.mule.runtime.api.util.concurrent.Latch;
 import org.mule.tck.junit4.AbstractMuleTestCase;
 
 import java.io.IOException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -209,4 +211,82 @@ public class TimedPipedInputStreamTestCase extends AbstractMuleTestCase {
     in.read(readBuf);
     assertThat(timesCallbackWasCalled.get(), is(2));
   }
+
+  @Test
+  public void callbackIsCalledWhenSpaceIsGeneratedBySingleByteRead() throws IOException {
+    String payloadThatFillsTheBuffer = "Lorem ipsum";
+
+    TimedPipedOutputStream out = new TimedPipedOutputStream();
+    TimedPipedInputStream in = new TimedPipedInputStream(payloadThatFillsTheBuffer.length(), 10, HOURS, out, onSpaceCallback);
+    out.write(payloadThatFillsTheBuffer.getBytes());
+
+    in.read();
+    assertThat(timesCallbackWasCalled.get(), is(1));
+    in.read();
+    assertThat(timesCallbackWasCalled.get(), is(1));
+  }
+
+  @Test
+  public void callbackIsCalledWhenThePipeIsFilledWhileTheReaderWaits() throws Exception {
+    String payloadThatFillsTheBuffer = "Lorem ipsum";
+
+    TimedPipedOutputStream out = new TimedPipedOutputStream();
+    TimedPipedInputStream in = new TimedPipedInputStream(payloadThatFillsTheBuffer.length(), 10, HOURS, out, onSpaceCallback);
+    Future<Integer> read = writerExecutor.submit(() -> in.read(new byte[2]));
+    // Give the reader time to wait for data in the empty pipe
+    Thread.sleep(100);
+    out.write(payloadThatFillsTheBuffer.getBytes());
+
+    assertThat(read.get(), is(2));
+    assertThat(timesCallbackWasCalled.get(), is(1));
+  }
+
+  @Test
+  public void callbackIsCalledWhenClosedOrCancelledSoThatWritersDontWaitForever() throws IOException {
+    TimedPipedOutputStream out = new TimedPipedOutputStream();
+    TimedPipedInputStream in = new TimedPipedInputStream(10, 10, HOURS, out, onSpaceCallback);
+
+    in.close();
+    assertThat(timesCallbackWasCalled.get(), is(1));
+
+    in.cancel(new RuntimeException("Expected exception"));
+    assertThat(timesCallbackWasCalled.get(), is(2));
+  }
+
+  @Test
+  public void writerWaitingForSpaceFailsWhenReaderCloses() throws Exception {
+    TimedPipedOutputStream out = new TimedPipedOutputStream();
+    TimedPipedInputStream in = new TimedPipedInputStream(5, 10, HOURS, out, onSpaceCallback);
+    out.write(new byte[] {1, 2, 3, 4, 5});
+
+    Future<?> blockedWrite = writerExecutor.submit(() -> {
+      out.write(6);
+      return null;
+    });
+    assertThrows(TimeoutException.class, () -> blockedWrite.get(100, MILLISECONDS));
+
+    in.close();
+    ExecutionException exception = assertThrows(ExecutionException.class, blockedWrite::get);
+    assertThat(exception.getCause(), hasMessage("Pipe closed"));
+  }
+
+  @Test
+  public void readerWaitingForDataIsReleasedWhenWriterCloses() throws Exception {
+    TimedPipedOutputStream out = new TimedPipedOutputStream();
+    TimedPipedInputStream in = new TimedPipedInputStream(5, 10, HOURS, out, onSpaceCallback);
+
+    writerExecutor.submit(() -> {
+      out.write(new byte[] {1, 2});
+      out.close();
+      return null;
+    });
+
+    byte[] readBuf = new byte[5];
+    int totalRead = 0;
+    int read;
+    while ((read = in.read(readBuf, totalRead, readBuf.length - totalRead)) != -1) {
+      totalRead += read;
+    }
+    assertThat(totalRead, is(2));
+  }
 }
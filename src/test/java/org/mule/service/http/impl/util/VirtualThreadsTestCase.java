@@ -0,0 +1,93 @@
+/*
+ * Copyright 2023 Salesforce, Inc. All rights reserved.
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package org.mule.service.http.impl.util;
+
+import static org.mule.service.http.impl.AllureConstants.HttpFeature.HTTP_SERVICE;
+import static org.mule.service.http.impl.AllureConstants.HttpFeature.HttpStory.LISTENERS;
+import static org.mule.service.http.impl.util.VirtualThreads.isSupported;
+import static org.mule.service.http.impl.util.VirtualThreads.newVirtualThreadPerTaskExecutor;
+
+import static java.lang.Thread.currentThread;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assume.assumeThat;
+
+import org.mule.tck.junit4.AbstractMuleTestCase;
+import org.mule.tck.probe.JUnitLambdaProbe;
+import org.mule.tck.probe.PollingProber;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+
+@Feature(HTTP_SERVICE)
+@Story(LISTENERS)
+public class VirtualThreadsTestCase extends AbstractMuleTestCase {
+
+  @Test
+  public void tasksRunInNamedVirtualThreads() throws Exception {
+    assumeThat(isSupported(), is(true));
+
+    ExecutorService executor = newVirtualThreadPerTaskExecutor("test.virtual.");
+    try {
+      Thread thread = executor.submit(() -> currentThread()).get(5, SECONDS);
+      assertThat(Thread.class.getMethod("isVirtual").invoke(thread), is(true));
+      assertThat(thread.getName(), startsWith("test.virtual."));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void boundedExecutorRejectsTasksBeyondItsMaximum() throws Exception {
+    assumeThat(isSupported(), is(true));
+
+    ExecutorService executor = newVirtualThreadPerTaskExecutor("test.virtual.", 1);
+    CountDownLatch release = new CountDownLatch(1);
+    try {
+      Future<?> running = executor.submit(() -> {
+        release.await();
+        return null;
+      });
+      assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {
+      }));
+
+      release.countDown();
+      running.get(5, SECONDS);
+      // The permit is released right after the task completes its future
+      new PollingProber(5000, 10).check(new JUnitLambdaProbe(() -> {
+        try {
+          executor.execute(() -> {
+          });
+          return true;
+        } catch (RejectedExecutionException e) {
+          return false;
+        }
+      }));
+    } finally {
+      release.countDown();
+      executor.shutdown();
+    }
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void unsupportedBeforeJava21() {
+    assumeThat(isSupported(), is(false));
+
+    newVirtualThreadPerTaskExecutor("test.virtual.");
+  }
+}